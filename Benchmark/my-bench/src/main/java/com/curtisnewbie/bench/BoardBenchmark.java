@@ -0,0 +1,111 @@
+package com.curtisnewbie.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.curtisnewbie.engine.BitBoard;
+import com.curtisnewbie.engine.GameEngine;
+
+/**
+ * Benchmarks of the board evaluation done after every move: {@code hasWon()},
+ * {@code isFull()} and applying moves to a {@code GameEngine}.<br>
+ * <br>
+ * The positions are taken from random games and cycled through, so that the
+ * JIT cannot fold the checks into constants. {@link #hasWonArray()} is the scan
+ * of an {@code int[3][3]} that {@code GamePane} used to do, kept as a baseline.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+    private static final int POSITIONS = 1024;
+
+    /** Positions as {@code BitBoard}s */
+    private final int[] boards = new int[POSITIONS];
+
+    /** The same positions as {@code int[3][3]}, 0 is empty, 1 and 2 are players */
+    private final int[][][] arrays = new int[POSITIONS][3][3];
+
+    /** Moves of complete random games, 9 per game, -1 after the game ends */
+    private final int[][] games = new int[POSITIONS][9];
+
+    private final GameEngine engine = new GameEngine();
+
+    private int i;
+
+    @Setup
+    public void setup() {
+        Random rand = new Random(42);
+        for (int p = 0; p < POSITIONS; p++) {
+            GameEngine e = new GameEngine();
+            int n = rand.nextInt(10);
+            int m = 0;
+            while (!e.isOver()) {
+                int cell = rand.nextInt(9);
+                if (!BitBoard.isEmpty(e.board(), cell))
+                    continue;
+                int player = e.currentPlayer();
+                e.apply(cell);
+                games[p][m++] = cell;
+                if (m <= n) {
+                    boards[p] = e.board();
+                    arrays[p][cell / 3][cell % 3] = player + 1;
+                }
+            }
+            while (m < 9)
+                games[p][m++] = -1;
+        }
+    }
+
+    @Benchmark
+    public boolean hasWon() {
+        return BitBoard.hasWon(boards[i++ & (POSITIONS - 1)]);
+    }
+
+    @Benchmark
+    public boolean hasWonArray() {
+        int[][] b = arrays[i++ & (POSITIONS - 1)];
+        for (int c = 0; c < 3; c++)
+            if (b[0][c] != 0 && b[0][c] == b[1][c] && b[1][c] == b[2][c])
+                return true;
+        for (int r = 0; r < 3; r++)
+            if (b[r][0] != 0 && b[r][0] == b[r][1] && b[r][1] == b[r][2])
+                return true;
+        if (b[0][0] != 0 && b[0][0] == b[1][1] && b[1][1] == b[2][2])
+            return true;
+        return b[0][2] != 0 && b[0][2] == b[1][1] && b[1][1] == b[2][0];
+    }
+
+    @Benchmark
+    public boolean isFull() {
+        return BitBoard.isFull(boards[i++ & (POSITIONS - 1)]);
+    }
+
+    /** Play a whole game on the engine, i.e., up to nine moves */
+    @Benchmark
+    public int applyGame() {
+        int[] moves = games[i++ & (POSITIONS - 1)];
+        engine.reset();
+        for (int m = 0; m < 9 && moves[m] >= 0; m++)
+            engine.apply(moves[m]);
+        return engine.status();
+    }
+}
@@ -0,0 +1,224 @@
+package com.curtisnewbie.bench;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.curtisnewbie.engine.GameRules;
+import com.curtisnewbie.engine.net.Frame;
+import com.curtisnewbie.engine.net.FrameReader;
+import com.curtisnewbie.engine.net.FrameWriter;
+import com.curtisnewbie.engine.net.Protocol;
+
+/**
+ * Benchmark of the games/s of a cluster of 1, 2, 4... servers behind a
+ * {@code Router}, to see how it scales out.<br>
+ * <br>
+ * It launches a router and the servers from the jar built by the "server"
+ * profile of the "Host" project, each server with one selector thread, and
+ * waits until every server has joined. Bots in this JVM then play random games
+ * through the router, as the {@code LoadGenerator} does, each of them follows
+ * the {@code REDIRECT} to the server of its game. JMH is not used here since
+ * the servers are processes of their own.<br>
+ * <br>
+ * The processes share the cores of one machine with the bots, so the games/s
+ * can only go up with the servers while there are cores left for them, the
+ * numbers are meaningful with at least as many cores as servers plus one.<br>
+ * <br>
+ * Usage:
+ * {@code ClusterBenchmark [server jar] [most servers] [bots] [seconds] [router port]}
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class ClusterBenchmark {
+
+    /** A bot gives up on a game when the server doesn't answer in time */
+    private static final int READ_TIMEOUT_MS = 5000;
+
+    /** Games played before the games/s is measured */
+    private static final int WARMUP_SECONDS = 2;
+
+    private final int routerPort;
+
+    private final LongAdder games = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private volatile boolean running;
+
+    private ClusterBenchmark(int routerPort) {
+        this.routerPort = routerPort;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path jar = Paths.get(args.length > 0 ? args[0] : "../../Host/my-app/target/tictactoe-server.jar");
+        int most = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int bots = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        int port = args.length > 4 ? Integer.parseInt(args[4]) : 7200;
+        if (!Files.exists(jar)) {
+            System.out.println(jar + " is not found, build it with \"mvn package -Pserver\" in Host/my-app");
+            return;
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        if (cores <= most)
+            System.out.println("Only " + cores + " cores for up to " + most
+                    + " servers and the bots, the games/s can't scale with the servers here");
+
+        for (int n = 1; n <= most; n *= 2) {
+            List<Process> cluster = new ArrayList<>();
+            try {
+                cluster.add(launch(jar, "Router listening", "-cp", jar.toString(), "com.curtisnewbie.app.Router",
+                        String.valueOf(port)));
+                for (int i = 1; i <= n; i++)
+                    cluster.add(launch(jar, "Joined the cluster", "-Dtictactoe.router=localhost:" + port, "-jar",
+                            jar.toString(), String.valueOf(port + 10 * i), "1", "pvp"));
+                ClusterBenchmark b = new ClusterBenchmark(port);
+                double rate = b.run(bots, seconds);
+                System.out.println(String.format("%d servers  games/s: %8.1f  failures: %d", n, rate,
+                        b.failures.sum()));
+            } finally {
+                for (Process p : cluster) {
+                    p.destroyForcibly();
+                    p.waitFor();
+                }
+            }
+        }
+    }
+
+    /**
+     * Launch a process of the cluster, and wait until it prints the line that
+     * says it's ready
+     */
+    private static Process launch(Path jar, String ready, String... args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(Arrays.asList(args));
+        Process p = new ProcessBuilder(command).redirectErrorStream(true).start();
+        BufferedReader out = new BufferedReader(new InputStreamReader(p.getInputStream()));
+        String line;
+        while ((line = out.readLine()) != null && !line.startsWith(ready))
+            ;
+        if (line == null)
+            throw new IOException(command + " exited with " + p.exitValue());
+        // keep reading, so that the process never blocks on a full pipe
+        Thread drain = new Thread(() -> {
+            try {
+                while (out.readLine() != null)
+                    ;
+            } catch (IOException e) {
+                // the process is gone
+            }
+        }, "drain");
+        drain.setDaemon(true);
+        drain.start();
+        return p;
+    }
+
+    /**
+     * Run the bots, and measure the games/s after the warm-up
+     *
+     * @return games/s
+     */
+    private double run(int bots, int seconds) throws InterruptedException {
+        running = true;
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < bots; i++) {
+            Thread t = new Thread(() -> {
+                Frame frame = new Frame();
+                while (running)
+                    playGame(frame);
+            }, "bot-" + i);
+            t.setDaemon(true);
+            t.start();
+            threads.add(t);
+        }
+        Thread.sleep(WARMUP_SECONDS * 1000L);
+        long before = games.sum();
+        failures.reset();
+        long start = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        double rate = (games.sum() - before) * 1e9 / (System.nanoTime() - start);
+        running = false;
+        for (Thread t : threads)
+            t.join(READ_TIMEOUT_MS * 2);
+        return rate;
+    }
+
+    /** Play one game through the router, on a new connection to the server */
+    private void playGame(Frame frame) {
+        int rating = 1000 + ThreadLocalRandom.current().nextInt(1000);
+        String host = "localhost";
+        int port = routerPort;
+        int gameId = 0;
+        for (int hop = 0; hop < 2; hop++) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(host, port));
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(READ_TIMEOUT_MS);
+                FrameReader in = new FrameReader(new BufferedInputStream(socket.getInputStream()));
+                FrameWriter out = new FrameWriter(socket.getOutputStream());
+                out.joinHello(0, 0, rating, gameId);
+                out.flush();
+                do {
+                    in.read(frame);
+                } while (frame.type() != Protocol.HELLO && frame.type() != Protocol.REDIRECT);
+                if (frame.type() == Protocol.REDIRECT) {
+                    gameId = frame.gameId();
+                    host = frame.redirectHost().isEmpty() ? host : frame.redirectHost();
+                    port = frame.redirectPort();
+                    continue;
+                }
+                play(in, out, frame);
+                return;
+            } catch (IOException e) {
+                if (running)
+                    failures.increment();
+                return;
+            }
+        }
+    }
+
+    /** Play random moves in the game that the {@code HELLO} in the frame starts */
+    private void play(FrameReader in, FrameWriter out, Frame frame) throws IOException {
+        boolean first = frame.byteAt(1) == Protocol.MOVE_FIRST;
+        GameRules engine = GameRules.create(frame.boardSize(), frame.k());
+        boolean ours = first;
+        while (!engine.isOver()) {
+            if (ours) {
+                int cells = engine.cells();
+                int cell = ThreadLocalRandom.current().nextInt(cells);
+                while (engine.cellAt(cell) >= 0)
+                    cell = cell + 1 == cells ? 0 : cell + 1;
+                out.move(cell, cells);
+                out.flush();
+                engine.apply(cell);
+            } else {
+                in.read(frame);
+                if (frame.type() == Protocol.MOVE)
+                    engine.apply(frame.cell(engine.cells()));
+                else if (frame.type() == Protocol.RESIGN || frame.type() == Protocol.GAME_OVER
+                        || frame.type() == Protocol.ERROR)
+                    return;
+                else
+                    continue;
+            }
+            ours = !ours;
+        }
+        // count each game once, by the bot that moves first
+        if (first)
+            games.increment();
+    }
+}
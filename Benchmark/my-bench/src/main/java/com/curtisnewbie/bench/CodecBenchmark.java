@@ -0,0 +1,102 @@
+package com.curtisnewbie.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.curtisnewbie.engine.net.Frame;
+import com.curtisnewbie.engine.net.FrameCodec;
+
+/**
+ * Benchmarks of encoding and decoding a move.<br>
+ * <br>
+ * {@link #encodeMove()} and {@link #decodeMove()} use the {@code FrameCodec},
+ * while {@link #writeIntMove()} and {@link #readIntMove()} are the two
+ * {@code writeInt}/{@code readInt} calls per move that the protocol used to
+ * make, kept as a baseline.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    /** Cells of the 3x3 board that the moves are made on */
+    private static final int CELLS = 9;
+
+    private final ByteBuffer out = ByteBuffer.allocate(64);
+
+    private final ByteBuffer in = ByteBuffer.allocate(64);
+
+    private final Frame frame = new Frame();
+
+    private final ByteArrayOutputStream bytesOut = new ByteArrayOutputStream(64);
+
+    private final DataOutputStream dataOut = new DataOutputStream(bytesOut);
+
+    private ByteArrayInputStream bytesIn;
+
+    private DataInputStream dataIn;
+
+    private int cell;
+
+    @Setup
+    public void setup() throws IOException {
+        FrameCodec.putMove(in, 4, CELLS);
+        in.flip();
+
+        dataOut.writeInt(1);
+        dataOut.writeInt(1);
+        bytesIn = new ByteArrayInputStream(bytesOut.toByteArray());
+        dataIn = new DataInputStream(bytesIn);
+    }
+
+    @Benchmark
+    public int encodeMove() {
+        out.clear();
+        FrameCodec.putMove(out, cell++ % CELLS, CELLS);
+        return out.position();
+    }
+
+    @Benchmark
+    public int decodeMove() throws IOException {
+        in.position(0);
+        FrameCodec.decode(in, frame);
+        return frame.cell(CELLS);
+    }
+
+    @Benchmark
+    public int writeIntMove() throws IOException {
+        int c = cell++ % 9;
+        bytesOut.reset();
+        dataOut.writeInt(c / 3);
+        dataOut.writeInt(c % 3);
+        return bytesOut.size();
+    }
+
+    @Benchmark
+    public int readIntMove() throws IOException {
+        bytesIn.reset();
+        return dataIn.readInt() * 3 + dataIn.readInt();
+    }
+}
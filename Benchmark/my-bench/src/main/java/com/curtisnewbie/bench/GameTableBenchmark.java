@@ -0,0 +1,131 @@
+package com.curtisnewbie.bench;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.curtisnewbie.engine.BitBoard;
+import com.curtisnewbie.engine.GameEngine;
+import com.curtisnewbie.engine.GameRules;
+import com.curtisnewbie.engine.GameTable;
+
+/**
+ * Benchmark of keeping the boards of a million 3x3 games in progress, on the
+ * heap as a {@code GameEngine} per game (as the {@code GameServer} did), or as
+ * records of a {@code GameTable} off the heap.<br>
+ * <br>
+ * Each invocation makes a random move in a random game, a game that finishes
+ * is replaced by a new one, as on a busy server. The setup prints the heap
+ * (after a full gc) and the direct memory that the boards take, and the gc
+ * profiler shows what the replaced games cost in allocation. This is only the
+ * state of a game, what a whole game of the server keeps (its
+ * {@code ServerGame} and {@code Connection}s, with their buffers in the
+ * {@code ConnectionTable}) is measured by {@code GameFootprint} in the "Host"
+ * project.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g", "-XX:MaxDirectMemorySize=1g" })
+public class GameTableBenchmark {
+
+    private static final int GAMES = 1 << 20;
+
+    @Param({ "heap", "table" })
+    private String store;
+
+    /** The boards on the heap */
+    private GameEngine[] heap;
+
+    private GameTable table;
+
+    /** Handles of the games in the table */
+    private int[] handles;
+
+    /** State of the xorshift that picks games and cells */
+    private int seed = 42;
+
+    @Setup
+    public void setup() {
+        long before = usedHeap();
+        if (store.equals("heap")) {
+            heap = new GameEngine[GAMES];
+            for (int g = 0; g < GAMES; g++)
+                heap[g] = new GameEngine();
+        } else {
+            table = new GameTable(GAMES);
+            handles = new int[GAMES];
+            for (int g = 0; g < GAMES; g++)
+                handles[g] = table.allocate(2 * g, 2 * g + 1);
+        }
+        long used = usedHeap() - before;
+        long direct = usedDirect();
+        System.out.println(String.format("%n%s: %d games, heap %.1f MB (%d bytes/game), off-heap %.1f MB", store,
+                GAMES, used / 1048576.0, used / GAMES, direct / 1048576.0));
+    }
+
+    @Benchmark
+    public int move() {
+        int g = next() & (GAMES - 1);
+        if (heap != null) {
+            GameEngine game = heap[g];
+            int status = game.apply(emptyCell(game.board()));
+            if (status != GameRules.IN_PROGRESS)
+                heap[g] = new GameEngine();
+            return status;
+        }
+        int h = handles[g];
+        int status = table.apply(h, emptyCell(table.board(h)));
+        if (status != GameRules.IN_PROGRESS) {
+            table.release(h);
+            handles[g] = table.allocate(2 * g, 2 * g + 1);
+        }
+        return status;
+    }
+
+    /** A random empty cell, or the next empty one after it */
+    private int emptyCell(int board) {
+        int cell = (next() & 0xFFFF) % BitBoard.CELLS;
+        while (!BitBoard.isEmpty(board, cell))
+            cell = cell + 1 == BitBoard.CELLS ? 0 : cell + 1;
+        return cell;
+    }
+
+    private int next() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long usedDirect() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class))
+            if (pool.getName().equals("direct"))
+                return pool.getMemoryUsed();
+        return 0;
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.curtisnewbie.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.curtisnewbie.engine.GridEngine;
+
+/**
+ * Benchmark of applying moves to a {@code GridEngine} on boards of different
+ * sizes with 5 in a row to win.<br>
+ * <br>
+ * Each invocation plays the first {@link #MOVES} moves of a random game, the
+ * time is reported per move. Since only the lines through the last stone are
+ * checked, the time per move should stay about the same as the board grows.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridBenchmark {
+
+    private static final int GAMES = 256;
+
+    /** Moves played per invocation */
+    private static final int MOVES = 40;
+
+    @Param({ "15", "50" })
+    private int size;
+
+    /** Moves of random games, {@link #MOVES} per game */
+    private int[][] games;
+
+    private GridEngine engine;
+
+    private int i;
+
+    @Setup
+    public void setup() {
+        engine = new GridEngine(size, 5);
+        games = new int[GAMES][MOVES];
+        Random rand = new Random(42);
+        for (int g = 0; g < GAMES; g++) {
+            GridEngine e = new GridEngine(size, 5);
+            int m = 0;
+            // keep the moves of a game that lasts long enough
+            while (m < MOVES) {
+                int cell = rand.nextInt(size * size);
+                if (e.cellAt(cell) >= 0)
+                    continue;
+                if (e.apply(cell) != GridEngine.IN_PROGRESS && m < MOVES - 1) {
+                    e.reset();
+                    m = 0;
+                    continue;
+                }
+                games[g][m++] = cell;
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MOVES)
+    public int applyMoves() {
+        int[] moves = games[i++ & (GAMES - 1)];
+        engine.reset();
+        for (int m = 0; m < MOVES; m++)
+            engine.apply(moves[m]);
+        return engine.status();
+    }
+}
@@ -0,0 +1,212 @@
+package com.curtisnewbie.bench;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.curtisnewbie.engine.BoardPublisher;
+import com.curtisnewbie.engine.BoardSnapshot;
+import com.curtisnewbie.engine.GameRules;
+
+/**
+ * Stress test of handing a board from the thread that owns it to other
+ * threads, in the manner of jcstress: one writer plays random games as fast as
+ * it can, while readers look at the board all the time and count the states
+ * they see that no single moment of a game can be in.<br>
+ * <br>
+ * In "snapshot" mode, the writer publishes a {@code BoardSnapshot} through a
+ * {@code BoardPublisher} after a batch of up to {@value #MAX_BATCH} changes, as
+ * the {@code GamePane} does once per frame, and the readers only look at the
+ * snapshots. In "shared" mode, the readers look at the
+ * writer's {@code GameRules} and its last move directly, as other threads used
+ * to look at the fields of the {@code GamePane}. A state is forbidden when:
+ * <ul>
+ * <li>player 0 doesn't have the same number of stones as player 1 or one more
+ * ("stones"),</li>
+ * <li>the player in turn is not the one the number of stones says
+ * ("turn"),</li>
+ * <li>the last move is not a stone of the player that moved last ("last
+ * move"),</li>
+ * <li>the winner is not the player that moved last ("winner"),</li>
+ * <li>a reader sees an older version after a newer one ("version").</li>
+ * </ul>
+ * The snapshot mode also runs in the build, as {@code BoardPublisherTest} of the
+ * engine, which fails on any forbidden state; this one is for longer runs and
+ * for comparing it with the shared mode.<br>
+ * <br>
+ * Usage:
+ * {@code PublicationStress [seconds per mode] [readers] [N] [K] [snapshot,shared]}
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class PublicationStress {
+
+    private static final int STONES = 0;
+    private static final int TURN = 1;
+    private static final int LAST_MOVE = 2;
+    private static final int WINNER = 3;
+    private static final int VERSION = 4;
+    private static final String[] NAMES = { "stones", "turn", "last move", "winner", "version" };
+
+    /** Most changes applied between two publications, as in a frame */
+    private static final int MAX_BATCH = 8;
+
+    private final GameRules rules;
+
+    private final BoardPublisher published = new BoardPublisher();
+
+    /** The writer's last move, read without any ordering in "shared" mode */
+    private int lastCell = BoardSnapshot.NO_CELL;
+
+    private final AtomicBoolean running = new AtomicBoolean(true);
+
+    private PublicationStress(int n, int k) {
+        this.rules = GameRules.create(n, k);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int readers = args.length > 1 ? Integer.parseInt(args[1])
+                : Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
+        int n = args.length > 2 ? Integer.parseInt(args[2]) : 7;
+        int k = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        String modes = args.length > 4 ? args[4] : "snapshot,shared";
+
+        System.out.println("Publishing a " + n + "x" + n + " board with " + k + " in a row to " + readers
+                + " readers, " + seconds + "s per mode");
+        for (String mode : modes.split(","))
+            new PublicationStress(n, k).run(mode.trim(), seconds, readers);
+    }
+
+    private void run(String mode, int seconds, int readerCount) throws InterruptedException {
+        boolean snapshots = mode.equals("snapshot");
+        if (snapshots)
+            published.publish(BoardSnapshot.of(0, rules, lastCell, false));
+
+        long[][] forbidden = new long[readerCount][NAMES.length];
+        long[] reads = new long[readerCount];
+        Thread[] readers = new Thread[readerCount];
+        for (int r = 0; r < readerCount; r++) {
+            int id = r;
+            readers[r] = new Thread(() -> {
+                if (snapshots)
+                    readSnapshots(forbidden[id], reads, id);
+                else
+                    readShared(forbidden[id], reads, id);
+            }, "reader-" + r);
+            readers[r].start();
+        }
+
+        long moves = 0;
+        long version = 0;
+        int cells = rules.cells();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        while (System.nanoTime() < end) {
+            for (int b = 1 + random.nextInt(MAX_BATCH); b > 0; b--) {
+                if (rules.isOver()) {
+                    rules.reset();
+                    lastCell = BoardSnapshot.NO_CELL;
+                } else {
+                    int cell = random.nextInt(cells);
+                    while (rules.cellAt(cell) >= 0)
+                        cell = cell + 1 == cells ? 0 : cell + 1;
+                    rules.apply(cell);
+                    lastCell = cell;
+                    moves++;
+                }
+            }
+            if (snapshots)
+                published.publish(BoardSnapshot.of(++version, rules, lastCell, false));
+        }
+        running.set(false);
+        for (Thread t : readers)
+            t.join();
+
+        long total = 0;
+        long[] sums = new long[NAMES.length];
+        long totalReads = 0;
+        for (int r = 0; r < readerCount; r++) {
+            totalReads += reads[r];
+            for (int i = 0; i < NAMES.length; i++) {
+                sums[i] += forbidden[r][i];
+                total += forbidden[r][i];
+            }
+        }
+        StringBuilder sb = new StringBuilder(String.format("%-9s moves: %,d  reads: %,d  forbidden: %,d", mode, moves,
+                totalReads, total));
+        if (total > 0) {
+            sb.append("  (");
+            for (int i = 0; i < NAMES.length; i++)
+                if (sums[i] > 0)
+                    sb.append(NAMES[i]).append(' ').append(sums[i]).append(", ");
+            sb.setLength(sb.length() - 2);
+            sb.append(')');
+        }
+        System.out.println(sb);
+    }
+
+    /** Look at the published snapshots */
+    private void readSnapshots(long[] forbidden, long[] reads, int id) {
+        long count = 0;
+        long lastVersion = -1;
+        while (running.get()) {
+            BoardSnapshot s = published.current();
+            count++;
+            if (s.version() < lastVersion)
+                forbidden[VERSION]++;
+            lastVersion = s.version();
+            int p0 = 0;
+            int p1 = 0;
+            int cells = s.size() * s.size();
+            for (int c = 0; c < cells; c++) {
+                int p = s.cellAt(c);
+                if (p == 0)
+                    p0++;
+                else if (p == 1)
+                    p1++;
+            }
+            check(forbidden, p0, p1, s.currentPlayer(), s.lastCell(), s.lastCell() < 0 ? -1 : s.cellAt(s.lastCell()),
+                    s.status());
+        }
+        reads[id] = count;
+    }
+
+    /** Look at the writer's board directly */
+    private void readShared(long[] forbidden, long[] reads, int id) {
+        long count = 0;
+        while (running.get()) {
+            count++;
+            int status = rules.status();
+            int turn = rules.currentPlayer();
+            int last = lastCell;
+            int p0 = 0;
+            int p1 = 0;
+            int cells = rules.cells();
+            for (int c = 0; c < cells; c++) {
+                int p = rules.cellAt(c);
+                if (p == 0)
+                    p0++;
+                else if (p == 1)
+                    p1++;
+            }
+            check(forbidden, p0, p1, turn, last, last < 0 ? -1 : rules.cellAt(last), status);
+        }
+        reads[id] = count;
+    }
+
+    /** Count the invariants that the state breaks */
+    private static void check(long[] forbidden, int p0, int p1, int turn, int last, int lastOwner, int status) {
+        int stones = p0 + p1;
+        if (p0 - p1 != 0 && p0 - p1 != 1)
+            forbidden[STONES]++;
+        if (turn != (stones & 1))
+            forbidden[TURN]++;
+        int mover = (stones - 1) & 1;
+        if (stones > 0 && (last < 0 || lastOwner != mover))
+            forbidden[LAST_MOVE]++;
+        if (status == GameRules.PLAYER_0_WON && mover != 0 || status == GameRules.PLAYER_1_WON && mover != 1)
+            forbidden[WINNER]++;
+    }
+}
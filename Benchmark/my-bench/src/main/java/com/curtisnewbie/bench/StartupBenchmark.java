@@ -0,0 +1,103 @@
+package com.curtisnewbie.bench;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of how long the headless server takes from the launch of its JVM
+ * until it accepts a connection, which is what a restart or a new node of a
+ * cluster waits for.<br>
+ * <br>
+ * It launches the jar built by the "server" profile of the "Host" project a
+ * number of times with each class data sharing setting: none at all
+ * ("-Xshare:off"), the archive of the JDK's own classes that is used by default,
+ * and the AppCDS archive recorded by the profile, and tries to connect every
+ * millisecond until the server answers. JMH is not used here since the JVM
+ * under test is a process of its own. The archive only matches the jar by the
+ * path it was recorded with, "tictactoe-server.jar" in the folder of the jar,
+ * so the server is launched from that folder, and the AppCDS launches fail
+ * rather than quietly run without it ("-Xshare:on").<br>
+ * <br>
+ * Usage:
+ * {@code StartupBenchmark [server jar] [AppCDS archive] [launches per setting] [port]}
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class StartupBenchmark {
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path jar = Paths.get(args.length > 0 ? args[0] : "../../Host/my-app/target/tictactoe-server.jar");
+        Path archive = Paths.get(args.length > 1 ? args[1] : "../../Host/my-app/target/tictactoe-server.jsa");
+        int launches = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int port = args.length > 3 ? Integer.parseInt(args[3]) : 7080;
+        if (!Files.exists(jar)) {
+            System.out.println(jar + " is not found, build it with \"mvn package -Pserver\" in Host/my-app");
+            return;
+        }
+
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Path dir = jar.toAbsolutePath().getParent();
+        List<String[]> settings = new ArrayList<>();
+        settings.add(new String[] { "no CDS", "-Xshare:off" });
+        settings.add(new String[] { "JDK CDS", "-Xshare:auto" });
+        if (Files.exists(archive))
+            settings.add(new String[] { "AppCDS", "-Xshare:on",
+                    "-XX:SharedArchiveFile=" + dir.relativize(archive.toAbsolutePath()) });
+        else
+            System.out.println(archive + " is not found, AppCDS is skipped");
+
+        System.out.println("Launching " + jar + " " + launches + " times per setting");
+        for (String[] s : settings) {
+            long[] millis = new long[launches];
+            List<String> command = new ArrayList<>();
+            command.add(java);
+            command.addAll(Arrays.asList(s).subList(1, s.length));
+            command.addAll(Arrays.asList("-jar", jar.getFileName().toString(),
+                    String.valueOf(port), "1"));
+            for (int i = 0; i < launches; i++)
+                millis[i] = launch(command, dir, port);
+            Arrays.sort(millis);
+            System.out.println(String.format("%-8s min: %4d ms  median: %4d ms  max: %4d ms", s[0], millis[0],
+                    millis[launches / 2], millis[launches - 1]));
+        }
+    }
+
+    /**
+     * Launch the server and wait until it accepts a connection
+     *
+     * @return milliseconds from the launch
+     */
+    private static long launch(List<String> command, Path dir, int port) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Process p = new ProcessBuilder(command).directory(dir.toFile())
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD).redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try {
+            while (true) {
+                if (!p.isAlive())
+                    throw new IOException("The server exited with " + p.exitValue());
+                try (Socket s = new Socket()) {
+                    s.connect(new InetSocketAddress("localhost", port), 100);
+                    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                } catch (IOException e) {
+                    Thread.sleep(1);
+                }
+            }
+        } finally {
+            p.destroyForcibly();
+            p.waitFor();
+        }
+    }
+}
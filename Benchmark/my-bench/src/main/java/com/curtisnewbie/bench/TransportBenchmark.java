@@ -0,0 +1,123 @@
+package com.curtisnewbie.bench;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.curtisnewbie.engine.net.Frame;
+import com.curtisnewbie.engine.net.FrameReader;
+import com.curtisnewbie.engine.net.FrameWriter;
+import com.curtisnewbie.engine.net.Link;
+import com.curtisnewbie.engine.net.Protocol;
+import com.curtisnewbie.engine.net.Transport;
+
+/**
+ * Benchmark of the move round-trip over each {@code Transport}, on localhost
+ * for "tcp" and "nio", and within the JVM for "pipe".<br>
+ * <br>
+ * A peer thread answers every move with a move, through the same
+ * {@code FrameReader} and {@code FrameWriter} as the Host and Client, so the
+ * difference between the transports is what the kernel's network stack (and
+ * the wake-up of the other thread) costs per move.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransportBenchmark {
+
+    private static final int PORT = 7060;
+
+    /** Cells of the 3x3 board that the moves are made on */
+    private static final int CELLS = 9;
+
+    @Param({ "tcp", "nio", "pipe" })
+    public String transport;
+
+    private Link link;
+
+    private FrameReader in;
+
+    private FrameWriter out;
+
+    private final Frame frame = new Frame();
+
+    private Thread peer;
+
+    private int cell;
+
+    @Setup
+    public void setup() throws IOException, InterruptedException {
+        Transport t = Transport.create(transport);
+        peer = new Thread(() -> echo(t), "echo");
+        peer.setDaemon(true);
+        peer.start();
+        link = connect(t);
+        in = new FrameReader(new BufferedInputStream(link.in()));
+        out = new FrameWriter(link.out());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException, InterruptedException {
+        link.close();
+        peer.join();
+    }
+
+    @Benchmark
+    public int moveRoundTrip() throws IOException {
+        out.move(cell++ & 7, CELLS);
+        out.flush();
+        in.read(frame);
+        return frame.cell(CELLS);
+    }
+
+    /** Connect once the peer waits on the port */
+    private static Link connect(Transport t) throws IOException, InterruptedException {
+        for (int i = 0;; i++) {
+            try {
+                return t.connect("localhost", PORT);
+            } catch (ConnectException e) {
+                if (i == 5000)
+                    throw e;
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    /** Answer every move with the next cell, until the link is closed */
+    private static void echo(Transport t) {
+        Frame f = new Frame();
+        try (Link l = t.accept(PORT)) {
+            FrameReader r = new FrameReader(new BufferedInputStream(l.in()));
+            FrameWriter w = new FrameWriter(l.out());
+            while (true) {
+                r.read(f);
+                if (f.type() == Protocol.MOVE) {
+                    w.move(f.cell(CELLS) + 1, CELLS);
+                    w.flush();
+                }
+            }
+        } catch (IOException e) {
+            // closed by the tear down
+        }
+    }
+}
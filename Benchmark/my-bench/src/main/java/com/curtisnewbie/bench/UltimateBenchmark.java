@@ -0,0 +1,60 @@
+package com.curtisnewbie.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.curtisnewbie.engine.UltimateEngine;
+
+/**
+ * Benchmark of the random playouts of the {@code MctsPlayer} on the Ultimate
+ * variant, which is what its search spends nearly all of its time on.<br>
+ * <br>
+ * Each invocation copies the empty board, as a search copies the position to
+ * search from, and plays random moves until the game is over, so the score is
+ * the playouts per second of a single thread.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UltimateBenchmark {
+
+    private final UltimateEngine start = new UltimateEngine();
+
+    private final UltimateEngine game = new UltimateEngine();
+
+    /** State of the xorshift that picks the moves */
+    private int seed = 42;
+
+    @Setup
+    public void setup() {
+        start.reset();
+    }
+
+    @Benchmark
+    public int playout() {
+        game.copyFrom(start);
+        while (!game.isOver()) {
+            seed ^= seed << 13;
+            seed ^= seed >>> 17;
+            seed ^= seed << 5;
+            game.apply(game.randomMove(seed));
+        }
+        return game.status();
+    }
+}
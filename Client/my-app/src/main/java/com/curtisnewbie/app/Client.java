@@ -1,9 +1,23 @@
 package com.curtisnewbie.app;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.net.Socket;
+import java.util.concurrent.Executor;
+
+import com.curtisnewbie.engine.GameRules;
+import com.curtisnewbie.engine.UltimateEngine;
+import com.curtisnewbie.engine.Series;
+import com.curtisnewbie.engine.net.Frame;
+import com.curtisnewbie.engine.net.FrameReader;
+import com.curtisnewbie.engine.net.FrameWriter;
+import com.curtisnewbie.engine.net.Heartbeat;
+import com.curtisnewbie.engine.net.Link;
+import com.curtisnewbie.engine.net.Protocol;
+import com.curtisnewbie.engine.net.Transport;
+import com.curtisnewbie.engine.solver.Advisor;
+import com.curtisnewbie.engine.util.GameMetrics;
+import com.curtisnewbie.engine.util.MatchExecutors;
+import com.curtisnewbie.engine.util.TimerWheel;
 
 import javafx.application.Application;
 import javafx.application.Platform;
@@ -27,32 +41,100 @@ public class Client extends Application {
     /** Default ip */
     private static final String DEF_IP = "localhost";
 
+    /** Servers tried for a game before giving up, when a router sends us to one that's gone */
+    private static final int REDIRECT_ATTEMPTS = 3;
+
     /** Ip address provided by user */
     private String ip = null;
 
+    /**
+     * Rating and board to ask the lobby of a server for, e.g., "--rating=1500
+     * --size=15 --k=5" or "--ultimate", 0 for none
+     */
+    private int rating;
+    private int askedSize;
+    private int askedK;
+
+    /** Runs the game loop, see {@code MatchExecutors} */
+    private final Executor executor = MatchExecutors.fromSystemProperty();
+
+    /** Games, moves and bytes of this program, see {@code GameMetrics} */
+    private final GameMetrics metrics = GameMetrics.start("Client");
+
     /** The View of this proram */
     private GamePane gamePane;
 
-    private Socket socket;
+    private Stage stage;
+
+    /** Keeps track of the moves of both sides, created when the Host says the size */
+    private volatile GameRules engine;
+
+    /** Score of the games played on the connection, created by the first {@code HELLO} */
+    private Series series;
+
+    /** Version in the Host's {@code HELLO} */
+    private int hostVersion;
+
+    /** Carries the frames, e.g., "--transport=nio", see {@code Transport} */
+    private Transport transport;
+
+    /** Connection to Host */
+    private Link link;
+
+    // Frames from Host
+    private FrameReader in;
+    // Frames to Host
+    private FrameWriter out;
+
+    /** Every frame from Host is read into it */
+    private final Frame frame = new Frame();
 
-    // InputStream from Host
-    private DataInputStream in;
-    // OutputStream to Host
-    private DataOutputStream out;
+    /** Heartbeats and turn clocks, created with the connection */
+    private TimerWheel timers;
+
+    /** Sends heartbeats, and drops the Host when it's silent */
+    private Heartbeat heartbeat;
+
+    /** Seconds for each move as told by the Host, 0 for no clock */
+    private int turnSeconds;
+
+    /** Number of the user's turns so far, which the clock of a turn refers to */
+    private int turns;
+
+    /** Best moves of the hints */
+    private final Advisor advisor = Advisor.fromSystemProperty();
+
+    /** Whether the best move is printed on the user's turn, e.g., "--hints" */
+    private boolean hints;
 
     /** The Dialog used to ask for IP address of Host */
     private TextInputDialog dialog;
 
     public void start(Stage priStage) {
+        var named = getParameters().getNamed();
+        rating = Integer.parseInt(named.getOrDefault("rating", "0"));
+        askedSize = Integer.parseInt(named.getOrDefault("size", "0"));
+        askedK = Integer.parseInt(named.getOrDefault("k", "0"));
+        if (getParameters().getRaw().contains("--ultimate")) {
+            askedSize = UltimateEngine.SIZE;
+            askedK = GameRules.ULTIMATE_K;
+        }
+        hints = getParameters().getRaw().contains("--hints");
+        transport = named.containsKey("transport") ? Transport.create(named.get("transport"))
+                : Transport.fromSystemProperty();
+
         // Initiate gui
         gamePane = new GamePane();
         Scene s = new Scene(gamePane, 500, 500);
         priStage.setScene(s);
         priStage.setTitle("Client");
+        stage = priStage;
         priStage.show();
 
-        // Terminate the program when primary stage being closes
+        // Terminate the program when primary stage being closes, resign if the game
+        // is not finished
         priStage.setOnCloseRequest(e -> {
+            resign();
             System.exit(0);
         });
 
@@ -65,20 +147,21 @@ public class Client extends Application {
             ip = null;
 
         // Connect to Host and Start the Game
-        new Thread(() -> {
+        executor.execute(() -> {
             gamePane.freeze();
             try {
                 // connect to Host
                 makeConnection();
 
-                // start the game
+                // start the games
                 gamePane.unfreeze();
-                startGame();
+                startSeries();
             } catch (IOException e) {
                 e.printStackTrace();
+                metrics.connectionFailed();
                 showConnectionFailedDialog();
             }
-        }).start();
+        });
     }
 
     /**
@@ -89,69 +172,314 @@ public class Client extends Application {
      */
     private void makeConnection() throws IOException {
         // setup Client, use default IP if not provided
-        socket = new Socket(ip == null ? DEF_IP : ip, PORT);
-        in = new DataInputStream(socket.getInputStream());
-        out = new DataOutputStream(socket.getOutputStream());
-        System.out.println("Connected to Host : " + socket.getInetAddress().getHostAddress());
+        timers = TimerWheel.start("timers", 100, 512);
+        connect(ip == null ? DEF_IP : ip, PORT);
+        if (rating != 0 || askedSize != 0 || askedK != 0)
+            out.joinHello(askedSize, askedK, rating);
+        else
+            out.hello(Protocol.NO_ROLE);
+        out.flush();
+        System.out.println("Connected to Host : " + link.peer() + " (" + transport + ")");
+    }
+
+    /** Open the link, and set up the frames and heartbeats over it */
+    private void connect(String host, int port) throws IOException {
+        link = transport.connect(host, port);
+        // the peer is heard while the user thinks, rather than dropped as silent
+        in = new FrameReader(new BufferedInputStream(metrics.meter(link.in()))).readAhead("frame-reader");
+        out = new FrameWriter(metrics.meter(link.out()));
+        heartbeat = new Heartbeat(timers, in, out, link).start();
+    }
+
+    /**
+     * Follow the {@code REDIRECT} of a router to the server of the game, and
+     * join the game there. If the server can't be reached, the router is asked
+     * again, as it sends the game to another server once it has lost this one.
+     *
+     * @throws IOException if neither the server nor the router can be reached
+     */
+    private void redirect(Frame redirect) throws IOException {
+        int gameId = redirect.gameId();
+        String router = ip == null ? DEF_IP : ip;
+        String host = redirect.redirectHost().isEmpty() ? router : redirect.redirectHost();
+        int port = redirect.redirectPort();
+        closeConnection();
+        for (int attempt = 1;; attempt++) {
+            try {
+                connect(host, port);
+                out.joinHello(askedSize, askedK, rating, gameId);
+                out.flush();
+                System.out.println("Redirected to Host : " + link.peer() + " for Game : " + gameId);
+                return;
+            } catch (IOException e) {
+                if (attempt == REDIRECT_ATTEMPTS)
+                    throw e;
+            }
+            // the server is gone, ask the router where the game is now
+            connect(router, PORT);
+            out.joinHello(askedSize, askedK, rating, gameId);
+            out.flush();
+            do {
+                in.read(frame);
+            } while (frame.type() != Protocol.REDIRECT && frame.type() != Protocol.ERROR);
+            closeConnection();
+            if (frame.type() == Protocol.ERROR)
+                throw new IOException("No server for Game : " + gameId);
+            host = frame.redirectHost().isEmpty() ? router : frame.redirectHost();
+            port = frame.redirectPort();
+        }
+    }
+
+    /**
+     * Play the games of the series on the connection, the Host tells the size of
+     * the board and whether we move first before each game, and how many games
+     * the series has. The Host swaps who moves first every game, and the series
+     * ends once a side has won most of its games, or a game doesn't finish on
+     * the board (e.g., the opponent resigned).
+     */
+    private void startSeries() {
+        try {
+            while (true) {
+                int role = readHello();
+                if (role < 0 || !startGame(role == Protocol.MOVE_FIRST))
+                    break;
+
+                series.record(engine.status(), role == Protocol.MOVE_FIRST);
+                showScore();
+                if (series.isOver() || hostVersion < Protocol.VERSION_SERIES)
+                    break;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            if (heartbeat.isEvicted())
+                metrics.evicted();
+            else
+                metrics.disconnected();
+            showDisconnectDialog();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        } finally {
+            closeConnection();
+        }
     }
 
     /**
      * Start the game.<br>
      * <br>
      * This method follows the logic that:<br>
-     * 1. Host always starts first, so we wait for Host to move. <br>
+     * 1. If the Host starts first we wait for Host to move. A Host starts the
+     * first game of a series, while the server (see {@code GameServer}) may let
+     * us start.<br>
      * 2. Then it's Client's turn to move, waiting for user to move using a While
      * loop.<br>
-     * 3. Send the data (the step that user moved to) to the Host. <br>
-     * 4. Repeat this process until the game finishes.
+     * 3. Send the move (the step that user moved to) to the Host. <br>
+     * 4. Repeat this process until the game finishes.<br>
+     * <br>
+     * When the Host gives each move a clock, a timer of the {@code TimerWheel}
+     * ends the user's turn once it runs out, and the Host tells the result.
+     * 
+     * @param first whether we move first
+     * @return {@code true} if the game finished on the board, {@code false} if
+     *         it's ended otherwise (e.g., the opponent resigned)
+     * @throws IOException          if the connection is lost
+     * @throws InterruptedException if interrupted while waiting for the user
      */
-    private void startGame() {
+    private boolean startGame(boolean first) throws IOException, InterruptedException {
         System.out.println("Game Started\n");
-        int[] lastStep = null;
+        metrics.gameStarted();
         gamePane.freeze();
         try {
+            if (!first && !opponentMove())
+                return false;
 
-            // Host starts first, so we wait for signal
-            gamePane.opponentMoveTo(in.readInt(), in.readInt());
-
-            while (true) {
+            while (!engine.isOver()) {
                 // it's user's turn to move
                 gamePane.unfreeze();
 
                 System.out.println("Wait For User to select");
-                while ((lastStep = gamePane.getLastStep()) == null) {
-                    // wait for user to start
-                    Thread.sleep(10);
-                }
+                showHint();
+                int turn = ++turns;
+                TimerWheel.Timeout clock = turnSeconds == 0 ? null
+                        : timers.schedule(turnSeconds * 1000L, () -> gamePane.timeUp(turn));
+                int cell = gamePane.awaitMove(turn);
                 // User has moved
                 gamePane.freeze();
+                if (clock != null)
+                    clock.cancel();
+                if (cell == GamePane.TIME_UP) {
+                    // the Host ends the game, its GAME_OVER says how
+                    metrics.turnTimedOut();
+                    opponentMove();
+                    return false;
+                }
 
                 // tell the Opponent/Host which step the user moved
-                out.writeInt(lastStep[0]);
-                out.writeInt(lastStep[1]);
+                out.move(cell, engine.cells());
                 out.flush();
+                metrics.moveSent();
+                long sent = System.nanoTime();
 
-                if (gamePane.hasWon() || gamePane.isFull())
+                engine.apply(cell);
+                if (engine.isOver())
                     break;
 
                 // Opponent/ Host has moved, update the gamePane
-                int row = in.readInt();
-                int col = in.readInt();
-                gamePane.opponentMoveTo(row, col);
-                System.out.println(row + " " + col);
-
-                if (gamePane.hasWon() || gamePane.isFull())
-                    break;
+                if (!opponentMove())
+                    return false;
+                metrics.roundTrip(System.nanoTime() - sent);
             }
             System.out.println("End");
             gamePane.freeze();
-        } catch (IOException e) {
-            e.printStackTrace();
-            showDisconnectDialog();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+            return true;
         } finally {
-            closeConnection();
+            metrics.gameFinished();
+        }
+    }
+
+    /** Print the best move for the user, with "--hints" on a board it's known for */
+    private void showHint() {
+        if (!hints)
+            return;
+        String hint = advisor.hint(engine);
+        if (hint != null)
+            System.out.println("Hint: " + hint);
+    }
+
+    /** Print the score of the series and show it in the title */
+    private void showScore() {
+        System.out.println("Series : " + series);
+        Platform.runLater(() -> stage.setTitle("Client  " + series));
+    }
+
+    /**
+     * Read frames from the Host until its {@code HELLO}, check the version,
+     * and set up the board of the size that the Host asks for, the board is
+     * cleared in place when the size is the same as the last game's.
+     * 
+     * @return role of this Client, e.g., {@code Protocol.MOVE_FIRST}, or -1 if
+     *         the Host's version or board is not supported
+     * @throws IOException if the connection is lost
+     */
+    private int readHello() throws IOException {
+        do {
+            in.read(frame);
+            // the lobby of a server tells the id of the game first
+            if (frame.type() == Protocol.JOINED)
+                System.out.println("Joined Game : " + frame.gameId());
+            // the Host is the router of a cluster
+            if (frame.type() == Protocol.REDIRECT)
+                redirect(frame);
+            if (frame.type() == Protocol.ERROR && frame.byteAt(0) == Protocol.ERROR_NO_SERVER) {
+                showGameEndedDialog("There's no server in the cluster.");
+                return -1;
+            }
+        } while (frame.type() != Protocol.HELLO);
+
+        hostVersion = frame.byteAt(0);
+        heartbeat.peerVersion(hostVersion);
+        turnSeconds = frame.turnSeconds();
+        if (turnSeconds > 0)
+            System.out.println("Seconds for each move : " + turnSeconds);
+        if (hostVersion < 1) {
+            out.error(Protocol.ERROR_UNSUPPORTED_VERSION);
+            out.flush();
+            showGameEndedDialog("The Host's version is not supported.");
+            return -1;
+        }
+
+        if (series == null)
+            series = new Series(Math.max(1, frame.seriesGames()));
+
+        int n = frame.boardSize();
+        int k = frame.k();
+        if (engine != null && engine.size() == n && engine.k() == k) {
+            engine.reset();
+            gamePane.reset();
+            return frame.byteAt(1);
+        }
+        try {
+            engine = GameRules.create(n, k);
+        } catch (IllegalArgumentException e) {
+            out.error(Protocol.ERROR_UNSUPPORTED_VERSION);
+            out.flush();
+            showGameEndedDialog("The Host's board is not supported: " + e.getMessage());
+            return -1;
+        }
+        gamePane.resize(n, k);
+        return frame.byteAt(1);
+    }
+
+    /**
+     * Read frames from the Host until it moves, and update the gamePane.
+     * Heartbeats and frames unknown to this version are skipped.
+     * 
+     * @return {@code false} if the game is ended instead (e.g., the opponent
+     *         resigned) or the move is illegal
+     * @throws IOException if the connection is lost
+     */
+    private boolean opponentMove() throws IOException {
+        while (true) {
+            in.read(frame);
+            switch (frame.type()) {
+            case Protocol.MOVE:
+                int cell = frame.cell(engine.cells());
+                int n = engine.size();
+                System.out.println(cell / n + " " + cell % n);
+                if (engine.apply(cell) == GameRules.ILLEGAL_MOVE) {
+                    System.out.println("Illegal Move From Host");
+                    out.error(Protocol.ERROR_ILLEGAL_MOVE);
+                    out.flush();
+                    showGameEndedDialog("The Host made an illegal move, the game is ended.");
+                    return false;
+                }
+                metrics.moveReceived();
+                gamePane.opponentMoveTo(cell / n, cell % n);
+                return true;
+            case Protocol.RESIGN:
+                showGameEndedDialog("The opponent resigned, You Win!");
+                return false;
+            case Protocol.GAME_OVER:
+                showGameEndedDialog(describeResult(frame.byteAt(0)));
+                return false;
+            case Protocol.ERROR:
+                showGameEndedDialog("The Host reported an error, the game is ended.");
+                return false;
+            default:
+                break;
+            }
+        }
+    }
+
+    /**
+     * Describe the result in a {@code GAME_OVER} that ends the game before the
+     * board does, e.g., the opponent left the server.
+     */
+    private static String describeResult(int result) {
+        switch (result) {
+        case Protocol.RESULT_WIN:
+            return "The opponent gave up, You Win!";
+        case Protocol.RESULT_LOSS:
+            return "You Lost!";
+        case Protocol.RESULT_DRAW:
+            return "Ends, Nobody Wins!";
+        case Protocol.RESULT_TIMEOUT_WIN:
+            return "The opponent ran out of time, You Win!";
+        case Protocol.RESULT_TIMEOUT_LOSS:
+            return "You ran out of time, You Lost!";
+        default:
+            return "The opponent left, the game is ended.";
+        }
+    }
+
+    /** Tell the Host that the user gives up, if the game is not finished */
+    private void resign() {
+        if (out == null || engine == null || engine.isOver())
+            return;
+        try {
+            out.resign();
+            out.flush();
+        } catch (IOException e) {
+            // connection already lost
         }
     }
 
@@ -167,6 +495,21 @@ public class Client extends Application {
         return dialog;
     }
 
+    /**
+     * Create and show the dialog when the game is ended by something other than a
+     * move.
+     * 
+     * @param text content of the dialog
+     */
+    private void showGameEndedDialog(String text) {
+        Platform.runLater(() -> {
+            Alert dia = new Alert(AlertType.INFORMATION);
+            dia.setTitle("Game Ended");
+            dia.setContentText(text);
+            dia.show();
+        });
+    }
+
     /** Create and show the dialog when connection lost. */
     private void showDisconnectDialog() {
         Platform.runLater(() -> {
@@ -190,12 +533,13 @@ public class Client extends Application {
     /**
      * Close connection.<br>
      * <br>
-     * This method closes the {@code Socket}. The {@code DataInputStream} and
-     * {@code DataOutputStream} are closed when the {@code Socket} is closed.
+     * This method closes the {@code Link}. The streams of {@code FrameReader}
+     * and {@code FrameWriter} are closed when the {@code Link} is closed.
      */
     private void closeConnection() {
+        heartbeat.stop();
         try {
-            socket.close();
+            link.close();
             System.out.println("Connection Closed");
         } catch (IOException e) {
             e.printStackTrace();
@@ -0,0 +1,232 @@
+package com.curtisnewbie.app;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.curtisnewbie.engine.GameRules;
+import com.curtisnewbie.engine.UltimateEngine;
+import com.curtisnewbie.engine.net.Frame;
+import com.curtisnewbie.engine.net.FrameReader;
+import com.curtisnewbie.engine.net.FrameWriter;
+import com.curtisnewbie.engine.net.Protocol;
+import com.curtisnewbie.engine.util.LatencyHistogram;
+import com.curtisnewbie.engine.util.MatchExecutors;
+
+/**
+ * Headless load generator that plays bot games against a server (see
+ * {@code GameServer} in the Host project).<br>
+ * <br>
+ * It opens N connections, each of them plays the same game loop as
+ * {@code Client.startGame()}, except that the moves are picked at random
+ * instead of clicked on a {@code GamePane}. As soon as a game finishes the bot
+ * connects again for the next one (closed loop). Every second it prints the
+ * games/s and moves/s, and when it's done it prints the percentiles of the move
+ * round-trip latency, which is the time from sending a move to receiving the
+ * opponent's move.<br>
+ * <br>
+ * Usage:
+ * {@code LoadGenerator [host] [port] [connections] [seconds] [platform|virtual|pool:N]}
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public class LoadGenerator {
+
+    // modify it and the one in Host program, if necessary
+    private static final int PORT = 7000;
+
+    /** Default ip */
+    private static final String DEF_IP = "localhost";
+
+    /** A bot gives up on a game when the server doesn't answer in time */
+    private static final int READ_TIMEOUT_MS = 5000;
+
+    private final String host;
+    private final int port;
+
+    private final LongAdder games = new LongAdder();
+    private final LongAdder moves = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /** Move round-trip latency in nanoseconds */
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private volatile boolean running = true;
+
+    public LoadGenerator(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String host = args.length > 0 ? args[0] : DEF_IP;
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : PORT;
+        int connections = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 30;
+        // a bot blocks on its connection all the time, so it needs a thread of its own
+        Executor executor = MatchExecutors.create(args.length > 4 ? args[4] : "platform");
+
+        new LoadGenerator(host, port).run(connections, seconds, executor);
+        System.exit(0);
+    }
+
+    /**
+     * Run the bots and print the numbers
+     *
+     * @param connections number of concurrent connections
+     * @param seconds     how long to run
+     * @param executor    runs the bots
+     */
+    public void run(int connections, int seconds, Executor executor) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(connections);
+        for (int i = 0; i < connections; i++) {
+            executor.execute(() -> {
+                try {
+                    while (running)
+                        playGame();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+
+        System.out.println("Running " + connections + " bots against " + host + ":" + port + " for " + seconds + "s");
+        long lastGames = 0;
+        long lastMoves = 0;
+        for (int s = 1; s <= seconds; s++) {
+            Thread.sleep(1000);
+            long g = games.sum();
+            long m = moves.sum();
+            System.out.println(String.format("%3ds  games/s: %8d  moves/s: %8d  failures: %d", s, g - lastGames,
+                    m - lastMoves, failures.sum()));
+            lastGames = g;
+            lastMoves = m;
+        }
+        running = false;
+        // a bot that is still waiting for an opponent gives up after the read timeout
+        done.await(READ_TIMEOUT_MS * 2, TimeUnit.MILLISECONDS);
+
+        System.out.println(String.format("Total  games: %d  moves: %d  games/s: %.1f  moves/s: %.1f", games.sum(),
+                moves.sum(), games.sum() / (double) seconds, moves.sum() / (double) seconds));
+        System.out.println(String.format("Move round-trip (us)  p50: %.1f  p99: %.1f  p999: %.1f",
+                latency.percentile(50) / 1000.0, latency.percentile(99) / 1000.0, latency.percentile(99.9) / 1000.0));
+    }
+
+    /**
+     * Play one game on a new connection, this follows {@code Client.startGame()}
+     * with random moves. When the port is a router's, the bot follows its
+     * {@code REDIRECT} to the server of the game.
+     */
+    private void playGame() {
+        Frame frame = new Frame();
+        // a rating for the lobby of the server, in case it pairs by rating
+        int rating = 1000 + ThreadLocalRandom.current().nextInt(1000);
+        String h = host;
+        int p = port;
+        int gameId = 0;
+        // the router sends the bot on once, the server never does
+        for (int hop = 0; hop < 2; hop++) {
+            try (Socket socket = new Socket(h, p)) {
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(READ_TIMEOUT_MS);
+                FrameReader in = new FrameReader(new BufferedInputStream(socket.getInputStream()));
+                FrameWriter out = new FrameWriter(socket.getOutputStream());
+                if (gameId != 0)
+                    out.joinHello(0, 0, rating, gameId);
+                else
+                    out.joinHello(0, 0, rating);
+                out.flush();
+
+                do {
+                    in.read(frame);
+                } while (frame.type() != Protocol.HELLO && frame.type() != Protocol.REDIRECT);
+                if (frame.type() == Protocol.REDIRECT) {
+                    gameId = frame.gameId();
+                    h = frame.redirectHost().isEmpty() ? host : frame.redirectHost();
+                    p = frame.redirectPort();
+                    continue;
+                }
+                play(in, out, frame);
+                return;
+            } catch (IOException e) {
+                if (running)
+                    failures.increment();
+                return;
+            }
+        }
+        failures.increment();
+    }
+
+    /** Play the game that the {@code HELLO} in the frame starts */
+    private void play(FrameReader in, FrameWriter out, Frame frame) throws IOException {
+        boolean first = frame.byteAt(1) == Protocol.MOVE_FIRST;
+        GameRules engine = GameRules.create(frame.boardSize(), frame.k());
+
+        // the server starts unless told otherwise, so we wait for signal
+        if (!first && !opponentMove(in, frame, engine))
+            return;
+
+        while (true) {
+            int cell = randomMove(engine);
+            long sent = System.nanoTime();
+            out.move(cell, engine.cells());
+            out.flush();
+            moves.increment();
+
+            engine.apply(cell);
+            if (engine.isOver())
+                break;
+
+            if (!opponentMove(in, frame, engine))
+                return;
+            latency.record(System.nanoTime() - sent);
+            if (engine.isOver())
+                break;
+        }
+
+        // count each game once, by the bot that moves first
+        if (first)
+            games.increment();
+    }
+
+    /**
+     * Read frames until the opponent moves
+     *
+     * @return {@code false} if the game is ended instead
+     */
+    private static boolean opponentMove(FrameReader in, Frame frame, GameRules engine) throws IOException {
+        while (true) {
+            in.read(frame);
+            switch (frame.type()) {
+            case Protocol.MOVE:
+                return engine.apply(frame.cell(engine.cells())) != GameRules.ILLEGAL_MOVE;
+            case Protocol.RESIGN:
+            case Protocol.GAME_OVER:
+            case Protocol.ERROR:
+                return false;
+            default:
+                break;
+            }
+        }
+    }
+
+    /**
+     * Pick a cell at random, or the next empty one after it, or a legal one in
+     * the Ultimate variant
+     */
+    private static int randomMove(GameRules engine) {
+        if (engine instanceof UltimateEngine)
+            return ((UltimateEngine) engine).randomMove(ThreadLocalRandom.current().nextInt());
+        int cells = engine.cells();
+        int cell = ThreadLocalRandom.current().nextInt(cells);
+        while (engine.cellAt(cell) >= 0)
+            cell = cell + 1 == cells ? 0 : cell + 1;
+        return cell;
+    }
+}
@@ -0,0 +1,264 @@
+package com.curtisnewbie.app;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.curtisnewbie.engine.GameRules;
+import com.curtisnewbie.engine.UltimateEngine;
+import com.curtisnewbie.engine.net.Frame;
+import com.curtisnewbie.engine.net.FrameCodec;
+import com.curtisnewbie.engine.net.FrameReader;
+import com.curtisnewbie.engine.net.FrameWriter;
+import com.curtisnewbie.engine.net.Protocol;
+import com.curtisnewbie.engine.util.LatencyHistogram;
+
+/**
+ * Headless load generator that plays many bot games over each connection to a
+ * server (see {@code GameServer} and {@code MuxConnection} in the Host
+ * project).<br>
+ * <br>
+ * Where {@code LoadGenerator} opens a connection (and a thread) per bot, this
+ * one opens a few connections and plays G games on each of them at the same
+ * time, every frame is wrapped in a {@code MUX} with the id of its game on the
+ * connection (1 to G). The frames of all games are read by one thread per
+ * connection, and the moves it sends are flushed once nothing more is there to
+ * read, so many moves go out in one write. As soon as a game finishes, the next
+ * one starts under the same id. It prints the same numbers as
+ * {@code LoadGenerator}.<br>
+ * <br>
+ * Usage:
+ * {@code MuxLoadGenerator [host] [port] [connections] [games per connection] [seconds]}
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public class MuxLoadGenerator {
+
+    // the one after the spectators' port of the Host program
+    private static final int PORT = 7002;
+
+    /** Default ip */
+    private static final String DEF_IP = "localhost";
+
+    /** How often a connection checks whether it's time to stop */
+    private static final int READ_TIMEOUT_MS = 1000;
+
+    private final String host;
+    private final int port;
+
+    private final LongAdder games = new LongAdder();
+    private final LongAdder moves = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /** Move round-trip latency in nanoseconds */
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private volatile boolean running = true;
+
+    public MuxLoadGenerator(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String host = args.length > 0 ? args[0] : DEF_IP;
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : PORT;
+        int connections = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int gamesPerConnection = args.length > 3 ? Integer.parseInt(args[3]) : 250;
+        int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 30;
+
+        new MuxLoadGenerator(host, port).run(connections, gamesPerConnection, seconds);
+        System.exit(0);
+    }
+
+    /**
+     * Run the bots and print the numbers
+     *
+     * @param connections        number of concurrent connections
+     * @param gamesPerConnection number of concurrent games on each connection
+     * @param seconds            how long to run
+     */
+    public void run(int connections, int gamesPerConnection, int seconds) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(connections);
+        for (int i = 0; i < connections; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    playGames(gamesPerConnection);
+                } finally {
+                    done.countDown();
+                }
+            }, "mux-bots-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+
+        System.out.println("Running " + connections + " x " + gamesPerConnection + " bots against " + host + ":" + port
+                + " for " + seconds + "s");
+        long lastGames = 0;
+        long lastMoves = 0;
+        for (int s = 1; s <= seconds; s++) {
+            Thread.sleep(1000);
+            long g = games.sum();
+            long m = moves.sum();
+            System.out.println(String.format("%3ds  games/s: %8d  moves/s: %8d  failures: %d", s, g - lastGames,
+                    m - lastMoves, failures.sum()));
+            lastGames = g;
+            lastMoves = m;
+        }
+        running = false;
+        done.await(READ_TIMEOUT_MS * 2, TimeUnit.MILLISECONDS);
+
+        System.out.println(String.format("Total  games: %d  moves: %d  games/s: %.1f  moves/s: %.1f", games.sum(),
+                moves.sum(), games.sum() / (double) seconds, moves.sum() / (double) seconds));
+        System.out.println(String.format("Move round-trip (us)  p50: %.1f  p99: %.1f  p999: %.1f",
+                latency.percentile(50) / 1000.0, latency.percentile(99) / 1000.0, latency.percentile(99.9) / 1000.0));
+    }
+
+    /**
+     * Play games on one connection until it's time to stop, a game that ends
+     * is followed by the next one under the same id
+     *
+     * @param count number of concurrent games
+     */
+    private void playGames(int count) {
+        Frame frame = new Frame();
+        Frame muxed = new Frame();
+        ByteBuffer scratch = ByteBuffer.allocate(16);
+        // index 0 is unused, ids start from 1
+        Bot[] bots = new Bot[count + 1];
+        try (Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(READ_TIMEOUT_MS);
+            BufferedInputStream bin = new BufferedInputStream(socket.getInputStream());
+            FrameReader in = new FrameReader(bin);
+            FrameWriter out = new FrameWriter(socket.getOutputStream());
+
+            for (int id = 1; id <= count; id++) {
+                bots[id] = new Bot();
+                join(out, scratch, id);
+            }
+            out.flush();
+
+            while (running) {
+                try {
+                    in.read(frame);
+                } catch (SocketTimeoutException e) {
+                    // games that still wait for an opponent, the server drops a silent connection
+                    out.heartbeat();
+                    out.flush();
+                    continue;
+                }
+                if (frame.type() == Protocol.MUX) {
+                    int id = frame.gameId();
+                    if (id < 1 || id > count)
+                        continue;
+                    int next = 4;
+                    while ((next = FrameCodec.decodeMuxed(frame, next, muxed)) > 0)
+                        onFrame(bots[id], id, muxed, out, scratch);
+                }
+                // moves of all games go out together
+                if (bin.available() == 0)
+                    out.flush();
+            }
+        } catch (IOException e) {
+            if (running)
+                failures.increment();
+        }
+    }
+
+    /** Handle a frame of a game, it's answered with a move, or the next game */
+    private void onFrame(Bot bot, int id, Frame frame, FrameWriter out, ByteBuffer scratch) throws IOException {
+        switch (frame.type()) {
+        case Protocol.HELLO:
+            bot.first = frame.byteAt(1) == Protocol.MOVE_FIRST;
+            bot.engine = GameRules.create(frame.boardSize(), frame.k());
+            bot.sent = 0;
+            if (bot.first)
+                move(bot, id, out, scratch);
+            break;
+        case Protocol.MOVE:
+            if (bot.engine == null || bot.engine.apply(frame.cell(bot.engine.cells())) == GameRules.ILLEGAL_MOVE) {
+                failures.increment();
+                break;
+            }
+            if (bot.sent != 0)
+                latency.record(System.nanoTime() - bot.sent);
+            // the server says GAME_OVER when it's over
+            if (!bot.engine.isOver())
+                move(bot, id, out, scratch);
+            break;
+        case Protocol.GAME_OVER:
+            // count each game once, by the bot that moves first
+            if (bot.first)
+                games.increment();
+            next(bot, id, out, scratch);
+            break;
+        case Protocol.RESIGN:
+        case Protocol.ERROR:
+            failures.increment();
+            next(bot, id, out, scratch);
+            break;
+        default:
+            break;
+        }
+    }
+
+    /** Start the next game under the same id */
+    private void next(Bot bot, int id, FrameWriter out, ByteBuffer scratch) throws IOException {
+        bot.engine = null;
+        if (running)
+            join(out, scratch, id);
+    }
+
+    /** Join the lobby, a rating in case the server pairs by rating */
+    private static void join(FrameWriter out, ByteBuffer scratch, int id) throws IOException {
+        FrameCodec.putJoinHello(scratch, 0, 0, 1000 + ThreadLocalRandom.current().nextInt(1000));
+        send(out, scratch, id);
+    }
+
+    /** Pick a move at random and send it */
+    private void move(Bot bot, int id, FrameWriter out, ByteBuffer scratch) throws IOException {
+        int cell = randomMove(bot.engine);
+        bot.engine.apply(cell);
+        FrameCodec.putMove(scratch, cell, bot.engine.cells());
+        bot.sent = System.nanoTime();
+        send(out, scratch, id);
+        moves.increment();
+    }
+
+    /** Wrap the frames in the scratch buffer in a {@code MUX} for the game */
+    private static void send(FrameWriter out, ByteBuffer scratch, int id) throws IOException {
+        scratch.flip();
+        out.mux(id, scratch);
+        scratch.clear();
+    }
+
+    /**
+     * Pick a cell at random, or the next empty one after it, or a legal one in
+     * the Ultimate variant
+     */
+    private static int randomMove(GameRules engine) {
+        if (engine instanceof UltimateEngine)
+            return ((UltimateEngine) engine).randomMove(ThreadLocalRandom.current().nextInt());
+        int cells = engine.cells();
+        int cell = ThreadLocalRandom.current().nextInt(cells);
+        while (engine.cellAt(cell) >= 0)
+            cell = cell + 1 == cells ? 0 : cell + 1;
+        return cell;
+    }
+
+    /** One of the games on a connection */
+    private static final class Bot {
+        GameRules engine;
+        boolean first;
+        /** When the last move was sent, in nanos, 0 before the first one */
+        long sent;
+    }
+}
@@ -0,0 +1,140 @@
+package com.curtisnewbie.app;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.curtisnewbie.engine.net.Frame;
+import com.curtisnewbie.engine.net.FrameReader;
+import com.curtisnewbie.engine.net.FrameWriter;
+import com.curtisnewbie.engine.net.Protocol;
+
+/**
+ * Headless spectator that watches a game on a server (see {@code GameServer}
+ * in the Host project) and prints the board after every move.<br>
+ * <br>
+ * More than one spectator can be started to put the broadcast path of the
+ * server under load, only the first one prints the board, and at the end the
+ * number of frames and snapshots received by all of them is printed. A
+ * spectator that is too slow gets a snapshot of the board ({@code BOARD})
+ * instead of the moves it missed.<br>
+ * <br>
+ * Usage: {@code Watcher [host] [spectator port] [game id, 0 for the latest] [spectators]}
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public class Watcher {
+
+    // the game port of the server plus one
+    private static final int SPECTATOR_PORT = 7001;
+
+    /** Default ip */
+    private static final String DEF_IP = "localhost";
+
+    private static final LongAdder frames = new LongAdder();
+    private static final LongAdder snapshots = new LongAdder();
+
+    public static void main(String[] args) throws InterruptedException {
+        String host = args.length > 0 ? args[0] : DEF_IP;
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : SPECTATOR_PORT;
+        int gameId = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        int spectators = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+
+        CountDownLatch done = new CountDownLatch(spectators);
+        for (int i = 0; i < spectators; i++) {
+            boolean print = i == 0;
+            new Thread(() -> {
+                try {
+                    watch(host, port, gameId, print);
+                } catch (IOException e) {
+                    System.out.println("Connection lost: " + e.getMessage());
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        System.out.println("Spectators: " + spectators + "  frames: " + frames.sum() + "  snapshots: "
+                + snapshots.sum());
+    }
+
+    /** Watch the game until it finishes */
+    private static void watch(String host, int port, int gameId, boolean print) throws IOException {
+        try (Socket socket = new Socket(host, port)) {
+            FrameReader in = new FrameReader(new BufferedInputStream(socket.getInputStream()));
+            FrameWriter out = new FrameWriter(socket.getOutputStream());
+            out.watch(gameId);
+            out.flush();
+
+            Frame frame = new Frame();
+            char[] board = new char[0];
+            int n = 0;
+            int stones = 0;
+            while (true) {
+                in.read(frame);
+                frames.increment();
+                switch (frame.type()) {
+                case Protocol.BOARD:
+                    snapshots.increment();
+                    n = frame.byteAt(0);
+                    board = new char[n * n];
+                    stones = 0;
+                    for (int c = 0; c < board.length; c++) {
+                        int p = frame.boardCell(c);
+                        board[c] = p < 0 ? '.' : p == 0 ? 'X' : 'O';
+                        if (p >= 0)
+                            stones++;
+                    }
+                    break;
+                case Protocol.MOVE:
+                    // player 0 moves first, so the parity tells who moved
+                    board[frame.cell(board.length)] = stones++ % 2 == 0 ? 'X' : 'O';
+                    break;
+                case Protocol.GAME_OVER:
+                    if (print)
+                        System.out.println("Game Over : " + describe(frame.byteAt(0)));
+                    return;
+                case Protocol.ERROR:
+                    if (print)
+                        System.out.println(frame.byteAt(0) == Protocol.ERROR_NO_SUCH_GAME ? "No such game"
+                                : "Error : " + frame.byteAt(0));
+                    return;
+                default:
+                    continue;
+                }
+                if (print)
+                    printBoard(board, n);
+            }
+        }
+    }
+
+    private static void printBoard(char[] board, int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int r = 0; r < n; r++) {
+            sb.append(board, r * n, n);
+            sb.append('\n');
+        }
+        System.out.println(sb);
+    }
+
+    /** Describe the result, which is from the view of player 0 (X) */
+    private static String describe(int result) {
+        switch (result) {
+        case Protocol.RESULT_WIN:
+            return "X Wins";
+        case Protocol.RESULT_LOSS:
+            return "O Wins";
+        case Protocol.RESULT_DRAW:
+            return "Nobody Wins";
+        case Protocol.RESULT_TIMEOUT_WIN:
+            return "X Wins On Time";
+        case Protocol.RESULT_TIMEOUT_LOSS:
+            return "O Wins On Time";
+        default:
+            return "Aborted";
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.curtisnewbie.engine;
+
+/**
+ * Operations on a 3x3 game board packed into a single {@code int}.<br>
+ * <br>
+ * The board holds two 9-bit occupancy masks, one per player: bits 0-8 are the
+ * cells taken by player 0 and bits 9-17 are the cells taken by player 1, where
+ * cell {@code row * 3 + col} is bit {@code row * 3 + col} of the mask. An empty
+ * board is {@code 0}.<br>
+ * <br>
+ * A player has won when its mask covers one of the eight precomputed lines, and
+ * the board is full when the two masks together cover all nine cells.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class BitBoard {
+
+    /** The empty board */
+    public static final int EMPTY_BOARD = 0;
+
+    /** Number of cells */
+    public static final int CELLS = 9;
+
+    /** Mask of all nine cells */
+    public static final int FULL = 0x1FF;
+
+    /** Rows, columns and diagonals, as masks of cells */
+    private static final int[] LINES = { 0007, 0070, 0700, 0111, 0222, 0444, 0421, 0124 };
+
+    private BitBoard() {
+    }
+
+    /**
+     * The cell at the row and column
+     *
+     * @param row row
+     * @param col col
+     * @return {@code row * 3 + col}, or -1 if either is out of the board
+     */
+    public static int cell(int row, int col) {
+        if (row < 0 || row > 2 || col < 0 || col > 2)
+            return -1;
+        return row * 3 + col;
+    }
+
+    /**
+     * Cells taken by the player
+     *
+     * @param board  board
+     * @param player 0 or 1
+     * @return 9-bit mask of cells
+     */
+    public static int mask(int board, int player) {
+        return (board >>> (player * CELLS)) & FULL;
+    }
+
+    /**
+     * Cells taken by either player
+     *
+     * @param board board
+     * @return 9-bit mask of cells
+     */
+    public static int occupied(int board) {
+        return (board | board >>> CELLS) & FULL;
+    }
+
+    /**
+     * Whether the cell is not taken
+     *
+     * @param board board
+     * @param cell  {@code row * 3 + col}
+     * @return whether the cell is empty
+     */
+    public static boolean isEmpty(int board, int cell) {
+        return (occupied(board) & (1 << cell)) == 0;
+    }
+
+    /**
+     * Place a stone of the player on the cell, the cell must be empty
+     *
+     * @param board  board
+     * @param player 0 or 1
+     * @param cell   {@code row * 3 + col}
+     * @return the new board
+     */
+    public static int place(int board, int player, int cell) {
+        return board | 1 << (cell + player * CELLS);
+    }
+
+    /**
+     * Number of stones on the board
+     *
+     * @param board board
+     * @return number of moves made
+     */
+    public static int moves(int board) {
+        return Integer.bitCount(board);
+    }
+
+    /**
+     * The player in turn, player 0 always moves first
+     *
+     * @param board board
+     * @return 0 or 1
+     */
+    public static int turn(int board) {
+        return Integer.bitCount(board) & 1;
+    }
+
+    /**
+     * Whether the player has three in a row
+     *
+     * @param board  board
+     * @param player 0 or 1
+     * @return whether the player has won
+     */
+    public static boolean hasWon(int board, int player) {
+        int m = mask(board, player);
+        for (int l : LINES)
+            if ((m & l) == l)
+                return true;
+        return false;
+    }
+
+    /**
+     * Whether any player has three in a row
+     *
+     * @param board board
+     * @return whether a player has won
+     */
+    public static boolean hasWon(int board) {
+        return hasWon(board, 0) || hasWon(board, 1);
+    }
+
+    /**
+     * Whether all nine cells are taken
+     *
+     * @param board board
+     * @return whether the board is full
+     */
+    public static boolean isFull(int board) {
+        return occupied(board) == FULL;
+    }
+}
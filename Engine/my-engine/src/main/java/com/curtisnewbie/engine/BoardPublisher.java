@@ -0,0 +1,51 @@
+package com.curtisnewbie.engine;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * The latest {@code BoardSnapshot} of a game, written by the one thread that
+ * owns the game and read by any other without locking.<br>
+ * <br>
+ * A snapshot is published with a release store and read with an acquire load,
+ * so a reader that sees a snapshot also sees everything the owner did before
+ * publishing it, and a reader never goes back to an older version than one it
+ * has already seen.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class BoardPublisher {
+
+    private static final VarHandle CURRENT;
+
+    static {
+        try {
+            CURRENT = MethodHandles.lookup().findVarHandle(BoardPublisher.class, "current", BoardSnapshot.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /** Only accessed through {@link #CURRENT} */
+    @SuppressWarnings("unused")
+    private BoardSnapshot current;
+
+    /**
+     * Publish a newer snapshot, must only be called by the owner
+     *
+     * @param snapshot snapshot
+     */
+    public void publish(BoardSnapshot snapshot) {
+        CURRENT.setRelease(this, snapshot);
+    }
+
+    /**
+     * The latest snapshot, may be called from any thread
+     *
+     * @return snapshot, null until the first one is published
+     */
+    public BoardSnapshot current() {
+        return (BoardSnapshot) CURRENT.getAcquire(this);
+    }
+}
@@ -0,0 +1,165 @@
+package com.curtisnewbie.engine;
+
+/**
+ * An immutable copy of a game at one point in time, which a thread that owns
+ * the {@code GameRules} (e.g., the JavaFX Application Thread) hands to the
+ * others through a {@code BoardPublisher}.<br>
+ * <br>
+ * Every field is final and the cells are copied when it's taken, so a reader
+ * always sees the board, the status and the last move of the same version,
+ * however many moves the owner makes while it reads.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class BoardSnapshot {
+
+    /** Returned by {@link #lastCell()} before the first move */
+    public static final int NO_CELL = -1;
+
+    private final long version;
+    private final int size;
+    private final int k;
+    private final int status;
+    private final int currentPlayer;
+    private final int moves;
+    private final int lastCell;
+    private final boolean moved;
+
+    /** Who has taken each cell, -1 if it's empty */
+    private final byte[] cells;
+
+    private BoardSnapshot(long version, GameRules rules, int lastCell, boolean moved) {
+        this.version = version;
+        this.size = rules.size();
+        this.k = rules.k();
+        this.status = rules.status();
+        this.currentPlayer = rules.currentPlayer();
+        this.lastCell = lastCell;
+        this.moved = moved;
+        int count = rules.cells();
+        this.cells = new byte[count];
+        int taken = 0;
+        for (int c = 0; c < count; c++) {
+            int p = rules.cellAt(c);
+            cells[c] = (byte) p;
+            if (p >= 0)
+                taken++;
+        }
+        this.moves = taken;
+    }
+
+    /**
+     * Copy the game, on the thread that owns it
+     *
+     * @param version  number of the copy, larger than the one of the previous
+     *                 copy
+     * @param rules    game
+     * @param lastCell the last move, or {@link #NO_CELL}
+     * @param moved    whether the local player has made its move of the turn
+     * @return snapshot
+     */
+    public static BoardSnapshot of(long version, GameRules rules, int lastCell, boolean moved) {
+        return new BoardSnapshot(version, rules, lastCell, moved);
+    }
+
+    /**
+     * Number of the copy, it grows with every copy of the same owner
+     *
+     * @return version
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Size of the board
+     *
+     * @return N
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Stones in a row to win
+     *
+     * @return K
+     */
+    public int k() {
+        return k;
+    }
+
+    /**
+     * Status of the game, see {@code GameRules.status()}
+     *
+     * @return status
+     */
+    public int status() {
+        return status;
+    }
+
+    /**
+     * Whether a player has won
+     *
+     * @return {@code true} if either has
+     */
+    public boolean hasWon() {
+        return status == GameRules.PLAYER_0_WON || status == GameRules.PLAYER_1_WON;
+    }
+
+    /**
+     * Whether the game is a draw
+     *
+     * @return {@code true} if nobody can win anymore
+     */
+    public boolean isDraw() {
+        return status == GameRules.DRAW;
+    }
+
+    /**
+     * The player to move next
+     *
+     * @return 0 or 1
+     */
+    public int currentPlayer() {
+        return currentPlayer;
+    }
+
+    /**
+     * Number of stones on the board
+     *
+     * @return moves made
+     */
+    public int moves() {
+        return moves;
+    }
+
+    /**
+     * The last move
+     *
+     * @return cell {@code row * N + col}, or {@link #NO_CELL}
+     */
+    public int lastCell() {
+        return lastCell;
+    }
+
+    /**
+     * Whether the local player has made its move of the turn
+     *
+     * @return {@code true} if it has
+     */
+    public boolean moved() {
+        return moved;
+    }
+
+    /**
+     * Who has taken the cell
+     *
+     * @param cell {@code row * N + col}
+     * @return 0 or 1 for the players, -1 if it's empty
+     */
+    public int cellAt(int cell) {
+        return cells[cell];
+    }
+}
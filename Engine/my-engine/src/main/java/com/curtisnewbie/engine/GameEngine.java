@@ -0,0 +1,115 @@
+package com.curtisnewbie.engine;
+
+/**
+ * The authoritative rules of the classic 3x3 TicTacToe game, without any
+ * gui.<br>
+ * <br>
+ * The engine keeps the board as a {@code BitBoard} and knows whose turn it is,
+ * so it can check every move that a player or the opponent makes. Player 0
+ * always moves first. None of the methods allocate, which makes the engine
+ * cheap enough to check moves on a server that runs many games at once, and it
+ * can be {@link #reset()} to play the next game.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class GameEngine implements GameRules {
+
+    /** Both players' cells, see {@code BitBoard} */
+    private int board = BitBoard.EMPTY_BOARD;
+
+    private int status = IN_PROGRESS;
+
+    /**
+     * Make a move for the player in turn.
+     *
+     * @param cell {@code row * 3 + col}
+     * @return the status of the game after the move, or {@link #ILLEGAL_MOVE}
+     *         (and nothing changes) if the game has finished or the cell is not
+     *         available
+     */
+    @Override
+    public int apply(int cell) {
+        if (status != IN_PROGRESS || cell < 0 || cell >= BitBoard.CELLS || !BitBoard.isEmpty(board, cell))
+            return ILLEGAL_MOVE;
+
+        int player = currentPlayer();
+        board = BitBoard.place(board, player, cell);
+        if (BitBoard.hasWon(board, player))
+            status = player == 0 ? PLAYER_0_WON : PLAYER_1_WON;
+        else if (BitBoard.isFull(board))
+            status = DRAW;
+        return status;
+    }
+
+    /**
+     * Status of the game
+     *
+     * @return {@link #IN_PROGRESS}, {@link #PLAYER_0_WON},
+     *         {@link #PLAYER_1_WON} or {@link #DRAW}
+     */
+    @Override
+    public int status() {
+        return status;
+    }
+
+    /**
+     * The player to move next
+     *
+     * @return 0 or 1
+     */
+    @Override
+    public int currentPlayer() {
+        return BitBoard.turn(board);
+    }
+
+    /**
+     * The board, see {@code BitBoard}
+     *
+     * @return board
+     */
+    public int board() {
+        return board;
+    }
+
+    /**
+     * Whether the game has finished
+     *
+     * @return {@code true} if a player has won or it's a draw
+     */
+    @Override
+    public boolean isOver() {
+        return status != IN_PROGRESS;
+    }
+
+    @Override
+    public int cellAt(int cell) {
+        if ((BitBoard.mask(board, 0) & 1 << cell) != 0)
+            return 0;
+        if ((BitBoard.mask(board, 1) & 1 << cell) != 0)
+            return 1;
+        return -1;
+    }
+
+    @Override
+    public int size() {
+        return 3;
+    }
+
+    @Override
+    public int k() {
+        return 3;
+    }
+
+    @Override
+    public int cells() {
+        return BitBoard.CELLS;
+    }
+
+    /** Clear the board for a new game */
+    @Override
+    public void reset() {
+        board = BitBoard.EMPTY_BOARD;
+        status = IN_PROGRESS;
+    }
+}
@@ -0,0 +1,142 @@
+package com.curtisnewbie.engine;
+
+/**
+ * The authoritative rules of a game on an N x N board, where the first player
+ * to get K in a row wins.<br>
+ * <br>
+ * Cells are numbered row by row, i.e., cell {@code row * N + col}. Player 0
+ * always moves first and the players take turns. Implementations don't allocate
+ * in any of these methods, and can be {@link #reset()} to play the next game.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public interface GameRules {
+
+    /** The game is still going */
+    int IN_PROGRESS = 0;
+
+    /** Player 0 has K in a row */
+    int PLAYER_0_WON = 1;
+
+    /** Player 1 has K in a row */
+    int PLAYER_1_WON = 2;
+
+    /** The board is full and nobody wins */
+    int DRAW = 3;
+
+    /** Returned by {@link #apply(int)} when the move is not legal */
+    int ILLEGAL_MOVE = -1;
+
+    /** Largest N supported */
+    int MAX_SIZE = 50;
+
+    /**
+     * K that stands for the Ultimate variant on the 9x9 board, see
+     * {@code UltimateEngine}, since no board is won with fewer than 3 in a row
+     */
+    int ULTIMATE_K = 1;
+
+    /**
+     * Create the rules for the board
+     *
+     * @param n size of the board, from 3 to {@link #MAX_SIZE}
+     * @param k stones in a row to win, from 3 to n, or {@link #ULTIMATE_K}
+     * @return {@code GameEngine} for the classic 3x3 game,
+     *         {@code UltimateEngine} for the Ultimate variant,
+     *         {@code GridEngine} otherwise
+     * @throws IllegalArgumentException if n or k is out of range
+     */
+    static GameRules create(int n, int k) {
+        if (n == 3 && k == 3)
+            return new GameEngine();
+        if (k == ULTIMATE_K) {
+            if (n != UltimateEngine.SIZE)
+                throw new IllegalArgumentException("The Ultimate variant is played on a 9x9 board: " + n);
+            return new UltimateEngine();
+        }
+        return new GridEngine(n, k);
+    }
+
+    /**
+     * Make a move for the player in turn.
+     *
+     * @param cell {@code row * N + col}
+     * @return the status of the game after the move, or {@link #ILLEGAL_MOVE}
+     *         (and nothing changes) if the game has finished or the cell is not
+     *         available
+     */
+    int apply(int cell);
+
+    /**
+     * Status of the game
+     *
+     * @return {@link #IN_PROGRESS}, {@link #PLAYER_0_WON},
+     *         {@link #PLAYER_1_WON} or {@link #DRAW}
+     */
+    int status();
+
+    /**
+     * The player to move next
+     *
+     * @return 0 or 1
+     */
+    int currentPlayer();
+
+    /**
+     * Who has taken the cell
+     *
+     * @param cell {@code row * N + col}
+     * @return 0 or 1 for the players, -1 if it's empty
+     */
+    int cellAt(int cell);
+
+    /**
+     * Size of the board
+     *
+     * @return N
+     */
+    int size();
+
+    /**
+     * Stones in a row to win
+     *
+     * @return K
+     */
+    int k();
+
+    /** Clear the board for a new game */
+    void reset();
+
+    /**
+     * Number of cells on the board
+     *
+     * @return N * N
+     */
+    default int cells() {
+        return size() * size();
+    }
+
+    /**
+     * Whether the game has finished
+     *
+     * @return {@code true} if a player has won or it's a draw
+     */
+    default boolean isOver() {
+        return status() != IN_PROGRESS;
+    }
+
+    /**
+     * The cell at the row and column
+     *
+     * @param row row
+     * @param col col
+     * @return {@code row * N + col}, or -1 if either is out of the board
+     */
+    default int cell(int row, int col) {
+        int n = size();
+        if (row < 0 || row >= n || col < 0 || col >= n)
+            return -1;
+        return row * n + col;
+    }
+}
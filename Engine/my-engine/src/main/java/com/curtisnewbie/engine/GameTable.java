@@ -0,0 +1,237 @@
+package com.curtisnewbie.engine;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The state of many 3x3 games in off-heap memory, a fixed-size record per
+ * game, rather than a {@code GameEngine} per game on the heap.<br>
+ * <br>
+ * A record is {@value #RECORD_SIZE} bytes: the {@code BitBoard}, the status,
+ * the player in turn and the ids of the connections of the two players, which
+ * the server uses to find their own records (see {@code ConnectionTable} in
+ * the "Host" project). A game is addressed by the int handle returned by
+ * {@link #allocate(int, int)}, and its record is recycled through a free list
+ * once it's {@link #release(int) released}, the freed records are chained
+ * through the bytes of their board, so neither of them allocates.<br>
+ * <br>
+ * Records live in direct buffers of {@value #SEGMENT_RECORDS} records each,
+ * which are only allocated when the records before them are all in use. A
+ * table is not thread-safe, it's meant to be owned by a single thread, e.g.,
+ * one table per {@code EventLoop}.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class GameTable {
+
+    /** Bytes of a record */
+    public static final int RECORD_SIZE = 16;
+
+    /** Returned by {@link #allocate(int, int)} when the table is full */
+    public static final int NO_HANDLE = -1;
+
+    /** Id of the connection of a player that has none of its own, e.g., the built-in opponent */
+    public static final int NO_CONNECTION = -1;
+
+    // ---------------------------- layout of a record
+
+    private static final int BOARD = 0;
+    private static final int STATUS = 4;
+    private static final int TURN = 5;
+    private static final int PLAYER_0 = 8;
+    private static final int PLAYER_1 = 12;
+    /** Next record of the free list, in place of the board while the record is free */
+    private static final int NEXT_FREE = BOARD;
+
+    /** Status of a free record */
+    private static final byte FREE = -1;
+
+    /** Records per segment, a power of 2 */
+    private static final int SEGMENT_RECORDS = 1 << 14;
+    private static final int SEGMENT_SHIFT = Integer.numberOfTrailingZeros(SEGMENT_RECORDS);
+
+    private final ByteBuffer[] segments;
+
+    private final int capacity;
+
+    /** Records handed out at least once, the next new one is this */
+    private int top;
+
+    /** Head of the free list, {@link #NO_HANDLE} if it's empty */
+    private int free = NO_HANDLE;
+
+    /** Games in the table */
+    private int size;
+
+    /**
+     * @param capacity most games in the table at the same time
+     */
+    public GameTable(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        this.capacity = capacity;
+        this.segments = new ByteBuffer[(capacity + SEGMENT_RECORDS - 1) >>> SEGMENT_SHIFT];
+    }
+
+    /**
+     * Take a record for a new game, with an empty board
+     *
+     * @param player0 id of the connection of the player that moves first, or
+     *                {@link #NO_CONNECTION}
+     * @param player1 id of the connection of the player that moves second, or
+     *                {@link #NO_CONNECTION}
+     * @return handle of the game, or {@link #NO_HANDLE} if the table is full
+     */
+    public int allocate(int player0, int player1) {
+        int h;
+        if (free != NO_HANDLE) {
+            h = free;
+            free = segment(h).getInt(offset(h) + NEXT_FREE);
+        } else if (top < capacity) {
+            h = top++;
+            int s = h >>> SEGMENT_SHIFT;
+            if (segments[s] == null)
+                segments[s] = ByteBuffer.allocateDirect(SEGMENT_RECORDS * RECORD_SIZE).order(ByteOrder.nativeOrder());
+        } else {
+            return NO_HANDLE;
+        }
+        ByteBuffer b = segment(h);
+        int o = offset(h);
+        b.putInt(o + BOARD, BitBoard.EMPTY_BOARD);
+        b.put(o + STATUS, (byte) GameRules.IN_PROGRESS);
+        b.put(o + TURN, (byte) 0);
+        b.putInt(o + PLAYER_0, player0);
+        b.putInt(o + PLAYER_1, player1);
+        size++;
+        return h;
+    }
+
+    /**
+     * Free the record of the game, the handle must not be used afterwards
+     *
+     * @param handle handle of the game
+     * @throws IllegalStateException if it's released already
+     */
+    public void release(int handle) {
+        ByteBuffer b = segment(handle);
+        int o = offset(handle);
+        if (b.get(o + STATUS) == FREE)
+            throw new IllegalStateException("Game " + handle + " is released already");
+        b.put(o + STATUS, FREE);
+        b.putInt(o + NEXT_FREE, free);
+        free = handle;
+        size--;
+    }
+
+    /**
+     * Make a move for the player in turn, as {@code GameRules.apply(int)}
+     *
+     * @param handle handle of the game
+     * @param cell   {@code row * 3 + col}
+     * @return the status of the game after the move, or
+     *         {@code GameRules.ILLEGAL_MOVE} (and nothing changes) if the game
+     *         has finished or the cell is not available
+     */
+    public int apply(int handle, int cell) {
+        ByteBuffer b = segment(handle);
+        int o = offset(handle);
+        int board = b.getInt(o + BOARD);
+        if (b.get(o + STATUS) != GameRules.IN_PROGRESS || cell < 0 || cell >= BitBoard.CELLS
+                || !BitBoard.isEmpty(board, cell))
+            return GameRules.ILLEGAL_MOVE;
+
+        int player = b.get(o + TURN);
+        board = BitBoard.place(board, player, cell);
+        int status = GameRules.IN_PROGRESS;
+        if (BitBoard.hasWon(board, player))
+            status = player == 0 ? GameRules.PLAYER_0_WON : GameRules.PLAYER_1_WON;
+        else if (BitBoard.isFull(board))
+            status = GameRules.DRAW;
+        b.putInt(o + BOARD, board);
+        b.put(o + STATUS, (byte) status);
+        b.put(o + TURN, (byte) (1 - player));
+        return status;
+    }
+
+    /**
+     * The board of the game, see {@code BitBoard}
+     *
+     * @param handle handle of the game
+     * @return board
+     */
+    public int board(int handle) {
+        return segment(handle).getInt(offset(handle) + BOARD);
+    }
+
+    /**
+     * Status of the game
+     *
+     * @param handle handle of the game
+     * @return {@code GameRules.IN_PROGRESS}, {@code GameRules.PLAYER_0_WON},
+     *         {@code GameRules.PLAYER_1_WON} or {@code GameRules.DRAW}
+     */
+    public int status(int handle) {
+        return segment(handle).get(offset(handle) + STATUS);
+    }
+
+    /**
+     * The player to move next
+     *
+     * @param handle handle of the game
+     * @return 0 or 1
+     */
+    public int currentPlayer(int handle) {
+        return segment(handle).get(offset(handle) + TURN);
+    }
+
+    /**
+     * Id of the connection of the player in the seat
+     *
+     * @param handle handle of the game
+     * @param seat   0 or 1
+     * @return id given to {@link #allocate(int, int)}
+     */
+    public int player(int handle, int seat) {
+        return segment(handle).getInt(offset(handle) + (seat == 0 ? PLAYER_0 : PLAYER_1));
+    }
+
+    /**
+     * Number of games in the table
+     *
+     * @return games allocated and not released
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Most games in the table at the same time
+     *
+     * @return capacity
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Off-heap memory taken by the segments allocated so far
+     *
+     * @return bytes
+     */
+    public long reservedBytes() {
+        long n = 0;
+        for (ByteBuffer s : segments)
+            if (s != null)
+                n += s.capacity();
+        return n;
+    }
+
+    private ByteBuffer segment(int handle) {
+        return segments[handle >>> SEGMENT_SHIFT];
+    }
+
+    private static int offset(int handle) {
+        return (handle & (SEGMENT_RECORDS - 1)) * RECORD_SIZE;
+    }
+}
@@ -0,0 +1,130 @@
+package com.curtisnewbie.engine;
+
+import java.util.Arrays;
+
+/**
+ * The rules of a game on an N x N board with K in a row to win, e.g., 15 x 15
+ * gomoku with K = 5.<br>
+ * <br>
+ * Each player's cells are packed into a bitset of {@code long} words, so a 15 x
+ * 15 board takes 8 words in total. A move can only win along the four lines
+ * (row, column and the two diagonals) through the stone just placed, so only
+ * those are checked, walking at most K - 1 cells each way. The cost of a move
+ * thus depends on K but not on the size of the board, and none of the methods
+ * allocate.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class GridEngine implements GameRules {
+
+    /** Directions of the four lines through a cell, as {row, col} steps */
+    private static final int[][] DIRECTIONS = { { 0, 1 }, { 1, 0 }, { 1, 1 }, { 1, -1 } };
+
+    private final int n;
+
+    private final int k;
+
+    /** Cells of player 0 and player 1, bit {@code cell} of the bitset */
+    private final long[][] marks;
+
+    private int moves;
+
+    private int status = IN_PROGRESS;
+
+    /**
+     * @param n size of the board, from 3 to {@code GameRules.MAX_SIZE}
+     * @param k stones in a row to win, from 3 to n
+     * @throws IllegalArgumentException if n or k is out of range
+     */
+    public GridEngine(int n, int k) {
+        if (n < 3 || n > MAX_SIZE)
+            throw new IllegalArgumentException("Board size must be from 3 to " + MAX_SIZE + ": " + n);
+        if (k < 3 || k > n)
+            throw new IllegalArgumentException("K must be from 3 to " + n + ": " + k);
+        this.n = n;
+        this.k = k;
+        int words = (n * n + 63) >>> 6;
+        this.marks = new long[][] { new long[words], new long[words] };
+    }
+
+    @Override
+    public int apply(int cell) {
+        if (status != IN_PROGRESS || cell < 0 || cell >= n * n || cellAt(cell) >= 0)
+            return ILLEGAL_MOVE;
+
+        int player = currentPlayer();
+        long[] mine = marks[player];
+        mine[cell >>> 6] |= 1L << cell;
+        moves++;
+        if (isWinningMove(mine, cell / n, cell % n))
+            status = player == 0 ? PLAYER_0_WON : PLAYER_1_WON;
+        else if (moves == n * n)
+            status = DRAW;
+        return status;
+    }
+
+    @Override
+    public int status() {
+        return status;
+    }
+
+    @Override
+    public int currentPlayer() {
+        return moves & 1;
+    }
+
+    @Override
+    public int cellAt(int cell) {
+        long bit = 1L << cell;
+        if ((marks[0][cell >>> 6] & bit) != 0)
+            return 0;
+        if ((marks[1][cell >>> 6] & bit) != 0)
+            return 1;
+        return -1;
+    }
+
+    @Override
+    public int size() {
+        return n;
+    }
+
+    @Override
+    public int k() {
+        return k;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(marks[0], 0L);
+        Arrays.fill(marks[1], 0L);
+        moves = 0;
+        status = IN_PROGRESS;
+    }
+
+    /** Whether any of the four lines through the cell has K of the player's stones */
+    private boolean isWinningMove(long[] mine, int row, int col) {
+        for (int[] d : DIRECTIONS) {
+            int count = 1 + count(mine, row, col, d[0], d[1]) + count(mine, row, col, -d[0], -d[1]);
+            if (count >= k)
+                return true;
+        }
+        return false;
+    }
+
+    /** Count the player's stones next to the cell in one direction, up to K - 1 */
+    private int count(long[] mine, int row, int col, int dr, int dc) {
+        int count = 0;
+        int r = row + dr;
+        int c = col + dc;
+        while (count < k - 1 && r >= 0 && r < n && c >= 0 && c < n) {
+            int cell = r * n + c;
+            if ((mine[cell >>> 6] & 1L << cell) == 0)
+                break;
+            count++;
+            r += dr;
+            c += dc;
+        }
+        return count;
+    }
+}
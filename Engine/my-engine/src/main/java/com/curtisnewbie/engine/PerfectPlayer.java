@@ -0,0 +1,92 @@
+package com.curtisnewbie.engine;
+
+import java.util.Arrays;
+
+/**
+ * A built-in opponent that never loses.<br>
+ * <br>
+ * Every position reachable from the empty board is solved once, when this class
+ * is loaded, by a full game-tree search. The best move of each position is kept
+ * in a table indexed directly by the {@code BitBoard}, so that finding a move is
+ * a single array lookup, which takes constant time and doesn't allocate. Among
+ * the moves with the best outcome, the one that wins soonest (or loses latest)
+ * is picked.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class PerfectPlayer {
+
+    /** Score of a position that is not solved yet */
+    private static final byte UNSOLVED = Byte.MIN_VALUE;
+
+    /** Best move of every position, -1 if the game is over or not reachable */
+    private static final byte[] BEST_MOVE = new byte[1 << (2 * BitBoard.CELLS)];
+
+    /**
+     * Score of every position from the view of the player in turn: positive if
+     * it wins, negative if it loses and 0 for a draw, the larger the sooner it
+     * wins.
+     */
+    private static final byte[] SCORE = new byte[1 << (2 * BitBoard.CELLS)];
+
+    static {
+        Arrays.fill(BEST_MOVE, (byte) -1);
+        Arrays.fill(SCORE, UNSOLVED);
+        solve(BitBoard.EMPTY_BOARD);
+    }
+
+    private PerfectPlayer() {
+    }
+
+    /**
+     * The best move for the player in turn
+     *
+     * @param board board, see {@code BitBoard}
+     * @return cell {@code row * 3 + col}, or -1 if the game is over
+     */
+    public static int bestMove(int board) {
+        return BEST_MOVE[board];
+    }
+
+    /**
+     * The outcome of the position with perfect play from both sides
+     *
+     * @param board board, see {@code BitBoard}
+     * @return positive if the player in turn wins, negative if it loses and 0 for
+     *         a draw
+     */
+    public static int score(int board) {
+        return SCORE[board];
+    }
+
+    /** Negamax over the game tree, memoized in the tables */
+    private static int solve(int board) {
+        if (SCORE[board] != UNSOLVED)
+            return SCORE[board];
+
+        int score;
+        int player = BitBoard.turn(board);
+        if (BitBoard.hasWon(board, 1 - player)) {
+            // the previous move has won, the sooner the worse
+            score = -(BitBoard.CELLS + 1 - BitBoard.moves(board));
+        } else if (BitBoard.isFull(board)) {
+            score = 0;
+        } else {
+            score = Integer.MIN_VALUE;
+            int best = -1;
+            for (int cell = 0; cell < BitBoard.CELLS; cell++) {
+                if (!BitBoard.isEmpty(board, cell))
+                    continue;
+                int s = -solve(BitBoard.place(board, player, cell));
+                if (s > score) {
+                    score = s;
+                    best = cell;
+                }
+            }
+            BEST_MOVE[board] = (byte) best;
+        }
+        SCORE[board] = (byte) score;
+        return score;
+    }
+}
@@ -0,0 +1,86 @@
+package com.curtisnewbie.engine;
+
+/**
+ * Score of a best-of-N series played by two sides, from the view of one of
+ * them. The series is over once a side has won more than half of the N games,
+ * or all N games are played, so a series of 1 is a single game. The side that
+ * moves first swaps every game.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class Series {
+
+    private final int games;
+    private int wins;
+    private int losses;
+    private int draws;
+
+    /**
+     * @param games N, at least 1
+     */
+    public Series(int games) {
+        if (games < 1)
+            throw new IllegalArgumentException("A series has at least 1 game");
+        this.games = games;
+    }
+
+    /**
+     * Count a finished game
+     *
+     * @param status   status of the {@code GameRules} when the game is over
+     * @param wasFirst whether this side moved first (was player 0) in the game
+     */
+    public void record(int status, boolean wasFirst) {
+        if (status == GameRules.DRAW)
+            draws++;
+        else if ((status == GameRules.PLAYER_0_WON) == wasFirst)
+            wins++;
+        else
+            losses++;
+    }
+
+    /**
+     * Whether no more games are to be played
+     *
+     * @return {@code true} if a side has won the series or all games are played
+     */
+    public boolean isOver() {
+        return wins * 2 > games || losses * 2 > games || played() >= games;
+    }
+
+    /**
+     * Whether this side moves first in the next game, given that it moved first
+     * in the first one
+     *
+     * @return {@code true} after an even number of games
+     */
+    public boolean firstInNextGame() {
+        return played() % 2 == 0;
+    }
+
+    public int played() {
+        return wins + losses + draws;
+    }
+
+    public int games() {
+        return games;
+    }
+
+    public int wins() {
+        return wins;
+    }
+
+    public int losses() {
+        return losses;
+    }
+
+    public int draws() {
+        return draws;
+    }
+
+    @Override
+    public String toString() {
+        return wins + " : " + losses + (draws > 0 ? " (" + draws + " drawn)" : "") + ", best of " + games;
+    }
+}
@@ -0,0 +1,292 @@
+package com.curtisnewbie.engine;
+
+import java.util.Arrays;
+
+/**
+ * The authoritative rules of the Ultimate variant: a 9x9 board made of nine 3x3
+ * sub-boards, where winning a sub-board takes the matching cell of the 3x3
+ * board above them, and three of those in a row win the game.<br>
+ * <br>
+ * The cell a player takes inside its sub-board picks the sub-board the opponent
+ * must play in next, e.g., the top right cell of any sub-board sends the
+ * opponent to the top right sub-board. When that sub-board is already won or
+ * full, the opponent may play in any sub-board that is still open. The game is
+ * a draw when every sub-board is won or full and nobody has three of them in a
+ * row.<br>
+ * <br>
+ * Cells are numbered row by row on the whole 9x9 board, as for any
+ * {@code GameRules}, and the rules are picked with K =
+ * {@code GameRules.ULTIMATE_K}. Inside, each sub-board is a {@code BitBoard},
+ * and so is the board of won sub-boards, so a move is a few table lookups and
+ * the whole game copies in a handful of words, which is what rollouts of the
+ * {@code MctsPlayer} need: see {@link #copyFrom(UltimateEngine)} and
+ * {@link #randomMove(int)}, neither of which allocates.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class UltimateEngine implements GameRules {
+
+    /** Size of the whole board */
+    public static final int SIZE = 9;
+
+    /** Number of cells of the whole board */
+    public static final int CELLS = SIZE * SIZE;
+
+    /** Returned by {@link #nextBoard()} when any open sub-board may be played */
+    public static final int ANY_BOARD = -1;
+
+    /** Sub-board of each cell, by {@code row * 9 + col} */
+    private static final byte[] BOARD_OF = new byte[CELLS];
+
+    /** Cell inside its sub-board of each cell, by {@code row * 9 + col} */
+    private static final byte[] INNER_OF = new byte[CELLS];
+
+    /** Cell {@code row * 9 + col} of each cell inside each sub-board */
+    private static final byte[][] CELL_OF = new byte[BitBoard.CELLS][BitBoard.CELLS];
+
+    /** Whether a 9-bit mask of cells has three in a row */
+    private static final boolean[] WINS = new boolean[1 << BitBoard.CELLS];
+
+    static {
+        for (int cell = 0; cell < CELLS; cell++) {
+            int row = cell / SIZE;
+            int col = cell % SIZE;
+            int board = row / 3 * 3 + col / 3;
+            int inner = row % 3 * 3 + col % 3;
+            BOARD_OF[cell] = (byte) board;
+            INNER_OF[cell] = (byte) inner;
+            CELL_OF[board][inner] = (byte) cell;
+        }
+        for (int mask = 0; mask < WINS.length; mask++)
+            WINS[mask] = BitBoard.hasWon(mask, 0);
+    }
+
+    /** The sub-boards, see {@code BitBoard} */
+    private final int[] boards = new int[BitBoard.CELLS];
+
+    /** The sub-boards won by each player, see {@code BitBoard} */
+    private int won;
+
+    /** Mask of sub-boards that are won or full */
+    private int closed;
+
+    /** Sub-board to play in next, or {@link #ANY_BOARD} */
+    private int next = ANY_BOARD;
+
+    private int moves;
+
+    private int status = IN_PROGRESS;
+
+    /**
+     * Make a move for the player in turn.
+     *
+     * @param cell {@code row * 9 + col}
+     * @return the status of the game after the move, or {@link #ILLEGAL_MOVE}
+     *         (and nothing changes) if the game has finished, the cell is not
+     *         available, or it's not in the sub-board to play in
+     */
+    @Override
+    public int apply(int cell) {
+        if (!isLegal(cell))
+            return ILLEGAL_MOVE;
+
+        int board = BOARD_OF[cell];
+        int inner = INNER_OF[cell];
+        int player = moves & 1;
+        int b = BitBoard.place(boards[board], player, inner);
+        boards[board] = b;
+        moves++;
+        if (WINS[BitBoard.mask(b, player)]) {
+            won = BitBoard.place(won, player, board);
+            closed |= 1 << board;
+            if (WINS[BitBoard.mask(won, player)])
+                status = player == 0 ? PLAYER_0_WON : PLAYER_1_WON;
+        } else if (BitBoard.isFull(b)) {
+            closed |= 1 << board;
+        }
+        if (status == IN_PROGRESS && closed == BitBoard.FULL)
+            status = DRAW;
+        next = (closed & 1 << inner) != 0 ? ANY_BOARD : inner;
+        return status;
+    }
+
+    /**
+     * Whether the player in turn may take the cell
+     *
+     * @param cell {@code row * 9 + col}
+     * @return {@code true} if it may
+     */
+    public boolean isLegal(int cell) {
+        if (status != IN_PROGRESS || cell < 0 || cell >= CELLS)
+            return false;
+        int board = BOARD_OF[cell];
+        if (next != ANY_BOARD ? board != next : (closed & 1 << board) != 0)
+            return false;
+        return BitBoard.isEmpty(boards[board], INNER_OF[cell]);
+    }
+
+    /**
+     * The sub-board the player in turn must play in
+     *
+     * @return sub-board {@code row * 3 + col}, or {@link #ANY_BOARD}
+     */
+    public int nextBoard() {
+        return next;
+    }
+
+    /**
+     * Who has won the sub-board
+     *
+     * @param board sub-board {@code row * 3 + col}
+     * @return 0 or 1 for the players, -1 if nobody has
+     */
+    public int winnerOf(int board) {
+        if ((BitBoard.mask(won, 0) & 1 << board) != 0)
+            return 0;
+        if ((BitBoard.mask(won, 1) & 1 << board) != 0)
+            return 1;
+        return -1;
+    }
+
+    /**
+     * The sub-board of the cell
+     *
+     * @param cell {@code row * 9 + col}
+     * @return sub-board {@code row * 3 + col}
+     */
+    public static int boardOf(int cell) {
+        return BOARD_OF[cell];
+    }
+
+    /**
+     * The legal moves of the player in turn
+     *
+     * @param dst where the cells are written to, at least {@link #CELLS} long
+     * @return number of moves, 0 if the game is over
+     */
+    public int legalMoves(int[] dst) {
+        if (status != IN_PROGRESS)
+            return 0;
+        int count = 0;
+        for (int board = 0; board < BitBoard.CELLS; board++) {
+            if (next != ANY_BOARD ? board != next : (closed & 1 << board) != 0)
+                continue;
+            byte[] cells = CELL_OF[board];
+            for (int free = ~BitBoard.occupied(boards[board]) & BitBoard.FULL; free != 0; free &= free - 1)
+                dst[count++] = cells[Integer.numberOfTrailingZeros(free)];
+        }
+        return count;
+    }
+
+    /**
+     * A legal move of the player in turn, picked uniformly from all of them by
+     * the random number
+     *
+     * @param random any random int
+     * @return cell {@code row * 9 + col}, or -1 if the game is over
+     */
+    public int randomMove(int random) {
+        if (status != IN_PROGRESS)
+            return -1;
+        int r = random & Integer.MAX_VALUE;
+        if (next != ANY_BOARD) {
+            int free = ~BitBoard.occupied(boards[next]) & BitBoard.FULL;
+            return CELL_OF[next][nthBit(free, r % Integer.bitCount(free))];
+        }
+        int total = 0;
+        for (int open = ~closed & BitBoard.FULL; open != 0; open &= open - 1)
+            total += BitBoard.CELLS - Integer.bitCount(BitBoard.occupied(boards[Integer.numberOfTrailingZeros(open)]));
+        int nth = r % total;
+        for (int open = ~closed & BitBoard.FULL;; open &= open - 1) {
+            int board = Integer.numberOfTrailingZeros(open);
+            int free = ~BitBoard.occupied(boards[board]) & BitBoard.FULL;
+            int count = Integer.bitCount(free);
+            if (nth < count)
+                return CELL_OF[board][nthBit(free, nth)];
+            nth -= count;
+        }
+    }
+
+    /** Index of the nth lowest set bit of the mask */
+    private static int nthBit(int mask, int nth) {
+        for (int i = 0; i < nth; i++)
+            mask &= mask - 1;
+        return Integer.numberOfTrailingZeros(mask);
+    }
+
+    /**
+     * Make this game the same as the other one
+     *
+     * @param other game
+     */
+    public void copyFrom(UltimateEngine other) {
+        System.arraycopy(other.boards, 0, boards, 0, BitBoard.CELLS);
+        won = other.won;
+        closed = other.closed;
+        next = other.next;
+        moves = other.moves;
+        status = other.status;
+    }
+
+    /**
+     * Number of moves made
+     *
+     * @return moves
+     */
+    public int moves() {
+        return moves;
+    }
+
+    @Override
+    public int status() {
+        return status;
+    }
+
+    @Override
+    public int currentPlayer() {
+        return moves & 1;
+    }
+
+    @Override
+    public boolean isOver() {
+        return status != IN_PROGRESS;
+    }
+
+    @Override
+    public int cellAt(int cell) {
+        int b = boards[BOARD_OF[cell]];
+        int bit = 1 << INNER_OF[cell];
+        if ((BitBoard.mask(b, 0) & bit) != 0)
+            return 0;
+        if ((BitBoard.mask(b, 1) & bit) != 0)
+            return 1;
+        return -1;
+    }
+
+    @Override
+    public int size() {
+        return SIZE;
+    }
+
+    @Override
+    public int k() {
+        return ULTIMATE_K;
+    }
+
+    @Override
+    public int cells() {
+        return CELLS;
+    }
+
+    /** Clear the board for a new game */
+    @Override
+    public void reset() {
+        Arrays.fill(boards, BitBoard.EMPTY_BOARD);
+        won = BitBoard.EMPTY_BOARD;
+        closed = 0;
+        next = ANY_BOARD;
+        moves = 0;
+        status = IN_PROGRESS;
+    }
+}
@@ -0,0 +1,211 @@
+package com.curtisnewbie.engine.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Consistent hashing of game ids onto the nodes of a cluster.<br>
+ * <br>
+ * Every node is put on a ring of 64-bit hashes at a number of points (its
+ * virtual nodes), and a game belongs to the node of the first point at or after
+ * the hash of its id, going round. A node that joins only takes the games of
+ * the points it lands in front of, about 1/N of all, and a node that leaves
+ * only hands its own games to the nodes after its points; every other game
+ * stays where it is. The virtual nodes spread each node's share over the whole
+ * ring, so that the nodes get about the same number of games.<br>
+ * <br>
+ * A ring is immutable, {@link #with(String)} and {@link #without(String)} make
+ * a new one, and a lookup is a binary search in a sorted array of the
+ * points.<br>
+ * <br>
+ * Usage, to see the spread and how many ids move:
+ * {@code HashRing [nodes] [virtual nodes per node] [game ids]}
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class HashRing {
+
+    /** Virtual nodes per node, which keep the shares within about 10% of the mean */
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private final int virtualNodes;
+
+    /** Names of the nodes, sorted */
+    private final List<String> nodes;
+
+    /** Points on the ring, sorted */
+    private final long[] points;
+
+    /** Node of each point */
+    private final String[] owners;
+
+    /**
+     * Create an empty ring
+     *
+     * @param virtualNodes points per node
+     */
+    public HashRing(int virtualNodes) {
+        this(virtualNodes, Collections.emptyList());
+    }
+
+    private HashRing(int virtualNodes, List<String> nodes) {
+        if (virtualNodes < 1)
+            throw new IllegalArgumentException("A node needs at least one point on the ring");
+        this.virtualNodes = virtualNodes;
+        this.nodes = nodes;
+        int size = nodes.size() * virtualNodes;
+        long[] hashes = new long[size];
+        // sort the points along with their nodes, ties are broken by the name
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < nodes.size(); i++) {
+            long base = hash(nodes.get(i));
+            for (int v = 0; v < virtualNodes; v++) {
+                int p = i * virtualNodes + v;
+                hashes[p] = mix(base + v * 0x9E3779B97F4A7C15L);
+                order[p] = p;
+            }
+        }
+        Arrays.sort(order, (a, b) -> {
+            int c = Long.compareUnsigned(hashes[a], hashes[b]);
+            return c != 0 ? c : nodes.get(a / virtualNodes).compareTo(nodes.get(b / virtualNodes));
+        });
+        this.points = new long[size];
+        this.owners = new String[size];
+        for (int i = 0; i < size; i++) {
+            points[i] = hashes[order[i]];
+            owners[i] = nodes.get(order[i] / virtualNodes);
+        }
+    }
+
+    /**
+     * A ring with the node added
+     *
+     * @param node name of the node, e.g., "127.0.0.1:7100"
+     * @return new ring, or this one if the node is on it already
+     */
+    public HashRing with(String node) {
+        if (nodes.contains(node))
+            return this;
+        List<String> n = new ArrayList<>(nodes);
+        n.add(node);
+        Collections.sort(n);
+        return new HashRing(virtualNodes, Collections.unmodifiableList(n));
+    }
+
+    /**
+     * A ring with the node removed
+     *
+     * @param node name of the node
+     * @return new ring, or this one if the node is not on it
+     */
+    public HashRing without(String node) {
+        if (!nodes.contains(node))
+            return this;
+        List<String> n = new ArrayList<>(nodes);
+        n.remove(node);
+        return new HashRing(virtualNodes, Collections.unmodifiableList(n));
+    }
+
+    /**
+     * The node that owns the game
+     *
+     * @param gameId id of the game
+     * @return name of the node, or null if the ring is empty
+     */
+    public String owner(int gameId) {
+        if (points.length == 0)
+            return null;
+        long h = mix(gameId);
+        // first point at or after the hash, unsigned so that the ring goes round at 2^64
+        int lo = 0;
+        int hi = points.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Long.compareUnsigned(points[mid], h) < 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return owners[lo == points.length ? 0 : lo];
+    }
+
+    /**
+     * Names of the nodes on the ring
+     *
+     * @return sorted names, unmodifiable
+     */
+    public List<String> nodes() {
+        return nodes;
+    }
+
+    /**
+     * Number of nodes on the ring
+     *
+     * @return number of nodes
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    @Override
+    public String toString() {
+        return nodes.toString();
+    }
+
+    /** 64-bit FNV-1a of the name, mixed */
+    private static long hash(String node) {
+        long h = 0xCBF29CE484222325L;
+        for (byte b : node.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xFF;
+            h *= 0x100000001B3L;
+        }
+        return mix(h);
+    }
+
+    /** The finalizer of SplitMix64, which spreads consecutive ids over the ring */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int vnodes = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_VIRTUAL_NODES;
+        int ids = args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000;
+
+        HashRing ring = new HashRing(vnodes);
+        for (int i = 0; i < n; i++)
+            ring = ring.with("127.0.0.1:" + (7100 + 10 * i));
+        Map<String, Integer> share = new HashMap<>();
+        for (int id = 1; id <= ids; id++)
+            share.merge(ring.owner(id), 1, Integer::sum);
+        int max = Collections.max(share.values());
+        int min = Collections.min(share.values());
+        double mean = ids / (double) n;
+        System.out.println(String.format("%d nodes, %d points each, %,d ids: min %.1f%%, max %.1f%% of the mean",
+                n, vnodes, ids, 100 * min / mean, 100 * max / mean));
+
+        String joining = "127.0.0.1:" + (7100 + 10 * n);
+        report("join of " + joining, ring, ring.with(joining), ids);
+        String leaving = ring.nodes().get(0);
+        report("leave of " + leaving, ring, ring.without(leaving), ids);
+    }
+
+    /** Print how many ids the change moves, against the ideal */
+    private static void report(String change, HashRing before, HashRing after, int ids) {
+        int moved = 0;
+        for (int id = 1; id <= ids; id++)
+            if (!before.owner(id).equals(after.owner(id)))
+                moved++;
+        double ideal = 1.0 / Math.max(before.size(), after.size());
+        System.out.println(String.format("%s moves %.1f%% of the ids (ideal %.1f%%)", change, 100.0 * moved / ids,
+                100 * ideal));
+    }
+}
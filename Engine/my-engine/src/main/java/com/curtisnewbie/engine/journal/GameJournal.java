@@ -0,0 +1,365 @@
+package com.curtisnewbie.engine.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.curtisnewbie.engine.util.MpscLongQueue;
+
+/**
+ * An append-only journal of every game played by a process, kept in
+ * memory-mapped segment files.<br>
+ * <br>
+ * Each record is 8 bytes: the id of the game (4 bytes), a timestamp delta (3
+ * bytes) and the cell (1 byte). The delta of a move is the milliseconds since
+ * the previous record of the same game, the delta of the first record of a game
+ * is the seconds since the journal was opened, see {@link #START} and
+ * {@link #END} for the records that are not moves. Records of games played at
+ * the same time are interleaved.<br>
+ * <br>
+ * Appending never blocks the game loop: a record is packed into a
+ * {@code long} and put into a lock-free queue, which a single writer thread
+ * drains into the mapped segment. Should the queue ever be full, the record is
+ * dropped and counted rather than waited for. When a segment is full, the
+ * writer rolls over to the next one and writes a sparse index next to the full
+ * one, the id and offset of every {@link #INDEX_EVERY}-th game, which lets
+ * {@code JournalReader} find a game without scanning the whole journal.<br>
+ * <br>
+ * Layout of a segment file, {@code segment-<seq>.journal}:<br>
+ * 0: magic, 4: N, 5: K, 8: epoch millis when the journal was opened, 16: the
+ * smallest id of the games that start in it, 20: number of records (set when
+ * it's full or closed), 24: the largest id of the games that start in it, 32:
+ * records. The ids are 0 if no game starts in it. Layout of the index file,
+ * {@code segment-<seq>.idx}: pairs of game id and offset of its first
+ * record.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class GameJournal implements Closeable {
+
+    /** System property with the directory of the journal */
+    public static final String PROPERTY = "tictactoe.journal";
+
+    /** Size of a segment file */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+    static final int MAGIC = 0x54544A31;
+
+    static final int HEADER_SIZE = 32;
+
+    static final int RECORD_SIZE = 8;
+
+    /** Cell of the first record of a game */
+    public static final int START = 0xFF;
+
+    /** Cell of the last record of a game, plus the result of player 0, e.g., {@code Protocol.RESULT_WIN} */
+    public static final int END = 0xF0;
+
+    /** Cells from 0 up to it are moves, so boards up to 15 x 15 can be recorded */
+    public static final int MAX_CELLS = END;
+
+    /** Every this many games, the first record of the game is indexed */
+    static final int INDEX_EVERY = 64;
+
+    /** Largest value of the 3-byte delta */
+    static final int MAX_DELTA = 0xFFFFFF;
+
+    /** Records that can wait for the writer */
+    private static final int QUEUE_SIZE = 1 << 16;
+
+    private static final GameJournal DISABLED = new GameJournal();
+
+    private final Path dir;
+    private final int n;
+    private final int k;
+    private final int segmentSize;
+    private final long baseMillis = System.currentTimeMillis();
+
+    private final AtomicInteger nextGameId = new AtomicInteger(1);
+    private final LongAdder dropped = new LongAdder();
+    private final MpscLongQueue queue;
+    private final Thread writer;
+    private volatile boolean closing;
+
+    // ---------------------------- only touched by the writer thread
+
+    private int seq;
+    private FileChannel file;
+    private MappedByteBuffer segment;
+    private int gamesInSegment;
+    private ByteBuffer index;
+
+    /** A journal that records nothing */
+    private GameJournal() {
+        this.dir = null;
+        this.n = 0;
+        this.k = 0;
+        this.segmentSize = 0;
+        this.queue = null;
+        this.writer = null;
+    }
+
+    /**
+     * Open a journal, new segments are added after the ones already in the
+     * directory and new games get ids after the ones already recorded.
+     *
+     * @param dir         directory of the segments, created if missing
+     * @param n           size of the board
+     * @param k           stones in a row to win
+     * @param segmentSize size of a segment file in bytes
+     * @throws IOException              if the directory or the first segment
+     *                                  cannot be created
+     * @throws IllegalArgumentException if the board is larger than
+     *                                  {@link #MAX_CELLS}
+     */
+    public GameJournal(Path dir, int n, int k, int segmentSize) throws IOException {
+        if (n * n > MAX_CELLS)
+            throw new IllegalArgumentException("The journal records boards of up to " + MAX_CELLS + " cells");
+        this.dir = dir;
+        this.n = n;
+        this.k = k;
+        this.segmentSize = segmentSize - (segmentSize - HEADER_SIZE) % RECORD_SIZE;
+        this.queue = new MpscLongQueue(QUEUE_SIZE);
+        Files.createDirectories(dir);
+
+        try (JournalReader reader = new JournalReader(dir)) {
+            seq = reader.lastSegment() + 1;
+            nextGameId.set(reader.lastGameId() + 1);
+        }
+        openSegment();
+
+        writer = new Thread(this::drain, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Open the journal in the directory named by the system property
+     * {@value #PROPERTY}, which is closed when the process exits.
+     *
+     * @param n size of the board
+     * @param k stones in a row to win
+     * @return journal, or one that records nothing if the property is not set,
+     *         or the journal cannot be opened
+     */
+    public static GameJournal fromSystemProperty(int n, int k) {
+        String dir = System.getProperty(PROPERTY);
+        if (dir == null)
+            return DISABLED;
+        try {
+            GameJournal journal = new GameJournal(Paths.get(dir), n, k, DEFAULT_SEGMENT_SIZE);
+            Runtime.getRuntime().addShutdownHook(new Thread(journal::close));
+            System.out.println("Recording games to " + dir);
+            return journal;
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Cannot open journal " + dir + " : " + e.getMessage());
+            return DISABLED;
+        }
+    }
+
+    /**
+     * A journal that records nothing
+     *
+     * @return journal
+     */
+    public static GameJournal disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Start recording a new game
+     *
+     * @return recorder of the game, it must only be used by one thread at a time
+     */
+    public Recorder startGame() {
+        if (queue == null)
+            return new Recorder(this, 0);
+        Recorder r = new Recorder(this, nextGameId.getAndIncrement());
+        long seconds = (System.currentTimeMillis() - baseMillis) / 1000;
+        append(r.gameId, seconds, START);
+        return r;
+    }
+
+    /**
+     * Number of records dropped because the writer fell behind
+     *
+     * @return count
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    private void append(int gameId, long delta, int cell) {
+        long record = (long) gameId << 32 | Math.min(delta, MAX_DELTA) << 8 | cell;
+        if (!queue.offer(record))
+            dropped.increment();
+    }
+
+    /** Write whatever is queued until closed, and then the rest of it */
+    private void drain() {
+        while (true) {
+            long record = queue.poll(0);
+            if (record != 0) {
+                write(record);
+            } else if (closing) {
+                if (queue.isEmpty())
+                    break;
+            } else {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+        try {
+            finishSegment();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void write(long record) {
+        try {
+            if (segment.remaining() < RECORD_SIZE) {
+                finishSegment();
+                seq++;
+                openSegment();
+            }
+            int cell = (int) record & 0xFF;
+            if (cell == START) {
+                int gameId = (int) (record >>> 32);
+                // ids are handed out before the records are queued, so a game
+                // may start after a newer one, even in the next segment
+                if (gamesInSegment == 0 || gameId < segment.getInt(16))
+                    segment.putInt(16, gameId);
+                if (gameId > segment.getInt(24))
+                    segment.putInt(24, gameId);
+                if (gamesInSegment % INDEX_EVERY == 0)
+                    addToIndex(gameId, segment.position());
+                gamesInSegment++;
+            }
+            segment.putLong(record);
+        } catch (IOException e) {
+            e.printStackTrace();
+            dropped.increment();
+        }
+    }
+
+    private void addToIndex(int gameId, int offset) {
+        if (index.remaining() < 8) {
+            ByteBuffer bigger = ByteBuffer.allocate(index.capacity() * 2);
+            index.flip();
+            bigger.put(index);
+            index = bigger;
+        }
+        index.putInt(gameId).putInt(offset);
+    }
+
+    private void openSegment() throws IOException {
+        file = FileChannel.open(segmentPath(dir, seq), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        segment = file.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        segment.putInt(0, MAGIC);
+        segment.put(4, (byte) n);
+        segment.put(5, (byte) k);
+        segment.putLong(8, baseMillis);
+        segment.position(HEADER_SIZE);
+        gamesInSegment = 0;
+        index = ByteBuffer.allocate(1024);
+    }
+
+    /** Write the number of records and the index, and flush the segment */
+    private void finishSegment() throws IOException {
+        segment.putInt(20, (segment.position() - HEADER_SIZE) / RECORD_SIZE);
+        segment.force();
+        file.close();
+        index.flip();
+        Files.write(indexPath(dir, seq), Arrays.copyOf(index.array(), index.limit()));
+    }
+
+    /**
+     * Write every record appended so far and close the segment, records appended
+     * later are lost.
+     */
+    @Override
+    public void close() {
+        if (writer == null || closing)
+            return;
+        closing = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static Path segmentPath(Path dir, int seq) {
+        return dir.resolve(String.format("segment-%08d.journal", seq));
+    }
+
+    static Path indexPath(Path dir, int seq) {
+        return dir.resolve(String.format("segment-%08d.idx", seq));
+    }
+
+    /**
+     * Records the moves of one game into the journal, keeping the time of the
+     * previous record for the deltas.
+     */
+    public static final class Recorder {
+
+        private final GameJournal journal;
+        private final int gameId;
+        private long last = System.nanoTime();
+
+        private Recorder(GameJournal journal, int gameId) {
+            this.journal = journal;
+            this.gameId = gameId;
+        }
+
+        /**
+         * Id of the game in the journal
+         *
+         * @return id, 0 if the journal is disabled
+         */
+        public int gameId() {
+            return gameId;
+        }
+
+        /**
+         * Record a move
+         *
+         * @param cell {@code row * N + col}
+         */
+        public void move(int cell) {
+            if (gameId != 0)
+                journal.append(gameId, sinceLast(), cell);
+        }
+
+        /**
+         * Record the end of the game
+         *
+         * @param result result from the view of player 0, e.g.,
+         *               {@code Protocol.RESULT_WIN}
+         */
+        public void end(int result) {
+            if (gameId != 0)
+                journal.append(gameId, sinceLast(), END | result);
+        }
+
+        private long sinceLast() {
+            long now = System.nanoTime();
+            long delta = TimeUnit.NANOSECONDS.toMillis(now - last);
+            last = now;
+            return delta;
+        }
+    }
+}
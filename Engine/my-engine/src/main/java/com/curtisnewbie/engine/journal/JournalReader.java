@@ -0,0 +1,238 @@
+package com.curtisnewbie.engine.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Reads the games recorded by a {@code GameJournal}.<br>
+ * <br>
+ * To find a game, the segment where it starts is picked by a binary search over
+ * the smallest id of the games that start in each segment, or an earlier one
+ * whose largest id is not below it, as games that start at about the same time
+ * may be queued in a different order. The sparse index of that segment then
+ * gives an offset close to the game's first record, from where the records are
+ * read until the game ends, into the following segments if needed. Only a few
+ * thousand records are read, however many games the journal holds. A segment
+ * that is still being written has no index yet and is read from its start.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class JournalReader implements Closeable {
+
+    private static final Pattern SEGMENT = Pattern.compile("segment-(\\d+)\\.journal");
+
+    /**
+     * Ids are handed out just before the first record is queued, so the first
+     * records are in order give or take the games started at the same time. A
+     * game is not in the journal once a game this much newer has started.
+     */
+    private static final int ID_SLACK = 1 << 16;
+
+    private final Path dir;
+
+    /** Sequence numbers of the segments, in order */
+    private final int[] seqs;
+
+    /** Smallest id of the games that start in each segment, 0 if none does */
+    private final int[] minIds;
+
+    /** Largest id of the games that start in each segment, 0 if none does */
+    private final int[] maxIds;
+
+    /** Mapped segments, mapped when first read */
+    private final ByteBuffer[] segments;
+
+    /**
+     * Open the journal in the directory
+     *
+     * @param dir directory of the segments
+     * @throws IOException if the segments cannot be read
+     */
+    public JournalReader(Path dir) throws IOException {
+        this.dir = dir;
+        List<Integer> found = new ArrayList<>();
+        if (Files.isDirectory(dir)) {
+            try (Stream<Path> files = Files.list(dir)) {
+                files.forEach(p -> {
+                    Matcher m = SEGMENT.matcher(p.getFileName().toString());
+                    if (m.matches())
+                        found.add(Integer.parseInt(m.group(1)));
+                });
+            }
+        }
+        found.sort(null);
+        seqs = found.stream().mapToInt(Integer::intValue).toArray();
+        minIds = new int[seqs.length];
+        maxIds = new int[seqs.length];
+        segments = new ByteBuffer[seqs.length];
+        for (int i = 0; i < seqs.length; i++) {
+            minIds[i] = segment(i).getInt(16);
+            maxIds[i] = segment(i).getInt(24);
+        }
+    }
+
+    /**
+     * Sequence number of the last segment
+     *
+     * @return sequence number, 0 if there's none
+     */
+    public int lastSegment() {
+        return seqs.length == 0 ? 0 : seqs[seqs.length - 1];
+    }
+
+    /**
+     * The largest game id in the journal, which is in the last segments
+     *
+     * @return id, 0 if there's no game
+     */
+    public int lastGameId() throws IOException {
+        int last = 0;
+        // a segment that is filled by the moves of earlier games has no ids
+        for (int i = seqs.length - 1; i >= 0 && last == 0; i--) {
+            ByteBuffer b = segment(i);
+            for (int off = GameJournal.HEADER_SIZE; off + GameJournal.RECORD_SIZE <= b.limit(); off += GameJournal.RECORD_SIZE) {
+                long record = b.getLong(off);
+                if (record == 0)
+                    break;
+                if (((int) record & 0xFF) == GameJournal.START)
+                    last = Math.max(last, (int) (record >>> 32));
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Find a game
+     *
+     * @param gameId id of the game
+     * @return the game, or null if it's not in the journal
+     * @throws IOException if the segments cannot be read
+     */
+    public RecordedGame find(int gameId) throws IOException {
+        int s = segmentOf(gameId);
+        if (s < 0)
+            return null;
+
+        ByteBuffer first = segment(s);
+        int n = first.get(4);
+        int k = first.get(5);
+        long baseMillis = first.getLong(8);
+
+        RecordedGame game = null;
+        int off = indexedOffset(s, gameId);
+        for (; s < seqs.length; s++, off = GameJournal.HEADER_SIZE) {
+            ByteBuffer b = segment(s);
+            for (; off + GameJournal.RECORD_SIZE <= b.limit(); off += GameJournal.RECORD_SIZE) {
+                long record = b.getLong(off);
+                if (record == 0)
+                    break;
+                int id = (int) (record >>> 32);
+                int cell = (int) record & 0xFF;
+                int delta = (int) (record >>> 8) & GameJournal.MAX_DELTA;
+                if (id != gameId) {
+                    if (game == null && cell == GameJournal.START && id > gameId + ID_SLACK)
+                        return null;
+                    continue;
+                }
+                if (cell == GameJournal.START) {
+                    game = new RecordedGame(gameId, n, k, baseMillis + delta * 1000L);
+                } else if (game == null) {
+                    // the game started before the offset, which shouldn't happen
+                    continue;
+                } else if (cell >= GameJournal.END) {
+                    game.end(cell - GameJournal.END, delta);
+                    return game;
+                } else {
+                    game.add(cell, delta);
+                }
+            }
+        }
+        // the game hasn't finished, or the process didn't close the journal
+        return game;
+    }
+
+    /**
+     * Index of the first segment where the game may start: the last one whose
+     * smallest id is not above the game's, or an earlier one whose largest id
+     * is not below it
+     */
+    private int segmentOf(int gameId) {
+        int lo = 0;
+        int hi = seqs.length - 1;
+        int found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (minIds[mid] != 0 && minIds[mid] > gameId) {
+                hi = mid - 1;
+            } else {
+                // segments where no game starts are treated as part of the one before
+                found = mid;
+                lo = mid + 1;
+            }
+        }
+        for (int i = found - 1; i >= 0; i--) {
+            if (maxIds[i] == 0)
+                continue;
+            if (maxIds[i] < gameId)
+                break;
+            found = i;
+        }
+        return found;
+    }
+
+    /**
+     * Offset in the segment to start reading from, the indexed game before the
+     * last one at or below the id, so that games started at about the same time
+     * in a different order are covered.
+     */
+    private int indexedOffset(int s, int gameId) throws IOException {
+        Path idx = GameJournal.indexPath(dir, seqs[s]);
+        if (!Files.exists(idx))
+            return GameJournal.HEADER_SIZE;
+        ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(idx));
+        int entries = b.limit() / 8;
+        int lo = 0;
+        int hi = entries - 1;
+        int found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (b.getInt(mid * 8) <= gameId) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        if (found < 1)
+            return GameJournal.HEADER_SIZE;
+        return b.getInt((found - 1) * 8 + 4);
+    }
+
+    private ByteBuffer segment(int i) throws IOException {
+        if (segments[i] == null) {
+            try (FileChannel ch = FileChannel.open(GameJournal.segmentPath(dir, seqs[i]), StandardOpenOption.READ)) {
+                ByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                if (b.limit() < GameJournal.HEADER_SIZE || b.getInt(0) != GameJournal.MAGIC)
+                    throw new IOException("Not a journal segment: " + GameJournal.segmentPath(dir, seqs[i]));
+                segments[i] = b;
+            }
+        }
+        return segments[i];
+    }
+
+    @Override
+    public void close() {
+        // the mappings are released when they are garbage collected
+    }
+}
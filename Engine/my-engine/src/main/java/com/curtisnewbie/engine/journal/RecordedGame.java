@@ -0,0 +1,128 @@
+package com.curtisnewbie.engine.journal;
+
+import java.util.Arrays;
+
+/**
+ * A game read from a {@code GameJournal}: the board, the moves in order and the
+ * time between them.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class RecordedGame {
+
+    /** Result when the game has no end in the journal */
+    public static final int UNFINISHED = 0;
+
+    private final int gameId;
+    private final int n;
+    private final int k;
+    private final long startMillis;
+
+    private int[] cells = new int[16];
+    private int[] delays = new int[16];
+    private int moves;
+
+    private int result = UNFINISHED;
+    private int endDelay;
+
+    RecordedGame(int gameId, int n, int k, long startMillis) {
+        this.gameId = gameId;
+        this.n = n;
+        this.k = k;
+        this.startMillis = startMillis;
+    }
+
+    void add(int cell, int delayMillis) {
+        if (moves == cells.length) {
+            cells = Arrays.copyOf(cells, moves * 2);
+            delays = Arrays.copyOf(delays, moves * 2);
+        }
+        cells[moves] = cell;
+        delays[moves] = delayMillis;
+        moves++;
+    }
+
+    void end(int result, int delayMillis) {
+        this.result = result;
+        this.endDelay = delayMillis;
+    }
+
+    public int gameId() {
+        return gameId;
+    }
+
+    /**
+     * Size of the board
+     *
+     * @return N
+     */
+    public int size() {
+        return n;
+    }
+
+    /**
+     * Stones in a row to win
+     *
+     * @return K
+     */
+    public int k() {
+        return k;
+    }
+
+    /**
+     * When the game started, to the second
+     *
+     * @return epoch millis
+     */
+    public long startMillis() {
+        return startMillis;
+    }
+
+    /**
+     * Number of moves
+     *
+     * @return count
+     */
+    public int moves() {
+        return moves;
+    }
+
+    /**
+     * The i-th move, player 0 makes the even ones
+     *
+     * @param i index of the move
+     * @return {@code row * N + col}
+     */
+    public int cell(int i) {
+        return cells[i];
+    }
+
+    /**
+     * Time between the previous move (or the start) and the i-th move
+     *
+     * @param i index of the move
+     * @return milliseconds
+     */
+    public int delay(int i) {
+        return delays[i];
+    }
+
+    /**
+     * The result from the view of player 0
+     *
+     * @return e.g., {@code Protocol.RESULT_WIN}, or {@link #UNFINISHED}
+     */
+    public int result() {
+        return result;
+    }
+
+    /**
+     * Time between the last move and the end of the game
+     *
+     * @return milliseconds
+     */
+    public int endDelay() {
+        return endDelay;
+    }
+}
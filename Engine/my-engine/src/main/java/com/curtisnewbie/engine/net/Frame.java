@@ -0,0 +1,193 @@
+package com.curtisnewbie.engine.net;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A decoded frame, see {@code Protocol}.<br>
+ * <br>
+ * A {@code Frame} is meant to be reused for every frame read from a
+ * connection, the decoder copies the payload into it rather than creating a new
+ * object per frame.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class Frame {
+
+    private int type;
+
+    private int length;
+
+    private final byte[] payload = new byte[Protocol.MAX_PAYLOAD];
+
+    /**
+     * Type of the frame
+     *
+     * @return e.g., {@code Protocol.MOVE}
+     */
+    public int type() {
+        return type;
+    }
+
+    /**
+     * Length of the payload
+     *
+     * @return number of bytes
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Get a byte of the payload as an unsigned value
+     *
+     * @param i index in payload
+     * @return value from 0 to 255, or -1 if the payload is shorter than that
+     */
+    public int byteAt(int i) {
+        return i < length ? payload[i] & 0xFF : -1;
+    }
+
+    /**
+     * The cell of a {@code MOVE} frame
+     *
+     * @param cells cells of the board, which the width of the cell depends on,
+     *              see {@code Protocol.cellBytes(int)}
+     * @return {@code row * N + col}, or -1 if it's missing
+     */
+    public int cell(int cells) {
+        if (Protocol.cellBytes(cells) == 1)
+            return byteAt(0);
+        if (length < 2)
+            return -1;
+        return byteAt(0) << 8 | byteAt(1);
+    }
+
+    /**
+     * The id of the game in a {@code WATCH}, {@code JOINED} or {@code REDIRECT}
+     * frame
+     *
+     * @return id, or 0 (the latest game) if it's missing
+     */
+    public int gameId() {
+        if (length < 4)
+            return 0;
+        return (payload[0] & 0xFF) << 24 | (payload[1] & 0xFF) << 16 | (payload[2] & 0xFF) << 8 | payload[3] & 0xFF;
+    }
+
+    /**
+     * Who has taken the cell in a {@code BOARD} frame
+     *
+     * @param cell {@code row * N + col}
+     * @return 0 or 1 for the players, -1 if it's empty (or missing)
+     */
+    public int boardCell(int cell) {
+        int b = byteAt(3 + (cell >>> 2));
+        if (b < 0)
+            return -1;
+        return ((b >>> ((cell & 3) << 1)) & 3) - 1;
+    }
+
+    /**
+     * The size of the board in a {@code HELLO} frame
+     *
+     * @return N, {@code Protocol.DEFAULT_SIZE} if it's missing
+     */
+    public int boardSize() {
+        return length > 2 ? byteAt(2) : Protocol.DEFAULT_SIZE;
+    }
+
+    /**
+     * The stones in a row to win in a {@code HELLO} frame
+     *
+     * @return K, {@code Protocol.DEFAULT_SIZE} if it's missing
+     */
+    public int k() {
+        return length > 3 ? byteAt(3) : Protocol.DEFAULT_SIZE;
+    }
+
+    /**
+     * The rating of a Client in its {@code HELLO} frame
+     *
+     * @return rating, 0 if it's missing
+     */
+    public int rating() {
+        return length > 6 ? byteAt(5) << 8 | byteAt(6) : 0;
+    }
+
+    /**
+     * The id of the game that a router sent a Client for, in the Client's
+     * {@code HELLO} frame
+     *
+     * @return id, 0 if it's missing
+     */
+    public int helloGameId() {
+        if (length < 11)
+            return 0;
+        return (payload[7] & 0xFF) << 24 | (payload[8] & 0xFF) << 16 | (payload[9] & 0xFF) << 8 | payload[10] & 0xFF;
+    }
+
+    /**
+     * The port in a {@code REDIRECT} frame
+     *
+     * @return port, or -1 if it's missing
+     */
+    public int redirectPort() {
+        return length >= 6 ? byteAt(4) << 8 | byteAt(5) : -1;
+    }
+
+    /**
+     * The host in a {@code REDIRECT} frame
+     *
+     * @return host, empty if it's missing
+     */
+    public String redirectHost() {
+        return length > 6 ? new String(payload, 6, length - 6, StandardCharsets.US_ASCII) : "";
+    }
+
+    /**
+     * The port in a {@code NODE} frame
+     *
+     * @return port, or -1 if it's missing
+     */
+    public int nodePort() {
+        return length >= 3 ? byteAt(0) << 8 | byteAt(1) : -1;
+    }
+
+    /**
+     * The host in a {@code NODE} frame
+     *
+     * @return host, empty if it's missing
+     */
+    public String nodeHost() {
+        return length > 3 ? new String(payload, 3, length - 3, StandardCharsets.US_ASCII) : "";
+    }
+
+    /**
+     * The number of games of the series in a {@code HELLO} frame
+     *
+     * @return N of the best-of-N series, 1 if it's missing
+     */
+    public int seriesGames() {
+        return length > 4 ? byteAt(4) : 1;
+    }
+
+    /**
+     * The clock of each turn in a {@code HELLO} frame of a Host or server, a
+     * Client puts its rating there instead
+     *
+     * @return seconds for each move, 0 if there is no clock
+     */
+    public int turnSeconds() {
+        return length > 5 && byteAt(1) != Protocol.NO_ROLE ? byteAt(5) : 0;
+    }
+
+    byte[] payload() {
+        return payload;
+    }
+
+    void set(int type, int length) {
+        this.type = type;
+        this.length = length;
+    }
+}
@@ -0,0 +1,408 @@
+package com.curtisnewbie.engine.net;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+import com.curtisnewbie.engine.BitBoard;
+import com.curtisnewbie.engine.GameRules;
+
+/**
+ * Encodes frames into and decodes frames from a {@code ByteBuffer}, see
+ * {@code Protocol}.<br>
+ * <br>
+ * Several frames can be put into the same buffer before it is written, so that
+ * e.g., the last move and the {@code GAME_OVER} go out in one write. Neither
+ * encoding nor decoding allocates.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class FrameCodec {
+
+    /** Length of the {@code BOARD} frame of a 3x3 game, header included */
+    public static final int BOARD_3X3_LENGTH = 1 + 3 + (BitBoard.CELLS + 3) / 4;
+
+    /** Most bytes of frames a {@code MUX} carries, its payload also has the game id */
+    public static final int MAX_MUX_LENGTH = Protocol.MAX_PAYLOAD - 4;
+
+    private FrameCodec() {
+    }
+
+    /**
+     * Put the header of a frame
+     *
+     * @param dst    buffer
+     * @param type   type of the frame
+     * @param length length of the payload that follows
+     */
+    public static void putHeader(ByteBuffer dst, int type, int length) {
+        if (length < Protocol.EXTENDED_LENGTH) {
+            dst.put((byte) (length << 4 | type));
+        } else {
+            dst.put((byte) (Protocol.EXTENDED_LENGTH << 4 | type));
+            dst.putShort((short) length);
+        }
+    }
+
+    /**
+     * Put a {@code HELLO} with the version of this program
+     *
+     * @param dst  buffer
+     * @param role {@code Protocol.MOVE_FIRST}, {@code Protocol.MOVE_SECOND} or
+     *             {@code Protocol.NO_ROLE}
+     */
+    public static void putHello(ByteBuffer dst, int role) {
+        putHeader(dst, Protocol.HELLO, 2);
+        dst.put((byte) Protocol.VERSION);
+        dst.put((byte) role);
+    }
+
+    /**
+     * Put a {@code HELLO} that also tells the size of the board
+     *
+     * @param dst  buffer
+     * @param role {@code Protocol.MOVE_FIRST} or {@code Protocol.MOVE_SECOND}
+     * @param n    size of the board
+     * @param k    stones in a row to win
+     */
+    public static void putHello(ByteBuffer dst, int role, int n, int k) {
+        putHeader(dst, Protocol.HELLO, 4);
+        dst.put((byte) Protocol.VERSION);
+        dst.put((byte) role);
+        dst.put((byte) n);
+        dst.put((byte) k);
+    }
+
+    /**
+     * Put a {@code HELLO} that also tells the size of the board and the length
+     * of the series the game belongs to
+     *
+     * @param dst   buffer
+     * @param role  {@code Protocol.MOVE_FIRST} or {@code Protocol.MOVE_SECOND}
+     * @param n     size of the board
+     * @param k     stones in a row to win
+     * @param games N of the best-of-N series, up to 255
+     */
+    public static void putHello(ByteBuffer dst, int role, int n, int k, int games) {
+        putHeader(dst, Protocol.HELLO, 5);
+        dst.put((byte) Protocol.VERSION);
+        dst.put((byte) role);
+        dst.put((byte) n);
+        dst.put((byte) k);
+        dst.put((byte) games);
+    }
+
+    /**
+     * Put a {@code HELLO} that also tells the size of the board, the length of
+     * the series and the clock of each turn
+     *
+     * @param dst         buffer
+     * @param role        {@code Protocol.MOVE_FIRST} or {@code Protocol.MOVE_SECOND}
+     * @param n           size of the board
+     * @param k           stones in a row to win
+     * @param games       N of the best-of-N series, up to 255
+     * @param turnSeconds seconds for each move, up to 255, 0 for no clock
+     */
+    public static void putHello(ByteBuffer dst, int role, int n, int k, int games, int turnSeconds) {
+        putHeader(dst, Protocol.HELLO, 6);
+        dst.put((byte) Protocol.VERSION);
+        dst.put((byte) role);
+        dst.put((byte) n);
+        dst.put((byte) k);
+        dst.put((byte) games);
+        dst.put((byte) turnSeconds);
+    }
+
+    /**
+     * Put the {@code HELLO} of a Client that asks a server's lobby for a board
+     * and an opponent of about its rating
+     *
+     * @param dst    buffer
+     * @param n      size of the board, 0 for any
+     * @param k      stones in a row to win, 0 for any
+     * @param rating rating, from 0 to 65535
+     */
+    public static void putJoinHello(ByteBuffer dst, int n, int k, int rating) {
+        putHeader(dst, Protocol.HELLO, 7);
+        dst.put((byte) Protocol.VERSION);
+        dst.put((byte) Protocol.NO_ROLE);
+        dst.put((byte) n);
+        dst.put((byte) k);
+        dst.put((byte) 1);
+        dst.putShort((short) rating);
+    }
+
+    /**
+     * Put the {@code HELLO} of a Client that was sent to a server of a cluster
+     * by its router, see {@link #putJoinHello(ByteBuffer, int, int, int)}
+     *
+     * @param dst    buffer
+     * @param n      size of the board, 0 for any
+     * @param k      stones in a row to win, 0 for any
+     * @param rating rating, from 0 to 65535
+     * @param gameId id of the game in the {@code REDIRECT}
+     */
+    public static void putJoinHello(ByteBuffer dst, int n, int k, int rating, int gameId) {
+        putHeader(dst, Protocol.HELLO, 11);
+        dst.put((byte) Protocol.VERSION);
+        dst.put((byte) Protocol.NO_ROLE);
+        dst.put((byte) n);
+        dst.put((byte) k);
+        dst.put((byte) 1);
+        dst.putShort((short) rating);
+        dst.putInt(gameId);
+    }
+
+    /**
+     * Put a {@code MOVE}
+     *
+     * @param dst   buffer
+     * @param cell  {@code row * N + col}
+     * @param cells cells of the board, which the width of the cell depends on,
+     *              see {@code Protocol.cellBytes(int)}
+     */
+    public static void putMove(ByteBuffer dst, int cell, int cells) {
+        if (Protocol.cellBytes(cells) == 2) {
+            putHeader(dst, Protocol.MOVE, 2);
+            dst.putShort((short) cell);
+        } else {
+            putHeader(dst, Protocol.MOVE, 1);
+            dst.put((byte) cell);
+        }
+    }
+
+    /**
+     * Put a {@code RESIGN}
+     *
+     * @param dst buffer
+     */
+    public static void putResign(ByteBuffer dst) {
+        putHeader(dst, Protocol.RESIGN, 0);
+    }
+
+    /**
+     * Put a {@code GAME_OVER}
+     *
+     * @param dst    buffer
+     * @param result result from the receiver's view, e.g.,
+     *               {@code Protocol.RESULT_WIN}
+     */
+    public static void putGameOver(ByteBuffer dst, int result) {
+        putHeader(dst, Protocol.GAME_OVER, 1);
+        dst.put((byte) result);
+    }
+
+    /**
+     * Put a {@code HEARTBEAT}
+     *
+     * @param dst buffer
+     */
+    public static void putHeartbeat(ByteBuffer dst) {
+        putHeader(dst, Protocol.HEARTBEAT, 0);
+    }
+
+    /**
+     * Put an {@code ERROR}
+     *
+     * @param dst  buffer
+     * @param code e.g., {@code Protocol.ERROR_ILLEGAL_MOVE}
+     */
+    public static void putError(ByteBuffer dst, int code) {
+        putHeader(dst, Protocol.ERROR, 1);
+        dst.put((byte) code);
+    }
+
+    /**
+     * Put a {@code WATCH}
+     *
+     * @param dst    buffer
+     * @param gameId id of the game, 0 for the latest game
+     */
+    public static void putWatch(ByteBuffer dst, int gameId) {
+        putHeader(dst, Protocol.WATCH, 4);
+        dst.putInt(gameId);
+    }
+
+    /**
+     * Put a {@code JOINED}
+     *
+     * @param dst    buffer
+     * @param gameId id of the game the Client is paired into
+     */
+    public static void putJoined(ByteBuffer dst, int gameId) {
+        putHeader(dst, Protocol.JOINED, 4);
+        dst.putInt(gameId);
+    }
+
+    /**
+     * Put a {@code REDIRECT}
+     *
+     * @param dst    buffer
+     * @param gameId id of the game
+     * @param port   port of the server that owns it
+     * @param host   host of the server, ASCII
+     */
+    public static void putRedirect(ByteBuffer dst, int gameId, int port, byte[] host) {
+        putHeader(dst, Protocol.REDIRECT, 6 + host.length);
+        dst.putInt(gameId);
+        dst.putShort((short) port);
+        dst.put(host);
+    }
+
+    /**
+     * Put a {@code NODE}
+     *
+     * @param dst   buffer
+     * @param port  port that the server takes Clients on
+     * @param state {@code Protocol.NODE_UP} or {@code Protocol.NODE_DRAINING}
+     * @param host  host that Clients reach the server at, ASCII, empty for the
+     *              address of the connection
+     */
+    public static void putNode(ByteBuffer dst, int port, int state, byte[] host) {
+        putHeader(dst, Protocol.NODE, 3 + host.length);
+        dst.putShort((short) port);
+        dst.put((byte) state);
+        dst.put(host);
+    }
+
+    /**
+     * Put the header of a {@code MUX}, the frames it carries are put right after
+     * it by the caller
+     *
+     * @param dst    buffer
+     * @param gameId id of the game on the connection
+     * @param length total length of the frames that follow
+     * @throws IllegalArgumentException if the frames are longer than
+     *                                  {@link #MAX_MUX_LENGTH}, nothing is put
+     *                                  then
+     */
+    public static void putMuxHeader(ByteBuffer dst, int gameId, int length) {
+        if (length > MAX_MUX_LENGTH)
+            throw new IllegalArgumentException(
+                    "A MUX carries up to " + MAX_MUX_LENGTH + " bytes of frames, not " + length);
+        putHeader(dst, Protocol.MUX, 4 + length);
+        dst.putInt(gameId);
+    }
+
+    /**
+     * Put a {@code BOARD} with a snapshot of the game
+     *
+     * @param dst   buffer, with room for {@link #boardLength(GameRules)} bytes
+     * @param rules game
+     */
+    public static void putBoard(ByteBuffer dst, GameRules rules) {
+        int cells = rules.cells();
+        putHeader(dst, Protocol.BOARD, 3 + (cells + 3) / 4);
+        dst.put((byte) rules.size());
+        dst.put((byte) rules.k());
+        dst.put((byte) rules.status());
+        for (int c = 0; c < cells; c += 4) {
+            int b = 0;
+            for (int i = 0; i < 4 && c + i < cells; i++)
+                b |= (rules.cellAt(c + i) + 1) << (i << 1);
+            dst.put((byte) b);
+        }
+    }
+
+    /**
+     * Put a {@code BOARD} with a snapshot of a 3x3 game, e.g., one kept in a
+     * {@code GameTable}
+     *
+     * @param dst    buffer, with room for {@value #BOARD_3X3_LENGTH} bytes
+     * @param board  board, see {@code BitBoard}
+     * @param status status of the game
+     */
+    public static void putBoard(ByteBuffer dst, int board, int status) {
+        putHeader(dst, Protocol.BOARD, 3 + (BitBoard.CELLS + 3) / 4);
+        dst.put((byte) 3);
+        dst.put((byte) 3);
+        dst.put((byte) status);
+        int p0 = BitBoard.mask(board, 0);
+        int p1 = BitBoard.mask(board, 1);
+        for (int c = 0; c < BitBoard.CELLS; c += 4) {
+            int b = 0;
+            for (int i = 0; i < 4 && c + i < BitBoard.CELLS; i++) {
+                int bit = 1 << (c + i);
+                // 0 is empty, 1 and 2 are the players, as cellAt() + 1
+                int v = (p0 & bit) != 0 ? 1 : (p1 & bit) != 0 ? 2 : 0;
+                b |= v << (i << 1);
+            }
+            dst.put((byte) b);
+        }
+    }
+
+    /**
+     * Length of the {@code BOARD} frame of the game, header included
+     *
+     * @param rules game
+     * @return number of bytes
+     */
+    public static int boardLength(GameRules rules) {
+        int length = 3 + (rules.cells() + 3) / 4;
+        return (length < Protocol.EXTENDED_LENGTH ? 1 : 3) + length;
+    }
+
+    /**
+     * Decode the next frame if the buffer holds all of it.
+     *
+     * @param src buffer in read mode, its position is moved past the frame only
+     *            if the whole frame is decoded
+     * @param dst frame to decode into
+     * @return {@code false} if more bytes are needed
+     * @throws ProtocolException if the frame is larger than
+     *                           {@code Protocol.MAX_PAYLOAD}
+     */
+    public static boolean decode(ByteBuffer src, Frame dst) throws ProtocolException {
+        int start = src.position();
+        if (src.remaining() < 1)
+            return false;
+
+        int header = src.get(start) & 0xFF;
+        int length = header >>> 4;
+        int headerSize = 1;
+        if (length == Protocol.EXTENDED_LENGTH) {
+            if (src.remaining() < 3)
+                return false;
+            length = src.getShort(start + 1) & 0xFFFF;
+            headerSize = 3;
+        }
+        if (length > Protocol.MAX_PAYLOAD)
+            throw new ProtocolException("Frame too large: " + length);
+        if (src.remaining() < headerSize + length)
+            return false;
+
+        src.position(start + headerSize);
+        src.get(dst.payload(), 0, length);
+        dst.set(header & 0x0F, length);
+        return true;
+    }
+
+    /**
+     * Decode one of the frames carried by a {@code MUX}
+     *
+     * @param mux    the {@code MUX} frame
+     * @param offset offset in its payload, 4 for the first frame (after the id)
+     * @param dst    frame to decode into
+     * @return offset of the next frame, or -1 if there's no whole frame left
+     */
+    public static int decodeMuxed(Frame mux, int offset, Frame dst) {
+        byte[] src = mux.payload();
+        int end = mux.length();
+        if (offset >= end)
+            return -1;
+        int header = src[offset] & 0xFF;
+        int length = header >>> 4;
+        int headerSize = 1;
+        if (length == Protocol.EXTENDED_LENGTH) {
+            if (offset + 3 > end)
+                return -1;
+            length = (src[offset + 1] & 0xFF) << 8 | src[offset + 2] & 0xFF;
+            headerSize = 3;
+        }
+        if (offset + headerSize + length > end)
+            return -1;
+        System.arraycopy(src, offset + headerSize, dst.payload(), 0, length);
+        dst.set(header & 0x0F, length);
+        return offset + headerSize + length;
+    }
+}
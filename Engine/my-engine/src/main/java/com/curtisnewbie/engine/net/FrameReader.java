@@ -0,0 +1,191 @@
+package com.curtisnewbie.engine.net;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.ProtocolException;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Reads frames from a blocking {@code InputStream}, see {@code Protocol}.<br>
+ * <br>
+ * By default a frame is only taken off the stream when {@link #read(Frame)} is
+ * called. A side that stops reading for a while, e.g., while its player
+ * thinks, and has a {@code Heartbeat} that drops the peer when it's silent,
+ * should {@link #readAhead(Executor)}: the stream is then read by a task of its
+ * own, which notes every frame as it arrives, drops the heartbeats, and keeps
+ * the other frames for {@code read(Frame)} in order. The frames it keeps are
+ * reused once they are read, so nothing is allocated per frame. A peer that
+ * gets more than {@value #READ_AHEAD_FRAMES} frames ahead of the reader is
+ * flooding it: {@code read(Frame)} then fails with a {@code ProtocolException}
+ * after the frames kept so far, and the rest is read and dropped, so that the
+ * peer is still heard until the connection is closed.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class FrameReader {
+
+    /** Frames kept by the read-ahead before the peer is flooding, heartbeats aside */
+    static final int READ_AHEAD_FRAMES = 64;
+
+    /** Put after the last frame of the read-ahead, when the stream fails */
+    private static final Frame END = new Frame();
+
+    private final DataInputStream in;
+
+    /** When the last frame was read, in nanos, for a {@code Heartbeat} to look at */
+    private volatile long lastFrameAt = System.nanoTime();
+
+    /** Frames of the read-ahead, null unless it reads ahead */
+    private BlockingQueue<Frame> ahead;
+
+    /** Frames of the read-ahead that have been read, for it to reuse */
+    private Queue<Frame> free;
+
+    /** Why the read-ahead stopped, read after {@link #END} */
+    private volatile IOException failure;
+
+    /**
+     * @param in stream to read from, it should be buffered
+     */
+    public FrameReader(InputStream in) {
+        this.in = new DataInputStream(in);
+    }
+
+    /**
+     * Keep reading the stream on a task of the executor from now on, so that
+     * the peer's heartbeats are heard while nobody calls {@link #read(Frame)}.
+     * The task ends once the stream is closed.
+     *
+     * @param executor runs the task, which blocks on the stream
+     * @return this
+     */
+    public FrameReader readAhead(Executor executor) {
+        ahead = new LinkedBlockingQueue<>();
+        free = new ConcurrentLinkedQueue<>();
+        executor.execute(this::pump);
+        return this;
+    }
+
+    /**
+     * Keep reading the stream on a daemon thread from now on, see
+     * {@link #readAhead(Executor)}
+     *
+     * @param threadName name of the thread
+     * @return this
+     */
+    public FrameReader readAhead(String threadName) {
+        return readAhead(task -> {
+            Thread t = new Thread(task, threadName);
+            t.setDaemon(true);
+            t.start();
+        });
+    }
+
+    /**
+     * Read the next frame, blocks until the whole frame is read.
+     *
+     * @param dst frame to read into
+     * @throws EOFException      if the stream is closed
+     * @throws ProtocolException if the frame is larger than
+     *                           {@code Protocol.MAX_PAYLOAD}, or the peer
+     *                           floods the read-ahead
+     * @throws IOException       if the connection is lost
+     */
+    public void read(Frame dst) throws IOException {
+        if (ahead == null) {
+            readFrame(dst);
+            return;
+        }
+        Frame f;
+        try {
+            f = ahead.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        if (f == END) {
+            // and for every read after this one
+            ahead.add(END);
+            throw failure;
+        }
+        System.arraycopy(f.payload(), 0, dst.payload(), 0, f.length());
+        dst.set(f.type(), f.length());
+        free.add(f);
+    }
+
+    /**
+     * When the last frame was read, or the reader was created
+     *
+     * @return {@code System.nanoTime()} of the last frame
+     */
+    public long lastFrameAt() {
+        return lastFrameAt;
+    }
+
+    private void readFrame(Frame dst) throws IOException {
+        int header = in.read();
+        if (header < 0)
+            throw new EOFException();
+        int length = header >>> 4;
+        if (length == Protocol.EXTENDED_LENGTH)
+            length = in.readUnsignedShort();
+        if (length > Protocol.MAX_PAYLOAD)
+            throw new ProtocolException("Frame too large: " + length);
+        in.readFully(dst.payload(), 0, length);
+        dst.set(header & 0x0F, length);
+        lastFrameAt = System.nanoTime();
+    }
+
+    /** The read-ahead, until the stream fails */
+    private void pump() {
+        // frames created so far, each one is either kept, free or being read into
+        int frames = 0;
+        Frame frame = null;
+        try {
+            while (true) {
+                if (frame == null)
+                    frame = free.poll();
+                if (frame == null) {
+                    if (frames == READ_AHEAD_FRAMES) {
+                        flooded();
+                        return;
+                    }
+                    frame = new Frame();
+                    frames++;
+                }
+                readFrame(frame);
+                if (frame.type() != Protocol.HEARTBEAT) {
+                    ahead.add(frame);
+                    frame = null;
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+            ahead.add(END);
+        }
+    }
+
+    /**
+     * The peer is too far ahead of the reader, which fails once it has read
+     * what is kept, the rest is dropped until the stream is closed
+     */
+    private void flooded() {
+        failure = new ProtocolException("More than " + READ_AHEAD_FRAMES + " frames ahead of the reader");
+        ahead.add(END);
+        Frame dropped = new Frame();
+        try {
+            while (true)
+                readFrame(dropped);
+        } catch (IOException e) {
+            // closed, the reader fails with the flood already
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.curtisnewbie.engine.net;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes frames to a blocking {@code OutputStream}, see {@code Protocol}.<br>
+ * <br>
+ * Frames are collected in a buffer and only written when {@link #flush()} is
+ * called, so that several frames go out in a single write. The methods are
+ * synchronized, more than one thread may write frames to the same connection.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class FrameWriter {
+
+    /** Large enough for the largest frame */
+    private final ByteBuffer buf = ByteBuffer.allocate(Protocol.MAX_PAYLOAD + 3);
+
+    private final OutputStream out;
+
+    /**
+     * @param out stream to write to, it doesn't need to be buffered
+     */
+    public FrameWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /** Collect a frame, see {@link FrameCodec#putHello} */
+    public synchronized void hello(int role) throws IOException {
+        ensure(3);
+        FrameCodec.putHello(buf, role);
+    }
+
+    /** Collect a frame, see {@link FrameCodec#putHello} */
+    public synchronized void hello(int role, int n, int k) throws IOException {
+        ensure(5);
+        FrameCodec.putHello(buf, role, n, k);
+    }
+
+    /** Collect a frame, see {@link FrameCodec#putHello} */
+    public synchronized void hello(int role, int n, int k, int games) throws IOException {
+        ensure(6);
+        FrameCodec.putHello(buf, role, n, k, games);
+    }
+
+    /** Collect a frame, see {@link FrameCodec#putHello} */
+    public synchronized void hello(int role, int n, int k, int games, int turnSeconds) throws IOException {
+        ensure(7);
+        FrameCodec.putHello(buf, role, n, k, games, turnSeconds);
+    }
+
+    /** Collect a frame, see {@link FrameCodec#putJoinHello} */
+    public synchronized void joinHello(int n, int k, int rating) throws IOException {
+        ensure(8);
+        FrameCodec.putJoinHello(buf, n, k, rating);
+    }
+
+    /** Collect a frame, see {@link FrameCodec#putJoinHello} */
+    public synchronized void joinHello(int n, int k, int rating, int gameId) throws IOException {
+        ensure(12);
+        FrameCodec.putJoinHello(buf, n, k, rating, gameId);
+    }
+
+    /** Collect a frame, see {@link FrameCodec#putNode} */
+    public synchronized void node(int port, int state, byte[] host) throws IOException {
+        ensure(host.length + 6);
+        FrameCodec.putNode(buf, port, state, host);
+    }
+
+    /**
+     * Collect a {@code MUX} that carries the frames, see
+     * {@link FrameCodec#putMuxHeader}
+     *
+     * @param gameId id of the game on the connection
+     * @param frames frames of the game, from its position to its limit
+     * @throws IllegalArgumentException if the frames are longer than
+     *                                  {@code FrameCodec.MAX_MUX_LENGTH},
+     *                                  nothing is collected then
+     */
+    public synchronized void mux(int gameId, ByteBuffer frames) throws IOException {
+        if (frames.remaining() > FrameCodec.MAX_MUX_LENGTH)
+            throw new IllegalArgumentException(
+                    "A MUX carries up to " + FrameCodec.MAX_MUX_LENGTH + " bytes of frames, not " + frames.remaining());
+        ensure(frames.remaining() + 7);
+        FrameCodec.putMuxHeader(buf, gameId, frames.remaining());
+        buf.put(frames);
+    }
+
+    /** Collect a frame, see {@link FrameCodec#putMove} */
+    public synchronized void move(int cell, int cells) throws IOException {
+        ensure(3);
+        FrameCodec.putMove(buf, cell, cells);
+    }
+
+    /** Collect a frame, see {@link FrameCodec#putResign} */
+    public synchronized void resign() throws IOException {
+        ensure(1);
+        FrameCodec.putResign(buf);
+    }
+
+    /** Collect a frame, see {@link FrameCodec#putGameOver} */
+    public synchronized void gameOver(int result) throws IOException {
+        ensure(2);
+        FrameCodec.putGameOver(buf, result);
+    }
+
+    /** Collect a frame, see {@link FrameCodec#putHeartbeat} */
+    public synchronized void heartbeat() throws IOException {
+        ensure(1);
+        FrameCodec.putHeartbeat(buf);
+    }
+
+    /** Collect a frame, see {@link FrameCodec#putError} */
+    public synchronized void error(int code) throws IOException {
+        ensure(2);
+        FrameCodec.putError(buf, code);
+    }
+
+    /** Collect a frame, see {@link FrameCodec#putWatch} */
+    public synchronized void watch(int gameId) throws IOException {
+        ensure(5);
+        FrameCodec.putWatch(buf, gameId);
+    }
+
+    /**
+     * Write all the frames collected so far in one write
+     *
+     * @throws IOException if the connection is lost
+     */
+    public synchronized void flush() throws IOException {
+        if (buf.position() > 0) {
+            out.write(buf.array(), 0, buf.position());
+            buf.clear();
+        }
+        out.flush();
+    }
+
+    /** Flush if there isn't enough room for n more bytes */
+    private void ensure(int n) throws IOException {
+        if (buf.remaining() < n)
+            flush();
+    }
+}
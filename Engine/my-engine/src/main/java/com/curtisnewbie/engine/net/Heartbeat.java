@@ -0,0 +1,180 @@
+package com.curtisnewbie.engine.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.curtisnewbie.engine.util.TimerWheel;
+
+/**
+ * Heartbeats and idle eviction of a blocking connection, e.g., the one between
+ * Host and Client.<br>
+ * <br>
+ * Every {@code Protocol.HEARTBEAT_INTERVAL_MILLIS} a timer of the
+ * {@code TimerWheel} sends a {@code HEARTBEAT}, and, once the peer is known to
+ * send heartbeats too (see {@link #peerVersion(int)}), closes the connection
+ * when nothing has been read for {@code Protocol.IDLE_TIMEOUT_MILLIS}, unless
+ * it's given other intervals, e.g., by a test. Closing it is what wakes up the
+ * thread that blocks on reading it, which then gets an {@code IOException} and
+ * may ask {@link #isEvicted()} why.<br>
+ * <br>
+ * The peer is only heard when its frames are read, so a side that doesn't read
+ * all the time, e.g., while its player thinks, needs a {@code FrameReader} that
+ * reads ahead (see {@code FrameReader.readAhead()}).<br>
+ * <br>
+ * A heartbeat is written on the thread of the {@code TimerWheel}, unless it's
+ * {@link #sendOn(Executor) sent on} an executor, which a wheel that serves many
+ * connections should do, so that a peer that doesn't take its bytes only holds
+ * up its own heartbeats.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class Heartbeat {
+
+    private final TimerWheel timers;
+    private final FrameReader in;
+    private final FrameWriter out;
+    private final Closeable connection;
+
+    /** Between two heartbeats */
+    private final long intervalMillis;
+
+    /** Silence after which the peer is dropped */
+    private final long idleMillis;
+
+    /** Whether the peer is dropped when it's silent */
+    private volatile boolean evicting;
+
+    private volatile boolean evicted;
+
+    private volatile boolean stopped;
+
+    private volatile TimerWheel.Timeout timeout;
+
+    /** Writes the heartbeats, null for the thread of the timers */
+    private Executor sender;
+
+    /** Whether a heartbeat is being written by the sender */
+    private final AtomicBoolean sending = new AtomicBoolean();
+
+    /**
+     * @param timers     runs the timer
+     * @param in         frames from the peer
+     * @param out        frames to the peer
+     * @param connection closed when the peer is silent, e.g., the socket
+     */
+    public Heartbeat(TimerWheel timers, FrameReader in, FrameWriter out, Closeable connection) {
+        this(timers, in, out, connection, Protocol.HEARTBEAT_INTERVAL_MILLIS, Protocol.IDLE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param timers         runs the timer
+     * @param in             frames from the peer
+     * @param out            frames to the peer
+     * @param connection     closed when the peer is silent, e.g., the socket
+     * @param intervalMillis between two heartbeats
+     * @param idleMillis     silence after which the peer is dropped
+     */
+    public Heartbeat(TimerWheel timers, FrameReader in, FrameWriter out, Closeable connection, long intervalMillis,
+            long idleMillis) {
+        this.timers = timers;
+        this.in = in;
+        this.out = out;
+        this.connection = connection;
+        this.intervalMillis = intervalMillis;
+        this.idleMillis = idleMillis;
+    }
+
+    /**
+     * Start sending heartbeats
+     *
+     * @return this
+     */
+    public Heartbeat start() {
+        timeout = timers.schedule(intervalMillis, this::beat);
+        return this;
+    }
+
+    /**
+     * Write the heartbeats on the executor rather than on the thread of the
+     * timers, a heartbeat is skipped while the last one is still being written.
+     * Must be called before {@link #start()}.
+     *
+     * @param executor writes the heartbeats, it may block
+     * @return this
+     */
+    public Heartbeat sendOn(Executor executor) {
+        this.sender = executor;
+        return this;
+    }
+
+    /**
+     * Tell the version of the peer, a peer that sends heartbeats is dropped
+     * when it's silent for too long
+     *
+     * @param version version in the peer's {@code HELLO}
+     */
+    public void peerVersion(int version) {
+        evicting = version >= Protocol.VERSION_HEARTBEAT;
+    }
+
+    /**
+     * Whether the connection was closed because the peer was silent
+     *
+     * @return {@code true} if it's evicted
+     */
+    public boolean isEvicted() {
+        return evicted;
+    }
+
+    /** Stop sending heartbeats, e.g., the connection is closed */
+    public void stop() {
+        stopped = true;
+        TimerWheel.Timeout t = timeout;
+        if (t != null)
+            t.cancel();
+    }
+
+    private void beat() {
+        if (stopped)
+            return;
+        long silent = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - in.lastFrameAt());
+        if (evicting && silent >= idleMillis) {
+            System.out.println("Nothing heard from the peer for " + silent + " ms, closing the connection");
+            evicted = true;
+            try {
+                connection.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+        if (sender == null) {
+            if (!send())
+                return;
+        } else if (sending.compareAndSet(false, true)) {
+            sender.execute(() -> {
+                try {
+                    send();
+                } finally {
+                    sending.set(false);
+                }
+            });
+        }
+        timeout = timers.schedule(intervalMillis, this::beat);
+    }
+
+    /** Write a heartbeat, false if the connection is lost (the reader finds out) */
+    private boolean send() {
+        try {
+            out.heartbeat();
+            out.flush();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.curtisnewbie.engine.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A connection opened by a {@code Transport}, as a pair of blocking streams
+ * that a {@code FrameReader} and a {@code FrameWriter} are put on.<br>
+ * <br>
+ * One thread reads while another one writes, e.g., the game loop and the
+ * {@code Heartbeat}. Closing the link wakes up a thread blocked on reading it,
+ * which then sees the end of the stream or an {@code IOException}.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public interface Link extends Closeable {
+
+    /**
+     * Bytes from the peer, not buffered
+     *
+     * @return stream
+     */
+    InputStream in();
+
+    /**
+     * Bytes to the peer, not buffered
+     *
+     * @return stream
+     */
+    OutputStream out();
+
+    /**
+     * Stop reading from the peer, a thread blocked on reading sees the end of
+     * the stream, while frames can still be written
+     *
+     * @throws IOException if the link is closed
+     */
+    void shutdownInput() throws IOException;
+
+    /**
+     * Describe the peer, e.g., its address
+     *
+     * @return description
+     */
+    String peer();
+}
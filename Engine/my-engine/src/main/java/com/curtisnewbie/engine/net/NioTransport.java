@@ -0,0 +1,135 @@
+package com.curtisnewbie.engine.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * The "nio" {@code Transport}, a {@code SocketChannel} in blocking mode.<br>
+ * <br>
+ * Each direction has a direct buffer of its own that the bytes are copied
+ * through, so the channel neither allocates nor copies into a temporary direct
+ * buffer per call, and the reading and the writing thread never wait for each
+ * other (unlike the streams of {@code Channels}, which share one lock).
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class NioTransport implements Transport {
+
+    /** Bytes a single read or write of the channel moves at most */
+    private static final int BUFFER_SIZE = 8192;
+
+    @Override
+    public Link accept(int port) throws IOException {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            server.bind(new InetSocketAddress(port));
+            return new ChannelLink(server.accept());
+        }
+    }
+
+    @Override
+    public Link connect(String host, int port) throws IOException {
+        return new ChannelLink(SocketChannel.open(new InetSocketAddress(host, port)));
+    }
+
+    @Override
+    public String toString() {
+        return "nio";
+    }
+
+    private static final class ChannelLink implements Link {
+
+        private final SocketChannel channel;
+
+        private final InputStream in = new InputStream() {
+
+            /** Only touched by the reading thread */
+            private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+            @Override
+            public int read() throws IOException {
+                buf.clear().limit(1);
+                int n = channel.read(buf);
+                return n <= 0 ? -1 : buf.get(0) & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0)
+                    return 0;
+                buf.clear().limit(Math.min(len, BUFFER_SIZE));
+                int n = channel.read(buf);
+                if (n > 0)
+                    buf.flip().get(b, off, n);
+                return n;
+            }
+        };
+
+        private final OutputStream out = new OutputStream() {
+
+            /** Only touched by one writing thread at a time, see {@code FrameWriter} */
+            private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+            @Override
+            public void write(int b) throws IOException {
+                buf.clear();
+                buf.put((byte) b).flip();
+                while (buf.hasRemaining())
+                    channel.write(buf);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                while (len > 0) {
+                    int n = Math.min(len, BUFFER_SIZE);
+                    buf.clear();
+                    buf.put(b, off, n).flip();
+                    while (buf.hasRemaining())
+                        channel.write(buf);
+                    off += n;
+                    len -= n;
+                }
+            }
+        };
+
+        private ChannelLink(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public InputStream in() {
+            return in;
+        }
+
+        @Override
+        public OutputStream out() {
+            return out;
+        }
+
+        @Override
+        public void shutdownInput() throws IOException {
+            channel.shutdownInput();
+        }
+
+        @Override
+        public String peer() {
+            try {
+                return ((InetSocketAddress) channel.getRemoteAddress()).getAddress().getHostAddress();
+            } catch (IOException e) {
+                return "closed";
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
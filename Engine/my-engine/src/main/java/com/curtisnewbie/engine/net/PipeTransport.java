@@ -0,0 +1,150 @@
+package com.curtisnewbie.engine.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.BindException;
+import java.net.ConnectException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The "pipe" {@code Transport}, for two sides in the same JVM.<br>
+ * <br>
+ * A link is two {@code RingPipe}s, one per direction, so a frame is copied into
+ * a ring by one side and out of it by the other, without a lock or a system
+ * call. The ports that are waited on are kept in a map shared by all instances,
+ * and the side that connects hands the other end of the new link to the one
+ * that waits.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class PipeTransport implements Transport {
+
+    /** Bytes in flight per direction, before the writer has to wait */
+    private static final int CAPACITY = 1 << 16;
+
+    /** How long to wait for the side on the port to take the link */
+    private static final long HANDOFF_MILLIS = 1000;
+
+    /** Sides waiting for a peer, by port */
+    private static final ConcurrentMap<Integer, SynchronousQueue<Link>> LISTENERS = new ConcurrentHashMap<>();
+
+    @Override
+    public Link accept(int port) throws IOException {
+        SynchronousQueue<Link> handoff = new SynchronousQueue<>();
+        if (LISTENERS.putIfAbsent(port, handoff) != null)
+            throw new BindException("Pipe port " + port + " is already in use");
+        try {
+            return handoff.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting on pipe port " + port);
+        } finally {
+            LISTENERS.remove(port, handoff);
+        }
+    }
+
+    @Override
+    public Link connect(String host, int port) throws IOException {
+        SynchronousQueue<Link> handoff = LISTENERS.get(port);
+        if (handoff == null)
+            throw new ConnectException("Nothing waits on pipe port " + port);
+        RingPipe up = new RingPipe(CAPACITY);
+        RingPipe down = new RingPipe(CAPACITY);
+        try {
+            if (!handoff.offer(new PipeLink(up, down, "pipe:" + port), HANDOFF_MILLIS, TimeUnit.MILLISECONDS))
+                throw new ConnectException("Nothing took the link on pipe port " + port);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while connecting to pipe port " + port);
+        }
+        return new PipeLink(down, up, "pipe:" + port);
+    }
+
+    @Override
+    public String toString() {
+        return "pipe";
+    }
+
+    private static final class PipeLink implements Link {
+
+        private final RingPipe from;
+        private final RingPipe to;
+        private final String peer;
+
+        private final InputStream in = new InputStream() {
+
+            /** For the odd single byte, only touched by the reading thread */
+            private final byte[] one = new byte[1];
+
+            @Override
+            public int read() {
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                return from.read(b, off, len);
+            }
+        };
+
+        private final OutputStream out = new OutputStream() {
+
+            /** For the odd single byte, only touched by one writing thread at a time */
+            private final byte[] one = new byte[1];
+
+            @Override
+            public void write(int b) throws IOException {
+                one[0] = (byte) b;
+                to.write(one, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                to.write(b, off, len);
+            }
+        };
+
+        /**
+         * @param from bytes from the peer
+         * @param to   bytes to the peer
+         * @param peer description of the peer
+         */
+        private PipeLink(RingPipe from, RingPipe to, String peer) {
+            this.from = from;
+            this.to = to;
+            this.peer = peer;
+        }
+
+        @Override
+        public InputStream in() {
+            return in;
+        }
+
+        @Override
+        public OutputStream out() {
+            return out;
+        }
+
+        @Override
+        public void shutdownInput() {
+            from.close();
+        }
+
+        @Override
+        public String peer() {
+            return peer;
+        }
+
+        @Override
+        public void close() {
+            from.close();
+            to.close();
+        }
+    }
+}
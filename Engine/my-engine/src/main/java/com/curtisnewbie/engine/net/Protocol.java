@@ -0,0 +1,282 @@
+package com.curtisnewbie.engine.net;
+
+import com.curtisnewbie.engine.GameRules;
+
+/**
+ * Constants of the wire protocol spoken between Host (or server) and
+ * Client.<br>
+ * <br>
+ * Every message is a frame that starts with a 1-byte header: the low 4 bits are
+ * the type of the message and the high 4 bits are the length of the payload
+ * that follows (0 to 14 bytes). A length of 15 means that the real length
+ * follows the header as an unsigned 2-byte big-endian number. A move is thus 2
+ * bytes on the wire, the header and the cell ({@code row * N + col}), or 3 bytes
+ * on boards larger than 256 cells.<br>
+ * <br>
+ * Both sides start by sending a {@link #HELLO} with their protocol version. The
+ * side that decides the roles also sends the size of the board (N) and the
+ * stones in a row to win (K), which are 3 and 3 when they are missing.
+ * Since every frame carries its own length, a receiver skips frames of unknown
+ * types and ignores payload bytes it doesn't know about, so that new messages
+ * and fields can be added without breaking older peers.<br>
+ * <br>
+ * When both sides speak {@link #VERSION_SERIES} or later, the connection
+ * outlives the game: once a game is won or drawn, the side that decides the
+ * roles sends a new {@link #HELLO} (usually with the roles swapped) for the
+ * next game of the series, or closes the connection when the series is over.<br>
+ * <br>
+ * From {@link #VERSION_HEARTBEAT} on, both sides send a {@link #HEARTBEAT}
+ * every {@link #HEARTBEAT_INTERVAL_MILLIS}, so that a peer that stalls is
+ * noticed and dropped instead of being waited for forever. The side that
+ * decides the roles may also give each move a clock, a player that runs out of
+ * time loses the game ({@link #RESULT_TIMEOUT_LOSS}).<br>
+ * <br>
+ * The Ultimate variant is a {@link #HELLO} with N = 9 and K =
+ * {@code GameRules.ULTIMATE_K}, which only peers of {@link #VERSION_ULTIMATE}
+ * or later accept, older ones would take it for a board they don't know.<br>
+ * <br>
+ * A cluster of servers is reached through its router, which answers the
+ * {@link #HELLO} of a Client of {@link #VERSION_CLUSTER} or later with a
+ * {@link #REDIRECT} to the server that owns the Client's game. The Client
+ * connects there and says {@link #HELLO} again with the id of the game, which
+ * the server pairs it by. The servers tell the router that they are up, or
+ * leaving, with a {@link #NODE}.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class Protocol {
+
+    /** Version of the protocol spoken by this program */
+    public static final int VERSION = 6;
+
+    /** Lowest version that knows about boards other than 3 x 3 */
+    public static final int VERSION_BOARD_SIZE = 2;
+
+    /** Lowest version that plays a series of games over one connection */
+    public static final int VERSION_SERIES = 3;
+
+    /**
+     * Lowest version that sends heartbeats while it's idle, a peer of this
+     * version that stays silent for {@link #IDLE_TIMEOUT_MILLIS} is dropped
+     */
+    public static final int VERSION_HEARTBEAT = 4;
+
+    /** Lowest version that plays the Ultimate variant */
+    public static final int VERSION_ULTIMATE = 5;
+
+    /** Lowest version that follows the {@link #REDIRECT} of a router */
+    public static final int VERSION_CLUSTER = 6;
+
+    /** Board size and K when a {@link #HELLO} doesn't say */
+    public static final int DEFAULT_SIZE = 3;
+
+    /** Largest payload accepted */
+    public static final int MAX_PAYLOAD = 1024;
+
+    /** Payload length in the header that means a 2-byte length follows */
+    public static final int EXTENDED_LENGTH = 15;
+
+    /** How often both sides send a {@link #HEARTBEAT} */
+    public static final long HEARTBEAT_INTERVAL_MILLIS = 5000;
+
+    /** A peer that sends nothing for this long, not even heartbeats, is dropped */
+    public static final long IDLE_TIMEOUT_MILLIS = 3 * HEARTBEAT_INTERVAL_MILLIS;
+
+    // ---------------------------- types of frames
+
+    /**
+     * Payload: version, role ({@link #MOVE_FIRST}, {@link #MOVE_SECOND}),
+     * optionally followed by N, K, the number of games of the series (N of
+     * best-of-N, 1 when missing) and the seconds for each move (0 or missing
+     * for no clock). A Client may send the board it asks for (0
+     * for any), 1 and its rating (2 bytes big-endian) in the same places, which
+     * the lobby of a server pairs Clients by, followed by the id of the game
+     * that a router sent it to the server for (4 bytes big-endian, 0 or missing
+     * for none).
+     */
+    public static final int HELLO = 0;
+
+    /**
+     * Payload: cell, 1 byte, or 2 bytes big-endian on boards larger than 256
+     * cells, see {@link #cellBytes(int)}
+     */
+    public static final int MOVE = 1;
+
+    /** No payload, the sender gives up */
+    public static final int RESIGN = 2;
+
+    /** Payload: result ({@link #RESULT_WIN} etc.) from receiver's view */
+    public static final int GAME_OVER = 3;
+
+    /** No payload, keeps the connection alive */
+    public static final int HEARTBEAT = 4;
+
+    /** Payload: error code ({@link #ERROR_ILLEGAL_MOVE} etc.) */
+    public static final int ERROR = 5;
+
+    /**
+     * Sent by a spectator, payload: id of the game to watch (4 bytes
+     * big-endian), 0 for the latest game
+     */
+    public static final int WATCH = 6;
+
+    /**
+     * Snapshot of a board sent to spectators, payload: N, K, status of the
+     * {@code GameRules}, then 2 bits per cell, 4 cells per byte from the low bits
+     * up (0 empty, 1 player 0, 2 player 1)
+     */
+    public static final int BOARD = 7;
+
+    /**
+     * Sent by a server when a Client is paired with an opponent, just before
+     * the {@link #HELLO}, payload: id of the game (4 bytes big-endian), which
+     * spectators may {@link #WATCH}
+     */
+    public static final int JOINED = 8;
+
+    /**
+     * Carries frames of one of the many games played over a single connection,
+     * payload: id of the game on the connection (4 bytes big-endian, picked by
+     * the Client, not 0), followed by whole frames of that game
+     */
+    public static final int MUX = 9;
+
+    /**
+     * Sent by the router of a cluster in answer to a Client's {@link #HELLO},
+     * payload: id of the game (4 bytes big-endian), port of the server that
+     * owns it (2 bytes big-endian), and its host (the rest, ASCII)
+     */
+    public static final int REDIRECT = 10;
+
+    /**
+     * Set in the ids of the games that a server gives out itself, and never in
+     * those that a router gives out, so that the two can't be the same game
+     */
+    public static final int LOCAL_GAME_ID = 0x8000_0000;
+
+    /**
+     * Sent by a server to the router of its cluster, payload: port that it
+     * takes Clients on (2 bytes big-endian), {@link #NODE_UP} or
+     * {@link #NODE_DRAINING}, optionally followed by the host that Clients
+     * reach it at (ASCII), the address of its connection to the router when
+     * it's missing
+     */
+    public static final int NODE = 11;
+
+    // ---------------------------- roles in HELLO
+
+    /** Sent by a Client, which doesn't decide who moves first */
+    public static final int NO_ROLE = 0;
+
+    /** The receiver moves first */
+    public static final int MOVE_FIRST = 1;
+
+    /** The receiver moves second */
+    public static final int MOVE_SECOND = 2;
+
+    // ---------------------------- states in NODE
+
+    /** The server takes new games */
+    public static final int NODE_UP = 1;
+
+    /** The server finishes the games it has, but takes no new ones */
+    public static final int NODE_DRAINING = 2;
+
+    // ---------------------------- results in GAME_OVER
+
+    public static final int RESULT_WIN = 1;
+
+    public static final int RESULT_LOSS = 2;
+
+    public static final int RESULT_DRAW = 3;
+
+    /** The game is ended before it finishes, e.g., the opponent is disconnected */
+    public static final int RESULT_ABORTED = 4;
+
+    /** The opponent ran out of time for its move */
+    public static final int RESULT_TIMEOUT_WIN = 5;
+
+    /** The receiver ran out of time for its move */
+    public static final int RESULT_TIMEOUT_LOSS = 6;
+
+    // ---------------------------- codes in ERROR
+
+    public static final int ERROR_ILLEGAL_MOVE = 1;
+
+    public static final int ERROR_UNSUPPORTED_VERSION = 2;
+
+    public static final int ERROR_MALFORMED_FRAME = 3;
+
+    public static final int ERROR_NO_SUCH_GAME = 4;
+
+    /** Sent by a router that has no server to send the Client to */
+    public static final int ERROR_NO_SERVER = 5;
+
+    private Protocol() {
+    }
+
+    /**
+     * The result of a finished game from the view of player 0
+     *
+     * @param status status of the {@code GameRules}
+     * @return {@link #RESULT_WIN}, {@link #RESULT_LOSS} or {@link #RESULT_DRAW}
+     */
+    public static int resultOf(int status) {
+        switch (status) {
+        case GameRules.PLAYER_0_WON:
+            return RESULT_WIN;
+        case GameRules.PLAYER_1_WON:
+            return RESULT_LOSS;
+        case GameRules.DRAW:
+            return RESULT_DRAW;
+        default:
+            return RESULT_ABORTED;
+        }
+    }
+
+    /**
+     * Bytes of the cell in a {@link #MOVE}, which depends on the board, never
+     * on the cell, so that both sides know it from the {@link #HELLO}
+     *
+     * @param cells cells of the board, N * N
+     * @return 1, or 2 on boards larger than 256 cells
+     */
+    public static int cellBytes(int cells) {
+        return cells > 256 ? 2 : 1;
+    }
+
+    /**
+     * Whether a peer that speaks the version can play on the board
+     *
+     * @param version version in the peer's {@link #HELLO}
+     * @param n       size of the board
+     * @param k       stones in a row to win
+     * @return {@code false} if the version is unknown, or too old for the board
+     */
+    public static boolean supports(int version, int n, int k) {
+        if (version < 1)
+            return false;
+        if (k == GameRules.ULTIMATE_K)
+            return version >= VERSION_ULTIMATE;
+        return version >= VERSION_BOARD_SIZE || (n == DEFAULT_SIZE && k == DEFAULT_SIZE);
+    }
+
+    /**
+     * The same result from the view of the other player
+     *
+     * @param result result
+     * @return result of the other player
+     */
+    public static int opposite(int result) {
+        if (result == RESULT_WIN)
+            return RESULT_LOSS;
+        if (result == RESULT_LOSS)
+            return RESULT_WIN;
+        if (result == RESULT_TIMEOUT_WIN)
+            return RESULT_TIMEOUT_LOSS;
+        if (result == RESULT_TIMEOUT_LOSS)
+            return RESULT_TIMEOUT_WIN;
+        return result;
+    }
+}
@@ -0,0 +1,148 @@
+package com.curtisnewbie.engine.net;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One direction of a "pipe" {@code Link}: a ring of bytes for a single writer
+ * and a single reader, without locks.<br>
+ * <br>
+ * The writer copies bytes into the ring and then moves {@code tail}, the
+ * reader copies them out and then moves {@code head}; each position is only
+ * written by its own side, and the volatile store of it is what hands the
+ * bytes (or the free room) over to the other side. A side that finds nothing
+ * to do spins for a while, as the other side is usually just about to write
+ * (on one core it yields instead, to let the other side run), and then parks
+ * until it's unparked by the other side or the pipe is closed. More than one
+ * thread may write as long as they take turns, as the synchronized
+ * {@code FrameWriter} does.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+final class RingPipe {
+
+    /** Times to check again before yielding, none on a single core */
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 256 : 0;
+
+    /** Times to check again before parking */
+    private static final int YIELDS = SPINS + 8;
+
+    private final byte[] ring;
+
+    private final int mask;
+
+    /** Next position to read, only written by the reader */
+    private volatile long head;
+
+    /** Next position to write, only written by the writer */
+    private volatile long tail;
+
+    private volatile boolean closed;
+
+    /** Reader or writer that is parked (or about to be), null when it's not */
+    private volatile Thread parkedReader;
+    private volatile Thread parkedWriter;
+
+    /**
+     * @param capacity number of bytes, rounded up to a power of two
+     */
+    RingPipe(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.ring = new byte[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Read at least one byte, blocks until there is one
+     *
+     * @return number of bytes read, or -1 if the pipe is closed and there's
+     *         nothing left
+     */
+    int read(byte[] b, int off, int len) {
+        if (len == 0)
+            return 0;
+        long h = head;
+        long t = tail;
+        for (int spins = 0; t == h; spins++) {
+            if (closed) {
+                // the last bytes may have come in just before it's closed
+                t = tail;
+                if (t == h)
+                    return -1;
+                break;
+            }
+            if (spins < SPINS) {
+                Thread.onSpinWait();
+            } else if (spins < YIELDS) {
+                Thread.yield();
+            } else {
+                parkedReader = Thread.currentThread();
+                // the writer looks at parkedReader after it moves tail, one of us sees the other
+                if (tail == h && !closed)
+                    LockSupport.park(this);
+                parkedReader = null;
+            }
+            t = tail;
+        }
+        int n = (int) Math.min(len, t - h);
+        int from = (int) h & mask;
+        int first = Math.min(n, ring.length - from);
+        System.arraycopy(ring, from, b, off, first);
+        System.arraycopy(ring, 0, b, off + first, n - first);
+        head = h + n;
+        wake(parkedWriter);
+        return n;
+    }
+
+    /**
+     * Write all the bytes, blocks while the ring is full
+     *
+     * @throws IOException if the pipe is closed
+     */
+    void write(byte[] b, int off, int len) throws IOException {
+        long t = tail;
+        while (len > 0) {
+            long h = head;
+            for (int spins = 0; t - h == ring.length; spins++) {
+                if (closed)
+                    throw new IOException("Pipe closed");
+                if (spins < SPINS) {
+                    Thread.onSpinWait();
+                } else if (spins < YIELDS) {
+                    Thread.yield();
+                } else {
+                    parkedWriter = Thread.currentThread();
+                    if (head == h && !closed)
+                        LockSupport.park(this);
+                    parkedWriter = null;
+                }
+                h = head;
+            }
+            if (closed)
+                throw new IOException("Pipe closed");
+            int n = (int) Math.min(len, ring.length - (t - h));
+            int to = (int) t & mask;
+            int first = Math.min(n, ring.length - to);
+            System.arraycopy(b, off, ring, to, first);
+            System.arraycopy(b, off + first, ring, 0, n - first);
+            t += n;
+            tail = t;
+            wake(parkedReader);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /** Close the pipe, the reader reads what's left and then sees the end */
+    void close() {
+        closed = true;
+        wake(parkedReader);
+        wake(parkedWriter);
+    }
+
+    private static void wake(Thread t) {
+        if (t != null)
+            LockSupport.unpark(t);
+    }
+}
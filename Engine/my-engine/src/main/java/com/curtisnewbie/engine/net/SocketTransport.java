@@ -0,0 +1,71 @@
+package com.curtisnewbie.engine.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * The "tcp" {@code Transport}, a blocking {@code java.net.Socket}
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class SocketTransport implements Transport {
+
+    @Override
+    public Link accept(int port) throws IOException {
+        try (ServerSocket server = new ServerSocket(port)) {
+            return new SocketLink(server.accept());
+        }
+    }
+
+    @Override
+    public Link connect(String host, int port) throws IOException {
+        return new SocketLink(new Socket(host, port));
+    }
+
+    @Override
+    public String toString() {
+        return "tcp";
+    }
+
+    private static final class SocketLink implements Link {
+
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+
+        private SocketLink(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = socket.getInputStream();
+            this.out = socket.getOutputStream();
+        }
+
+        @Override
+        public InputStream in() {
+            return in;
+        }
+
+        @Override
+        public OutputStream out() {
+            return out;
+        }
+
+        @Override
+        public void shutdownInput() throws IOException {
+            socket.shutdownInput();
+        }
+
+        @Override
+        public String peer() {
+            return socket.getInetAddress().getHostAddress();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
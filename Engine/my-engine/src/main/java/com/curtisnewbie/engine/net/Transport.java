@@ -0,0 +1,77 @@
+package com.curtisnewbie.engine.net;
+
+import java.io.IOException;
+
+/**
+ * How a Host and a Client reach each other, the frames of the {@code Protocol}
+ * go over the {@code Link} it opens without knowing what carries them.<br>
+ * <br>
+ * The transport is picked by name:<br>
+ * 1. "tcp", a blocking {@code java.net.Socket} (the default),<br>
+ * 2. "nio", a {@code SocketChannel} in blocking mode, read and written through
+ * direct buffers,<br>
+ * 3. "pipe", a pair of lock-free ring buffers within the same JVM, e.g., for
+ * bots and benchmarks, which makes no system call per frame. Its "port" is
+ * only a name for the two sides to meet at.<br>
+ * <br>
+ * The name is read from the system property {@value #PROPERTY} when not given
+ * explicitly.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public interface Transport {
+
+    /** System property that names the transport */
+    String PROPERTY = "tictactoe.transport";
+
+    /**
+     * Wait for one peer to connect to the port, nothing listens on it
+     * afterwards
+     *
+     * @param port port
+     * @return connection to the peer
+     * @throws IOException if the port is in use or the wait failed
+     */
+    Link accept(int port) throws IOException;
+
+    /**
+     * Connect to a peer that waits on the port
+     *
+     * @param host host of the peer, ignored by "pipe"
+     * @param port port
+     * @return connection to the peer
+     * @throws IOException if nothing listens on the port, or the connection
+     *                     failed
+     */
+    Link connect(String host, int port) throws IOException;
+
+    /**
+     * Create the transport named by the system property {@value #PROPERTY}
+     *
+     * @return transport
+     */
+    static Transport fromSystemProperty() {
+        return create(System.getProperty(PROPERTY, "tcp"));
+    }
+
+    /**
+     * Create the transport by name
+     *
+     * @param name "tcp", "nio" or "pipe"
+     * @return transport
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    static Transport create(String name) {
+        switch (name) {
+        case "tcp":
+            return new SocketTransport();
+        case "nio":
+            return new NioTransport();
+        case "pipe":
+            return new PipeTransport();
+        default:
+            throw new IllegalArgumentException("Unknown transport: " + name);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.curtisnewbie.engine.solver;
+
+import com.curtisnewbie.engine.GameEngine;
+import com.curtisnewbie.engine.GameRules;
+import com.curtisnewbie.engine.PerfectPlayer;
+
+/**
+ * The best moves for the built-in opponent and for move hints: the
+ * {@code PerfectPlayer} on the 3x3 board, and a {@code SolvedTable} exported by
+ * the {@code GameSolver} on the board it was solved for.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class Advisor {
+
+    /** Null if only the 3x3 board is known */
+    private final SolvedTable solved;
+
+    /**
+     * @param solved table of another board, may be null
+     */
+    public Advisor(SolvedTable solved) {
+        this.solved = solved;
+    }
+
+    /**
+     * An advisor with the table named by the system property
+     * {@code SolvedTable.PROPERTY}, if any
+     *
+     * @return advisor
+     */
+    public static Advisor fromSystemProperty() {
+        return new Advisor(SolvedTable.fromSystemProperty());
+    }
+
+    /**
+     * Whether the best moves of the board are known
+     *
+     * @param n size of the board
+     * @param k stones in a row to win
+     * @return {@code true} if they are
+     */
+    public boolean knows(int n, int k) {
+        return n == 3 && k == 3 || solved != null && solved.covers(n, k);
+    }
+
+    /**
+     * The best move for the player in turn
+     *
+     * @param n   size of the board
+     * @param k   stones in a row to win
+     * @param key position, see {@code Symmetry}, which is the {@code BitBoard}
+     *            on the 3x3 board
+     * @return cell {@code row * N + col}, or {@code SolvedTable.NO_MOVE} if
+     *         it's not known, or the game is over
+     */
+    public int bestMove(int n, int k, long key) {
+        if (n == 3 && k == 3)
+            return PerfectPlayer.bestMove((int) key);
+        return solved != null && solved.covers(n, k) ? solved.bestMove(key) : SolvedTable.NO_MOVE;
+    }
+
+    /**
+     * The best move for the player in turn of the game
+     *
+     * @param rules game
+     * @return cell {@code row * N + col}, or {@code SolvedTable.NO_MOVE}
+     */
+    public int bestMove(GameRules rules) {
+        if (!knows(rules.size(), rules.k()))
+            return SolvedTable.NO_MOVE;
+        return bestMove(rules.size(), rules.k(), keyOf(rules));
+    }
+
+    /**
+     * A hint for the player in turn, e.g., "row 2, col 3, it draws"
+     *
+     * @param rules game
+     * @return hint, or null if the best move is not known
+     */
+    public String hint(GameRules rules) {
+        int cell = bestMove(rules);
+        if (cell < 0)
+            return null;
+        long key = keyOf(rules);
+        int score = rules.size() == 3 && rules.k() == 3 ? PerfectPlayer.score((int) key) : solved.score(key);
+        String outcome = score > 0 ? "it wins" : score < 0 ? "it loses against perfect play" : "it draws";
+        return "row " + (cell / rules.size() + 1) + ", col " + (cell % rules.size() + 1) + ", " + outcome;
+    }
+
+    private static long keyOf(GameRules rules) {
+        // the same layout as the BitBoard, which the 3x3 engine has already
+        return rules instanceof GameEngine ? ((GameEngine) rules).board() : SolvedTable.keyOf(rules);
+    }
+}
@@ -0,0 +1,302 @@
+package com.curtisnewbie.engine.solver;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Solves every position reachable from the empty board of an N x N game with K
+ * in a row to win, on a {@code ForkJoinPool}.<br>
+ * <br>
+ * It's a negamax over the whole game tree, as {@code PerfectPlayer} does for
+ * the 3x3 board, except that each position is looked up and kept in the
+ * {@code SolvedTable} by its canonical form, so the 8 positions that are the
+ * same up to a symmetry are solved once. The first few moves from the empty
+ * board are forked into tasks, one per child that is not a symmetric copy of a
+ * sibling, and the rest of the tree is searched by the thread that takes the
+ * task. Threads that meet the same position find each other's results in the
+ * table, without locking.<br>
+ * <br>
+ * The score of a position is from the view of the player in turn, as in
+ * {@code PerfectPlayer}: positive if it wins, the sooner the larger, negative
+ * if it loses and 0 for a draw. N is up to {@code Symmetry.MAX_SIZE}, a 4x4
+ * board takes seconds, larger ones take more memory than it's worth.<br>
+ * <br>
+ * Usage:
+ * {@code GameSolver [n] [k] [threads, e.g., 1,2,4] [file to export the table to] [slots of the table]}
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class GameSolver {
+
+    /** Moves from the empty board that are forked into tasks by default */
+    public static final int SPLIT_DEPTH = 4;
+
+    private final int cells;
+
+    /** Mask of all cells */
+    private final int full;
+
+    /** Masks of the lines of K cells through each cell */
+    private final int[][] linesThrough;
+
+    private final Symmetry symmetry;
+
+    private final SolvedTable table;
+
+    private final int splitDepth;
+
+    /** Positions visited, including those found in the table */
+    private final LongAdder nodes = new LongAdder();
+
+    /**
+     * @param table      table of the board to fill
+     * @param splitDepth moves from the empty board that are forked into tasks
+     */
+    public GameSolver(SolvedTable table, int splitDepth) {
+        int n = table.n();
+        int k = table.k();
+        if (k < 1 || k > n)
+            throw new IllegalArgumentException("K must be from 1 to " + n + ": " + k);
+        this.table = table;
+        this.splitDepth = splitDepth;
+        this.cells = n * n;
+        this.full = (int) ((1L << cells) - 1);
+        this.symmetry = new Symmetry(n);
+
+        // every line of K cells: rows, columns and both diagonals
+        List<List<Integer>> through = new ArrayList<>();
+        for (int c = 0; c < cells; c++)
+            through.add(new ArrayList<>());
+        int[][] directions = { { 0, 1 }, { 1, 0 }, { 1, 1 }, { 1, -1 } };
+        for (int row = 0; row < n; row++) {
+            for (int col = 0; col < n; col++) {
+                for (int[] d : directions) {
+                    int endRow = row + d[0] * (k - 1);
+                    int endCol = col + d[1] * (k - 1);
+                    if (endRow < 0 || endRow >= n || endCol < 0 || endCol >= n)
+                        continue;
+                    int line = 0;
+                    for (int i = 0; i < k; i++)
+                        line |= 1 << ((row + d[0] * i) * n + col + d[1] * i);
+                    for (int i = 0; i < k; i++)
+                        through.get((row + d[0] * i) * n + col + d[1] * i).add(line);
+                }
+            }
+        }
+        this.linesThrough = new int[cells][];
+        for (int c = 0; c < cells; c++)
+            linesThrough[c] = through.get(c).stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Solve the game from the empty board
+     *
+     * @param pool threads that solve it
+     * @return score of the empty board for the player that moves first
+     */
+    public int solve(ForkJoinPool pool) {
+        return pool.invoke(new Task(0, 0, 0));
+    }
+
+    /**
+     * Number of positions visited so far, including those found in the table
+     *
+     * @return nodes
+     */
+    public long nodes() {
+        return nodes.sum();
+    }
+
+    /** Solve the position, forking its children if it's near the empty board */
+    private int solve(int p0, int p1, int moves) {
+        nodes.increment();
+        long key = p0 | (long) p1 << cells;
+        int s = symmetry.canonicalSymmetry(key);
+        long canonical = symmetry.transform(s, key);
+        long e = table.find(canonical);
+        if (e != 0)
+            return SolvedTable.scoreOf(e);
+
+        int free = ~(p0 | p1) & full;
+        int best = -1;
+        int score = Integer.MIN_VALUE;
+        if (moves < splitDepth) {
+            int[] scores = forkChildren(p0, p1, moves, free);
+            for (int f = free; f != 0; f &= f - 1) {
+                int cell = Integer.numberOfTrailingZeros(f);
+                if (scores[cell] > score) {
+                    score = scores[cell];
+                    best = cell;
+                }
+            }
+        } else {
+            for (int f = free; f != 0; f &= f - 1) {
+                int cell = Integer.numberOfTrailingZeros(f);
+                int sc = moveScore(p0, p1, moves, cell);
+                if (sc > score) {
+                    score = sc;
+                    best = cell;
+                }
+            }
+        }
+        table.put(canonical, score, symmetry.cell(s, best));
+        return score;
+    }
+
+    /**
+     * Score the moves of the position, each child that is not the same as a
+     * sibling up to a symmetry is solved by a task of its own
+     *
+     * @return score of each move by its cell, from the view of the mover
+     */
+    private int[] forkChildren(int p0, int p1, int moves, int free) {
+        int[] scores = new int[cells];
+        int[] sameAs = new int[cells];
+        long[] childKeys = new long[cells];
+        List<Task> tasks = new ArrayList<>();
+        int player = moves & 1;
+        for (int f = free; f != 0; f &= f - 1) {
+            int cell = Integer.numberOfTrailingZeros(f);
+            int bit = 1 << cell;
+            sameAs[cell] = -1;
+            if (wins((player == 0 ? p0 : p1) | bit, cell)) {
+                scores[cell] = cells - moves;
+                continue;
+            }
+            if (moves + 1 == cells) {
+                scores[cell] = 0;
+                continue;
+            }
+            int c0 = player == 0 ? p0 | bit : p0;
+            int c1 = player == 1 ? p1 | bit : p1;
+            childKeys[cell] = symmetry.canonical(c0 | (long) c1 << cells);
+            for (int g = free & (bit - 1); g != 0; g &= g - 1) {
+                int sibling = Integer.numberOfTrailingZeros(g);
+                if (childKeys[sibling] == childKeys[cell] && sameAs[sibling] == -1) {
+                    sameAs[cell] = sibling;
+                    break;
+                }
+            }
+            if (sameAs[cell] == -1) {
+                Task t = new Task(c0, c1, moves + 1);
+                t.cell = cell;
+                tasks.add(t);
+            }
+        }
+        ForkJoinTask.invokeAll(tasks);
+        for (Task t : tasks)
+            scores[t.cell] = -t.join();
+        for (int f = free; f != 0; f &= f - 1) {
+            int cell = Integer.numberOfTrailingZeros(f);
+            if (sameAs[cell] >= 0)
+                scores[cell] = scores[sameAs[cell]];
+        }
+        return scores;
+    }
+
+    /** Score of the move from the view of the player that makes it */
+    private int moveScore(int p0, int p1, int moves, int cell) {
+        int bit = 1 << cell;
+        if ((moves & 1) == 0) {
+            if (wins(p0 | bit, cell))
+                return cells - moves;
+            return moves + 1 == cells ? 0 : -solve(p0 | bit, p1, moves + 1);
+        }
+        if (wins(p1 | bit, cell))
+            return cells - moves;
+        return moves + 1 == cells ? 0 : -solve(p0, p1 | bit, moves + 1);
+    }
+
+    /** Whether the stones complete a line through the cell */
+    private boolean wins(int mine, int cell) {
+        for (int line : linesThrough[cell])
+            if ((mine & line) == line)
+                return true;
+        return false;
+    }
+
+    /** Solves a position on the pool */
+    private final class Task extends RecursiveTask<Integer> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int p0;
+        private final int p1;
+        private final int moves;
+
+        /** The move that leads to this position from its parent */
+        int cell;
+
+        Task(int p0, int p1, int moves) {
+            this.p0 = p0;
+            this.p1 = p1;
+            this.moves = moves;
+        }
+
+        @Override
+        protected Integer compute() {
+            return solve(p0, p1, moves);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int k = args.length > 1 ? Integer.parseInt(args[1]) : n;
+        String threads = args.length > 2 ? args[2] : defaultThreads();
+        Path export = args.length > 3 && !args[3].isEmpty() ? Paths.get(args[3]) : null;
+        int slots = args.length > 4 ? Integer.parseInt(args[4]) : defaultSlots(n);
+
+        System.out.println("Solving " + n + "x" + n + " with " + k + " in a row, " + slots + " slots");
+        double first = 0;
+        SolvedTable table = null;
+        for (String t : threads.split(",")) {
+            int parallelism = Integer.parseInt(t.trim());
+            table = new SolvedTable(n, k, slots);
+            GameSolver solver = new GameSolver(table, SPLIT_DEPTH);
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            long start = System.nanoTime();
+            int score = solver.solve(pool);
+            double seconds = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+            pool.shutdown();
+            if (first == 0)
+                first = seconds;
+            System.out.println(String.format(
+                    "threads: %2d  %s  positions: %d  nodes: %d  time: %.2fs  nodes/s: %.0f  speedup: %.2f",
+                    parallelism, outcome(score), table.size(), solver.nodes(), seconds, solver.nodes() / seconds,
+                    first / seconds));
+        }
+        if (export != null && table != null) {
+            table.export(export);
+            System.out.println("Exported " + table.size() + " positions to " + export);
+        }
+    }
+
+    private static String outcome(int score) {
+        if (score > 0)
+            return "first player wins";
+        return score < 0 ? "second player wins" : "draw";
+    }
+
+    /** 1, 2, 4... up to the number of cores */
+    private static String defaultThreads() {
+        StringBuilder sb = new StringBuilder("1");
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int t = 2; t <= cores; t <<= 1)
+            sb.append(',').append(t);
+        return sb.toString();
+    }
+
+    /** Enough slots for the positions of boards up to 4x4 */
+    private static int defaultSlots(int n) {
+        return n <= 3 ? 1 << 12 : 1 << 22;
+    }
+}
@@ -0,0 +1,355 @@
+package com.curtisnewbie.engine.solver;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.curtisnewbie.engine.GameRules;
+import com.curtisnewbie.engine.UltimateEngine;
+
+/**
+ * An opponent for the Ultimate variant, which is far too large to be solved,
+ * that picks its moves with a Monte Carlo tree search on all cores within a
+ * fixed time per move.<br>
+ * <br>
+ * The threads share a single tree (tree parallelization): each one walks down
+ * from the root by UCT, expands a leaf that has been visited often enough,
+ * plays the rest of the game at random from there on its own copy of the
+ * {@code UltimateEngine}, and adds the outcome to the nodes on its way back up.
+ * The visits and scores of a node are updated with atomic adds and the children
+ * of a node are published with a single CAS, so the threads never lock. A
+ * thread counts its visit on the way down, before the outcome is known (a
+ * virtual loss), so that the threads that come after it spread out to other
+ * branches rather than all following the same path.<br>
+ * <br>
+ * The move played is the child of the root with the most visits. The
+ * {@link #lastSearch() last search} tells how many playouts it took per second,
+ * which is what to tune {@link #EXPLORATION} and {@link #EXPAND_VISITS} for.<br>
+ * <br>
+ * Usage: {@code MctsPlayer [millis per move] [threads, e.g., 1,2,4] [games]}
+ * plays that many games against a random mover with each number of threads and
+ * prints the playouts per second.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class MctsPlayer implements AutoCloseable {
+
+    /** UCT constant that weighs exploring rarely visited moves */
+    public static final double EXPLORATION = 0.8;
+
+    /** Visits of a leaf before its children are added to the tree */
+    public static final int EXPAND_VISITS = 8;
+
+    /** Playouts between two looks at the clock */
+    private static final int BATCH = 32;
+
+    private static final VarHandle VISITS;
+    private static final VarHandle SCORE;
+    private static final VarHandle CHILDREN;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            VISITS = lookup.findVarHandle(Node.class, "visits", int.class);
+            SCORE = lookup.findVarHandle(Node.class, "score", long.class);
+            CHILDREN = lookup.findVarHandle(Node.class, "children", Node[].class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int threads;
+
+    private final long budgetNanos;
+
+    private final ExecutorService pool;
+
+    private final AtomicInteger seeds = new AtomicInteger((int) System.nanoTime());
+
+    // ---------------------------- the last search, for the report
+
+    private volatile long lastPlayouts;
+    private volatile long lastNanos;
+    private volatile double lastWinRate;
+
+    /**
+     * @param threads      threads that search, e.g., the number of cores
+     * @param budgetMillis time to think per move
+     */
+    public MctsPlayer(int threads, long budgetMillis) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Threads must be at least 1: " + threads);
+        this.threads = threads;
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        AtomicInteger count = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(threads, task -> {
+            Thread t = new Thread(task, "mcts-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * A player that searches on every core
+     *
+     * @param budgetMillis time to think per move
+     * @return player
+     */
+    public static MctsPlayer onAllCores(long budgetMillis) {
+        return new MctsPlayer(Runtime.getRuntime().availableProcessors(), budgetMillis);
+    }
+
+    /**
+     * Search for the move of the player in turn, which takes the time budget
+     * unless there's only one move to make
+     *
+     * @param position game, which is not changed
+     * @return cell {@code row * 9 + col}, or {@code SolvedTable.NO_MOVE} if the
+     *         game is over
+     */
+    public int bestMove(UltimateEngine position) {
+        Node root = new Node(SolvedTable.NO_MOVE);
+        Node[] children = expand(root, position, new int[UltimateEngine.CELLS]);
+        if (children.length == 0)
+            return SolvedTable.NO_MOVE;
+        if (children.length == 1)
+            return children[0].move;
+
+        long start = System.nanoTime();
+        long deadline = start + budgetNanos;
+        List<Callable<Long>> searches = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            int seed = seeds.getAndAdd(0x9E3779B9) | 1;
+            searches.add(() -> search(root, position, deadline, seed));
+        }
+        long playouts = 0;
+        try {
+            for (Future<Long> f : pool.invokeAll(searches))
+                playouts += f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Search failed", e.getCause());
+        }
+
+        Node best = children[0];
+        for (Node c : children)
+            if (c.visits > best.visits)
+                best = c;
+        lastPlayouts = playouts;
+        lastNanos = System.nanoTime() - start;
+        lastWinRate = best.visits == 0 ? 0 : best.score / (2.0 * best.visits);
+        return best.move;
+    }
+
+    /**
+     * The best move for the player in turn of the game
+     *
+     * @param rules game of the Ultimate variant
+     * @return cell {@code row * 9 + col}, or {@code SolvedTable.NO_MOVE}
+     */
+    public int bestMove(GameRules rules) {
+        if (!(rules instanceof UltimateEngine))
+            return SolvedTable.NO_MOVE;
+        return bestMove((UltimateEngine) rules);
+    }
+
+    /**
+     * What the last search did, e.g., "151234 playouts in 1000 ms (151234/s) on
+     * 4 threads, expects 54.2%"
+     *
+     * @return report
+     */
+    public String lastSearch() {
+        long nanos = Math.max(1, lastNanos);
+        return String.format("%d playouts in %d ms (%.0f/s) on %d threads, expects %.1f%%", lastPlayouts,
+                TimeUnit.NANOSECONDS.toMillis(nanos), lastPlayouts * 1e9 / nanos, threads, lastWinRate * 100);
+    }
+
+    /**
+     * Playouts per second of the last search
+     *
+     * @return playouts per second, 0 if it hasn't searched
+     */
+    public double playoutsPerSecond() {
+        return lastNanos == 0 ? 0 : lastPlayouts * 1e9 / lastNanos;
+    }
+
+    /** Stop the threads */
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Playouts from the root until the deadline, on one thread
+     *
+     * @return number of playouts
+     */
+    private static long search(Node root, UltimateEngine position, long deadline, int seed) {
+        UltimateEngine game = new UltimateEngine();
+        Node[] path = new Node[UltimateEngine.CELLS + 1];
+        int[] moves = new int[UltimateEngine.CELLS];
+        int rootPlayer = position.currentPlayer();
+        int random = seed;
+        long playouts = 0;
+        do {
+            for (int b = 0; b < BATCH; b++) {
+                game.copyFrom(position);
+                Node node = root;
+                int depth = 0;
+                path[depth++] = node;
+                VISITS.getAndAdd(node, 1);
+
+                // down the tree, expanding the leaf if it's been visited enough
+                while (game.status() == GameRules.IN_PROGRESS) {
+                    Node[] children = node.children;
+                    if (children == null) {
+                        if (node.visits < EXPAND_VISITS)
+                            break;
+                        children = expand(node, game, moves);
+                    }
+                    node = select(node, children);
+                    game.apply(node.move);
+                    path[depth++] = node;
+                    VISITS.getAndAdd(node, 1);
+                }
+
+                // the rest of the game at random
+                while (game.status() == GameRules.IN_PROGRESS) {
+                    random ^= random << 13;
+                    random ^= random >>> 17;
+                    random ^= random << 5;
+                    game.apply(game.randomMove(random));
+                }
+
+                // the score of a node is for the player that moved into it
+                int status = game.status();
+                int winner = status == GameRules.PLAYER_0_WON ? 0 : status == GameRules.PLAYER_1_WON ? 1 : -1;
+                for (int d = 1; d < depth; d++) {
+                    int mover = (rootPlayer + d - 1) & 1;
+                    int points = winner < 0 ? 1 : winner == mover ? 2 : 0;
+                    if (points != 0)
+                        SCORE.getAndAdd(path[d], (long) points);
+                }
+                playouts++;
+            }
+        } while (System.nanoTime() < deadline);
+        return playouts;
+    }
+
+    /** The child with the highest upper confidence bound, unvisited ones first */
+    private static Node select(Node parent, Node[] children) {
+        double logVisits = Math.log(Math.max(1, parent.visits));
+        Node best = children[0];
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (Node c : children) {
+            int visits = c.visits;
+            if (visits == 0)
+                return c;
+            double value = c.score / (2.0 * visits) + EXPLORATION * Math.sqrt(logVisits / visits);
+            if (value > bestValue) {
+                bestValue = value;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Add the children of the node, unless another thread just did
+     *
+     * @return the children in the tree
+     */
+    private static Node[] expand(Node node, UltimateEngine game, int[] moves) {
+        int count = game.legalMoves(moves);
+        Node[] children = new Node[count];
+        for (int i = 0; i < count; i++)
+            children[i] = new Node(moves[i]);
+        if (CHILDREN.compareAndSet(node, null, children))
+            return children;
+        return node.children;
+    }
+
+    /** A position in the tree */
+    private static final class Node {
+
+        /** The move that leads here from the parent */
+        final int move;
+
+        /** Playouts through here, including those still going on */
+        volatile int visits;
+
+        /** 2 per win and 1 per draw of the player that made the move */
+        volatile long score;
+
+        /** Null until it's expanded */
+        volatile Node[] children;
+
+        Node(int move) {
+            this.move = move;
+        }
+    }
+
+    public static void main(String[] args) {
+        long millis = args.length > 0 ? Long.parseLong(args[0]) : 200;
+        String threads = args.length > 1 ? args[1] : defaultThreads();
+        int games = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+        System.out.println("Ultimate variant, " + millis + " ms per move, " + games + " games against a random mover");
+        double first = 0;
+        for (String t : threads.split(",")) {
+            int parallelism = Integer.parseInt(t.trim());
+            int wins = 0, draws = 0, searches = 0;
+            double rate = 0;
+            int random = 42;
+            try (MctsPlayer bot = new MctsPlayer(parallelism, millis)) {
+                UltimateEngine game = new UltimateEngine();
+                for (int g = 0; g < games; g++) {
+                    game.reset();
+                    int seat = g & 1;
+                    while (!game.isOver()) {
+                        if (game.currentPlayer() == seat) {
+                            game.apply(bot.bestMove(game));
+                            rate += bot.playoutsPerSecond();
+                            searches++;
+                        } else {
+                            random ^= random << 13;
+                            random ^= random >>> 17;
+                            random ^= random << 5;
+                            game.apply(game.randomMove(random));
+                        }
+                    }
+                    int status = game.status();
+                    if (status == GameRules.DRAW)
+                        draws++;
+                    else if (status == (seat == 0 ? GameRules.PLAYER_0_WON : GameRules.PLAYER_1_WON))
+                        wins++;
+                }
+            }
+            double perSecond = searches == 0 ? 0 : rate / searches;
+            if (first == 0)
+                first = perSecond;
+            System.out.println(String.format("threads: %2d  won: %d  drawn: %d  lost: %d  playouts/s: %.0f  speedup: %.2f",
+                    parallelism, wins, draws, games - wins - draws, perSecond, first == 0 ? 0 : perSecond / first));
+        }
+    }
+
+    /** 1, 2, 4... up to the number of cores */
+    private static String defaultThreads() {
+        StringBuilder sb = new StringBuilder("1");
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int t = 2; t <= cores; t <<= 1)
+            sb.append(',').append(t);
+        return sb.toString();
+    }
+}
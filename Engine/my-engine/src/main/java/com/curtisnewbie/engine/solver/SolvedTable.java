@@ -0,0 +1,318 @@
+package com.curtisnewbie.engine.solver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.curtisnewbie.engine.GameRules;
+
+/**
+ * The solved positions of an N x N game with K in a row to win, by their
+ * canonical form (see {@code Symmetry}), which the {@code GameSolver} fills and
+ * the built-in opponent and move hints look up.<br>
+ * <br>
+ * It's an open-addressing hash table of {@code long}s that many threads fill at
+ * the same time without locking: an entry packs the canonical position, the
+ * best move and the score into a single {@code long}, which is put into an
+ * empty slot with a CAS, so neither a lookup nor an insert allocates. The value
+ * of a position doesn't depend on who solves it, so when two threads solve the
+ * same position, the second insert just finds the first one.<br>
+ * <br>
+ * Positions where the game is over are not kept. The table can be
+ * {@link #export(Path) exported} to a file and {@link #load(Path) loaded} by
+ * the programs that play with it, see {@value #PROPERTY}.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class SolvedTable {
+
+    /** Returned by {@link #bestMove(long)} and alike when the position is not in the table */
+    public static final int NO_MOVE = -1;
+
+    /** Returned by {@link #score(long)} when the position is not in the table */
+    public static final int NOT_SOLVED = Integer.MIN_VALUE;
+
+    /** System property that names the exported table to play with */
+    public static final String PROPERTY = "tictactoe.solved";
+
+    /** First 4 bytes of an exported file, "TTTS" */
+    private static final int MAGIC = 0x54545453;
+
+    // ---------------------------- layout of an entry, the position is above
+
+    private static final int SCORE_BITS = 7;
+    private static final int MOVE_BITS = 6;
+    private static final int VALUE_BITS = SCORE_BITS + MOVE_BITS;
+    /** Added to the score, so that it's never negative */
+    private static final int SCORE_BIAS = 64;
+
+    /** The table is full beyond this share of its slots */
+    private static final double MAX_LOAD = 0.75;
+
+    private final int n;
+    private final int k;
+    private final Symmetry symmetry;
+
+    private final AtomicLongArray slots;
+    private final int mask;
+    private final int limit;
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * @param n        size of the board, up to {@code Symmetry.MAX_SIZE}
+     * @param k        stones in a row to win
+     * @param capacity number of slots, rounded up to a power of 2, it holds
+     *                 {@value #MAX_LOAD} of them at most
+     */
+    public SolvedTable(int n, int k, int capacity) {
+        this.n = n;
+        this.k = k;
+        this.symmetry = new Symmetry(n);
+        int slotCount = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new AtomicLongArray(slotCount);
+        this.mask = slotCount - 1;
+        this.limit = (int) (slotCount * MAX_LOAD);
+    }
+
+    /**
+     * Find a canonical position
+     *
+     * @param canonical canonical position
+     * @return its entry, 0 if it's not in the table
+     */
+    long find(long canonical) {
+        for (int i = slot(canonical);; i = (i + 1) & mask) {
+            long e = slots.get(i);
+            if (e == 0 || e >>> VALUE_BITS == canonical)
+                return e;
+        }
+    }
+
+    /**
+     * Put a solved canonical position, may be called by many threads
+     *
+     * @param canonical canonical position
+     * @param score     score from the view of the player in turn
+     * @param bestMove  best move on the canonical board
+     * @throws IllegalStateException if the table is full
+     */
+    void put(long canonical, int score, int bestMove) {
+        long entry = canonical << VALUE_BITS | (long) (bestMove + 1) << SCORE_BITS | (score + SCORE_BIAS);
+        for (int i = slot(canonical);; i = (i + 1) & mask) {
+            long e = slots.get(i);
+            if (e == 0) {
+                if (!slots.compareAndSet(i, 0, entry)) {
+                    // taken in the meantime, look at it again
+                    i = (i - 1) & mask;
+                    continue;
+                }
+                if (size.incrementAndGet() > limit)
+                    throw new IllegalStateException("The table is full with " + limit + " positions");
+                return;
+            }
+            if (e >>> VALUE_BITS == canonical)
+                return;
+        }
+    }
+
+    /**
+     * Score of the entry
+     *
+     * @param entry entry, see {@link #find(long)}
+     * @return score from the view of the player in turn
+     */
+    static int scoreOf(long entry) {
+        return (int) (entry & ((1 << SCORE_BITS) - 1)) - SCORE_BIAS;
+    }
+
+    /**
+     * Best move of the entry
+     *
+     * @param entry entry, see {@link #find(long)}
+     * @return cell on the canonical board
+     */
+    static int moveOf(long entry) {
+        return (int) ((entry >>> SCORE_BITS) & ((1 << MOVE_BITS) - 1)) - 1;
+    }
+
+    /**
+     * The outcome of the position with perfect play from both sides
+     *
+     * @param key position, see {@code Symmetry}
+     * @return positive if the player in turn wins, negative if it loses and 0
+     *         for a draw, the larger the sooner it wins, or
+     *         {@link #NOT_SOLVED}
+     */
+    public int score(long key) {
+        long e = find(symmetry.canonical(key));
+        return e == 0 ? NOT_SOLVED : scoreOf(e);
+    }
+
+    /**
+     * The best move for the player in turn
+     *
+     * @param key position, see {@code Symmetry}
+     * @return cell {@code row * N + col}, or {@link #NO_MOVE} if the position is
+     *         not in the table, e.g., the game is over
+     */
+    public int bestMove(long key) {
+        int s = symmetry.canonicalSymmetry(key);
+        long e = find(symmetry.transform(s, key));
+        return e == 0 ? NO_MOVE : symmetry.inverseCell(s, moveOf(e));
+    }
+
+    /**
+     * The best move for the player in turn of the game
+     *
+     * @param rules game on a board of this table
+     * @return cell {@code row * N + col}, or {@link #NO_MOVE}
+     */
+    public int bestMove(GameRules rules) {
+        return bestMove(keyOf(rules));
+    }
+
+    /**
+     * The outcome of the game with perfect play from both sides
+     *
+     * @param rules game on a board of this table
+     * @return see {@link #score(long)}
+     */
+    public int score(GameRules rules) {
+        return score(keyOf(rules));
+    }
+
+    /**
+     * Whether the table is for the board
+     *
+     * @param n size of the board
+     * @param k stones in a row to win
+     * @return {@code true} if it is
+     */
+    public boolean covers(int n, int k) {
+        return this.n == n && this.k == k;
+    }
+
+    /**
+     * The position of the game
+     *
+     * @param rules game, on a board of up to {@code Symmetry.MAX_SIZE}
+     * @return position, see {@code Symmetry}
+     */
+    public static long keyOf(GameRules rules) {
+        int cells = rules.cells();
+        long key = 0;
+        for (int c = 0; c < cells; c++) {
+            int p = rules.cellAt(c);
+            if (p >= 0)
+                key |= 1L << (c + p * cells);
+        }
+        return key;
+    }
+
+    /**
+     * Number of positions in the table
+     *
+     * @return positions
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Size of the board
+     *
+     * @return N
+     */
+    public int n() {
+        return n;
+    }
+
+    /**
+     * Stones in a row to win
+     *
+     * @return K
+     */
+    public int k() {
+        return k;
+    }
+
+    /**
+     * Write the positions to a file, once nothing is put any more
+     *
+     * @param file file
+     */
+    public void export(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(n);
+            out.writeByte(k);
+            out.writeInt(size());
+            for (int i = 0; i <= mask; i++) {
+                long e = slots.get(i);
+                if (e != 0)
+                    out.writeLong(e);
+            }
+        }
+    }
+
+    /**
+     * Read a table written by {@link #export(Path)}
+     *
+     * @param file file
+     * @return table
+     * @throws IOException if it can't be read or isn't an exported table
+     */
+    public static SolvedTable load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException("Not a solved table: " + file);
+            int n = in.readUnsignedByte();
+            int k = in.readUnsignedByte();
+            int count = in.readInt();
+            SolvedTable t = new SolvedTable(n, k, (int) Math.min(1 << 30, (long) (count / MAX_LOAD) + 1));
+            for (int i = 0; i < count; i++) {
+                long e = in.readLong();
+                t.put(e >>> VALUE_BITS, scoreOf(e), moveOf(e));
+            }
+            return t;
+        }
+    }
+
+    /**
+     * Load the table named by the system property {@value #PROPERTY}
+     *
+     * @return table, or null if the property is not set, or the table cannot
+     *         be loaded
+     */
+    public static SolvedTable fromSystemProperty() {
+        String file = System.getProperty(PROPERTY);
+        if (file == null)
+            return null;
+        try {
+            SolvedTable t = load(Paths.get(file));
+            System.out.println("Loaded " + t.size() + " solved positions of " + t.n + "x" + t.n + " with " + t.k
+                    + " in a row from " + file);
+            return t;
+        } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+            System.out.println("Cannot load solved table " + file + " : " + e.getMessage());
+            return null;
+        }
+    }
+
+    private int slot(long canonical) {
+        // the finalizer of MurmurHash3, canonical positions are far from random
+        long h = canonical;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+}
@@ -0,0 +1,152 @@
+package com.curtisnewbie.engine.solver;
+
+/**
+ * The 8 symmetries of an N x N board (4 rotations, each with or without a
+ * mirror), applied to positions packed into a {@code long}.<br>
+ * <br>
+ * A position is the mask of player 0's cells in the low {@code N * N} bits and
+ * the mask of player 1's cells right above them, as in {@code BitBoard} for the
+ * 3x3 board. Positions that are the same up to a symmetry have the same value,
+ * so they share the same {@link #canonical(long) canonical} form, the smallest
+ * of the 8 transformed positions. A mask is transformed a byte at a time
+ * through precomputed tables, which takes 4 lookups rather than a loop over the
+ * cells.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class Symmetry {
+
+    /** Number of symmetries, the first one is the identity */
+    public static final int COUNT = 8;
+
+    /** Largest N, so that a position fits in 50 bits */
+    public static final int MAX_SIZE = 5;
+
+    private final int cells;
+
+    private final long cellMask;
+
+    /** Where each cell goes, by symmetry */
+    private final int[][] cellMap;
+
+    /** Where each cell comes from, by symmetry */
+    private final int[][] inverse;
+
+    /** Transformed masks of each byte of a mask, by symmetry, byte and value */
+    private final int[][][] byteMap;
+
+    /**
+     * @param n size of the board, up to {@value #MAX_SIZE}
+     */
+    public Symmetry(int n) {
+        if (n < 1 || n > MAX_SIZE)
+            throw new IllegalArgumentException("Board size must be from 1 to " + MAX_SIZE + ": " + n);
+        this.cells = n * n;
+        this.cellMask = (1L << cells) - 1;
+        this.cellMap = new int[COUNT][cells];
+        this.inverse = new int[COUNT][cells];
+        for (int s = 0; s < COUNT; s++) {
+            for (int c = 0; c < cells; c++) {
+                int row = c / n;
+                int col = c % n;
+                // rotate by 90 degrees s times, then mirror for the last 4
+                for (int r = 0; r < (s & 3); r++) {
+                    int t = row;
+                    row = col;
+                    col = n - 1 - t;
+                }
+                if (s >= 4)
+                    col = n - 1 - col;
+                cellMap[s][c] = row * n + col;
+                inverse[s][row * n + col] = c;
+            }
+        }
+        int bytes = (cells + 7) >>> 3;
+        this.byteMap = new int[COUNT][bytes][256];
+        for (int s = 0; s < COUNT; s++)
+            for (int b = 0; b < bytes; b++)
+                for (int v = 0; v < 256; v++)
+                    for (int i = 0; i < 8 && b * 8 + i < cells; i++)
+                        if ((v & 1 << i) != 0)
+                            byteMap[s][b][v] |= 1 << cellMap[s][b * 8 + i];
+    }
+
+    /**
+     * Transform a mask of cells
+     *
+     * @param s    symmetry, from 0 to 7
+     * @param mask mask of cells
+     * @return transformed mask
+     */
+    public int transform(int s, int mask) {
+        int[][] m = byteMap[s];
+        int t = 0;
+        for (int b = 0; b < m.length; b++)
+            t |= m[b][(mask >>> (b << 3)) & 0xFF];
+        return t;
+    }
+
+    /**
+     * Transform a position
+     *
+     * @param s   symmetry, from 0 to 7
+     * @param key position, see the class doc
+     * @return transformed position
+     */
+    public long transform(int s, long key) {
+        return transform(s, (int) (key & cellMask)) | (long) transform(s, (int) (key >>> cells)) << cells;
+    }
+
+    /**
+     * The symmetry that turns the position into its canonical form
+     *
+     * @param key position
+     * @return symmetry, from 0 to 7
+     */
+    public int canonicalSymmetry(long key) {
+        int best = 0;
+        long min = key;
+        for (int s = 1; s < COUNT; s++) {
+            long t = transform(s, key);
+            if (t < min) {
+                min = t;
+                best = s;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The canonical form of the position, the smallest of its 8 transforms
+     *
+     * @param key position
+     * @return canonical position
+     */
+    public long canonical(long key) {
+        return transform(canonicalSymmetry(key), key);
+    }
+
+    /**
+     * Where the cell goes under the symmetry
+     *
+     * @param s    symmetry, from 0 to 7
+     * @param cell cell
+     * @return transformed cell
+     */
+    public int cell(int s, int cell) {
+        return cellMap[s][cell];
+    }
+
+    /**
+     * Where the cell comes from under the symmetry, i.e., the inverse of
+     * {@link #cell(int, int)}
+     *
+     * @param s    symmetry, from 0 to 7
+     * @param cell transformed cell
+     * @return cell
+     */
+    public int inverseCell(int s, int cell) {
+        return inverse[s][cell];
+    }
+}
@@ -0,0 +1,382 @@
+package com.curtisnewbie.engine.util;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Runtime metrics of a Host, Client or server process: games, moves, bytes,
+ * connection failures and the move round-trip latency.<br>
+ * <br>
+ * Every counter is a {@code LongAdder} and the latency goes to a
+ * {@code LatencyHistogram}, so recording is lock-free, doesn't allocate and
+ * scales with the number of threads that play games. The metrics are exposed
+ * as a JMX MBean named {@code com.curtisnewbie.tictactoe:type=GameMetrics,name=<name>},
+ * and, when the system property {@value #DUMP_PROPERTY} is set to a number of
+ * seconds, printed to {@code System.out} as one line per period.<br>
+ * <br>
+ * The move round-trip is the time from sending a move until the opponent's
+ * move arrives. The lobby wait is the time a Client waits in the lobby of a
+ * server until it's paired with an opponent. A timeout is a move that wasn't
+ * made in time, an eviction is a connection dropped for being silent.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class GameMetrics implements GameMetricsMBean {
+
+    /** System property with the period, in seconds, of the text dump */
+    public static final String DUMP_PROPERTY = "tictactoe.metrics.dump";
+
+    /** Domain of the MBean's {@code ObjectName} */
+    public static final String DOMAIN = "com.curtisnewbie.tictactoe";
+
+    private final String name;
+
+    private final LongAdder active = new LongAdder();
+    private final LongAdder gamesStarted = new LongAdder();
+    private final LongAdder gamesFinished = new LongAdder();
+    private final LongAdder movesSent = new LongAdder();
+    private final LongAdder movesReceived = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder connectionFailures = new LongAdder();
+    private final LongAdder disconnects = new LongAdder();
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /** Move round-trip in nanoseconds */
+    private final LatencyHistogram roundTrip = new LatencyHistogram();
+
+    /** Lobby wait in nanoseconds */
+    private final LatencyHistogram lobbyWait = new LatencyHistogram();
+
+    /**
+     * Create the metrics, without registering them
+     *
+     * @param name name of the process, e.g., "Host"
+     */
+    public GameMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Create the metrics, register them as an MBean, and start the text dump if
+     * the system property {@value #DUMP_PROPERTY} is set.
+     *
+     * @param name name of the process, e.g., "Host"
+     * @return metrics
+     */
+    public static GameMetrics start(String name) {
+        return new GameMetrics(name).expose();
+    }
+
+    /**
+     * Register the metrics as an MBean, and start the text dump if the system
+     * property {@value #DUMP_PROPERTY} is set, e.g., once a server is listening,
+     * since JMX takes a good share of the startup time
+     *
+     * @return this
+     */
+    public GameMetrics expose() {
+        register();
+        long period = Long.getLong(DUMP_PROPERTY, 0);
+        if (period > 0)
+            dumpEvery(period, System.out);
+        return this;
+    }
+
+    /** Register as an MBean on the platform MBean server */
+    public void register() {
+        try {
+            ObjectName on = new ObjectName(DOMAIN + ":type=GameMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+        } catch (JMException e) {
+            // e.g., another one with the same name, the metrics still work without JMX
+            System.out.println("Cannot register metrics '" + name + "' : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Print one line of metrics every period, on a daemon thread
+     *
+     * @param seconds period
+     * @param out     where to print
+     */
+    public void dumpEvery(long seconds, PrintStream out) {
+        Thread t = new Thread(() -> {
+            long lastStarted = 0;
+            long lastFinished = 0;
+            long lastMoves = 0;
+            try {
+                while (true) {
+                    TimeUnit.SECONDS.sleep(seconds);
+                    long started = getGamesStarted();
+                    long finished = getGamesFinished();
+                    long moves = getMovesSent() + getMovesReceived();
+                    out.println(String.format(
+                            "[%s] active: %d  started/s: %.1f  finished/s: %.1f  moves/s: %.1f  bytes in/out: %d/%d"
+                                    + "  rtt p50/p99/p999 (us): %.1f/%.1f/%.1f  failures: %d  disconnects: %d"
+                                    + "  queued: %d  wait p50/p99 (ms): %.1f/%.1f  timeouts: %d  evictions: %d",
+                            name, getActiveGames(), (started - lastStarted) / (double) seconds,
+                            (finished - lastFinished) / (double) seconds, (moves - lastMoves) / (double) seconds,
+                            getBytesIn(), getBytesOut(), getMoveRoundTripP50Micros(), getMoveRoundTripP99Micros(),
+                            getMoveRoundTripP999Micros(), getConnectionFailures(), getDisconnects(),
+                            getLobbyQueued(), getLobbyWaitP50Millis(), getLobbyWaitP99Millis(), getTurnTimeouts(),
+                            getEvictions()));
+                    lastStarted = started;
+                    lastFinished = finished;
+                    lastMoves = moves;
+                }
+            } catch (InterruptedException e) {
+                // stop dumping
+            }
+        }, "metrics-dump-" + name);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // ---------------------------- recording
+
+    public void gameStarted() {
+        active.increment();
+        gamesStarted.increment();
+    }
+
+    public void gameFinished() {
+        active.decrement();
+        gamesFinished.increment();
+    }
+
+    public void moveSent() {
+        movesSent.increment();
+    }
+
+    public void moveReceived() {
+        movesReceived.increment();
+    }
+
+    /**
+     * Record a move round-trip
+     *
+     * @param nanos time from sending the move to receiving the answer
+     */
+    public void roundTrip(long nanos) {
+        roundTrip.record(nanos);
+    }
+
+    public void bytesIn(long n) {
+        bytesIn.add(n);
+    }
+
+    public void bytesOut(long n) {
+        bytesOut.add(n);
+    }
+
+    public void connectionFailed() {
+        connectionFailures.increment();
+    }
+
+    public void disconnected() {
+        disconnects.increment();
+    }
+
+    /** A Client starts waiting in the lobby */
+    public void lobbyJoined() {
+        queued.increment();
+    }
+
+    /** A Client leaves the lobby before it's paired, e.g., it's disconnected */
+    public void lobbyLeft() {
+        queued.decrement();
+    }
+
+    /**
+     * A Client that waited in the lobby is paired
+     *
+     * @param waitNanos time it waited
+     */
+    public void lobbyPaired(long waitNanos) {
+        queued.decrement();
+        lobbyWait.record(waitNanos);
+    }
+
+    /** A player ran out of time for its move, which lost the game */
+    public void turnTimedOut() {
+        timeouts.increment();
+    }
+
+    /** A connection that stayed silent, not even sending heartbeats, is dropped */
+    public void evicted() {
+        evictions.increment();
+    }
+
+    /**
+     * Count the bytes read from the stream
+     *
+     * @param in stream, e.g., of a {@code Socket}
+     * @return stream that counts into {@link #getBytesIn()}
+     */
+    public InputStream meter(InputStream in) {
+        return new FilterInputStream(in) {
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0)
+                    bytesIn.increment();
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0)
+                    bytesIn.add(n);
+                return n;
+            }
+        };
+    }
+
+    /**
+     * Count the bytes written to the stream
+     *
+     * @param out stream, e.g., of a {@code Socket}
+     * @return stream that counts into {@link #getBytesOut()}
+     */
+    public OutputStream meter(OutputStream out) {
+        return new FilterOutputStream(out) {
+
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                bytesOut.increment();
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                // FilterOutputStream would write them one byte at a time
+                out.write(b, off, len);
+                bytesOut.add(len);
+            }
+        };
+    }
+
+    // ---------------------------- GameMetricsMBean
+
+    @Override
+    public long getActiveGames() {
+        return active.sum();
+    }
+
+    @Override
+    public long getGamesStarted() {
+        return gamesStarted.sum();
+    }
+
+    @Override
+    public long getGamesFinished() {
+        return gamesFinished.sum();
+    }
+
+    @Override
+    public long getMovesSent() {
+        return movesSent.sum();
+    }
+
+    @Override
+    public long getMovesReceived() {
+        return movesReceived.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public long getConnectionFailures() {
+        return connectionFailures.sum();
+    }
+
+    @Override
+    public long getDisconnects() {
+        return disconnects.sum();
+    }
+
+    @Override
+    public long getMoveRoundTripCount() {
+        return roundTrip.count();
+    }
+
+    @Override
+    public double getMoveRoundTripP50Micros() {
+        return roundTrip.percentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getMoveRoundTripP99Micros() {
+        return roundTrip.percentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getMoveRoundTripP999Micros() {
+        return roundTrip.percentile(99.9) / 1000.0;
+    }
+
+    @Override
+    public long getLobbyQueued() {
+        return queued.sum();
+    }
+
+    @Override
+    public double getLobbyWaitP50Millis() {
+        return lobbyWait.percentile(50) / 1e6;
+    }
+
+    @Override
+    public double getLobbyWaitP99Millis() {
+        return lobbyWait.percentile(99) / 1e6;
+    }
+
+    @Override
+    public long getTurnTimeouts() {
+        return timeouts.sum();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public void reset() {
+        gamesStarted.reset();
+        gamesFinished.reset();
+        movesSent.reset();
+        movesReceived.reset();
+        bytesIn.reset();
+        bytesOut.reset();
+        connectionFailures.reset();
+        disconnects.reset();
+        timeouts.reset();
+        evictions.reset();
+        roundTrip.reset();
+        lobbyWait.reset();
+    }
+}
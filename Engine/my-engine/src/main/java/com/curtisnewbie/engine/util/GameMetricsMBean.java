@@ -0,0 +1,58 @@
+package com.curtisnewbie.engine.util;
+
+/**
+ * Management interface of {@code GameMetrics}, the attributes shown by JMX
+ * clients such as jconsole. Counters are totals since the start (or the last
+ * {@link #reset()}), rates are up to the client.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public interface GameMetricsMBean {
+
+    /** Games started but not finished yet */
+    long getActiveGames();
+
+    long getGamesStarted();
+
+    long getGamesFinished();
+
+    long getMovesSent();
+
+    long getMovesReceived();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    /** Connections that could not be made, e.g., the Host is not reachable */
+    long getConnectionFailures();
+
+    /** Connections lost during a game */
+    long getDisconnects();
+
+    /** Number of move round-trips recorded */
+    long getMoveRoundTripCount();
+
+    double getMoveRoundTripP50Micros();
+
+    double getMoveRoundTripP99Micros();
+
+    double getMoveRoundTripP999Micros();
+
+    /** Clients waiting in the lobby for an opponent */
+    long getLobbyQueued();
+
+    double getLobbyWaitP50Millis();
+
+    double getLobbyWaitP99Millis();
+
+    /** Games lost by running out of time for a move */
+    long getTurnTimeouts();
+
+    /** Connections dropped for sending nothing, not even heartbeats */
+    long getEvictions();
+
+    /** Set every counter (but the active games and the queued Clients) back to 0 */
+    void reset();
+}
@@ -0,0 +1,106 @@
+package com.curtisnewbie.engine.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies (or any non-negative long values).<br>
+ * <br>
+ * Values are counted in log-linear buckets: every power of two is split into 16
+ * buckets, so a percentile is off by at most about 6% of its value, while the
+ * whole range of {@code long} takes less than a thousand counters. Recording is
+ * a single atomic increment and never allocates, so it can be called on every
+ * move from any number of threads.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class LatencyHistogram {
+
+    /** Values below it have a bucket of their own */
+    private static final int LINEAR = 32;
+
+    /** Buckets per power of two above {@code LINEAR} */
+    private static final int SUB = 16;
+
+    private static final int BUCKETS = (64 - 4) * SUB + SUB;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Count a value
+     *
+     * @param value value, negative values are counted as 0
+     */
+    public void record(long value) {
+        counts.incrementAndGet(bucketOf(Math.max(0, value)));
+    }
+
+    /**
+     * Number of values recorded
+     *
+     * @return count
+     */
+    public long count() {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            n += counts.get(i);
+        return n;
+    }
+
+    /**
+     * The value below which the given percentage of values fall
+     *
+     * @param percentile e.g., 99.9
+     * @return value, or 0 if nothing is recorded
+     */
+    public long percentile(double percentile) {
+        long total = count();
+        if (total == 0)
+            return 0;
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= Math.max(1, rank))
+                return highestValueOf(i);
+        }
+        return highestValueOf(BUCKETS - 1);
+    }
+
+    /** Forget every value recorded so far */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++)
+            counts.set(i, 0);
+    }
+
+    /**
+     * Add the values recorded by this histogram to the other one
+     *
+     * @param other histogram to add to
+     */
+    public void addTo(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = counts.get(i);
+            if (c > 0)
+                other.counts.addAndGet(i, c);
+        }
+    }
+
+    private static int bucketOf(long value) {
+        if (value < LINEAR)
+            return (int) value;
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exp - 4;
+        // the top 5 bits of the value, from 16 to 31
+        int top = (int) (value >>> shift);
+        return shift * SUB + top;
+    }
+
+    private static long highestValueOf(int bucket) {
+        if (bucket < LINEAR)
+            return bucket;
+        int shift = bucket / SUB - 1;
+        long top = bucket % SUB + SUB;
+        return ((top + 1) << shift) - 1;
+    }
+}
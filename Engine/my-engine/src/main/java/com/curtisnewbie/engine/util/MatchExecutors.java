@@ -0,0 +1,150 @@
+package com.curtisnewbie.engine.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the {@code Executor} that runs the blocking game loops (e.g.,
+ * {@code startGame()}), one task per match.<br>
+ * <br>
+ * The executor is picked by name, so that platform threads, virtual threads and
+ * a bounded pool can be compared under the same load:<br>
+ * 1. "platform", a new platform thread per match (the default),<br>
+ * 2. "virtual", a new virtual thread per match, this requires Java 21 or later
+ * at runtime, on older runtimes it falls back to "platform",<br>
+ * 3. "pool:N", a fixed pool of N platform threads.<br>
+ * <br>
+ * The name is read from the system property {@value #PROPERTY} when not given
+ * explicitly. The kind of executor created is printed, so that a run on an
+ * older runtime isn't taken for one on virtual threads.<br>
+ * <br>
+ * A match may also block on more than its game loop, e.g., the
+ * {@code FrameReader}s that read ahead, and the heartbeats, see
+ * {@link #createIo(String)}.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class MatchExecutors {
+
+    /** System property that names the executor */
+    public static final String PROPERTY = "tictactoe.executor";
+
+    /** The first feature release of Java with virtual threads */
+    private static final int VIRTUAL_THREADS_SINCE = 21;
+
+    /** Tasks of a match that block next to its game loop, two read-aheads and a heartbeat */
+    private static final int IO_TASKS_PER_MATCH = 3;
+
+    private MatchExecutors() {
+    }
+
+    /**
+     * Create the executor named by the system property {@value #PROPERTY}
+     *
+     * @return executor
+     */
+    public static Executor fromSystemProperty() {
+        return create(System.getProperty(PROPERTY, "platform"));
+    }
+
+    /**
+     * Create the executor by name
+     *
+     * @param name "platform", "virtual" or "pool:N"
+     * @return executor
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    public static Executor create(String name) {
+        if (name.equals("platform")) {
+            System.out.println("Matches run on a new platform thread each");
+            return task -> new Thread(task).start();
+        }
+        if (name.equals("virtual")) {
+            if (!virtualThreads()) {
+                System.out.println("Virtual threads need Java " + VIRTUAL_THREADS_SINCE + ", this is Java "
+                        + Runtime.version().feature() + ", falling back to platform threads");
+                return create("platform");
+            }
+            System.out.println("Matches run on a new virtual thread each");
+            return newVirtualThreadPerTaskExecutor();
+        }
+        if (name.startsWith("pool:")) {
+            int threads = Integer.parseInt(name.substring("pool:".length()));
+            System.out.println("Matches run on a pool of " + threads + " platform threads");
+            return Executors.newFixedThreadPool(threads);
+        }
+        throw new IllegalArgumentException("Unknown executor: " + name);
+    }
+
+    /**
+     * Create the executor for the tasks that block next to the game loops of
+     * the matches, which the executor named by the system property
+     * {@value #PROPERTY} runs, see {@link #createIo(String)}
+     *
+     * @return executor
+     */
+    public static Executor ioFromSystemProperty() {
+        return createIo(System.getProperty(PROPERTY, "platform"));
+    }
+
+    /**
+     * Create the executor for the tasks that block next to the game loops of
+     * the matches, e.g., the {@code FrameReader}s that read ahead. It's a new
+     * virtual thread per task whenever the runtime has them, so that the
+     * matches don't need OS threads for these either. Otherwise it's the same
+     * kind as the executor of the matches, of daemon threads: a new thread per
+     * task, or a pool large enough for the tasks of as many matches as the
+     * pool of the matches runs.
+     *
+     * @param name name of the executor of the matches, "platform", "virtual" or
+     *             "pool:N"
+     * @return executor
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    public static Executor createIo(String name) {
+        if (!name.equals("platform") && !name.equals("virtual") && !name.startsWith("pool:"))
+            throw new IllegalArgumentException("Unknown executor: " + name);
+        if (virtualThreads()) {
+            System.out.println("I/O of the matches runs on a new virtual thread each");
+            return newVirtualThreadPerTaskExecutor();
+        }
+        if (name.startsWith("pool:")) {
+            int threads = IO_TASKS_PER_MATCH * Integer.parseInt(name.substring("pool:".length()));
+            System.out.println("I/O of the matches runs on a pool of " + threads + " platform threads");
+            return Executors.newFixedThreadPool(threads, MatchExecutors::daemon);
+        }
+        System.out.println("I/O of the matches runs on a new platform thread each");
+        return task -> daemon(task).start();
+    }
+
+    /** Whether the runtime has virtual threads */
+    private static boolean virtualThreads() {
+        return Runtime.version().feature() >= VIRTUAL_THREADS_SINCE;
+    }
+
+    /** A platform thread that doesn't keep the process alive */
+    private static Thread daemon(Runnable task) {
+        Thread t = new Thread(task, "match-io");
+        t.setDaemon(true);
+        return t;
+    }
+
+    /**
+     * Call {@code Executors.newVirtualThreadPerTaskExecutor()}, which this
+     * program, built for Java 11, can only look up at runtime
+     */
+    private static Executor newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) MethodHandles.publicLookup()
+                    .findStatic(Executors.class, "newVirtualThreadPerTaskExecutor",
+                            MethodType.methodType(ExecutorService.class))
+                    .invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot create virtual thread executor", e);
+        }
+    }
+}
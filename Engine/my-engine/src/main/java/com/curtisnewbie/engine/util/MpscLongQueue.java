@@ -0,0 +1,98 @@
+package com.curtisnewbie.engine.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded lock-free queue of {@code long}s, for many producers and a single
+ * consumer.<br>
+ * <br>
+ * The values live in a ring of primitive slots, so neither {@link #offer(long)}
+ * nor {@link #poll(long)} allocates. Each slot has a sequence number that tells
+ * whether it's free for the producer or filled for the consumer (as in Dmitry
+ * Vyukov's bounded queue), a producer only contends on a single CAS and never
+ * waits: {@link #offer(long)} returns {@code false} right away when the queue
+ * is full.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class MpscLongQueue {
+
+    private final int mask;
+
+    private final long[] values;
+
+    /** Sequence of each slot, see the class doc */
+    private final AtomicLongArray sequences;
+
+    /** Next position to claim by producers */
+    private final AtomicLong tail = new AtomicLong();
+
+    /** Next position to take by the consumer, only touched by the consumer */
+    private long head;
+
+    /**
+     * @param capacity number of slots, rounded up to a power of two
+     */
+    public MpscLongQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.values = new long[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+            sequences.set(i, i);
+    }
+
+    /**
+     * Add a value, may be called from any thread
+     *
+     * @param value value
+     * @return {@code false} if the queue is full, the value is not added then
+     */
+    public boolean offer(long value) {
+        while (true) {
+            long pos = tail.get();
+            int i = (int) pos & mask;
+            long seq = sequences.get(i);
+            if (seq == pos) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    values[i] = value;
+                    // publishes the value to the consumer
+                    sequences.set(i, pos + 1);
+                    return true;
+                }
+            } else if (seq < pos) {
+                // the consumer hasn't taken the value of the previous lap
+                return false;
+            }
+            // else another producer claimed it first, try the next one
+        }
+    }
+
+    /**
+     * Take the oldest value, must only be called by the consumer thread
+     *
+     * @param empty value to return when the queue is empty
+     * @return value, or {@code empty}
+     */
+    public long poll(long empty) {
+        int i = (int) head & mask;
+        if (sequences.get(i) != head + 1)
+            return empty;
+        long value = values[i];
+        // frees the slot for the next lap
+        sequences.set(i, head + mask + 1);
+        head++;
+        return value;
+    }
+
+    /**
+     * Whether the queue looks empty, only exact on the consumer thread
+     *
+     * @return {@code true} if there's nothing to take
+     */
+    public boolean isEmpty() {
+        return sequences.get((int) head & mask) != head + 1;
+    }
+}
@@ -0,0 +1,298 @@
+package com.curtisnewbie.engine.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A hashed timing wheel that tracks the deadlines of many timers, e.g., the
+ * heartbeats, idle connections and turn clocks of a server with 100k
+ * connections, at O(1) per timer.<br>
+ * <br>
+ * The wheel is a ring of buckets, each one covers a tick (e.g., 100 ms). A
+ * timer goes into the bucket of its deadline, with the number of whole turns
+ * of the wheel still to go, and cancelling it unlinks it from its bucket. Every
+ * tick, the owner of the wheel visits a single bucket and runs the timers that
+ * are due, so a timer fires up to a tick late, never early. Nothing is sorted,
+ * and there is no task or thread per timer.<br>
+ * <br>
+ * The buckets are only touched by the owner thread, e.g., the thread of an
+ * {@code EventLoop} that calls {@link #expire(long)} between two selects, so
+ * they need no locking. Other threads may schedule and cancel timers too, which
+ * are handed to the owner through lock-free queues and applied on its next
+ * tick. {@link #start(String, long, int)} creates a wheel with a thread of its
+ * own, for programs that block on their connections.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class TimerWheel {
+
+    private final long tickNanos;
+
+    /** Number of buckets minus 1, the number of buckets is a power of 2 */
+    private final int mask;
+
+    /** Head of the timers of each bucket, null if it's empty */
+    private final Timeout[] buckets;
+
+    /** The thread that runs the timers, the only one that touches the buckets */
+    private volatile Thread owner;
+
+    /** When the wheel started, ticks are counted from it */
+    private final long startNanos = System.nanoTime();
+
+    /** The next tick to visit */
+    private long tick;
+
+    /** Timers scheduled by other threads, put into buckets by the owner */
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+
+    /** Timers cancelled by other threads, unlinked by the owner */
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+
+    /** Timers in the buckets */
+    private int size;
+
+    /**
+     * @param tickMillis    length of a tick, which is the precision of the timers
+     * @param ticksPerWheel number of buckets, rounded up to a power of 2, a turn
+     *                      of the wheel should cover the usual timeouts
+     * @param owner         the thread that calls {@link #expire(long)}, null if
+     *                      it's the first thread that does
+     */
+    public TimerWheel(long tickMillis, int ticksPerWheel, Thread owner) {
+        if (tickMillis < 1)
+            throw new IllegalArgumentException("Tick must be at least 1 ms");
+        if (ticksPerWheel < 1 || ticksPerWheel > 1 << 20)
+            throw new IllegalArgumentException("Ticks per wheel must be between 1 and 2^20");
+        int n = Integer.highestOneBit(ticksPerWheel);
+        if (n < ticksPerWheel)
+            n <<= 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.mask = n - 1;
+        this.buckets = new Timeout[n];
+        this.owner = owner;
+    }
+
+    /**
+     * Create a wheel with a daemon thread of its own that ticks it, the timers
+     * run on that thread
+     *
+     * @param name          name of the thread
+     * @param tickMillis    length of a tick
+     * @param ticksPerWheel number of buckets
+     * @return wheel
+     */
+    public static TimerWheel start(String name, long tickMillis, int ticksPerWheel) {
+        TimerWheel wheel = new TimerWheel(tickMillis, ticksPerWheel, null);
+        Thread t = new Thread(() -> {
+            try {
+                while (true) {
+                    TimeUnit.NANOSECONDS.sleep(wheel.nanosToNextTick(System.nanoTime()));
+                    wheel.expire(System.nanoTime());
+                }
+            } catch (InterruptedException e) {
+                // stop ticking
+            }
+        }, name);
+        wheel.owner = t;
+        t.setDaemon(true);
+        t.start();
+        return wheel;
+    }
+
+    /**
+     * Run the task once the delay has passed, on the owner thread
+     *
+     * @param delayMillis delay
+     * @param task        task, it should be short as it holds up the other timers
+     * @return the timer, which may be cancelled
+     */
+    public Timeout schedule(long delayMillis, Runnable task) {
+        Timeout t = new Timeout(this, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis), task);
+        if (Thread.currentThread() == owner)
+            add(t);
+        else
+            scheduled.add(t);
+        return t;
+    }
+
+    /**
+     * Run the timers that are due, must be called by the owner thread, e.g.,
+     * on every iteration of an {@code EventLoop}
+     *
+     * @param nowNanos current {@code System.nanoTime()}
+     * @return number of timers that ran
+     */
+    public int expire(long nowNanos) {
+        if (owner == null)
+            owner = Thread.currentThread();
+        drain();
+        int ran = 0;
+        while (nowNanos - (startNanos + (tick + 1) * tickNanos) >= 0) {
+            // timers scheduled by the tasks of this tick go to the next one
+            int i = (int) (tick++ & mask);
+            ran += expireBucket(i);
+        }
+        return ran;
+    }
+
+    /**
+     * Time until the next tick is due, e.g., for the timeout of a select
+     *
+     * @param nowNanos current {@code System.nanoTime()}
+     * @return nanoseconds, 0 if it's due already
+     */
+    public long nanosToNextTick(long nowNanos) {
+        return Math.max(0, startNanos + (tick + 1) * tickNanos - nowNanos);
+    }
+
+    /**
+     * Whether there is no timer to run, timers handed over by other threads
+     * are only counted once the owner has taken them
+     *
+     * @return {@code true} if no timer is pending
+     */
+    public boolean isEmpty() {
+        return size == 0 && scheduled.isEmpty();
+    }
+
+    /**
+     * Number of timers in the wheel, must be called by the owner thread
+     *
+     * @return number of pending timers
+     */
+    public int size() {
+        return size;
+    }
+
+    /** Apply what other threads have scheduled and cancelled */
+    private void drain() {
+        Timeout t;
+        while ((t = scheduled.poll()) != null) {
+            if (t.state.get() == Timeout.PENDING)
+                add(t);
+        }
+        while ((t = cancelled.poll()) != null)
+            unlink(t);
+    }
+
+    /** Put the timer into the bucket of its deadline */
+    private void add(Timeout t) {
+        long ticks = (t.deadline - startNanos + tickNanos - 1) / tickNanos;
+        // a deadline that has passed is run on the next tick
+        long due = Math.max(ticks - 1, tick);
+        t.rounds = (due - tick) >>> Integer.numberOfTrailingZeros(buckets.length);
+        int i = (int) (due & mask);
+        t.bucket = i;
+        t.next = buckets[i];
+        if (t.next != null)
+            t.next.prev = t;
+        buckets[i] = t;
+        t.linked = true;
+        size++;
+    }
+
+    /** Take the timer out of its bucket, if it's still there */
+    private void unlink(Timeout t) {
+        if (!t.linked)
+            return;
+        if (t.prev != null)
+            t.prev.next = t.next;
+        else
+            buckets[t.bucket] = t.next;
+        if (t.next != null)
+            t.next.prev = t.prev;
+        t.prev = null;
+        t.next = null;
+        t.linked = false;
+        size--;
+    }
+
+    /** Run the timers of the bucket that are due in this turn of the wheel */
+    private int expireBucket(int i) {
+        // take the due ones out first, as their tasks may cancel the others
+        Timeout due = null;
+        Timeout t = buckets[i];
+        while (t != null) {
+            Timeout next = t.next;
+            if (t.rounds > 0) {
+                t.rounds--;
+            } else {
+                unlink(t);
+                t.next = due;
+                due = t;
+            }
+            t = next;
+        }
+        int ran = 0;
+        while (due != null) {
+            t = due;
+            due = t.next;
+            t.next = null;
+            if (t.state.compareAndSet(Timeout.PENDING, Timeout.EXPIRED)) {
+                ran++;
+                try {
+                    t.task.run();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return ran;
+    }
+
+    /** A timer in the wheel */
+    public static final class Timeout {
+
+        static final int PENDING = 0;
+        static final int CANCELLED = 1;
+        static final int EXPIRED = 2;
+
+        private final TimerWheel wheel;
+        private final long deadline;
+        private final Runnable task;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        // ---------------------------- touched by the owner only
+
+        private Timeout prev;
+        private Timeout next;
+        private int bucket;
+        private long rounds;
+        private boolean linked;
+
+        private Timeout(TimerWheel wheel, long deadline, Runnable task) {
+            this.wheel = wheel;
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        /**
+         * Cancel the timer, its task won't run
+         *
+         * @return {@code false} if it has run (or is running) or was cancelled
+         *         already
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED))
+                return false;
+            if (Thread.currentThread() == wheel.owner)
+                wheel.unlink(this);
+            else
+                wheel.cancelled.add(this);
+            return true;
+        }
+
+        /**
+         * Whether its task has run, or is running
+         *
+         * @return {@code true} if it has expired
+         */
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+    }
+}
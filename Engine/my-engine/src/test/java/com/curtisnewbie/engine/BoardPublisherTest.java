@@ -0,0 +1,122 @@
+package com.curtisnewbie.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * Snapshots handed from the thread that owns a board to other threads through a
+ * {@code BoardPublisher}, in the manner of jcstress: one writer plays random
+ * games and, as the {@code GamePane} does once per frame, publishes the board
+ * after a batch of changes, while readers look at it all the time. No reader
+ * may see a state that no single moment of a game can be in.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public class BoardPublisherTest {
+
+    private static final int STONES = 0;
+    private static final int TURN = 1;
+    private static final int LAST_MOVE = 2;
+    private static final int WINNER = 3;
+    private static final int VERSION = 4;
+    private static final String[] NAMES = { "stones", "turn", "last move", "winner", "version" };
+
+    private static final int READERS = 3;
+
+    /** Most changes applied between two publications, as in a frame */
+    private static final int MAX_BATCH = 8;
+
+    private static final long RUN_MILLIS = 1000;
+
+    private final AtomicBoolean running = new AtomicBoolean(true);
+
+    @Test(timeout = 30_000)
+    public void readersNeverSeeForbiddenStates() throws InterruptedException {
+        GameRules rules = GameRules.create(7, 4);
+        BoardPublisher published = new BoardPublisher();
+        published.publish(BoardSnapshot.of(0, rules, BoardSnapshot.NO_CELL, false));
+
+        long[][] forbidden = new long[READERS][NAMES.length];
+        long[] reads = new long[READERS];
+        Thread[] readers = new Thread[READERS];
+        for (int r = 0; r < READERS; r++) {
+            int id = r;
+            readers[r] = new Thread(() -> read(published, forbidden[id], reads, id), "reader-" + r);
+            readers[r].start();
+        }
+
+        long version = 0;
+        int lastCell = BoardSnapshot.NO_CELL;
+        int cells = rules.cells();
+        Random random = new Random(42);
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RUN_MILLIS);
+        while (System.nanoTime() < end) {
+            for (int b = 1 + random.nextInt(MAX_BATCH); b > 0; b--) {
+                if (rules.isOver()) {
+                    rules.reset();
+                    lastCell = BoardSnapshot.NO_CELL;
+                } else {
+                    int cell = random.nextInt(cells);
+                    while (rules.cellAt(cell) >= 0)
+                        cell = cell + 1 == cells ? 0 : cell + 1;
+                    rules.apply(cell);
+                    lastCell = cell;
+                }
+            }
+            published.publish(BoardSnapshot.of(++version, rules, lastCell, false));
+        }
+        running.set(false);
+        for (Thread t : readers)
+            t.join();
+
+        long totalReads = 0;
+        for (int r = 0; r < READERS; r++) {
+            totalReads += reads[r];
+            for (int i = 0; i < NAMES.length; i++)
+                assertEquals("Forbidden " + NAMES[i] + " seen by reader-" + r, 0, forbidden[r][i]);
+        }
+        assertTrue(totalReads > 0);
+    }
+
+    /** Look at the published snapshots until the writer stops */
+    private void read(BoardPublisher published, long[] forbidden, long[] reads, int id) {
+        long count = 0;
+        long lastVersion = -1;
+        while (running.get()) {
+            BoardSnapshot s = published.current();
+            count++;
+            if (s.version() < lastVersion)
+                forbidden[VERSION]++;
+            lastVersion = s.version();
+            int p0 = 0;
+            int p1 = 0;
+            int cells = s.size() * s.size();
+            for (int c = 0; c < cells; c++) {
+                int p = s.cellAt(c);
+                if (p == 0)
+                    p0++;
+                else if (p == 1)
+                    p1++;
+            }
+            int stones = p0 + p1;
+            if (p0 - p1 != 0 && p0 - p1 != 1)
+                forbidden[STONES]++;
+            if (s.currentPlayer() != (stones & 1))
+                forbidden[TURN]++;
+            int mover = (stones - 1) & 1;
+            if (stones > 0 && (s.lastCell() < 0 || s.cellAt(s.lastCell()) != mover))
+                forbidden[LAST_MOVE]++;
+            int status = s.status();
+            if (status == GameRules.PLAYER_0_WON && mover != 0 || status == GameRules.PLAYER_1_WON && mover != 1)
+                forbidden[WINNER]++;
+        }
+        reads[id] = count;
+    }
+}
@@ -0,0 +1,126 @@
+package com.curtisnewbie.engine.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Games are found by their id in a journal of many segments, through the
+ * header of each segment and its sparse index, including a game whose first
+ * record was queued after that of a newer game in the next segment.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public class JournalReaderTest {
+
+    private static final int GAMES = 3000;
+
+    /** About a thousand records, i.e., two hundred games, per segment */
+    private static final int SEGMENT_SIZE = GameJournal.HEADER_SIZE + 1000 * GameJournal.RECORD_SIZE;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void findsEveryGameAcrossSegments() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        GameJournal journal = new GameJournal(dir, 3, 3, SEGMENT_SIZE);
+        // two games at a time, so that their records are interleaved
+        for (int g = 0; g < GAMES; g += 2) {
+            GameJournal.Recorder a = journal.startGame();
+            GameJournal.Recorder b = journal.startGame();
+            for (int m = 0; m < 3; m++) {
+                a.move(cellOf(a.gameId(), m));
+                b.move(cellOf(b.gameId(), m));
+            }
+            a.end(resultOf(a.gameId()));
+            b.end(resultOf(b.gameId()));
+        }
+        journal.close();
+        assertEquals(0, journal.dropped());
+
+        try (JournalReader reader = new JournalReader(dir)) {
+            assertTrue(reader.lastSegment() > GAMES / 250);
+            assertEquals(GAMES, reader.lastGameId());
+            for (int id = 1; id <= GAMES; id++) {
+                RecordedGame game = reader.find(id);
+                assertNotNull("Game " + id + " is not found", game);
+                assertEquals(id, game.gameId());
+                assertEquals(3, game.moves());
+                for (int m = 0; m < 3; m++)
+                    assertEquals(cellOf(id, m), game.cell(m));
+                assertEquals(resultOf(id), game.result());
+            }
+            assertNull(reader.find(GAMES + 1));
+        }
+    }
+
+    @Test
+    public void findsGameQueuedAfterNewerOneInNextSegment() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        // game 101 starts at the end of the first segment, game 100 at the
+        // start of the second one, as the writer puts down what it's queued
+        writeSegment(dir, 1, 99, 101, //
+                record(99, GameJournal.START), record(99, 4), record(99, GameJournal.END | 1),
+                record(101, GameJournal.START));
+        writeSegment(dir, 2, 100, 100, //
+                record(100, GameJournal.START), record(101, 4), record(100, 0), record(101, 8),
+                record(101, GameJournal.END | 2), record(100, GameJournal.END | 1));
+
+        try (JournalReader reader = new JournalReader(dir)) {
+            RecordedGame late = reader.find(101);
+            assertNotNull(late);
+            assertEquals(2, late.moves());
+            assertEquals(4, late.cell(0));
+            assertEquals(8, late.cell(1));
+            assertEquals(2, late.result());
+
+            RecordedGame early = reader.find(100);
+            assertNotNull(early);
+            assertEquals(1, early.moves());
+            assertEquals(0, early.cell(0));
+
+            assertNotNull(reader.find(99));
+            assertNull(reader.find(102));
+        }
+    }
+
+    private static int cellOf(int gameId, int move) {
+        return (gameId + move) % 9;
+    }
+
+    private static int resultOf(int gameId) {
+        return 1 + gameId % 3;
+    }
+
+    private static long record(int gameId, int cell) {
+        return (long) gameId << 32 | cell;
+    }
+
+    /** A full segment of a 3x3 journal, laid out the way the writer does */
+    private static void writeSegment(Path dir, int seq, int minId, int maxId, long... records) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(GameJournal.HEADER_SIZE + records.length * GameJournal.RECORD_SIZE);
+        b.putInt(0, GameJournal.MAGIC);
+        b.put(4, (byte) 3);
+        b.put(5, (byte) 3);
+        b.putLong(8, System.currentTimeMillis());
+        b.putInt(16, minId);
+        b.putInt(20, records.length);
+        b.putInt(24, maxId);
+        b.position(GameJournal.HEADER_SIZE);
+        for (long r : records)
+            b.putLong(r);
+        Files.write(GameJournal.segmentPath(dir, seq), b.array());
+    }
+}
@@ -0,0 +1,76 @@
+package com.curtisnewbie.engine.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedInputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.ProtocolException;
+
+import org.junit.Test;
+
+/**
+ * A peer that runs ahead of a {@code FrameReader} that reads ahead, the frames
+ * are kept in order up to a limit, beyond it the peer is flooding the reader.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public class FrameReaderTest {
+
+    /** Cells of the 3x3 board that the moves are made on */
+    private static final int CELLS = 9;
+
+    @Test(timeout = 10_000)
+    public void framesAheadAreKeptInOrder() throws Exception {
+        PipedOutputStream peer = new PipedOutputStream();
+        FrameReader in = new FrameReader(new BufferedInputStream(new PipedInputStream(peer, 1 << 16)))
+                .readAhead("frame-reader");
+        FrameWriter out = new FrameWriter(peer);
+        for (int i = 0; i < 3 * FrameReader.READ_AHEAD_FRAMES; i++) {
+            out.heartbeat();
+            out.move(i % CELLS, CELLS);
+            out.flush();
+            Frame frame = new Frame();
+            in.read(frame);
+            assertEquals(Protocol.MOVE, frame.type());
+            assertEquals(i % CELLS, frame.cell(CELLS));
+        }
+        peer.close();
+    }
+
+    @Test(timeout = 10_000)
+    public void floodingPeerIsStillHeard() throws Exception {
+        PipedOutputStream peer = new PipedOutputStream();
+        FrameReader in = new FrameReader(new BufferedInputStream(new PipedInputStream(peer, 1 << 16)))
+                .readAhead("frame-reader");
+        FrameWriter out = new FrameWriter(peer);
+        for (int i = 0; i <= FrameReader.READ_AHEAD_FRAMES; i++)
+            out.move(i % CELLS, CELLS);
+        out.flush();
+
+        // the peer keeps talking after the flood, it's heard but not kept
+        Thread.sleep(100);
+        long flooded = in.lastFrameAt();
+        out.heartbeat();
+        out.move(0, CELLS);
+        out.flush();
+        while (in.lastFrameAt() == flooded)
+            Thread.sleep(10);
+
+        Frame frame = new Frame();
+        for (int i = 0; i < FrameReader.READ_AHEAD_FRAMES; i++) {
+            in.read(frame);
+            assertEquals(i % CELLS, frame.cell(CELLS));
+        }
+        try {
+            in.read(frame);
+            fail("The flood is not noticed");
+        } catch (ProtocolException e) {
+            assertTrue(e.getMessage().contains("ahead of the reader"));
+        }
+        peer.close();
+    }
+}
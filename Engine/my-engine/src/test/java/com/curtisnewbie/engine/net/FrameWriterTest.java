@@ -0,0 +1,49 @@
+package com.curtisnewbie.engine.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * A {@code MUX} carries the frames of a game up to the largest payload, and
+ * frames that don't fit are refused before anything is collected.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public class FrameWriterTest {
+
+    @Test
+    public void muxOfTheLargestPayloadIsRead() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FrameWriter out = new FrameWriter(bytes);
+        out.mux(7, ByteBuffer.allocate(FrameCodec.MAX_MUX_LENGTH));
+        out.flush();
+
+        Frame frame = new Frame();
+        new FrameReader(new ByteArrayInputStream(bytes.toByteArray())).read(frame);
+        assertEquals(Protocol.MUX, frame.type());
+        assertEquals(Protocol.MAX_PAYLOAD, frame.length());
+        assertEquals(7, frame.gameId());
+    }
+
+    @Test
+    public void muxBeyondTheLargestPayloadIsRefused() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FrameWriter out = new FrameWriter(bytes);
+        out.heartbeat();
+        try {
+            out.mux(7, ByteBuffer.allocate(FrameCodec.MAX_MUX_LENGTH + 1));
+            fail("The frames don't fit in a MUX");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        out.flush();
+        assertEquals(1, bytes.size());
+    }
+}
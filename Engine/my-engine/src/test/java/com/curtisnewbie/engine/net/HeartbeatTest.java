@@ -0,0 +1,86 @@
+package com.curtisnewbie.engine.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.BufferedInputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.curtisnewbie.engine.util.TimerWheel;
+
+/**
+ * A player that thinks for longer than the idle timeout reads nothing
+ * meanwhile, the connection must survive it on both sides. The intervals are
+ * those of the protocol scaled down, so that the test takes a moment.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public class HeartbeatTest {
+
+    /** Cells of the 3x3 board that the moves are made on */
+    private static final int CELLS = 9;
+
+    private static final long INTERVAL_MILLIS = 50;
+
+    private static final long IDLE_MILLIS = 4 * INTERVAL_MILLIS;
+
+    @Test(timeout = 10_000)
+    public void silentPlayerIsNotEvicted() throws Exception {
+        TimerWheel timers = TimerWheel.start("test-timers", 10, 512);
+        try (ServerSocket server = new ServerSocket(0);
+                Socket thinker = new Socket("localhost", server.getLocalPort());
+                Socket waiter = server.accept()) {
+            FrameReader thinkerIn = new FrameReader(new BufferedInputStream(thinker.getInputStream()))
+                    .readAhead("frame-reader");
+            FrameWriter thinkerOut = new FrameWriter(thinker.getOutputStream());
+            Heartbeat thinkerBeat = new Heartbeat(timers, thinkerIn, thinkerOut, thinker, INTERVAL_MILLIS, IDLE_MILLIS)
+                    .start();
+            thinkerBeat.peerVersion(Protocol.VERSION);
+
+            FrameReader waiterIn = new FrameReader(new BufferedInputStream(waiter.getInputStream()));
+            FrameWriter waiterOut = new FrameWriter(waiter.getOutputStream());
+            Heartbeat waiterBeat = new Heartbeat(timers, waiterIn, waiterOut, waiter, INTERVAL_MILLIS, IDLE_MILLIS)
+                    .start();
+            waiterBeat.peerVersion(Protocol.VERSION);
+
+            // the waiter blocks on the thinker's move, and answers it
+            CompletableFuture<Integer> waited = CompletableFuture.supplyAsync(() -> {
+                Frame f = new Frame();
+                try {
+                    do {
+                        waiterIn.read(f);
+                    } while (f.type() != Protocol.MOVE);
+                    waiterOut.move(f.cell(CELLS) + 1, CELLS);
+                    waiterOut.flush();
+                    return f.cell(CELLS);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+            // the thinker reads nothing for longer than the idle timeout
+            Thread.sleep(3 * IDLE_MILLIS);
+            assertFalse(thinkerBeat.isEvicted());
+            assertFalse(waiterBeat.isEvicted());
+
+            thinkerOut.move(4, CELLS);
+            thinkerOut.flush();
+            assertEquals(4, (int) waited.get(5, TimeUnit.SECONDS));
+            Frame frame = new Frame();
+            thinkerIn.read(frame);
+            assertEquals(Protocol.MOVE, frame.type());
+            assertEquals(5, frame.cell(CELLS));
+            assertFalse(thinkerBeat.isEvicted());
+            assertFalse(waiterBeat.isEvicted());
+
+            thinkerBeat.stop();
+            waiterBeat.stop();
+        }
+    }
+}
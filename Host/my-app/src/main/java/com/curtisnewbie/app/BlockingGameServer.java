@@ -0,0 +1,265 @@
+package com.curtisnewbie.app;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.curtisnewbie.engine.GameRules;
+import com.curtisnewbie.engine.journal.GameJournal;
+import com.curtisnewbie.engine.net.Frame;
+import com.curtisnewbie.engine.net.FrameReader;
+import com.curtisnewbie.engine.net.FrameWriter;
+import com.curtisnewbie.engine.net.Heartbeat;
+import com.curtisnewbie.engine.net.Protocol;
+import com.curtisnewbie.engine.util.GameMetrics;
+import com.curtisnewbie.engine.util.MatchExecutors;
+import com.curtisnewbie.engine.util.TimerWheel;
+
+/**
+ * Server mode of the Host that runs every match as a blocking loop, the same
+ * way {@code Host.startGame()} does, one task per match on a configurable
+ * {@code Executor} (see {@code MatchExecutors}).<br>
+ * <br>
+ * With virtual threads, a single process keeps tens of thousands of blocking
+ * games without as many OS threads, which makes this the blocking counterpart
+ * of the {@code GameServer}.<br>
+ * <br>
+ * Both Clients get a heartbeat every few seconds, and a Client that sends
+ * heartbeats itself is dropped when it's silent for too long, so a match never
+ * hangs on a dead peer. With the system property "tictactoe.turn" set to a
+ * number of seconds, each move must be made in time or the game is lost. The
+ * timers of all matches share one {@code TimerWheel}, a timer that runs out
+ * shuts down the input of the player in turn, which wakes up the match that
+ * blocks on reading it. The heartbeats are written, and both Clients read
+ * ahead, on an executor of their own, so that a peer that doesn't take its
+ * bytes never holds up the timers of other matches, and nothing of it waits
+ * for a thread of the match executor (e.g., "pool:N"). These are virtual
+ * threads too whenever the runtime has them, see
+ * {@code MatchExecutors.createIo(String)}.<br>
+ * <br>
+ * Usage: {@code BlockingGameServer [port] [platform|virtual|pool:N] [N] [K]}
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public class BlockingGameServer {
+
+    // modify it and the one in Client program, if necessary
+    private static final int PORT = 7000;
+
+    private final int port;
+
+    private final Executor executor;
+
+    /** Size of the board */
+    private final int n;
+
+    /** Stones in a row to win */
+    private final int k;
+
+    private final GameMetrics metrics = GameMetrics.start("BlockingGameServer");
+
+    /** Records every game, see {@code GameJournal} */
+    private final GameJournal journal;
+
+    /** Seconds for each move, 0 for no clock */
+    private final int turnSeconds = GameServer.turnSecondsFromSystemProperty();
+
+    /** Heartbeats and turn clocks of every match */
+    private final TimerWheel timers = TimerWheel.start("match-timers", 100, 512);
+
+    /** Reads ahead and writes the heartbeats of every match, these tasks block */
+    private final Executor io;
+
+    /**
+     * @param port     port to listen on
+     * @param executor runs the matches
+     * @param io       reads ahead and writes the heartbeats of the matches, see
+     *                 {@code MatchExecutors.createIo(String)}
+     * @param n        size of the board
+     * @param k        stones in a row to win
+     */
+    public BlockingGameServer(int port, Executor executor, Executor io, int n, int k) {
+        // fail fast on a board that is not supported
+        GameRules.create(n, k);
+        this.port = port;
+        this.executor = executor;
+        this.io = io;
+        this.n = n;
+        this.k = k;
+        this.journal = GameJournal.fromSystemProperty(n, k);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : PORT;
+        String name = args.length > 1 ? args[1] : System.getProperty(MatchExecutors.PROPERTY, "platform");
+        int n = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        int k = args.length > 3 ? Integer.parseInt(args[3]) : Math.min(n, 5);
+        new BlockingGameServer(port, MatchExecutors.create(name), MatchExecutors.createIo(name), n, k).serve();
+    }
+
+    /**
+     * Accept Clients until the process is terminated, pairing every two of them
+     * into a match that runs on the executor.
+     */
+    public void serve() throws IOException {
+        int gameId = 0;
+        try (ServerSocket server = new ServerSocket(port, 1024)) {
+            System.out.println("Server listening on port " + port);
+            while (true) {
+                Socket first = server.accept();
+                Socket second = server.accept();
+                int id = ++gameId;
+                executor.execute(() -> play(id, first, second));
+            }
+        }
+    }
+
+    /**
+     * Play a match between the two Clients until it finishes or one of them is
+     * disconnected.<br>
+     * <br>
+     * Only the frames of the player in turn are handled, so e.g., a
+     * {@code RESIGN} from the other player is noticed when its turn comes, but
+     * both connections are read ahead, so that both players are heard.
+     */
+    private void play(int id, Socket first, Socket second) {
+        // seat 0 is player 0 of the engine
+        GameRules engine = GameRules.create(n, k);
+        Frame frame = new Frame();
+        metrics.gameStarted();
+        GameJournal.Recorder recorder = journal.startGame();
+        // result from the view of seat 0
+        int result = Protocol.RESULT_ABORTED;
+        Heartbeat[] heartbeats = new Heartbeat[2];
+        // the seat that ran out of time, -1 if none
+        AtomicInteger timedOut = new AtomicInteger(-1);
+        TimerWheel.Timeout clock = null;
+        try (first; second) {
+            first.setTcpNoDelay(true);
+            second.setTcpNoDelay(true);
+            FrameReader[] in = {
+                    new FrameReader(new BufferedInputStream(metrics.meter(first.getInputStream()))).readAhead(io),
+                    new FrameReader(new BufferedInputStream(metrics.meter(second.getInputStream()))).readAhead(io) };
+            FrameWriter[] out = { new FrameWriter(metrics.meter(first.getOutputStream())),
+                    new FrameWriter(metrics.meter(second.getOutputStream())) };
+
+            out[0].hello(Protocol.MOVE_FIRST, n, k, 1, turnSeconds);
+            out[0].flush();
+            out[1].hello(Protocol.MOVE_SECOND, n, k, 1, turnSeconds);
+            out[1].flush();
+            heartbeats[0] = new Heartbeat(timers, in[0], out[0], first).sendOn(io).start();
+            heartbeats[1] = new Heartbeat(timers, in[1], out[1], second).sendOn(io).start();
+
+            // when the last move was relayed to the player in turn
+            long sentAt = 0;
+            loop: while (!engine.isOver()) {
+                int seat = engine.currentPlayer();
+                if (turnSeconds > 0 && clock == null) {
+                    Socket player = seat == 0 ? first : second;
+                    clock = timers.schedule(turnSeconds * 1000L, () -> timeUp(timedOut, seat, player));
+                }
+                try {
+                    in[seat].read(frame);
+                } catch (ProtocolException e) {
+                    // e.g., it kept sending out of turn
+                    System.out.println("Game " + id + " : " + e.getMessage() + " from seat " + seat);
+                    out[seat].error(Protocol.ERROR_MALFORMED_FRAME);
+                    result = seat == 0 ? Protocol.RESULT_LOSS : Protocol.RESULT_WIN;
+                    break loop;
+                } catch (IOException e) {
+                    if (timedOut.get() != seat)
+                        throw e;
+                    result = timeoutOf(id, seat);
+                    break loop;
+                }
+                switch (frame.type()) {
+                case Protocol.MOVE:
+                    int cell = frame.cell(engine.cells());
+                    if (engine.apply(cell) == GameRules.ILLEGAL_MOVE) {
+                        System.out.println("Game " + id + " : Illegal move from seat " + seat);
+                        out[seat].error(Protocol.ERROR_ILLEGAL_MOVE);
+                        result = seat == 0 ? Protocol.RESULT_LOSS : Protocol.RESULT_WIN;
+                        break loop;
+                    }
+                    // the clock may have run out just as the move came in
+                    if (clock != null && !clock.cancel()) {
+                        result = timeoutOf(id, seat);
+                        break loop;
+                    }
+                    clock = null;
+                    long now = System.nanoTime();
+                    metrics.moveReceived();
+                    if (sentAt != 0)
+                        metrics.roundTrip(now - sentAt);
+                    sentAt = now;
+                    recorder.move(cell);
+                    // relay the move to the opponent, the last one goes with the GAME_OVER
+                    out[1 - seat].move(cell, engine.cells());
+                    metrics.moveSent();
+                    if (!engine.isOver())
+                        out[1 - seat].flush();
+                    break;
+                case Protocol.RESIGN:
+                    result = seat == 0 ? Protocol.RESULT_LOSS : Protocol.RESULT_WIN;
+                    break loop;
+                case Protocol.HELLO:
+                    if (!Protocol.supports(frame.byteAt(0), n, k)) {
+                        out[seat].error(Protocol.ERROR_UNSUPPORTED_VERSION);
+                        break loop;
+                    }
+                    heartbeats[seat].peerVersion(frame.byteAt(0));
+                    break;
+                case Protocol.ERROR:
+                    break loop;
+                default:
+                    // heartbeats, and frames unknown to this version, are skipped
+                    break;
+                }
+            }
+            if (engine.isOver())
+                result = Protocol.resultOf(engine.status());
+
+            out[0].gameOver(result);
+            out[0].flush();
+            out[1].gameOver(Protocol.opposite(result));
+            out[1].flush();
+        } catch (IOException e) {
+            // one of the Clients is disconnected, the other one is closed as well
+            metrics.disconnected();
+        } finally {
+            if (clock != null)
+                clock.cancel();
+            for (Heartbeat h : heartbeats) {
+                if (h != null)
+                    h.stop();
+            }
+            metrics.gameFinished();
+            recorder.end(result);
+        }
+    }
+
+    /**
+     * The player in turn ran out of time, its input is shut down to wake up the
+     * match, whose output is still open for the {@code GAME_OVER}
+     */
+    private static void timeUp(AtomicInteger timedOut, int seat, Socket player) {
+        timedOut.set(seat);
+        try {
+            player.shutdownInput();
+        } catch (IOException e) {
+            // already closed, the match finds out
+        }
+    }
+
+    /** The result, from the view of seat 0, of the seat running out of time */
+    private int timeoutOf(int id, int seat) {
+        System.out.println("Game " + id + " : Seat " + seat + " ran out of time");
+        metrics.turnTimedOut();
+        return seat == 0 ? Protocol.RESULT_TIMEOUT_LOSS : Protocol.RESULT_TIMEOUT_WIN;
+    }
+}
@@ -0,0 +1,149 @@
+package com.curtisnewbie.app;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import com.curtisnewbie.engine.net.Frame;
+import com.curtisnewbie.engine.net.FrameReader;
+import com.curtisnewbie.engine.net.FrameWriter;
+import com.curtisnewbie.engine.net.Heartbeat;
+import com.curtisnewbie.engine.net.Link;
+import com.curtisnewbie.engine.net.Protocol;
+import com.curtisnewbie.engine.net.Transport;
+import com.curtisnewbie.engine.util.TimerWheel;
+
+/**
+ * The link of a {@code GameServer} to the {@code Router} of its cluster.<br>
+ * <br>
+ * The server tells the router that it's up with a {@code NODE}, and keeps the
+ * connection open for as long as it runs, both sides send heartbeats over it.
+ * The router takes the server off its ring when the connection is lost, so a
+ * server that dies stops getting games, and the link connects again (and the
+ * server rejoins) every second until the router is back.<br>
+ * <br>
+ * To leave, the server tells the router that it's draining: it gets no new
+ * games, but the Clients of a pair whose first Client is on it already are still
+ * sent to it, and it finishes the games it has before it exits.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+final class ClusterNode {
+
+    /** System property with the router of the cluster, "host:port" */
+    static final String PROPERTY = "tictactoe.router";
+
+    /**
+     * System property with the host that Clients reach the server at, the
+     * address of the connection to the router by default
+     */
+    static final String HOST_PROPERTY = "tictactoe.node.host";
+
+    /** Wait before connecting to the router again */
+    private static final long RETRY_MILLIS = 1000;
+
+    private final String routerHost;
+    private final int routerPort;
+
+    /** Port that the server takes Clients on */
+    private final int port;
+
+    /** Host in the {@code NODE}, empty for the address of the connection */
+    private final byte[] host;
+
+    private final Transport transport = Transport.create("tcp");
+
+    /** Runs the heartbeats of the link */
+    private final TimerWheel timers = TimerWheel.start("router-timers", 100, 512);
+
+    /** Frames to the router, null while it's not connected */
+    private volatile FrameWriter out;
+
+    /** {@code Protocol.NODE_UP} or {@code Protocol.NODE_DRAINING} */
+    private volatile int state = Protocol.NODE_UP;
+
+    private ClusterNode(String routerHost, int routerPort, int port, byte[] host) {
+        this.routerHost = routerHost;
+        this.routerPort = routerPort;
+        this.port = port;
+        this.host = host;
+    }
+
+    /**
+     * Create the link to the router named by the system property
+     * {@value #PROPERTY}
+     *
+     * @param port port that the server takes Clients on
+     * @return link, not connected yet, or null if the server is not in a
+     *         cluster
+     */
+    static ClusterNode fromSystemProperty(int port) {
+        String router = System.getProperty(PROPERTY);
+        if (router == null)
+            return null;
+        int colon = router.lastIndexOf(':');
+        if (colon < 0)
+            throw new IllegalArgumentException("-D" + PROPERTY + " must be host:port, e.g., localhost:7000");
+        String host = System.getProperty(HOST_PROPERTY, "");
+        return new ClusterNode(router.substring(0, colon), Integer.parseInt(router.substring(colon + 1)), port,
+                host.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /** Join the cluster, and stay in it, on a thread of its own */
+    void start() {
+        Thread t = new Thread(this::run, "router-link");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /** Tell the router that no new games should be sent here */
+    void drain() {
+        state = Protocol.NODE_DRAINING;
+        FrameWriter o = out;
+        if (o == null)
+            return;
+        try {
+            o.node(port, Protocol.NODE_DRAINING, host);
+            o.flush();
+        } catch (IOException e) {
+            // the router has lost us anyway
+        }
+    }
+
+    private void run() {
+        Frame frame = new Frame();
+        boolean warned = false;
+        while (true) {
+            Heartbeat heartbeat = null;
+            try (Link link = transport.connect(routerHost, routerPort)) {
+                FrameReader in = new FrameReader(new BufferedInputStream(link.in()));
+                FrameWriter o = new FrameWriter(link.out());
+                heartbeat = new Heartbeat(timers, in, o, link).start();
+                heartbeat.peerVersion(Protocol.VERSION);
+                // set before the state is read, so that drain() can't fall in between
+                out = o;
+                o.node(port, state, host);
+                o.flush();
+                System.out.println("Joined the cluster of router " + routerHost + ":" + routerPort);
+                // nothing but heartbeats comes from the router
+                while (true)
+                    in.read(frame);
+            } catch (IOException e) {
+                if (out != null || !warned)
+                    System.out.println("Cannot reach the router " + routerHost + ":" + routerPort
+                            + ", connecting again every second");
+                warned = true;
+            } finally {
+                out = null;
+                if (heartbeat != null)
+                    heartbeat.stop();
+            }
+            try {
+                Thread.sleep(RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
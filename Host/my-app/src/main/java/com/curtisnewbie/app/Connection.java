@@ -0,0 +1,386 @@
+package com.curtisnewbie.app;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+import com.curtisnewbie.engine.net.Frame;
+import com.curtisnewbie.engine.net.FrameCodec;
+import com.curtisnewbie.engine.net.Protocol;
+import com.curtisnewbie.engine.util.TimerWheel;
+
+/**
+ * A non-blocking connection to one player, owned by a single
+ * {@code EventLoop}.<br>
+ * <br>
+ * Incoming bytes are accumulated until a whole frame (see {@code Protocol}) is
+ * available, which is then handed to the {@code ServerGame}. Outgoing frames
+ * are put into a buffer with {@code FrameCodec} and written on
+ * {@link #flush()}, whatever the socket doesn't take is kept and flushed when
+ * the channel becomes writable again.<br>
+ * <br>
+ * On a {@code GameServer} with a {@code Lobby}, the connection first waits in
+ * the lobby until it's paired, and is then moved to the loop of its opponent,
+ * if that's another one, so that both players of a game are on one loop.<br>
+ * <br>
+ * A timer of the loop sends the player a {@code HEARTBEAT} every
+ * {@code Protocol.HEARTBEAT_INTERVAL_MILLIS}, and drops the connection when
+ * nothing has been read for {@code Protocol.IDLE_TIMEOUT_MILLIS}, unless the
+ * player is too old to send heartbeats itself. It's one timer per connection,
+ * which a read doesn't touch, the timer looks at the time of the last read
+ * when it fires.<br>
+ * <br>
+ * The buffers are a record of the {@code ConnectionTable} of its loop, taken
+ * when it's registered, and given back when it's moved to another loop (the
+ * bytes still pending are carried over on the heap) or closed. The handle of
+ * the record is the id of the connection, which the {@code GameTable} keeps
+ * with the game. A closed connection puts the frames of its game into the
+ * {@code discard()} buffer of the loop instead. Should the table be full, the
+ * buffers are taken from the heap.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public class Connection implements Selectable, MovablePlayer {
+
+    private final SocketChannel channel;
+    private EventLoop loop;
+    private SelectionKey key;
+
+    /** Handle of the record in the table of the loop, {@code ConnectionTable.NO_HANDLE} if none */
+    private int id = ConnectionTable.NO_HANDLE;
+
+    /** Large enough for the largest frame, null until it's registered */
+    private ByteBuffer in;
+    private ByteBuffer out;
+
+    private ServerGame game;
+
+    /** Where the connection waits before it has a game */
+    private Lobby lobby;
+
+    /** Its place in the lobby, once its {@code HELLO} is read */
+    private Lobby.Ticket ticket;
+
+    /** The seat of this connection in {@code game} */
+    private int seat;
+
+    /** Close the channel once everything pending has been written */
+    private boolean closeAfterFlush;
+
+    private boolean closed;
+
+    /** When the last bytes were read, in nanos */
+    private long lastRead;
+
+    /** Version in the player's {@code HELLO}, 0 until it's read */
+    private int version;
+
+    /** Sends heartbeats and drops the connection when it's silent */
+    private TimerWheel.Timeout liveness;
+
+    public Connection(SocketChannel channel, EventLoop loop) {
+        this.channel = channel;
+        this.loop = loop;
+    }
+
+    @Override
+    public int connectionId() {
+        return id;
+    }
+
+    /**
+     * Register this connection on its loop, must be called in the loop.
+     *
+     * @param game game this connection plays
+     * @param seat seat in the game
+     */
+    @Override
+    public void register(ServerGame game, int seat) throws IOException {
+        this.game = game;
+        this.seat = seat;
+        claim();
+        channel.configureBlocking(false);
+        key = channel.register(loop.selector(), SelectionKey.OP_READ, this);
+        watch();
+    }
+
+    /**
+     * Register this connection on its loop to wait in the lobby for an
+     * opponent, must be called in the loop.
+     *
+     * @param lobby lobby that the connection joins with its {@code HELLO}
+     */
+    @Override
+    public void register(Lobby lobby) throws IOException {
+        this.lobby = lobby;
+        claim();
+        channel.configureBlocking(false);
+        key = channel.register(loop.selector(), SelectionKey.OP_READ, this);
+        watch();
+    }
+
+    /**
+     * Move the connection, which has been paired in the lobby, to the loop of
+     * its opponent, where it's registered again with its game. Must be called
+     * in its current loop.
+     *
+     * @param target loop of the opponent
+     */
+    @Override
+    public void moveTo(EventLoop target) {
+        if (target == loop)
+            return;
+        key.cancel();
+        // the timer belongs to this loop, the target starts another one
+        if (liveness != null) {
+            liveness.cancel();
+            liveness = null;
+        }
+        // the record belongs to this loop, the target gives it another one
+        if (id != ConnectionTable.NO_HANDLE) {
+            in = carry(in, ByteBuffer.allocate(in.position()));
+            out = carry(out, ByteBuffer.allocate(out.position()));
+            loop.connections().release(id);
+            id = ConnectionTable.NO_HANDLE;
+        }
+        loop = target;
+    }
+
+    /**
+     * Take the buffers from the table of the loop, with the bytes still pending
+     * from the previous loop, unless it has them already. Must be called in the
+     * loop.
+     */
+    void claim() {
+        if (id != ConnectionTable.NO_HANDLE)
+            return;
+        ConnectionTable table = loop.connections();
+        id = table.allocate();
+        if (id != ConnectionTable.NO_HANDLE) {
+            in = carry(in, table.in(id));
+            out = carry(out, table.out(id));
+        } else if (in == null || in.capacity() != ConnectionTable.IN_SIZE || out.capacity() != ConnectionTable.OUT_SIZE) {
+            // the table is full
+            in = carry(in, ByteBuffer.allocate(ConnectionTable.IN_SIZE));
+            out = carry(out, ByteBuffer.allocate(ConnectionTable.OUT_SIZE));
+        }
+    }
+
+    /** Put the bytes of a buffer in write mode into another one */
+    private static ByteBuffer carry(ByteBuffer from, ByteBuffer to) {
+        if (from != null) {
+            from.flip();
+            to.put(from);
+        }
+        return to;
+    }
+
+    @Override
+    public void onReadable() {
+        if (game == null) {
+            readInLobby();
+            return;
+        }
+        try {
+            int n = channel.read(in);
+            if (n < 0) {
+                game.onDisconnect(seat);
+                return;
+            }
+            loop.metrics().bytesIn(n);
+            lastRead = System.nanoTime();
+            in.flip();
+            Frame frame = loop.frame();
+            while (!closed && FrameCodec.decode(in, frame)) {
+                if (frame.type() == Protocol.HELLO)
+                    version = frame.byteAt(0);
+                game.onFrame(seat, frame);
+            }
+            // the buffer is given back once the game has closed it
+            if (!closed)
+                in.compact();
+        } catch (ProtocolException e) {
+            game.onMalformedFrame(seat);
+        } catch (IOException e) {
+            game.onDisconnect(seat);
+        }
+    }
+
+    /**
+     * Read the {@code HELLO} that puts the connection into the lobby, other
+     * frames are skipped until the game starts
+     */
+    private void readInLobby() {
+        try {
+            int n = channel.read(in);
+            if (n < 0) {
+                lost();
+                return;
+            }
+            loop.metrics().bytesIn(n);
+            lastRead = System.nanoTime();
+            in.flip();
+            Frame frame = loop.frame();
+            boolean hello = false;
+            while (!hello && FrameCodec.decode(in, frame))
+                hello = ticket == null && frame.type() == Protocol.HELLO;
+            in.compact();
+            if (!hello)
+                return;
+            version = frame.byteAt(0);
+            // the connection may be moved to the loop of its opponent from here
+            ticket = lobby.join(this, frame);
+            if (ticket == null) {
+                FrameCodec.putError(out, Protocol.ERROR_UNSUPPORTED_VERSION);
+                closeAfterFlush();
+            }
+        } catch (ProtocolException e) {
+            FrameCodec.putError(out, Protocol.ERROR_MALFORMED_FRAME);
+            closeAfterFlush();
+        } catch (IOException e) {
+            lost();
+        }
+    }
+
+    /** Start the timer of the connection on its loop, if it's not running yet */
+    private void watch() {
+        if (liveness != null || closed)
+            return;
+        lastRead = System.nanoTime();
+        liveness = loop.timers().schedule(Protocol.HEARTBEAT_INTERVAL_MILLIS, this::checkLiveness);
+    }
+
+    /**
+     * Drop the connection if it has been silent for too long, send a heartbeat
+     * otherwise. A connection that hasn't said {@code HELLO} yet is dropped as
+     * well.
+     */
+    private void checkLiveness() {
+        liveness = null;
+        if (closed)
+            return;
+        long silent = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastRead);
+        if (silent >= Protocol.IDLE_TIMEOUT_MILLIS && (version == 0 || version >= Protocol.VERSION_HEARTBEAT)) {
+            loop.metrics().evicted();
+            lost();
+            return;
+        }
+        if (!closeAfterFlush && out.hasRemaining()) {
+            FrameCodec.putHeartbeat(out);
+            flush();
+        }
+        if (!closed)
+            liveness = loop.timers().schedule(Protocol.HEARTBEAT_INTERVAL_MILLIS, this::checkLiveness);
+    }
+
+    /** The connection is lost, the game (or the lobby) is told */
+    private void lost() {
+        if (game != null) {
+            game.onDisconnect(seat);
+            return;
+        }
+        if (ticket != null)
+            lobby.leave(ticket);
+        close();
+    }
+
+    @Override
+    public void onWritable() {
+        flush();
+    }
+
+    /**
+     * The buffer of outgoing frames, frames put into it are written on
+     * {@link #flush()}
+     *
+     * @return buffer in write mode, the loop's {@code discard()} buffer once
+     *         it's closed
+     */
+    @Override
+    public ByteBuffer out() {
+        return closed ? loop.discard() : out;
+    }
+
+    /** Write everything pending, wait for {@code OP_WRITE} if it doesn't fit */
+    @Override
+    public void flush() {
+        if (closed)
+            return;
+        try {
+            out.flip();
+            loop.metrics().bytesOut(channel.write(out));
+            boolean pending = out.hasRemaining();
+            out.compact();
+            if (pending) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            } else {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                if (closeAfterFlush)
+                    close();
+            }
+        } catch (IOException e) {
+            lost();
+        }
+    }
+
+    /** Close once the pending bytes have been written, stop reading meanwhile */
+    @Override
+    public void closeAfterFlush() {
+        if (closed)
+            return;
+        closeAfterFlush = true;
+        try {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        } catch (RuntimeException e) {
+            // key already cancelled
+        }
+        flush();
+    }
+
+    /**
+     * The loop that drives this connection
+     *
+     * @return loop
+     */
+    @Override
+    public EventLoop loop() {
+        return loop;
+    }
+
+    /**
+     * Whether the connection is closed
+     *
+     * @return {@code true} if it's closed
+     */
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /** Close the channel right away */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        if (key != null)
+            key.cancel();
+        if (liveness != null)
+            liveness.cancel();
+        if (id != ConnectionTable.NO_HANDLE) {
+            loop.connections().release(id);
+            id = ConnectionTable.NO_HANDLE;
+        }
+        in = null;
+        out = null;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.curtisnewbie.app;
+
+import java.nio.ByteBuffer;
+
+import com.curtisnewbie.engine.GameTable;
+import com.curtisnewbie.engine.net.Protocol;
+
+/**
+ * The buffers of many {@code Connection}s in off-heap memory, a fixed-size
+ * record per connection, rather than two heap buffers per connection for the
+ * garbage collector to trace and copy.<br>
+ * <br>
+ * A record is {@value #RECORD_SIZE} bytes: the bytes read but not yet decoded
+ * ({@value #IN_SIZE}, enough for the largest frame) and the frames not yet
+ * written ({@value #OUT_SIZE}). A connection is addressed by the int handle
+ * returned by {@link #allocate()}, which is also its id in the
+ * {@code GameTable}, and its record is recycled through a free list once it's
+ * {@link #release(int) released}, the freed records are chained through their
+ * first bytes. The socket reads into and writes from the record directly, a
+ * direct buffer needs no copy into a temporary one of the JDK.<br>
+ * <br>
+ * Records live in direct buffers of {@value #SEGMENT_RECORDS} records each,
+ * which are only allocated when the records before them are all in use. A
+ * table is not thread-safe, it's meant to be owned by a single thread, i.e.,
+ * one table per {@code EventLoop}.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+final class ConnectionTable {
+
+    /** Bytes read and not yet decoded, large enough for the largest frame */
+    static final int IN_SIZE = Protocol.MAX_PAYLOAD + 3;
+
+    /** Frames not yet written */
+    static final int OUT_SIZE = 4096;
+
+    /** Bytes of a record */
+    static final int RECORD_SIZE = IN_SIZE + OUT_SIZE;
+
+    /** Returned by {@link #allocate()} when the table is full */
+    static final int NO_HANDLE = GameTable.NO_CONNECTION;
+
+    /** Records per segment, a power of 2 */
+    private static final int SEGMENT_RECORDS = 1 << 8;
+    private static final int SEGMENT_SHIFT = Integer.numberOfTrailingZeros(SEGMENT_RECORDS);
+
+    private final ByteBuffer[] segments;
+
+    private final int capacity;
+
+    /** Records handed out at least once, the next new one is this */
+    private int top;
+
+    /** Head of the free list, {@link #NO_HANDLE} if it's empty */
+    private int free = NO_HANDLE;
+
+    /** Connections in the table */
+    private int size;
+
+    /**
+     * @param capacity most connections in the table at the same time
+     */
+    ConnectionTable(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        this.capacity = capacity;
+        this.segments = new ByteBuffer[(capacity + SEGMENT_RECORDS - 1) >>> SEGMENT_SHIFT];
+    }
+
+    /**
+     * Take a record for a connection, its buffers are then taken with
+     * {@link #in(int)} and {@link #out(int)}
+     *
+     * @return handle of the connection, or {@link #NO_HANDLE} if the table is
+     *         full
+     */
+    int allocate() {
+        int h;
+        if (free != NO_HANDLE) {
+            h = free;
+            free = segment(h).getInt(offset(h));
+        } else if (top < capacity) {
+            h = top++;
+            int s = h >>> SEGMENT_SHIFT;
+            if (segments[s] == null)
+                segments[s] = ByteBuffer.allocateDirect(SEGMENT_RECORDS * RECORD_SIZE);
+        } else {
+            return NO_HANDLE;
+        }
+        size++;
+        return h;
+    }
+
+    /**
+     * Free the record of the connection, the handle and its buffers must not be
+     * used afterwards
+     *
+     * @param handle handle of the connection
+     */
+    void release(int handle) {
+        segment(handle).putInt(offset(handle), free);
+        free = handle;
+        size--;
+    }
+
+    /**
+     * The buffer that the connection reads into, empty and in write mode
+     *
+     * @param handle handle of the connection
+     * @return view of the record, the same bytes every time it's asked for
+     */
+    ByteBuffer in(int handle) {
+        return view(handle, 0, IN_SIZE);
+    }
+
+    /**
+     * The buffer of the frames that the connection writes, empty and in write
+     * mode
+     *
+     * @param handle handle of the connection
+     * @return view of the record, the same bytes every time it's asked for
+     */
+    ByteBuffer out(int handle) {
+        return view(handle, IN_SIZE, OUT_SIZE);
+    }
+
+    /**
+     * Number of connections in the table
+     *
+     * @return connections allocated and not released
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Off-heap memory taken by the segments allocated so far
+     *
+     * @return bytes
+     */
+    long reservedBytes() {
+        long n = 0;
+        for (ByteBuffer s : segments)
+            if (s != null)
+                n += s.capacity();
+        return n;
+    }
+
+    private ByteBuffer view(int handle, int from, int length) {
+        ByteBuffer b = segment(handle).duplicate();
+        int o = offset(handle) + from;
+        b.limit(o + length).position(o);
+        return b.slice();
+    }
+
+    private ByteBuffer segment(int handle) {
+        return segments[handle >>> SEGMENT_SHIFT];
+    }
+
+    private static int offset(int handle) {
+        return (handle & (SEGMENT_RECORDS - 1)) * RECORD_SIZE;
+    }
+}
@@ -0,0 +1,231 @@
+package com.curtisnewbie.app;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.curtisnewbie.engine.GameTable;
+import com.curtisnewbie.engine.net.Frame;
+import com.curtisnewbie.engine.util.GameMetrics;
+import com.curtisnewbie.engine.util.TimerWheel;
+
+/**
+ * A single selector thread that drives the {@code Connection}s and
+ * {@code Spectator}s registered on it.<br>
+ * <br>
+ * Everything that touches a connection or the {@code ServerGame} it belongs to
+ * runs on this thread, so the game state machines never need locking. Other
+ * threads hand work over through {@link #execute(Runnable)}.<br>
+ * <br>
+ * The heartbeats, idle connections and turn clocks of the connections on this
+ * loop are timers of its {@code TimerWheel}, which is ticked between two
+ * selects, the select waits no longer than the next tick when a timer is
+ * pending.<br>
+ * <br>
+ * The boards of the 3x3 games on this loop are kept in its {@code GameTable},
+ * and the buffers of its {@code Connection}s in its {@code ConnectionTable},
+ * both off the heap.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public class EventLoop implements Runnable {
+
+    private final Selector selector;
+
+    /** Tasks submitted by other threads, drained on every iteration */
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    private final Thread thread;
+
+    private volatile boolean running = true;
+
+    /** Every frame read on this loop is decoded into it */
+    private final Frame frame = new Frame();
+
+    /** Metrics of the server, shared by every loop */
+    private final GameMetrics metrics;
+
+    /** Length of a tick of the timers, the precision of the timeouts */
+    private static final long TICK_MILLIS = 100;
+
+    /** A turn of the wheel covers the usual timeouts, about 51 s */
+    private static final int TICKS_PER_WHEEL = 512;
+
+    /** Timers of this loop, only touched on its thread */
+    private final TimerWheel timers;
+
+    /** Most 3x3 games in the table of a loop, its memory is taken as it fills */
+    private static final int GAMES_PER_LOOP = 1 << 21;
+
+    /** State of the 3x3 games of this loop, only touched on its thread */
+    private final GameTable games = new GameTable(GAMES_PER_LOOP);
+
+    /** Buffers of the connections of this loop, only touched on its thread */
+    private final ConnectionTable connections = new ConnectionTable(2 * GAMES_PER_LOOP);
+
+    /** Where the frames put for a closed connection go, see {@link #discard()} */
+    private final ByteBuffer discard = ByteBuffer.allocate(ConnectionTable.OUT_SIZE);
+
+    public EventLoop(String name, GameMetrics metrics) {
+        this.metrics = metrics;
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.thread = new Thread(this, name);
+        this.timers = new TimerWheel(TICK_MILLIS, TICKS_PER_WHEEL, thread);
+    }
+
+    /** Start the selector thread */
+    public void start() {
+        thread.start();
+    }
+
+    /** Stop the selector thread, connections are closed on exit */
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Metrics of the server
+     *
+     * @return metrics
+     */
+    GameMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Run the task on this loop's thread.
+     *
+     * @param task task
+     */
+    public void execute(Runnable task) {
+        if (inLoop()) {
+            task.run();
+        } else {
+            tasks.add(task);
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Whether the calling thread is this loop's thread
+     *
+     * @return {@code true} if it is
+     */
+    public boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    Selector selector() {
+        return selector;
+    }
+
+    Frame frame() {
+        return frame;
+    }
+
+    /**
+     * Timers of this loop, they run on its thread
+     *
+     * @return timers
+     */
+    TimerWheel timers() {
+        return timers;
+    }
+
+    /**
+     * State of the 3x3 games of this loop, only used on its thread
+     *
+     * @return table
+     */
+    GameTable games() {
+        return games;
+    }
+
+    /**
+     * Buffers of the connections of this loop, only used on its thread
+     *
+     * @return table
+     */
+    ConnectionTable connections() {
+        return connections;
+    }
+
+    /**
+     * A buffer for the frames put for a connection that is closed and has given
+     * its buffers back, e.g., the {@code GAME_OVER} of a player that left. It's
+     * emptied every time it's asked for, and never written.
+     *
+     * @return buffer in write mode
+     */
+    ByteBuffer discard() {
+        discard.clear();
+        return discard;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                if (timers.isEmpty()) {
+                    selector.select();
+                } else {
+                    long wait = TimeUnit.NANOSECONDS.toMillis(timers.nanosToNextTick(System.nanoTime()));
+                    selector.select(Math.max(1, wait));
+                }
+                runTasks();
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    Selectable conn = (Selectable) key.attachment();
+                    if (!key.isValid()) {
+                        conn.close();
+                        continue;
+                    }
+                    if (key.isReadable())
+                        conn.onReadable();
+                    if (key.isValid() && key.isWritable())
+                        conn.onWritable();
+                }
+                timers.expire(System.nanoTime());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        closeAll();
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys())
+            ((Selectable) key.attachment()).close();
+        try {
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.curtisnewbie.app;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.nio.channels.SocketChannel;
+
+import com.curtisnewbie.engine.GameEngine;
+import com.curtisnewbie.engine.GameTable;
+import com.curtisnewbie.engine.journal.GameJournal;
+import com.curtisnewbie.engine.util.GameMetrics;
+
+/**
+ * Measures what a 3x3 game of the {@code GameServer} keeps on the heap: its
+ * {@code ServerGame} and the {@code Connection}s of its two players, with their
+ * channels, as they are once the players are paired, and what it keeps off the
+ * heap: the buffers of the connections, records of the
+ * {@code ConnectionTable}, and the state of the game, a record of
+ * {@value GameTable#RECORD_SIZE} bytes in the {@code GameTable}. The size of a
+ * {@code GameEngine} on the heap, which the record replaces, is printed along
+ * with it.<br>
+ * <br>
+ * The games are only built, not started, and the channels are opened but not
+ * connected, so the sockets of the kernel are not counted, and the machine
+ * needs a file descriptor per player.<br>
+ * <br>
+ * Usage: {@code GameFootprint [games]}
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class GameFootprint {
+
+    private GameFootprint() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        GameMetrics metrics = new GameMetrics("GameFootprint");
+        EventLoop loop = new EventLoop("footprint", metrics);
+        GameJournal journal = GameJournal.disabled();
+
+        long base = usedHeap();
+        Connection[] connections = new Connection[2 * games];
+        // the loop doesn't run, so its tables can be used on this thread
+        for (int i = 0; i < connections.length; i++) {
+            connections[i] = new Connection(SocketChannel.open(), loop);
+            connections[i].claim();
+        }
+        long withConnections = usedHeap();
+        ServerGame[] serverGames = new ServerGame[games];
+        for (int g = 0; g < games; g++)
+            serverGames[g] = new ServerGame(g + 1, connections[2 * g], connections[2 * g + 1], 3, 3, metrics,
+                    journal, 0);
+        long withGames = usedHeap();
+        GameEngine[] engines = new GameEngine[games];
+        for (int g = 0; g < games; g++)
+            engines[g] = new GameEngine();
+        long withEngines = usedHeap();
+
+        long connection = (withConnections - base) / games;
+        long game = (withGames - withConnections) / games;
+        System.out.println(String.format("%,d games, bytes per game on the heap: %,d (2 Connections %,d, ServerGame %,d)",
+                games, connection + game, connection, game));
+        System.out.println(String.format("off the heap: %,d bytes per game of connection buffers (%,d reserved in all)",
+                loop.connections().reservedBytes() / games, loop.connections().reservedBytes()));
+        System.out.println(String.format("state: %d bytes off the heap in the table, a GameEngine would be %,d on the heap",
+                GameTable.RECORD_SIZE, (withEngines - withGames) / games));
+
+        // everything is kept reachable until it's measured
+        Reference.reachabilityFence(serverGames);
+        Reference.reachabilityFence(engines);
+        for (Connection c : connections)
+            c.close();
+        loop.shutdown();
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
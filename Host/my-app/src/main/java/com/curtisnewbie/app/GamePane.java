@@ -1,35 +1,87 @@
 package com.curtisnewbie.app;
 
-import javafx.scene.layout.*;
+import javafx.animation.AnimationTimer;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.*;
 import javafx.scene.control.Alert.AlertType;
-import javafx.event.*;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.*;
+import javafx.scene.paint.Color;
 import javafx.application.Platform;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.curtisnewbie.engine.BoardPublisher;
+import com.curtisnewbie.engine.BoardSnapshot;
+import com.curtisnewbie.engine.GameRules;
+import com.curtisnewbie.engine.util.MpscLongQueue;
+
 /**
- * 
- * A {@code GridPane} that draws a TicTacToe game board, it has a number of
- * methods for getting information from the gui as well as methods to
- * control/update the gui. <br>
+ *
+ * A {@code Pane} that draws a TicTacToe game board of N x N cells on a single
+ * {@code Canvas}, it has a number of methods for getting information from the
+ * gui as well as methods to control/update the gui. <br>
+ * <br>
+ * The methods that update the board may be called from any thread: each change
+ * is packed into a {@code long} and put into a lock-free queue, and the changes
+ * that pile up between two frames are applied together by an
+ * {@code AnimationTimer}, which runs for one pulse whenever there's something
+ * in the queue. Only the cells that changed are painted again, the whole board
+ * is painted when it's resized, cleared or replaced. A click is mapped to its
+ * cell by dividing its position by the size of a cell. So a fast replay of
+ * thousands of moves costs one repaint of a few cells per frame, rather than a
+ * repaint per move. A move itself allocates nothing, but every frame that
+ * changes the board publishes a new snapshot of it, a copy of N x N bytes (see
+ * below), so a replay allocates that much per frame, however few moves the
+ * frame has.<br>
+ * <br>
+ * The board, the rules and whether the user has moved belong to the JavaFX
+ * Application Thread. Other threads, e.g., the game loop of the {@code Host}
+ * or {@code Client}, only see the {@link #snapshot()} that is published after
+ * each batch of changes, see {@code BoardPublisher}, so they get the board,
+ * the status and the turn of the same moment without any lock. A move of the
+ * user is handed to {@link #awaitMove()} after the snapshot that has it,
+ * through a single {@code int} slot rather than a queue of boxed cells.<br>
  * <br>
  * It should be noted that the current user (not opponent) is always represented
  * using "X", and the opponent is represented using "O". This may be fixed in
  * the future. <br>
- * 
- * 
+ *
+ *
  * @author Yongjie Zhuang
- * 
+ *
  */
-public class GamePane extends GridPane {
+public class GamePane extends Pane {
+
+    /** Returned by {@link #awaitMove(int)} when the user ran out of time */
+    public static final int TIME_UP = -1;
 
-    /** Current player is always CROSS */
-    private final int CROSS = 1;
+    /** Nothing to hand to {@link #awaitMove()} */
+    private static final int NO_HAND_OVER = Integer.MIN_VALUE;
 
-    /** Other player is always CIRCLE */
-    private final int CIRCLE = 2;
+    // ---------------------------- changes in the queue, the type is the top byte
 
-    /** Has never been selected */
-    private final int EMPTY = 0;
+    private static final int USER_MOVE = 1;
+    private static final int OPPONENT_MOVE = 2;
+    private static final int RESIZE = 3;
+    private static final int RESET = 4;
+    private static final int TIMEOUT = 5;
+    private static final int FREEZE = 6;
+    private static final int UNFREEZE = 7;
+
+    /** Changes that can wait for the next frame, more of them make a producer wait */
+    private static final int PENDING_CAPACITY = 1 << 14;
+
+    // ---------------------------- marks of the cells
+
+    private static final byte EMPTY = 0;
+    private static final byte USER = 1;
+    private static final byte OPPONENT = 2;
+
+    /** Space between a mark and the edges of its cell, as a share of the cell */
+    private static final double MARGIN = 0.2;
 
     /**
      * Indicate whether user has moved. This is for current user only not for the
@@ -37,261 +89,487 @@ public class GamePane extends GridPane {
      */
     private boolean moved;
 
+    /** The last move on the board, or {@code BoardSnapshot.NO_CELL} */
+    private int lastCell;
+
+    /** Version of the last snapshot */
+    private long version;
+
+    /** The board as other threads see it, see {@link #snapshot()} */
+    private final BoardPublisher published = new BoardPublisher();
+
     /**
-     * List of buttons represent the nine squares on the tictaktoe game board, and
-     * which are used to detect where the user clicks on.
+     * The user's move (or {@link #TIME_UP}) to hand to {@link #awaitMove()} once
+     * the snapshot with it is published, or {@link #NO_HAND_OVER}
      */
-    private Button[][] buttons;
+    private int handOver = NO_HAND_OVER;
 
-    /** Two dimensional array represents this game board */
-    private int[][] gameBoard;
+    /** The board, which is resized with the pane */
+    private final Canvas canvas = new Canvas();
+
+    /** Size of the board */
+    private int n;
+
+    /** Mark of each cell, see {@link #USER} and {@link #OPPONENT} */
+    private byte[] marks;
+
+    /** Cells to paint again at the next frame, one bit per cell */
+    private long[] dirty;
+
+    /** Whether the whole board is to be painted again at the next frame */
+    private boolean allDirty;
 
     /**
-     * Record what the last step is. First element indicates row and second element
-     * indicates column. This method is for current user rather than the opponant.
+     * Both players' moves in the order they are made, the user and the opponent
+     * take turns, so whoever makes the winning move wins.
      */
-    private int[] lastStep;
+    private GameRules rules;
 
-    public GamePane() {
-        this.moved = false;
-        this.gameBoard = new int[3][3];
-        this.lastStep = new int[2];
-        this.buttons = new Button[3][3];
-
-        for (int i = 0; i < 3; i++) {
-            for (int j = 0; j < 3; j++) {
-                buttons[i][j] = new Button();
-                buttons[i][j].setMaxSize(Double.MAX_VALUE, Double.MAX_VALUE);
-                buttons[i][j].setStyle("-fx-border-color: lightgrey; -fx-border-width: 2; -fx-font-size: 50px");
-            }
+    /** Changes to the board from any thread, applied by {@link #pulse} */
+    private final MpscLongQueue pending = new MpscLongQueue(PENDING_CAPACITY);
+
+    /** Whether {@link #pulse} has been asked to run for the changes in the queue */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /** Applies the pending changes and paints them, for one frame at a time */
+    private final AnimationTimer pulse = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            // the changes that come in after this are for the next frame
+            scheduled.set(false);
+            applyPending();
+            paint();
+            stop();
         }
+    };
 
-        // add the nine buttons to this pane
-        addButtonsToPane();
+    /**
+     * The cell (row * N + col) that the current user (rather than the opponent)
+     * clicked, or {@link #TIME_UP}, until the thread that waits in
+     * {@link #awaitMove()} takes it, {@link #NO_HAND_OVER} when it's empty.
+     * Guarded by {@link #moveLock}.
+     */
+    private int move = NO_HAND_OVER;
+
+    /** Lock of {@link #move}, the thread in {@link #awaitMove()} waits on it */
+    private final Object moveLock = new Object();
 
-        // setup the event handlers for the buttons, which update the two-dimentional
-        // gameBoard when necessary
-        setupEventHandlers();
+    /** The turn waited for in {@link #awaitMove(int)}, 0 when nobody waits */
+    private volatile int waitingTurn;
 
-        // make the child nodes grow vertically and horizontally
-        ColumnConstraints col = new ColumnConstraints();
-        col.setPercentWidth(100 / 3);
-        RowConstraints row = new RowConstraints();
-        row.setPercentHeight(100 / 3);
-        this.getColumnConstraints().addAll(col, col, col);
-        this.getRowConstraints().addAll(row, row, row);
+    /** Create the classic 3 x 3 board */
+    public GamePane() {
+        this(3, 3);
     }
 
     /**
-     * Put the nine buttons (which represent the areas to be clicked by the users)
-     * to the proper positions on this pane.
-     * 
+     * Create an N x N board
+     *
+     * @param n size of the board
+     * @param k stones in a row to win
      */
-    private void addButtonsToPane() {
-        this.add(buttons[0][0], 0, 0);
-        this.add(buttons[0][1], 1, 0);
-        this.add(buttons[0][2], 2, 0);
-        this.add(buttons[1][0], 0, 1);
-        this.add(buttons[1][1], 1, 1);
-        this.add(buttons[1][2], 2, 1);
-        this.add(buttons[2][0], 0, 2);
-        this.add(buttons[2][1], 1, 2);
-        this.add(buttons[2][2], 2, 2);
-    }
-
-    private void setupEventHandlers() {
-        buttons[0][0].setOnAction(new ClickHandler(0, 0));
-        buttons[0][1].setOnAction(new ClickHandler(0, 1));
-        buttons[0][2].setOnAction(new ClickHandler(0, 2));
-        buttons[1][0].setOnAction(new ClickHandler(1, 0));
-        buttons[1][1].setOnAction(new ClickHandler(1, 1));
-        buttons[1][2].setOnAction(new ClickHandler(1, 2));
-        buttons[2][0].setOnAction(new ClickHandler(2, 0));
-        buttons[2][1].setOnAction(new ClickHandler(2, 1));
-        buttons[2][2].setOnAction(new ClickHandler(2, 2));
+    public GamePane(int n, int k) {
+        getChildren().add(canvas);
+        canvas.setOnMouseClicked(this::clicked);
+        setBoard(n, k);
     }
 
     /**
-     * Check whether this step wins.
-     * 
-     * @param r row
-     * @param c column
-     * @return whether this step wins
+     * Replace the board with an empty N x N board, e.g., when the opponent asks
+     * for a different size. It must be called on the JavaFX Application Thread,
+     * see {@link #resize(int, int)} for other threads.
+     *
+     * @param n size of the board
+     * @param k stones in a row to win
      */
-    public boolean hasWon() {
+    private void setBoard(int n, int k) {
+        this.rules = GameRules.create(n, k);
+        this.moved = false;
+        this.lastCell = BoardSnapshot.NO_CELL;
+        this.n = n;
+        this.marks = new byte[n * n];
+        this.dirty = new long[(n * n + 63) >>> 6];
+        this.allDirty = true;
+        publish();
+    }
 
-        // check each column
-        for (int i = 0; i < 3; i++) {
-            if (gameBoard[0][i] != EMPTY && gameBoard[0][i] == gameBoard[1][i] && gameBoard[1][i] == gameBoard[2][i]) {
-                return true;
-            }
-        }
+    /** Publish the board for other threads, on the JavaFX Application Thread */
+    private void publish() {
+        published.publish(BoardSnapshot.of(++version, rules, lastCell, moved));
+    }
 
-        // check each row
-        for (int i = 0; i < 3; i++) {
-            if (gameBoard[i][0] != EMPTY && gameBoard[i][0] == gameBoard[i][1] && gameBoard[i][1] == gameBoard[i][2]) {
-                return true;
-            }
-        }
+    /**
+     * Replace the board with an empty N x N board, this may be called from any
+     * thread, the moves made after it go to the new board.
+     *
+     * @param n size of the board
+     * @param k stones in a row to win
+     */
+    public void resize(int n, int k) {
+        post(RESIZE, n, k);
+    }
 
-        // check diagonal
-        if (gameBoard[0][0] != EMPTY && gameBoard[0][0] == gameBoard[1][1] && gameBoard[1][1] == gameBoard[2][2])
-            return true;
-        if (gameBoard[0][2] != EMPTY && gameBoard[0][2] == gameBoard[1][1] && gameBoard[1][1] == gameBoard[2][0])
-            return true;
+    /**
+     * Clear the board for the next game of a series, keeping its size, this may
+     * be called from any thread.
+     */
+    public void reset() {
+        post(RESET, 0, 0);
+    }
 
-        return false;
+    /**
+     * The board as of the last batch of changes, may be called from any thread
+     *
+     * @return snapshot
+     */
+    public BoardSnapshot snapshot() {
+        return published.current();
     }
 
     /**
-     * Whether the gameboard still has empty cell to select.
-     * 
-     * @return {@code true} if there are empty cells not being selected before,
-     *         {@code false} if there is no empty cell.
+     * Size of the board
+     *
+     * @return N
      */
-    public boolean isFull() {
-        for (int[] row : gameBoard)
-            for (int b : row)
-                if (b == EMPTY)
-                    return false;
+    public int size() {
+        return snapshot().size();
+    }
 
-        return true;
+    /**
+     * Check whether any player has K in a row.
+     *
+     * @return whether this step wins
+     */
+    public boolean hasWon() {
+        return snapshot().hasWon();
+    }
+
+    /**
+     * Whether the game has ended without a winner, which is when the gameboard
+     * has no empty cell to select, or in the Ultimate variant, when every
+     * sub-board is won or full.
+     *
+     * @return {@code true} if nobody can win anymore
+     */
+    public boolean isFull() {
+        return snapshot().isDraw();
     }
 
     /**
      * This method updates the gameboard as the user (not opponenet) clicks on a
-     * cell or button to draw "X". This method also updates {@code moved} variable,
-     * as it indicates whether it's user to move now.
+     * cell to draw "X". This method also updates {@code moved} variable, as it
+     * indicates whether it's user to move now, and wakes up the thread waiting in
+     * {@link #awaitMove()}. A cell that the rules don't allow, e.g., outside the
+     * sub-board to play in of the Ultimate variant, is ignored.
      */
     public void moveTo(int row, int col) {
-        Platform.runLater(() -> {
-            // current user has moved
-            moved = true;
-            // update gameboard
-            gameBoard[row][col] = CROSS;
-            buttons[row][col].setDisable(true);
-            buttons[row][col].setText("X");
-            lastStep[0] = row;
-            lastStep[1] = col;
-
-            // check whether current user wins
-            if (hasWon()) {
-                showWinningNotification();
-            } else {
-                if (isFull()) {
-                    showFullNotification();
-                }
-            }
-        });
+        post(USER_MOVE, row, col);
     }
 
     /**
-     * This method is used to update the gameboard as opponent click on a cell or
-     * button to draw a "O". This method draws "O" on the gameboard instead of the
-     * "X". This method also updates {@code moved} variable, as it indicates whether
-     * it's user to move now.
-     * 
+     * This method is used to update the gameboard as opponent click on a cell to
+     * draw a "O". This method also updates {@code moved} variable, as it
+     * indicates whether it's user to move now.
+     *
      * @param row row
      * @param col col
      */
     public void opponentMoveTo(int row, int col) {
-        Platform.runLater(() -> {
-            // it's current user's turn to move
-            moved = false;
-            // update gameboard
-            gameBoard[row][col] = CIRCLE;
-            buttons[row][col].setDisable(true);
-            buttons[row][col].setText("0");
-
-            // check whether opponent wins
-            if (hasWon()) {
-                showLosingNotification();
-            } else {
-                if (isFull()) {
-                    showFullNotification();
-                }
-            }
-        });
+        post(OPPONENT_MOVE, row, col);
     }
 
-    /** Disable/ make all buttons unavailable */
+    /** Disable/ make all cells unavailable */
     public void freeze() {
-        this.setDisable(true);
+        post(FREEZE, 0, 0);
     }
 
-    /** Unfreeze/ make all buttons available */
+    /** Unfreeze/ make all cells available */
     public void unfreeze() {
-        this.setDisable(false);
+        post(UNFREEZE, 0, 0);
+    }
+
+    /**
+     * Wait until the user moves, the gameboard has been updated when this method
+     * returns.
+     *
+     * @return the cell that user went to, which is {@code row * N + col}
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public int awaitMove() throws InterruptedException {
+        return takeMove();
+    }
+
+    /**
+     * Wait until the user moves, or runs out of time for the turn, see
+     * {@link #timeUp(int)}
+     *
+     * @param turn number of the turn, from 1 up, which the clock of the turn
+     *             refers to
+     * @return the cell that user went to, or {@link #TIME_UP}
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public int awaitMove(int turn) throws InterruptedException {
+        waitingTurn = turn;
+        try {
+            return takeMove();
+        } finally {
+            waitingTurn = 0;
+        }
     }
 
     /**
-     * Get the last step that user went to
-     * 
-     * @return {@code Null} if user hasn't moved yet, else {@code int[]} where [0]
-     *         is row and [1] is column.
+     * The clock of the turn has run out, the user can't move anymore and the
+     * thread waiting in {@link #awaitMove(int)} gets {@link #TIME_UP}. It's
+     * ignored when the user has moved already, or the turn is over.
+     *
+     * @param turn number of the turn
      */
-    public int[] getLastStep() {
-        if (!hasMoved())
-            return null;
-        else
-            return new int[] { lastStep[0], lastStep[1] };
+    public void timeUp(int turn) {
+        post(TIMEOUT, 0, turn);
     }
 
     /**
      * Check whether user has moved.
-     * 
+     *
      * @return {@code True} when user has moved, {@code False} when user hasn't
      *         moved yet.
      */
     public boolean hasMoved() {
-        return moved;
+        return snapshot().moved();
     }
 
-    /** Show the winning notification by creating an Alert */
-    private void showWinningNotification() {
-        Platform.runLater(() -> {
-            var dial = new Alert(AlertType.INFORMATION);
-            dial.setContentText("You Win!");
-            dial.showAndWait();
-        });
-    }
-
-    /** Show the Losing notification by creating an Alert */
-    private void showLosingNotification() {
-        Platform.runLater(() -> {
-            var dial = new Alert(AlertType.INFORMATION);
-            dial.setContentText("You Lost!");
-            dial.showAndWait();
-        });
+    /**
+     * Queue a change for the next frame, and start the {@link #pulse} unless
+     * it's already been asked to run. It waits for the next frame only when the
+     * queue is full.
+     */
+    private void post(int type, int a, int b) {
+        long change = (long) type << 56 | (long) a << 28 | b;
+        while (!pending.offer(change)) {
+            if (Platform.isFxApplicationThread())
+                applyPending();
+            else
+                Thread.yield();
+        }
+        if (!scheduled.get() && scheduled.compareAndSet(false, true))
+            Platform.runLater(pulse::start);
     }
 
     /**
-     * Show the full notification (where all buttons have been selected) by creating
-     * an Alert
+     * Apply the changes in the queue, on the JavaFX Application Thread, then
+     * publish the board and hand the user's move over
      */
-    private void showFullNotification() {
-        Platform.runLater(() -> {
-            var dial = new Alert(AlertType.INFORMATION);
-            dial.setContentText("Ends, Nobody Wins!");
-            dial.showAndWait();
-        });
+    private void applyPending() {
+        if (pending.isEmpty())
+            return;
+        for (long change; (change = pending.poll(-1)) >= 0;) {
+            int a = (int) (change >>> 28) & 0xFFFFFFF;
+            int b = (int) change & 0xFFFFFFF;
+            switch ((int) (change >>> 56)) {
+            case USER_MOVE:
+                userMove(a, b);
+                break;
+            case OPPONENT_MOVE:
+                opponentMove(a, b);
+                break;
+            case RESIZE:
+                setBoard(a, b);
+                break;
+            case RESET:
+                rules.reset();
+                moved = false;
+                lastCell = BoardSnapshot.NO_CELL;
+                handOver = NO_HAND_OVER;
+                synchronized (moveLock) {
+                    move = NO_HAND_OVER;
+                }
+                Arrays.fill(marks, EMPTY);
+                allDirty = true;
+                break;
+            case TIMEOUT:
+                if (moved || b != waitingTurn)
+                    break;
+                moved = true;
+                setDisable(true);
+                handOver = TIME_UP;
+                break;
+            case FREEZE:
+                setDisable(true);
+                break;
+            case UNFREEZE:
+                setDisable(false);
+                break;
+            default:
+                break;
+            }
+        }
+        publish();
+        if (handOver != NO_HAND_OVER) {
+            synchronized (moveLock) {
+                // a move that nobody has taken yet is kept, as only one is made per turn
+                if (move == NO_HAND_OVER) {
+                    move = handOver;
+                    moveLock.notifyAll();
+                }
+            }
+            handOver = NO_HAND_OVER;
+        }
     }
 
-    /** Handler for the nine buttons ActionEvent */
-    private class ClickHandler implements EventHandler<ActionEvent> {
+    /** Wait for the move in {@link #move} and take it */
+    private int takeMove() throws InterruptedException {
+        synchronized (moveLock) {
+            while (move == NO_HAND_OVER)
+                moveLock.wait();
+            int cell = move;
+            move = NO_HAND_OVER;
+            return cell;
+        }
+    }
 
-        private int row;
-        private int col;
+    private void userMove(int row, int col) {
+        // only one move per turn
+        if (moved || row >= n || col >= n)
+            return;
+        int cell = row * n + col;
+        if (rules.apply(cell) == GameRules.ILLEGAL_MOVE)
+            return;
+        // current user has moved
+        moved = true;
+        lastCell = cell;
+        mark(cell, USER);
+        handOver = cell;
+
+        // check whether current user wins
+        if (isWon()) {
+            showNotification("You Win!");
+        } else if (rules.status() == GameRules.DRAW) {
+            showNotification("Ends, Nobody Wins!");
+        }
+    }
 
-        public ClickHandler(int row, int col) {
-            this.row = row;
-            this.col = col;
+    private void opponentMove(int row, int col) {
+        // it's current user's turn to move
+        moved = false;
+        if (row >= n || col >= n)
+            return;
+        int cell = row * n + col;
+        rules.apply(cell);
+        lastCell = cell;
+        mark(cell, OPPONENT);
+
+        // check whether opponent wins
+        if (isWon()) {
+            showNotification("You Lost!");
+        } else if (rules.status() == GameRules.DRAW) {
+            showNotification("Ends, Nobody Wins!");
         }
+    }
 
-        @Override
-        public void handle(ActionEvent event) {
-            // update gameBoard
+    /** Whether a player has won, on the JavaFX Application Thread */
+    private boolean isWon() {
+        return rules.status() == GameRules.PLAYER_0_WON || rules.status() == GameRules.PLAYER_1_WON;
+    }
+
+    private void mark(int cell, byte mark) {
+        marks[cell] = mark;
+        dirty[cell >>> 6] |= 1L << cell;
+    }
+
+    /** Map a click to its cell, by the size of a cell */
+    private void clicked(MouseEvent e) {
+        double size = cellSize();
+        if (size <= 0)
+            return;
+        int col = (int) (e.getX() / size);
+        int row = (int) (e.getY() / size);
+        if (row < n && col < n)
             moveTo(row, col);
+    }
+
+    @Override
+    protected void layoutChildren() {
+        if (canvas.getWidth() != getWidth() || canvas.getHeight() != getHeight()) {
+            canvas.setWidth(getWidth());
+            canvas.setHeight(getHeight());
+            allDirty = true;
+            paint();
         }
     }
-}
\ No newline at end of file
+
+    /** Width and height of a cell, the board is a square in the top left corner */
+    private double cellSize() {
+        return Math.min(canvas.getWidth(), canvas.getHeight()) / n;
+    }
+
+    /** Paint the cells that changed, or the whole board */
+    private void paint() {
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        double size = cellSize();
+        if (size <= 0)
+            return;
+        if (allDirty) {
+            allDirty = false;
+            Arrays.fill(dirty, 0);
+            g.setFill(Color.WHITE);
+            g.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+            paintGrid(g, size);
+            for (int cell = 0; cell < marks.length; cell++)
+                if (marks[cell] != EMPTY)
+                    paintMark(g, cell, size);
+            return;
+        }
+        for (int w = 0; w < dirty.length; w++) {
+            for (long bits = dirty[w]; bits != 0; bits &= bits - 1) {
+                int cell = (w << 6) + Long.numberOfTrailingZeros(bits);
+                paintMark(g, cell, size);
+            }
+            dirty[w] = 0;
+        }
+    }
+
+    /** The lines between the cells, the edges of the sub-boards of the Ultimate variant are thicker */
+    private void paintGrid(GraphicsContext g, double size) {
+        boolean ultimate = rules.k() == GameRules.ULTIMATE_K;
+        double end = size * n;
+        g.setStroke(Color.LIGHTGREY);
+        for (int i = 0; i <= n; i++) {
+            g.setLineWidth(ultimate && i % 3 == 0 ? 3 : 1);
+            double at = i * size;
+            g.strokeLine(at, 0, at, end);
+            g.strokeLine(0, at, end, at);
+        }
+    }
+
+    /** Paint the inside of the cell, which leaves the grid alone */
+    private void paintMark(GraphicsContext g, int cell, double size) {
+        double x = (cell % n) * size;
+        double y = (cell / n) * size;
+        double inset = Math.min(2, size / 4);
+        g.setFill(Color.WHITE);
+        g.fillRect(x + inset, y + inset, size - 2 * inset, size - 2 * inset);
+        byte mark = marks[cell];
+        if (mark == EMPTY)
+            return;
+        double m = size * MARGIN;
+        g.setLineWidth(Math.max(1, size / 12));
+        if (mark == USER) {
+            g.setStroke(Color.DARKBLUE);
+            g.strokeLine(x + m, y + m, x + size - m, y + size - m);
+            g.strokeLine(x + size - m, y + m, x + m, y + size - m);
+        } else {
+            g.setStroke(Color.DARKRED);
+            g.strokeOval(x + m, y + m, size - 2 * m, size - 2 * m);
+        }
+    }
+
+    /**
+     * Show the end of the game by creating an Alert, which doesn't wait for it to
+     * be closed, since the board is painted in an animation
+     */
+    private void showNotification(String text) {
+        var dial = new Alert(AlertType.INFORMATION);
+        dial.setContentText(text);
+        dial.show();
+    }
+}
@@ -0,0 +1,431 @@
+package com.curtisnewbie.app;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.curtisnewbie.engine.BitBoard;
+import com.curtisnewbie.engine.GameRules;
+import com.curtisnewbie.engine.PerfectPlayer;
+import com.curtisnewbie.engine.solver.Advisor;
+import com.curtisnewbie.engine.solver.SolvedTable;
+import com.curtisnewbie.engine.journal.GameJournal;
+import com.curtisnewbie.engine.net.Frame;
+import com.curtisnewbie.engine.net.FrameCodec;
+import com.curtisnewbie.engine.net.Protocol;
+import com.curtisnewbie.engine.util.GameMetrics;
+
+/**
+ * Server mode of the Host, which hosts many games at the same time.<br>
+ * <br>
+ * Instead of one {@code ServerSocket} and one {@code Socket} per process, this
+ * server accepts any number of Clients, which wait in a {@code Lobby} until the
+ * {@code MatchPolicy} (see the system property "tictactoe.match") pairs them
+ * into a game: the Client that waited moves first, the other one moves second,
+ * and both are told the id of the game. The connections are spread over a few
+ * {@code EventLoop}s, each being a selector thread that drives the
+ * non-blocking {@code SocketChannel}s of its games.<br>
+ * <br>
+ * In "ai" mode, every Client plays against the built-in {@code PerfectPlayer}
+ * instead of another Client, which is only supported on 3x3 boards, or on the
+ * board of a table exported by the {@code GameSolver} (see the system property
+ * "tictactoe.solved"). The {@code MctsPlayer} of the Ultimate variant thinks
+ * for a second per move on all cores, which would stall the loops, so it only
+ * plays in the Host.<br>
+ * <br>
+ * Spectators connect to the next port (port + 1) and ask for a game by its id,
+ * or for the latest game, see {@code Spectator}.<br>
+ * <br>
+ * A Client that plays many games at the same time, e.g., a fleet of bots,
+ * connects to the port after that (port + 2) and plays all of them over one
+ * connection, each game is identified by an id of its own in every frame, see
+ * {@code MuxConnection}. Its games are paired with the others in the same
+ * lobby.<br>
+ * <br>
+ * Every connection gets a heartbeat every few seconds and is dropped when it
+ * stays silent for too long. With the system property "tictactoe.turn" set to
+ * a number of seconds, each move must be made in time or the game is lost.
+ * Both are timers of the {@code TimerWheel} of the connection's loop.<br>
+ * <br>
+ * With the system property "tictactoe.router" set to the "host:port" of a
+ * {@code Router}, the server is a node of its cluster: the router sends it the
+ * Clients of the games it owns, see {@code ClusterNode}. When the process is
+ * terminated, the server leaves the cluster and finishes its games first.<br>
+ * <br>
+ * Usage: {@code GameServer [port] [number of selector threads] [pvp|ai] [N] [K]},
+ * where N = 9 and K = 1 is the Ultimate variant.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public class GameServer {
+
+    // modify it and the one in Client program, if necessary
+    static final int PORT = 7000;
+
+    /** System property with the seconds for each move, 0 for no clock */
+    static final String TURN_PROPERTY = "tictactoe.turn";
+
+    /** Longest wait for the games in progress when the server leaves its cluster */
+    private static final long DRAIN_TIMEOUT_MILLIS = 60_000;
+
+    private final int port;
+
+    private final EventLoop[] loops;
+
+    /** Best moves of the built-in opponent */
+    private final Advisor advisor = Advisor.fromSystemProperty();
+
+    /** Whether Clients play against the built-in opponent */
+    private final boolean ai;
+
+    /** Size of the board */
+    private final int n;
+
+    /** Stones in a row to win */
+    private final int k;
+
+    /** Index of the loop that gets the next game */
+    private int next;
+
+    /** Where Clients wait for an opponent */
+    private final Lobby lobby;
+
+    /** Counts the games that got their id here rather than from the router of a cluster */
+    private final AtomicInteger gameId = new AtomicInteger();
+
+    /** Id of the latest game, for spectators */
+    private volatile int latest;
+
+    /** Games in progress by id, for spectators to find them */
+    private final Map<Integer, ServerGame> games = new ConcurrentHashMap<>();
+
+    /** Exposed once the server is listening, see {@link #serve(Runnable)} */
+    private final GameMetrics metrics = new GameMetrics("GameServer");
+
+    /** Records every game, see {@code GameJournal} */
+    private final GameJournal journal;
+
+    /** Seconds for each move, 0 for no clock, see {@link #TURN_PROPERTY} */
+    private final int turnSeconds = turnSecondsFromSystemProperty();
+
+    public GameServer(int port, int nLoops, boolean ai, int n, int k) {
+        // fail fast on a board that is not supported
+        GameRules.create(n, k);
+        if (ai && !advisor.knows(n, k))
+            throw new IllegalArgumentException(
+                    "The built-in opponent only plays on 3x3 boards, or the board of the table in -D"
+                            + SolvedTable.PROPERTY);
+        this.port = port;
+        this.ai = ai;
+        this.n = n;
+        this.k = k;
+        this.journal = GameJournal.fromSystemProperty(n, k);
+        this.lobby = new Lobby(MatchPolicy.fromSystemProperty(), n, k, metrics, this::startGame);
+        this.loops = new EventLoop[nLoops];
+        for (int i = 0; i < nLoops; i++)
+            loops[i] = new EventLoop("event-loop-" + i, metrics);
+    }
+
+    public static void main(String[] args) throws IOException {
+        fromArgs(args).serve();
+    }
+
+    /**
+     * Create the server from the arguments of {@link #main(String[])}
+     *
+     * @param args {@code [port] [number of selector threads] [pvp|ai] [N] [K]}
+     * @return server, not serving yet
+     */
+    static GameServer fromArgs(String[] args) {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : PORT;
+        int nLoops = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        boolean ai = args.length > 2 && args[2].equals("ai");
+        int n = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+        int k = args.length > 4 ? Integer.parseInt(args[4]) : Math.min(n, 5);
+        if (ai) {
+            // solve the game before the first Client comes in
+            PerfectPlayer.bestMove(BitBoard.EMPTY_BOARD);
+        }
+        return new GameServer(port, nLoops, ai, n, k);
+    }
+
+    /**
+     * Accept Clients until the process is terminated, they join the lobby, or
+     * start a game against the built-in opponent right away in "ai" mode.
+     */
+    public void serve() throws IOException {
+        serve(() -> {
+        });
+    }
+
+    /**
+     * Accept Clients until the process is terminated, see {@link #serve()}
+     *
+     * @param ready run once the port is bound, before the first Client is
+     *              accepted
+     */
+    public void serve(Runnable ready) throws IOException {
+        for (EventLoop l : loops)
+            l.start();
+        Thread spectators = new Thread(this::acceptSpectators, "spectator-acceptor");
+        spectators.setDaemon(true);
+        spectators.start();
+        Thread mux = new Thread(this::acceptMuxConnections, "mux-acceptor");
+        mux.setDaemon(true);
+        mux.start();
+
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(port), 1024);
+            System.out.println("Server listening on port " + port + " with " + loops.length + " selector threads");
+            ready.run();
+            ClusterNode node = ClusterNode.fromSystemProperty(port);
+            if (node != null) {
+                node.start();
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> leave(node), "leave-cluster"));
+            }
+            // Clients queue in the backlog rather than wait for JMX to start up
+            Thread expose = new Thread(metrics::expose, "metrics-expose");
+            expose.setDaemon(true);
+            expose.start();
+            while (true) {
+                SocketChannel ch = server.accept();
+                ch.socket().setTcpNoDelay(true);
+                EventLoop loop = loops[next];
+                next = (next + 1) % loops.length;
+                Connection c = new Connection(ch, loop);
+                if (ai) {
+                    startAiGame(c);
+                    continue;
+                }
+                loop.execute(() -> {
+                    try {
+                        c.register(lobby);
+                    } catch (IOException e) {
+                        c.close();
+                    }
+                });
+            }
+        } finally {
+            for (EventLoop l : loops)
+                l.shutdown();
+        }
+    }
+
+    /**
+     * Accept spectators on port + 1, each of them is handed to a loop until it
+     * says which game it watches.
+     */
+    private void acceptSpectators() {
+        int nextLoop = 0;
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(port + 1), 1024);
+            System.out.println("Spectators welcome on port " + (port + 1));
+            while (true) {
+                SocketChannel ch = server.accept();
+                ch.socket().setTcpNoDelay(true);
+                EventLoop loop = loops[nextLoop];
+                nextLoop = (nextLoop + 1) % loops.length;
+                Spectator s = new Spectator(ch, loop, this);
+                loop.execute(() -> {
+                    try {
+                        s.register();
+                    } catch (IOException e) {
+                        s.close();
+                    }
+                });
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Accept Clients that play many games over one connection on port + 2, all
+     * of them are driven by the first loop, so that games of different
+     * connections can be paired without moving any of them.
+     */
+    private void acceptMuxConnections() {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(port + 2), 1024);
+            System.out.println("Shared connections welcome on port " + (port + 2));
+            while (true) {
+                SocketChannel ch = server.accept();
+                ch.socket().setTcpNoDelay(true);
+                MuxConnection c = new MuxConnection(ch, loops[0], this);
+                loops[0].execute(() -> {
+                    try {
+                        c.register();
+                    } catch (IOException e) {
+                        c.close();
+                    }
+                });
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * A game on a shared connection says {@code HELLO}, it joins the lobby, or
+     * starts against the built-in opponent right away in "ai" mode. It's called
+     * on the loop of the connection.
+     *
+     * @param s     the game on the shared connection
+     * @param hello its {@code HELLO}
+     * @return {@code false} if its version or board is not supported
+     */
+    boolean join(MuxStream s, Frame hello) {
+        if (!ai)
+            return s.join(lobby, hello);
+        if (!Protocol.supports(hello.byteAt(0), n, k))
+            return false;
+        startAiGame(s);
+        return true;
+    }
+
+    /**
+     * Find a game in progress
+     *
+     * @param id id of the game, 0 for the latest one
+     * @return game, or null if it has finished or doesn't exist
+     */
+    ServerGame game(int id) {
+        return games.get(id == 0 ? latest : id);
+    }
+
+    /**
+     * Create a game against the built-in opponent and hand it to the loop of the
+     * Client
+     *
+     * @param p the Client
+     */
+    private void startAiGame(Player p) {
+        int id = newGameId();
+        ServerGame game = new ServerGame(id, p, null, n, k, metrics, journal, turnSeconds);
+        game.opponent(advisor);
+        p.loop().execute(() -> {
+            try {
+                p.register(game, 0);
+                play(game);
+            } catch (IOException e) {
+                e.printStackTrace();
+                p.close();
+            }
+        });
+    }
+
+    /**
+     * Create a game for two Clients paired in the lobby, on the loop of the one
+     * that waited, the other one is moved there. A game on a shared connection
+     * can't be moved, so its loop is taken instead. It's called on the loop of
+     * the one that joined.
+     *
+     * @param first  Client that waited, it moves first
+     * @param second Client that joined, it moves second
+     */
+    private void startGame(Lobby.Ticket first, Lobby.Ticket second) {
+        Player p1 = first.player;
+        Player p2 = second.player;
+        EventLoop from = p1.loop();
+        // the games of shared connections are all on the first loop, so either
+        // one of the players can be moved or both are on that loop already
+        EventLoop loop = p2 instanceof MovablePlayer ? from : p2.loop();
+        if (p2 instanceof MovablePlayer)
+            ((MovablePlayer) p2).moveTo(loop);
+
+        // the board both asked for, otherwise the server's, only the latter is
+        // recorded as the journal is made for one board
+        boolean same = first.n == second.n && first.k == second.k;
+        int size = same ? first.n : n;
+        int inRow = same ? first.k : k;
+        GameJournal j = size == n && inRow == k ? journal : GameJournal.disabled();
+
+        // the router of a cluster gave the game its id
+        int id = first.gameId != 0 && (first.gameId & Protocol.LOCAL_GAME_ID) == 0 ? first.gameId : newGameId();
+        ServerGame game = new ServerGame(id, p1, p2, size, inRow, metrics, j, turnSeconds);
+        Runnable task = () -> {
+            try {
+                if (p1.isClosed()) {
+                    // the first one left in the meantime, the second one waits again
+                    p2.register(lobby);
+                    lobby.join(second);
+                    return;
+                }
+                p1.register(game, 0);
+                p2.register(game, 1);
+                FrameCodec.putJoined(p1.out(), id);
+                FrameCodec.putJoined(p2.out(), id);
+                play(game);
+            } catch (IOException e) {
+                e.printStackTrace();
+                p1.close();
+                p2.close();
+            }
+        };
+        if (from == loop) {
+            loop.execute(task);
+        } else {
+            // the first one is moved on its own loop, where it still waits
+            from.execute(() -> {
+                ((MovablePlayer) p1).moveTo(loop);
+                loop.execute(task);
+            });
+        }
+    }
+
+    /**
+     * An id for a game that the router of a cluster didn't give one, it has
+     * the {@code Protocol.LOCAL_GAME_ID} bit so it's never one of the router's
+     *
+     * @return id of the game, not 0
+     */
+    private int newGameId() {
+        return Protocol.LOCAL_GAME_ID | (gameId.incrementAndGet() & ~Protocol.LOCAL_GAME_ID);
+    }
+
+    /**
+     * Leave the cluster on the way out: the router sends no more games here,
+     * and the games in progress, and the Clients waiting for the other one of
+     * their pair, are given some time to finish
+     *
+     * @param node link to the router
+     */
+    private void leave(ClusterNode node) {
+        node.drain();
+        System.out.println("Leaving the cluster, " + metrics.getActiveGames() + " games in progress");
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DRAIN_TIMEOUT_MILLIS);
+        while ((metrics.getActiveGames() > 0 || metrics.getLobbyQueued() > 0) && System.nanoTime() < end) {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * The seconds for each move, from the system property
+     * {@value #TURN_PROPERTY}
+     *
+     * @return seconds, up to 255, 0 for no clock
+     */
+    static int turnSecondsFromSystemProperty() {
+        return Math.min(255, Math.max(0, Integer.getInteger(TURN_PROPERTY, 0)));
+    }
+
+    /** Start the game and let spectators find it, must be called in its loop */
+    private void play(ServerGame game) {
+        int id = game.id();
+        // before the start, which may already finish the game
+        games.put(id, game);
+        latest = id;
+        game.onFinish(() -> games.remove(id));
+        game.start();
+    }
+}
@@ -1,10 +1,30 @@
 package com.curtisnewbie.app;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import com.curtisnewbie.engine.GameRules;
+import com.curtisnewbie.engine.Series;
+import com.curtisnewbie.engine.UltimateEngine;
+import com.curtisnewbie.engine.journal.GameJournal;
+import com.curtisnewbie.engine.journal.JournalReader;
+import com.curtisnewbie.engine.journal.RecordedGame;
+import com.curtisnewbie.engine.net.Frame;
+import com.curtisnewbie.engine.net.FrameReader;
+import com.curtisnewbie.engine.net.FrameWriter;
+import com.curtisnewbie.engine.net.Heartbeat;
+import com.curtisnewbie.engine.net.Link;
+import com.curtisnewbie.engine.net.Protocol;
+import com.curtisnewbie.engine.net.Transport;
+import com.curtisnewbie.engine.solver.Advisor;
+import com.curtisnewbie.engine.solver.MctsPlayer;
+import com.curtisnewbie.engine.solver.SolvedTable;
+import com.curtisnewbie.engine.util.GameMetrics;
+import com.curtisnewbie.engine.util.MatchExecutors;
+import com.curtisnewbie.engine.util.TimerWheel;
 import javafx.stage.Stage;
 
 import javafx.application.Application;
@@ -24,130 +44,592 @@ public class Host extends Application {
     // modify it and the one in Client program, if necessary
     private static final int PORT = 7000;
 
+    /** Time to look at the last move before the next game of a series starts */
+    private static final long NEXT_GAME_DELAY = 1500;
+
+    /** Time the game loop gets to record a resigned game before the process exits */
+    private static final long RESIGN_WAIT_MILLIS = 1000;
+
+    /** Runs the game loop, see {@code MatchExecutors} */
+    private final Executor executor = MatchExecutors.fromSystemProperty();
+
+    /** Games, moves and bytes of this program, see {@code GameMetrics} */
+    private final GameMetrics metrics = GameMetrics.start("Host");
+
     /** The View of this program */
     private GamePane gamePane;
 
-    private ServerSocket server;
-    private Socket socket;
+    private Stage stage;
+
+    /** Checks the moves of both sides, player 0 is whoever moves first */
+    private GameRules engine;
+
+    /** Score of the games played on the connection, e.g., "--series=5" */
+    private Series series;
+
+    /** Version in the client's {@code HELLO}, 0 until it's read */
+    private int clientVersion;
+
+    /** Carries the frames, e.g., "--transport=nio", see {@code Transport} */
+    private Transport transport;
+
+    /** Connection to client */
+    private Link link;
+
+    // Frames from client
+    private FrameReader in;
+    // Frames to client
+    private FrameWriter out;
+
+    /** Every frame from client is read into it */
+    private final Frame frame = new Frame();
+
+    /** Records the games, see {@code GameJournal} */
+    private GameJournal journal = GameJournal.disabled();
+
+    /** Heartbeats and turn clocks, created with the connection */
+    private TimerWheel timers;
+
+    /** Sends heartbeats, and drops the client when it's silent */
+    private Heartbeat heartbeat;
+
+    /** Seconds for each move of both sides, 0 for no clock, e.g., "--turn=30" */
+    private int turnSeconds;
+
+    /** Number of the user's turns so far, which the clock of a turn refers to */
+    private int turns;
+
+    /** Whether the client ran out of time, its input is shut down then */
+    private volatile boolean clientTimedOut;
+
+    /**
+     * Result of a game that doesn't finish on the board, from the view of player
+     * 0, it's set by the game loop, or by {@link #resign()} when the window is
+     * closed
+     */
+    private volatile int ending;
+
+    /** Whether the Host moves first in the current game, i.e., it's player 0 */
+    private volatile boolean hostFirst;
+
+    /** Thread of the game loop, which {@link #resign()} wakes up */
+    private volatile Thread gameLoop;
+
+    /** Best moves of the built-in opponent and of the hints */
+    private final Advisor advisor = Advisor.fromSystemProperty();
 
-    // InputStream from client
-    private DataInputStream in;
-    // OutputStream to client
-    private DataOutputStream out;
+    /** Whether the best move is printed on the user's turn, e.g., "--hints" */
+    private boolean hints;
+
+    /** The built-in opponent of the Ultimate variant, null on other boards */
+    private MctsPlayer mcts;
 
     @Override
     public void start(Stage priStage) {
+        // Size of the board and stones in a row to win, e.g., "--size=15 --k=5"
+        Map<String, String> named = getParameters().getNamed();
+        int n = Integer.parseInt(named.getOrDefault("size", "3"));
+        int k = Integer.parseInt(named.getOrDefault("k", String.valueOf(Math.min(n, 5))));
+        // The Ultimate variant, nine 3x3 boards in one, e.g., "--ultimate"
+        if (getParameters().getRaw().contains("--ultimate")) {
+            n = UltimateEngine.SIZE;
+            k = GameRules.ULTIMATE_K;
+        }
+        boolean ai = getParameters().getRaw().contains("--ai");
+        hints = getParameters().getRaw().contains("--hints");
+        // Best-of-N series on one connection, e.g., "--series=5"
+        series = new Series(Math.min(255, Math.max(1, Integer.parseInt(named.getOrDefault("series", "1")))));
+        // Seconds for each move, e.g., "--turn=30", who runs out of time loses
+        turnSeconds = Math.min(255, Math.max(0, Integer.parseInt(named.getOrDefault("turn", "0"))));
+        transport = named.containsKey("transport") ? Transport.create(named.get("transport"))
+                : Transport.fromSystemProperty();
+
+        // Replay a recorded game instead, e.g., "--replay=42 --speed=2"
+        RecordedGame replay = null;
+        if (named.containsKey("replay")) {
+            replay = loadReplay(Integer.parseInt(named.get("replay")));
+            if (replay == null) {
+                Platform.exit();
+                return;
+            }
+            n = replay.size();
+            k = replay.k();
+        }
+        if (ai && !advisor.knows(n, k) && k != GameRules.ULTIMATE_K) {
+            System.out.println("The built-in opponent only plays on 3x3 boards, the Ultimate variant, or the board"
+                    + " of the table in -D" + SolvedTable.PROPERTY + ", starting a 3x3 game");
+            n = 3;
+            k = 3;
+        }
+        // Milliseconds the opponent of the Ultimate variant thinks per move, e.g., "--think=2000"
+        if (ai && k == GameRules.ULTIMATE_K)
+            mcts = MctsPlayer.onAllCores(Long.parseLong(named.getOrDefault("think", "1000")));
+        engine = GameRules.create(n, k);
+
         // Initiate gui
-        gamePane = new GamePane();
+        gamePane = new GamePane(n, k);
         Scene s = new Scene(gamePane, 500, 500);
         priStage.setScene(s);
         priStage.setTitle("Host");
+        stage = priStage;
         priStage.show();
 
-        // Terminate the program when primary stage being closed
+        // Terminate the program when primary stage being closed, resign if the game
+        // is not finished
         priStage.setOnCloseRequest(e -> {
+            resign();
             System.exit(0);
         });
 
+        if (replay != null) {
+            RecordedGame game = replay;
+            double speed = Double.parseDouble(named.getOrDefault("speed", "1"));
+            executor.execute(() -> startReplay(game, speed));
+            return;
+        }
+
+        // Play against the built-in opponent when started with "--ai"
+        if (ai) {
+            executor.execute(this::startAiGame);
+            return;
+        }
+
         // Connect to Client and Start the Game
-        new Thread(() -> {
+        journal = GameJournal.fromSystemProperty(n, k);
+        executor.execute(() -> {
             gamePane.freeze();
             // connect to client
-            makeConnection();
-            // start the game
+            if (!makeConnection())
+                return;
+            // start the games
             gamePane.unfreeze();
-            startGame();
-        }).start();
+            startSeries();
+        });
     }
 
-    /** Wait for client to connect */
-    private void makeConnection() {
+    /**
+     * Wait for client to connect
+     * 
+     * @return {@code false} if the connection failed
+     */
+    private boolean makeConnection() {
         try {
-            // setup server
-            server = new ServerSocket(PORT);
-            System.out.println("Waiting for Connection");
-            socket = server.accept();
-            in = new DataInputStream(socket.getInputStream());
-            out = new DataOutputStream(socket.getOutputStream());
-            System.out.println("Connected to Client : " + socket.getInetAddress().getHostAddress());
+            System.out.println("Waiting for Connection (" + transport + ")");
+            link = transport.accept(PORT);
+            // the peer is heard while the user thinks, rather than dropped as silent
+            in = new FrameReader(new BufferedInputStream(metrics.meter(link.in()))).readAhead("frame-reader");
+            out = new FrameWriter(metrics.meter(link.out()));
+            timers = TimerWheel.start("timers", 100, 512);
+            heartbeat = new Heartbeat(timers, in, out, link).start();
+            System.out.println("Connected to Client : " + link.peer());
+            return true;
         } catch (IOException e) {
             e.printStackTrace();
+            metrics.connectionFailed();
+            return false;
         }
+    }
+
+    /**
+     * Play the games of the series on the connection.<br>
+     * <br>
+     * The Host moves first in the first game, and the roles swap every game.
+     * Before each game the Host tells the client the size of the board and who
+     * moves first, and after the last one it closes the connection. The series
+     * is cut short when a game doesn't finish on the board (e.g., the client
+     * resigned or ran out of time), or when the client is too old to play more
+     * than one game on a connection.
+     */
+    private void startSeries() {
+        gameLoop = Thread.currentThread();
+        try {
+            while (true) {
+                boolean hostFirst = series.firstInNextGame();
+                out.hello(hostFirst ? Protocol.MOVE_SECOND : Protocol.MOVE_FIRST, engine.size(), engine.k(),
+                        series.games(), turnSeconds);
+                out.flush();
+                if (!startGame(hostFirst))
+                    break;
 
+                series.record(engine.status(), hostFirst);
+                showScore();
+                if (series.isOver() || clientVersion < Protocol.VERSION_SERIES)
+                    break;
+
+                // clear the board in place for the next game
+                Thread.sleep(NEXT_GAME_DELAY);
+                engine.reset();
+                gamePane.reset();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            if (heartbeat.isEvicted())
+                metrics.evicted();
+            else
+                metrics.disconnected();
+            showDisconnectDialog();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        } finally {
+            closeConnection();
+        }
     }
 
     /**
      * Start the game.<br>
      * <br>
      * This method follows the logic that:<br>
-     * 1. The Host starts first,<br>
+     * 1. The Host starts first, unless it's the client's turn to start in the
+     * series,<br>
      * 2. waits for user (Host) to move,<br>
      * 3. send the data (the step that the user moved to) to the Client,<br>
-     * 4. repeat this process until the game finishes.
+     * 4. receive the step that the Client moved to, which is checked by the
+     * {@code GameRules},<br>
+     * 5. repeat this process until the game finishes.<br>
+     * <br>
+     * With a clock, a timer of the {@code TimerWheel} ends the turn of either
+     * side that runs out of time, and the Host tells the client who lost.
      * 
+     * @param hostFirst whether the Host moves first
+     * @return {@code true} if the game finished on the board, {@code false} if
+     *         it's ended otherwise (e.g., the client resigned)
+     * @throws IOException          if the connection is lost
+     * @throws InterruptedException if interrupted while waiting for the user
      */
-    private void startGame() {
+    private boolean startGame(boolean hostFirst) throws IOException, InterruptedException {
         System.out.println("Game Started\n");
-        int[] lastStep = null;
+        metrics.gameStarted();
+        GameJournal.Recorder recorder = journal.startGame();
+        ending = Protocol.RESULT_ABORTED;
+        this.hostFirst = hostFirst;
         gamePane.freeze();
         try {
-            while (true) {
+            if (!hostFirst && !opponentMove(recorder))
+                return false;
+
+            while (!engine.isOver()) {
                 // it's user's turn to move
                 gamePane.unfreeze();
 
                 System.out.println("Wait For User to select");
-                while ((lastStep = gamePane.getLastStep()) == null) {
-                    // wait for user to start
-                    Thread.sleep(10);
-                }
+                showHint();
+                int turn = ++turns;
+                TimerWheel.Timeout clock = startClock(() -> gamePane.timeUp(turn));
+                int cell = gamePane.awaitMove(turn);
                 // user has moved
                 gamePane.freeze();
+                if (clock != null)
+                    clock.cancel();
+                if (cell == GamePane.TIME_UP) {
+                    metrics.turnTimedOut();
+                    // the user loses, player 0 is whoever moved first
+                    ending = hostFirst ? Protocol.RESULT_TIMEOUT_LOSS : Protocol.RESULT_TIMEOUT_WIN;
+                    out.gameOver(Protocol.RESULT_TIMEOUT_WIN);
+                    out.flush();
+                    showGameEndedDialog("You ran out of time, You Lost!");
+                    return false;
+                }
 
                 // tell the Opponent/client which step the user moved
-                out.writeInt(lastStep[0]);
-                out.writeInt(lastStep[1]);
+                out.move(cell, engine.cells());
                 out.flush();
+                metrics.moveSent();
+                long sent = System.nanoTime();
 
-                if (gamePane.hasWon() || gamePane.isFull())
+                engine.apply(cell);
+                recorder.move(cell);
+                if (engine.isOver())
                     break;
 
-                // Opponent/ Client has moved, update the gamePane
-                int row = in.readInt();
-                int col = in.readInt();
-                gamePane.opponentMoveTo(row, col);
-
-                if (gamePane.hasWon() || gamePane.isFull())
-                    break;
+                // Opponent/ Client has moved, check the move and update the gamePane
+                if (!opponentMove(recorder))
+                    return false;
+                metrics.roundTrip(System.nanoTime() - sent);
             }
             System.out.println("End");
             gamePane.freeze();
-        } catch (IOException e) {
-            e.printStackTrace();
-            showDisconnectDialog();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+            return true;
         } finally {
-            closeConnection();
+            metrics.gameFinished();
+            recorder.end(engine.isOver() ? Protocol.resultOf(engine.status()) : ending);
         }
     }
 
+    /**
+     * Read the client's move, check it and update the gamePane
+     * 
+     * @param recorder records the move
+     * @return {@code false} if the game is ended instead, or the move is illegal
+     * @throws IOException if the connection is lost
+     */
+    private boolean opponentMove(GameJournal.Recorder recorder) throws IOException {
+        TimerWheel.Timeout clock = startClock(this::clientTimeUp);
+        int cell;
+        try {
+            cell = readOpponentMove();
+        } catch (IOException e) {
+            if (!clientTimedOut)
+                throw e;
+            cell = -1;
+        }
+        // the clock may have run out just as the move came in
+        if (clock != null && !clock.cancel()) {
+            metrics.turnTimedOut();
+            // the client loses, player 0 is whoever moved first
+            ending = engine.currentPlayer() == 0 ? Protocol.RESULT_TIMEOUT_LOSS : Protocol.RESULT_TIMEOUT_WIN;
+            out.gameOver(Protocol.RESULT_TIMEOUT_LOSS);
+            out.flush();
+            showGameEndedDialog("The client ran out of time, You Win!");
+            return false;
+        }
+        if (cell < 0)
+            return false;
+        metrics.moveReceived();
+        if (engine.apply(cell) == GameRules.ILLEGAL_MOVE) {
+            System.out.println("Illegal Move From Client : " + cell);
+            out.error(Protocol.ERROR_ILLEGAL_MOVE);
+            out.flush();
+            showGameEndedDialog("The client made an illegal move, the game is ended.");
+            return false;
+        }
+        recorder.move(cell);
+        gamePane.opponentMoveTo(cell / engine.size(), cell % engine.size());
+        return true;
+    }
+
+    /**
+     * Start the clock of a turn, if there is one
+     *
+     * @param onTimeUp run when the turn runs out of time
+     * @return the clock, or null if moves have no clock
+     */
+    private TimerWheel.Timeout startClock(Runnable onTimeUp) {
+        if (turnSeconds == 0)
+            return null;
+        return timers.schedule(turnSeconds * 1000L, onTimeUp);
+    }
+
+    /**
+     * The client ran out of time, its input is shut down to wake up the game
+     * loop, which tells the client that it lost
+     */
+    private void clientTimeUp() {
+        clientTimedOut = true;
+        try {
+            link.shutdownInput();
+        } catch (IOException e) {
+            // already closed, the game loop finds out
+        }
+    }
+
+    /** Print the score of the series and show it in the title */
+    private void showScore() {
+        System.out.println("Series : " + series);
+        Platform.runLater(() -> stage.setTitle("Host  " + series));
+    }
+
     /**
      * Close connection.<br>
      * <br>
-     * This method closes the {@code Socket} and {@code ServerSocket} created for
-     * connection. The {@code DataInputStream} and {@code DataOutputStream} are
-     * closed when the {@code Socket} is closed.
+     * This method closes the {@code Link} to the client, nothing listens on the
+     * port once the client is accepted. The streams of {@code FrameReader} and
+     * {@code FrameWriter} are closed when the {@code Link} is closed.
      */
     private void closeConnection() {
+        heartbeat.stop();
         try {
-            socket.close();
-            server.close();
+            link.close();
             System.out.println("Connection Closed");
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Start a game against the built-in opponent ({@code PerfectPlayer}, the
+     * table of a solved board, or the {@code MctsPlayer} of the Ultimate
+     * variant) instead of a Client. The user moves first, and the opponent
+     * answers right away, or once its time to think is up.
+     */
+    private void startAiGame() {
+        System.out.println("Game Started Against AI\n");
+        metrics.gameStarted();
+        try {
+            while (true) {
+                // it's user's turn to move
+                showHint();
+                gamePane.unfreeze();
+                int cell = gamePane.awaitMove();
+                gamePane.freeze();
+
+                engine.apply(cell);
+                if (engine.isOver())
+                    break;
+
+                // the opponent's move is looked up in its table, or searched for
+                int answer;
+                if (mcts != null) {
+                    answer = mcts.bestMove(engine);
+                    System.out.println("AI: " + mcts.lastSearch());
+                } else {
+                    answer = advisor.bestMove(engine);
+                }
+                engine.apply(answer);
+                gamePane.opponentMoveTo(answer / engine.size(), answer % engine.size());
+
+                if (engine.isOver())
+                    break;
+            }
+            System.out.println("End");
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        } finally {
+            metrics.gameFinished();
+        }
+    }
+
+    /** Print the best move for the user, with "--hints" on a board it's known for */
+    private void showHint() {
+        if (!hints)
+            return;
+        String hint = advisor.hint(engine);
+        if (hint != null)
+            System.out.println("Hint: " + hint);
+    }
+
+    /**
+     * Find a recorded game in the journal named by the system property
+     * {@code tictactoe.journal}, "journal" by default
+     * 
+     * @param gameId id of the game
+     * @return the game, or null if it's not found
+     */
+    private RecordedGame loadReplay(int gameId) {
+        String dir = System.getProperty(GameJournal.PROPERTY, "journal");
+        try (JournalReader reader = new JournalReader(Paths.get(dir))) {
+            RecordedGame game = reader.find(gameId);
+            if (game == null)
+                System.out.println("Game " + gameId + " is not found in " + dir);
+            return game;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Play a recorded game back on the gamePane, X being the player that moved
+     * first.
+     * 
+     * @param game  recorded game
+     * @param speed how many times faster than it was played, 0 for no delay
+     */
+    private void startReplay(RecordedGame game, double speed) {
+        System.out.println("Replaying Game " + game.gameId() + "\n");
+        gamePane.freeze();
+        try {
+            int n = game.size();
+            for (int i = 0; i < game.moves(); i++) {
+                if (speed > 0)
+                    Thread.sleep((long) (game.delay(i) / speed));
+                int cell = game.cell(i);
+                if (i % 2 == 0)
+                    gamePane.moveTo(cell / n, cell % n);
+                else
+                    gamePane.opponentMoveTo(cell / n, cell % n);
+            }
+            System.out.println("End");
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Read frames from the client until it moves, skipping heartbeats and frames
+     * unknown to this version.
+     * 
+     * @return the cell that the client moved to, or -1 if the game is ended
+     *         instead (e.g., the client resigned)
+     * @throws IOException if the connection is lost
+     */
+    private int readOpponentMove() throws IOException {
+        while (true) {
+            in.read(frame);
+            switch (frame.type()) {
+            case Protocol.MOVE:
+                return frame.cell(engine.cells());
+            case Protocol.RESIGN:
+                // the client resigns on its turn, player 0 is whoever moved first
+                ending = engine.currentPlayer() == 0 ? Protocol.RESULT_LOSS : Protocol.RESULT_WIN;
+                showGameEndedDialog("The client resigned, You Win!");
+                return -1;
+            case Protocol.ERROR:
+                showGameEndedDialog("The client reported an error, the game is ended.");
+                return -1;
+            case Protocol.HELLO:
+                clientVersion = frame.byteAt(0);
+                heartbeat.peerVersion(clientVersion);
+                // an older client only knows about 3x3 boards
+                if (!Protocol.supports(frame.byteAt(0), engine.size(), engine.k())) {
+                    out.error(Protocol.ERROR_UNSUPPORTED_VERSION);
+                    out.flush();
+                    showGameEndedDialog("The client's version is not supported.");
+                    return -1;
+                }
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    /**
+     * Tell the client that the user gives up, if the game is not finished, and
+     * wait a moment for the game loop to record the loss before the process
+     * exits. The game loop is woken up whether it waits for the user or for the
+     * client.
+     */
+    private void resign() {
+        if (out == null || engine.isOver())
+            return;
+        ending = hostFirst ? Protocol.RESULT_LOSS : Protocol.RESULT_WIN;
+        try {
+            out.resign();
+            out.flush();
+        } catch (IOException e) {
+            // connection already lost
+        }
+        Thread loop = gameLoop;
+        if (loop == null)
+            return;
+        loop.interrupt();
+        try {
+            link.shutdownInput();
+        } catch (IOException e) {
+            // already closed, the game loop finds out
+        }
+        try {
+            loop.join(RESIGN_WAIT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Create and show the dialog when the game is ended by something other than a
+     * move.
+     * 
+     * @param text content of the dialog
+     */
+    private void showGameEndedDialog(String text) {
+        Platform.runLater(() -> {
+            Alert dia = new Alert(AlertType.INFORMATION);
+            dia.setTitle("Game Ended");
+            dia.setContentText(text);
+            dia.show();
+        });
+    }
+
     /** Create and show the dialog when connection lost. */
     private void showDisconnectDialog() {
         Platform.runLater(() -> {
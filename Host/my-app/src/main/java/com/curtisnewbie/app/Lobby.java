@@ -0,0 +1,170 @@
+package com.curtisnewbie.app;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+import com.curtisnewbie.engine.GameRules;
+import com.curtisnewbie.engine.net.Frame;
+import com.curtisnewbie.engine.net.Protocol;
+import com.curtisnewbie.engine.util.GameMetrics;
+
+/**
+ * Where the Clients of a {@code GameServer} wait to be paired into games.<br>
+ * <br>
+ * A Client joins with its {@code HELLO}, which may carry its rating and the
+ * board it asks for, and the {@code MatchPolicy} puts it into a bucket. Each
+ * bucket has a single slot: a Client that finds the slot empty waits in it, a
+ * Client that finds someone there takes them out and the two are paired. Two
+ * Clients that wait in the same bucket would have been paired already, so one
+ * slot is all a bucket ever needs, and joining is a compare-and-set on the
+ * bucket's slot, without any lock, from whichever {@code EventLoop} reads the
+ * {@code HELLO}. Clients in different buckets never contend.<br>
+ * <br>
+ * A pair is played on the board both Clients asked for, or on the server's
+ * board when they asked for different ones (which only happens when the policy
+ * doesn't look at the board).<br>
+ * <br>
+ * On a server of a cluster, the router has paired the Clients already: both of
+ * a pair come with the id of their game in the {@code HELLO}, and meet in a
+ * bucket of that game only, which is dropped once they are paired.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public class Lobby {
+
+    /** Buckets of the games of a cluster, apart from those of any policy */
+    private static final long GAME_BUCKET = Long.MIN_VALUE;
+
+    private final MatchPolicy policy;
+
+    /** Board of the server, for Clients that don't ask for one */
+    private final int n;
+    private final int k;
+
+    /** Waiting Client of each bucket, null if nobody waits */
+    private final ConcurrentHashMap<Long, AtomicReference<Ticket>> slots = new ConcurrentHashMap<>();
+
+    /** Takes the Client that waited and the one that joined */
+    private final BiConsumer<Ticket, Ticket> onPaired;
+
+    private final GameMetrics metrics;
+
+    /**
+     * @param policy   decides who may play whom
+     * @param n        size of the board for Clients that don't ask for one
+     * @param k        stones in a row to win for Clients that don't ask
+     * @param metrics  metrics of the server
+     * @param onPaired takes the Client that waited (it moves first) and the one
+     *                 that joined, it's called on the loop of the one that joined
+     */
+    public Lobby(MatchPolicy policy, int n, int k, GameMetrics metrics, BiConsumer<Ticket, Ticket> onPaired) {
+        this.policy = policy;
+        this.n = n;
+        this.k = k;
+        this.metrics = metrics;
+        this.onPaired = onPaired;
+    }
+
+    /**
+     * A Client joins with its {@code HELLO}, it's either paired right away or
+     * waits for an opponent
+     *
+     * @param player the Client
+     * @param hello  the Client's {@code HELLO}
+     * @return the ticket, or null if the Client's version or board is not
+     *         supported
+     */
+    Ticket join(Player player, Frame hello) {
+        // a Client that doesn't ask for a board plays on the server's
+        int size = hello.length() > 3 && hello.byteAt(2) != 0 ? hello.byteAt(2) : n;
+        int inRow = hello.length() > 3 && hello.byteAt(3) != 0 ? hello.byteAt(3) : k;
+        if (!Protocol.supports(hello.byteAt(0), size, inRow))
+            return null;
+        if (size != n || inRow != k) {
+            try {
+                GameRules.create(size, inRow);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        int rating = hello.rating();
+        int gameId = hello.helloGameId();
+        long bucket = gameId != 0 ? GAME_BUCKET | (gameId & 0xFFFFFFFFL) : policy.bucket(rating, size, inRow);
+        Ticket t = new Ticket(player, rating, size, inRow, bucket, gameId);
+        join(t);
+        return t;
+    }
+
+    /**
+     * Put the ticket back in, e.g., when the opponent it was paired with left
+     * before the game started
+     *
+     * @param t ticket
+     */
+    void join(Ticket t) {
+        AtomicReference<Ticket> slot = slots.get(t.bucket);
+        if (slot == null)
+            slot = slots.computeIfAbsent(t.bucket, b -> new AtomicReference<>());
+        t.joinedAt = System.nanoTime();
+        while (true) {
+            Ticket waiting = slot.get();
+            if (waiting == null) {
+                if (slot.compareAndSet(null, t)) {
+                    metrics.lobbyJoined();
+                    return;
+                }
+            } else if (slot.compareAndSet(waiting, null)) {
+                // nobody else comes with the id of a game of the cluster
+                if (t.gameId != 0)
+                    slots.remove(t.bucket, slot);
+                metrics.lobbyPaired(t.joinedAt - waiting.joinedAt);
+                onPaired.accept(waiting, t);
+                return;
+            }
+        }
+    }
+
+    /**
+     * The Client leaves, e.g., it's disconnected
+     *
+     * @param t ticket
+     * @return {@code false} if it has been paired already
+     */
+    boolean leave(Ticket t) {
+        AtomicReference<Ticket> slot = slots.get(t.bucket);
+        if (slot != null && slot.compareAndSet(t, null)) {
+            if (t.gameId != 0)
+                slots.remove(t.bucket, slot);
+            metrics.lobbyLeft();
+            return true;
+        }
+        return false;
+    }
+
+    /** A Client in the lobby, and the board it plays on */
+    static final class Ticket {
+
+        final Player player;
+        final int rating;
+        final int n;
+        final int k;
+        final long bucket;
+
+        /** Id of the game the router of a cluster sent it for, 0 if none */
+        final int gameId;
+
+        /** When it joined, in nanos */
+        long joinedAt;
+
+        Ticket(Player player, int rating, int n, int k, long bucket, int gameId) {
+            this.player = player;
+            this.rating = rating;
+            this.n = n;
+            this.k = k;
+            this.bucket = bucket;
+            this.gameId = gameId;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.curtisnewbie.app;
+
+/**
+ * Decides which Clients waiting in the {@code Lobby} may play each other.<br>
+ * <br>
+ * A policy puts every Client into a bucket by its rating and the board it asks
+ * for, and only two Clients in the same bucket are paired, the one that waited
+ * first moves first. The policies are picked by name:<br>
+ * 1. "fifo", everyone is in the same bucket (the default),<br>
+ * 2. "rating:W", bands of W rating points, e.g., "rating:200",<br>
+ * 3. "board", the same N and K,<br>
+ * 4. "board+rating:W", both of them.<br>
+ * <br>
+ * The name is read from the system property {@value #PROPERTY} when not given
+ * explicitly.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+@FunctionalInterface
+public interface MatchPolicy {
+
+    /** System property that names the policy */
+    String PROPERTY = "tictactoe.match";
+
+    /**
+     * The bucket of a Client
+     *
+     * @param rating rating of the Client, 0 if it has none
+     * @param n      size of the board it plays on
+     * @param k      stones in a row to win
+     * @return bucket, Clients are only paired within a bucket
+     */
+    long bucket(int rating, int n, int k);
+
+    /**
+     * Pair Clients only if both policies would
+     *
+     * @param other the other policy, whose bucket fits in 32 bits
+     * @return policy
+     */
+    default MatchPolicy and(MatchPolicy other) {
+        return (rating, n, k) -> bucket(rating, n, k) << 32 | (other.bucket(rating, n, k) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Pair Clients in the order they come in
+     *
+     * @return policy
+     */
+    static MatchPolicy fifo() {
+        return (rating, n, k) -> 0;
+    }
+
+    /**
+     * Pair Clients within the same band of ratings, e.g., 1400 to 1599 for
+     * bands of 200
+     *
+     * @param width rating points of a band
+     * @return policy
+     */
+    static MatchPolicy ratingBands(int width) {
+        if (width < 1)
+            throw new IllegalArgumentException("Width of a rating band must be positive");
+        return (rating, n, k) -> rating / width;
+    }
+
+    /**
+     * Pair Clients that play on the same board
+     *
+     * @return policy
+     */
+    static MatchPolicy boardSize() {
+        return (rating, n, k) -> n << 8 | k;
+    }
+
+    /**
+     * Create the policy named by the system property {@value #PROPERTY}
+     *
+     * @return policy
+     */
+    static MatchPolicy fromSystemProperty() {
+        return create(System.getProperty(PROPERTY, "fifo"));
+    }
+
+    /**
+     * Create the policy by name
+     *
+     * @param name "fifo", "rating:W", "board" or "board+rating:W"
+     * @return policy
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    static MatchPolicy create(String name) {
+        if (name.equals("fifo"))
+            return fifo();
+        if (name.equals("board"))
+            return boardSize();
+        if (name.startsWith("rating:"))
+            return ratingBands(Integer.parseInt(name.substring("rating:".length())));
+        if (name.startsWith("board+rating:"))
+            return boardSize().and(ratingBands(Integer.parseInt(name.substring("board+rating:".length()))));
+        throw new IllegalArgumentException("Unknown match policy: " + name);
+    }
+}
@@ -0,0 +1,20 @@
+package com.curtisnewbie.app;
+
+/**
+ * A {@code Player} that can be moved to another {@code EventLoop}, i.e., one
+ * with a connection of its own. The games of a shared connection stay on the
+ * loop of the connection, the opponent is moved there instead.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+interface MovablePlayer extends Player {
+
+    /**
+     * Move to the loop of the opponent, where it's registered again with its
+     * game
+     *
+     * @param target loop of the opponent
+     */
+    void moveTo(EventLoop target);
+}
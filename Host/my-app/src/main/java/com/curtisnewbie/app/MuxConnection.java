@@ -0,0 +1,242 @@
+package com.curtisnewbie.app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.curtisnewbie.engine.net.Frame;
+import com.curtisnewbie.engine.net.FrameCodec;
+import com.curtisnewbie.engine.net.Protocol;
+import com.curtisnewbie.engine.util.TimerWheel;
+
+/**
+ * A non-blocking connection that carries many games of one Client at the same
+ * time, e.g., a fleet of bots, instead of a connection per game.<br>
+ * <br>
+ * Every frame on it is a {@code MUX} with the id of the game on the connection,
+ * which the Client picks, and the frames of that game. A {@code HELLO} under a
+ * new id starts a game (a {@code MuxStream}) that joins the lobby like any
+ * other Client, the other frames are routed to the {@code ServerGame} of their
+ * id. Once a game finishes its id may be used for the next one.<br>
+ * <br>
+ * The frames sent while the frames read off the socket are handled are written
+ * in one go afterwards. Every shared connection is driven by the same loop (the
+ * first one of the server), so that two games of different shared connections
+ * can be played against each other, a Client only needs one or a few of them.<br>
+ * <br>
+ * Heartbeats are sent outside of any {@code MUX}, as a bare {@code HEARTBEAT},
+ * and the connection is dropped along with all of its games when nothing has
+ * been read for {@code Protocol.IDLE_TIMEOUT_MILLIS}.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public class MuxConnection implements Selectable {
+
+    /** Room for the frames of many games that the socket doesn't take at once */
+    private static final int OUT_SIZE = 64 * 1024;
+
+    private final SocketChannel channel;
+    private final EventLoop loop;
+    private final GameServer server;
+    private SelectionKey key;
+
+    /** Large enough for the largest frame */
+    private final ByteBuffer in = ByteBuffer.allocate(Protocol.MAX_PAYLOAD + 3);
+    private final ByteBuffer out = ByteBuffer.allocate(OUT_SIZE);
+
+    /** Games by their id on this connection */
+    private final Map<Integer, MuxStream> streams = new HashMap<>();
+
+    /** Frames carried by a {@code MUX} are decoded into it */
+    private final Frame muxed = new Frame();
+
+    /** Whether frames read off the socket are being handled, writes wait until then */
+    private boolean reading;
+
+    private boolean closed;
+
+    /** When the last bytes were read, in nanos */
+    private long lastRead;
+
+    /** Sends heartbeats and drops the connection when it's silent */
+    private TimerWheel.Timeout liveness;
+
+    public MuxConnection(SocketChannel channel, EventLoop loop, GameServer server) {
+        this.channel = channel;
+        this.loop = loop;
+        this.server = server;
+    }
+
+    /** Register this connection on its loop, must be called in the loop */
+    void register() throws IOException {
+        channel.configureBlocking(false);
+        key = channel.register(loop.selector(), SelectionKey.OP_READ, this);
+        lastRead = System.nanoTime();
+        liveness = loop.timers().schedule(Protocol.HEARTBEAT_INTERVAL_MILLIS, this::checkLiveness);
+    }
+
+    /** Drop the connection if it has been silent for too long, send a heartbeat otherwise */
+    private void checkLiveness() {
+        liveness = null;
+        if (closed)
+            return;
+        if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastRead) >= Protocol.IDLE_TIMEOUT_MILLIS) {
+            loop.metrics().evicted();
+            lost();
+            return;
+        }
+        if (out.hasRemaining()) {
+            FrameCodec.putHeartbeat(out);
+            flush();
+        }
+        if (!closed)
+            liveness = loop.timers().schedule(Protocol.HEARTBEAT_INTERVAL_MILLIS, this::checkLiveness);
+    }
+
+    EventLoop loop() {
+        return loop;
+    }
+
+    @Override
+    public void onReadable() {
+        try {
+            int n = channel.read(in);
+            if (n < 0) {
+                lost();
+                return;
+            }
+            loop.metrics().bytesIn(n);
+            lastRead = System.nanoTime();
+            in.flip();
+            Frame frame = loop.frame();
+            reading = true;
+            while (!closed && FrameCodec.decode(in, frame)) {
+                if (frame.type() == Protocol.MUX)
+                    route(frame);
+            }
+            in.compact();
+        } catch (IOException e) {
+            // including malformed frames, the games can't be told apart anymore
+            lost();
+        } finally {
+            reading = false;
+        }
+        flush();
+    }
+
+    /** Hand the frames of a {@code MUX} to their game, a {@code HELLO} starts one */
+    private void route(Frame mux) {
+        int id = mux.gameId();
+        if (id == 0)
+            return;
+        MuxStream s = streams.get(id);
+        int next = 4;
+        while ((next = FrameCodec.decodeMuxed(mux, next, muxed)) > 0) {
+            if (s != null) {
+                s.onFrame(muxed);
+            } else if (muxed.type() == Protocol.HELLO) {
+                s = new MuxStream(this, id);
+                streams.put(id, s);
+                if (!server.join(s, muxed)) {
+                    FrameCodec.putError(s.out(), Protocol.ERROR_UNSUPPORTED_VERSION);
+                    s.closeAfterFlush();
+                }
+            }
+        }
+    }
+
+    /**
+     * Send the frames of a game, they are written right away unless frames read
+     * off the socket are being handled
+     *
+     * @param id     id of the game on this connection
+     * @param frames frames, from the position to the limit
+     */
+    void send(int id, ByteBuffer frames) {
+        if (closed)
+            return;
+        int length = frames.remaining() + 7;
+        if (out.remaining() < length) {
+            flush();
+            if (out.remaining() < length) {
+                // the Client doesn't read what its games are sent
+                lost();
+                return;
+            }
+        }
+        FrameCodec.putMuxHeader(out, id, frames.remaining());
+        out.put(frames);
+        if (!reading)
+            flush();
+    }
+
+    /**
+     * Forget a game, e.g., it has finished
+     *
+     * @param id     id of the game on this connection
+     * @param stream the game
+     */
+    void remove(int id, MuxStream stream) {
+        streams.remove(id, stream);
+    }
+
+    @Override
+    public void onWritable() {
+        flush();
+    }
+
+    /** Write everything pending, wait for {@code OP_WRITE} if it doesn't fit */
+    private void flush() {
+        if (closed || out.position() == 0)
+            return;
+        try {
+            out.flip();
+            loop.metrics().bytesOut(channel.write(out));
+            boolean pending = out.hasRemaining();
+            out.compact();
+            if (pending)
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            else
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            lost();
+        }
+    }
+
+    /** The connection is lost, every game on it is told */
+    private void lost() {
+        if (closed)
+            return;
+        close();
+        for (MuxStream s : new ArrayList<>(streams.values()))
+            s.onDisconnect();
+        streams.clear();
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /** Close the channel right away */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        if (key != null)
+            key.cancel();
+        if (liveness != null)
+            liveness.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.curtisnewbie.app;
+
+import java.nio.ByteBuffer;
+
+import com.curtisnewbie.engine.GameTable;
+import com.curtisnewbie.engine.net.Frame;
+
+/**
+ * One of the games played over a {@code MuxConnection}, a player as far as the
+ * {@code Lobby} and the {@code ServerGame} are concerned.<br>
+ * <br>
+ * Its frames are collected in a small buffer of its own, and sent in a
+ * {@code MUX} with the id of the game on the connection when it's flushed. It
+ * stays on the loop of its connection, the opponent is moved there instead.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+class MuxStream implements Player {
+
+    /** Enough for the frames put in between two flushes, e.g., JOINED and HELLO */
+    private static final int OUT_SIZE = 64;
+
+    private final MuxConnection connection;
+
+    /** Id of the game on the connection, picked by the Client */
+    private final int id;
+
+    private final ByteBuffer out = ByteBuffer.allocate(OUT_SIZE);
+
+    private ServerGame game;
+    private int seat;
+
+    private Lobby lobby;
+    private Lobby.Ticket ticket;
+
+    private boolean closed;
+
+    MuxStream(MuxConnection connection, int id) {
+        this.connection = connection;
+        this.id = id;
+    }
+
+    /**
+     * Join the lobby with the Client's {@code HELLO}
+     *
+     * @param lobby lobby
+     * @param hello the {@code HELLO} of this game
+     * @return {@code false} if the version or the board is not supported
+     */
+    boolean join(Lobby lobby, Frame hello) {
+        this.lobby = lobby;
+        ticket = lobby.join(this, hello);
+        return ticket != null;
+    }
+
+    /**
+     * A frame of this game has arrived, frames before the game starts are
+     * skipped
+     *
+     * @param frame frame
+     */
+    void onFrame(Frame frame) {
+        if (game != null && !closed)
+            game.onFrame(seat, frame);
+    }
+
+    /** The connection is lost, the game (or the lobby) is told */
+    void onDisconnect() {
+        if (closed)
+            return;
+        if (game != null) {
+            game.onDisconnect(seat);
+            return;
+        }
+        if (ticket != null)
+            lobby.leave(ticket);
+        closed = true;
+    }
+
+    @Override
+    public int connectionId() {
+        return GameTable.NO_CONNECTION;
+    }
+
+    @Override
+    public EventLoop loop() {
+        return connection.loop();
+    }
+
+    @Override
+    public void register(Lobby lobby) {
+        // frames are routed here by the connection already
+        this.lobby = lobby;
+    }
+
+    @Override
+    public void register(ServerGame game, int seat) {
+        this.game = game;
+        this.seat = seat;
+    }
+
+    /**
+     * The buffer of outgoing frames, the loop's {@code discard()} buffer once the
+     * connection is lost, which may happen while this one is being sent, i.e.,
+     * flipped
+     */
+    @Override
+    public ByteBuffer out() {
+        return connection.isClosed() ? connection.loop().discard() : out;
+    }
+
+    @Override
+    public void flush() {
+        if (closed || out.position() == 0)
+            return;
+        out.flip();
+        connection.send(id, out);
+        out.clear();
+    }
+
+    @Override
+    public void closeAfterFlush() {
+        flush();
+        close();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed || connection.isClosed();
+    }
+
+    /** Forget the game, the connection stays open for the others */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        connection.remove(id, this);
+    }
+}
@@ -0,0 +1,72 @@
+package com.curtisnewbie.app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * One side of a game on the {@code GameServer}, either a {@code Connection} of
+ * its own, or a {@code MuxStream}, one of the many games carried by a shared
+ * {@code MuxConnection}. The methods are called on its loop. A player with a
+ * connection of its own can also be moved to another loop, see
+ * {@code MovablePlayer}.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+interface Player {
+
+    /**
+     * Id of the connection of the player in the {@code ConnectionTable} of its
+     * loop, which the {@code GameTable} keeps with the game
+     *
+     * @return id, {@code GameTable.NO_CONNECTION} if it has no record, e.g., the
+     *         games of a {@code MuxConnection} share its connection
+     */
+    int connectionId();
+
+    /**
+     * The loop that drives this player
+     *
+     * @return loop
+     */
+    EventLoop loop();
+
+    /**
+     * Wait in the lobby for an opponent
+     *
+     * @param lobby lobby
+     */
+    void register(Lobby lobby) throws IOException;
+
+    /**
+     * Play the game, frames from the player go to the game from now on
+     *
+     * @param game game
+     * @param seat seat in the game
+     */
+    void register(ServerGame game, int seat) throws IOException;
+
+    /**
+     * The buffer of outgoing frames, frames put into it are sent on
+     * {@link #flush()}
+     *
+     * @return buffer in write mode
+     */
+    ByteBuffer out();
+
+    /** Send everything pending */
+    void flush();
+
+    /** Stop once the pending frames have been sent */
+    void closeAfterFlush();
+
+    /**
+     * Whether the player is gone
+     *
+     * @return {@code true} if it's closed
+     */
+    boolean isClosed();
+
+    /** Stop right away */
+    void close();
+}
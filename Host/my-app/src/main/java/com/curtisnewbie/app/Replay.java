@@ -0,0 +1,75 @@
+package com.curtisnewbie.app;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import com.curtisnewbie.engine.journal.JournalReader;
+import com.curtisnewbie.engine.journal.RecordedGame;
+import com.curtisnewbie.engine.net.Protocol;
+
+/**
+ * Headless replay of a game recorded in a {@code GameJournal}, the board is
+ * printed after every move, with the time between the moves scaled by the
+ * speed (0 for no delay at all). The Host does the same on its
+ * {@code GamePane} with "--replay=[game id]".<br>
+ * <br>
+ * Usage: {@code Replay [journal directory] [game id] [speed]}
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public class Replay {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String dir = args.length > 0 ? args[0] : "journal";
+        int gameId = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        double speed = args.length > 2 ? Double.parseDouble(args[2]) : 1;
+
+        long start = System.nanoTime();
+        RecordedGame game;
+        try (JournalReader reader = new JournalReader(Paths.get(dir))) {
+            game = reader.find(gameId);
+        }
+        if (game == null) {
+            System.out.println("Game " + gameId + " is not found in " + dir);
+            return;
+        }
+        System.out.println(String.format("Game %d found in %.1f ms, %dx%d, %d moves", gameId,
+                (System.nanoTime() - start) / 1e6, game.size(), game.size(), game.moves()));
+
+        int n = game.size();
+        char[] board = new char[n * n];
+        Arrays.fill(board, '.');
+        for (int i = 0; i < game.moves(); i++) {
+            if (speed > 0)
+                Thread.sleep((long) (game.delay(i) / speed));
+            board[game.cell(i)] = i % 2 == 0 ? 'X' : 'O';
+            StringBuilder sb = new StringBuilder();
+            for (int r = 0; r < n; r++)
+                sb.append(board, r * n, n).append('\n');
+            System.out.println(sb);
+        }
+        System.out.println("Result : " + describe(game.result()));
+    }
+
+    /** Describe the result, which is from the view of player 0 (X) */
+    private static String describe(int result) {
+        switch (result) {
+        case Protocol.RESULT_WIN:
+            return "X Wins";
+        case Protocol.RESULT_LOSS:
+            return "O Wins";
+        case Protocol.RESULT_DRAW:
+            return "Nobody Wins";
+        case Protocol.RESULT_TIMEOUT_WIN:
+            return "X Wins On Time";
+        case Protocol.RESULT_TIMEOUT_LOSS:
+            return "O Wins On Time";
+        case Protocol.RESULT_ABORTED:
+            return "Aborted";
+        default:
+            return "Unfinished";
+        }
+    }
+}
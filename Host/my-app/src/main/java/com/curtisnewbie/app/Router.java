@@ -0,0 +1,237 @@
+package com.curtisnewbie.app;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.curtisnewbie.engine.cluster.HashRing;
+import com.curtisnewbie.engine.net.Frame;
+import com.curtisnewbie.engine.net.FrameCodec;
+import com.curtisnewbie.engine.net.Protocol;
+import com.curtisnewbie.engine.util.GameMetrics;
+
+/**
+ * The front of a cluster of {@code GameServer}s: it gives every game an id,
+ * and sends the Clients of the game to the server that owns the id on a
+ * {@code HashRing}.<br>
+ * <br>
+ * A Client says {@code HELLO} to the router as it would to a server, and is
+ * answered with a {@code REDIRECT} to the server and the id of its game, it
+ * then says {@code HELLO} with the id to that server. The first Client of a
+ * bucket of the {@code MatchPolicy} gets a new id, and the next Client of the
+ * same bucket gets the same id, so that the two of them meet in the lobby of
+ * the same server. A Client that comes back with an id, because its server is
+ * gone, is sent to the server that owns the id now.<br>
+ * <br>
+ * A server joins the cluster by connecting to the router and saying
+ * {@code NODE}, and stays on the ring for as long as that connection is alive.
+ * A server that says it's draining is taken off the ring, so that new games go
+ * elsewhere, while the Client that completes a pair already on it is still
+ * sent to it. Nothing is moved between servers: games in progress finish where
+ * they are, only new ids go to the new owners.<br>
+ * <br>
+ * Everything of the router runs on a single {@code EventLoop}, without
+ * locks.<br>
+ * <br>
+ * Usage: {@code Router [port] [pvp|ai]}, servers join with
+ * {@code -Dtictactoe.router=host:port}
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public class Router {
+
+    static final int PORT = 7000;
+
+    private final int port;
+
+    /** Whether every Client gets a game of its own, against the server */
+    private final boolean ai;
+
+    private final MatchPolicy policy = MatchPolicy.fromSystemProperty();
+
+    private final GameMetrics metrics = new GameMetrics("Router");
+
+    private final EventLoop loop = new EventLoop("router-loop", metrics);
+
+    /** Servers that take new games, only touched on the loop */
+    private HashRing ring = new HashRing(HashRing.DEFAULT_VIRTUAL_NODES);
+
+    /** Servers of the cluster by name, "host:port", only touched on the loop */
+    private final Map<String, Member> members = new HashMap<>();
+
+    /** Game waiting for its second Client in each bucket, only touched on the loop */
+    private final Map<Long, Pending> pending = new HashMap<>();
+
+    /** Last id given out, random at first so that a restarted router doesn't reuse ids */
+    private int nextGameId = ThreadLocalRandom.current().nextInt(1, 1 << 30);
+
+    public Router(int port, boolean ai) {
+        this.port = port;
+        this.ai = ai;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : PORT;
+        boolean ai = args.length > 1 && args[1].equals("ai");
+        new Router(port, ai).serve();
+    }
+
+    /** Accept Clients and servers until the process is terminated */
+    public void serve() throws IOException {
+        loop.start();
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(port), 1024);
+            System.out.println("Router listening on port " + port + (ai ? ", every Client plays the server" : ""));
+            while (true) {
+                SocketChannel ch = server.accept();
+                ch.socket().setTcpNoDelay(true);
+                RouterConnection c = new RouterConnection(ch, loop, this);
+                loop.execute(() -> {
+                    try {
+                        c.register();
+                    } catch (IOException e) {
+                        c.close();
+                    }
+                });
+            }
+        } finally {
+            loop.shutdown();
+        }
+    }
+
+    /** A Client asks where to play, called on the loop */
+    void onHello(RouterConnection c, Frame hello) {
+        if (hello.byteAt(0) < Protocol.VERSION_CLUSTER) {
+            FrameCodec.putError(c.out(), Protocol.ERROR_UNSUPPORTED_VERSION);
+            c.closeAfterFlush();
+            return;
+        }
+        int gameId = hello.helloGameId();
+        Member m;
+        if (gameId != 0 || ai) {
+            if (gameId == 0)
+                gameId = newGameId();
+            m = owner(gameId);
+        } else {
+            int n = hello.length() > 3 ? hello.byteAt(2) : 0;
+            int k = hello.length() > 3 ? hello.byteAt(3) : 0;
+            long bucket = policy.bucket(hello.rating(), n, k);
+            Pending p = pending.remove(bucket);
+            if (p != null && !p.member.gone) {
+                // second of the pair, to the server of the first even if it's draining
+                gameId = p.gameId;
+                m = p.member;
+            } else {
+                gameId = newGameId();
+                m = owner(gameId);
+                if (m != null)
+                    pending.put(bucket, new Pending(gameId, m));
+            }
+        }
+        if (m == null) {
+            FrameCodec.putError(c.out(), Protocol.ERROR_NO_SERVER);
+        } else {
+            FrameCodec.putRedirect(c.out(), gameId, m.port, m.host);
+        }
+        c.closeAfterFlush();
+    }
+
+    /** A server joins or says that it's draining, called on the loop */
+    void onNode(RouterConnection c, Frame frame) {
+        String host = frame.nodeHost();
+        if (host.isEmpty())
+            host = c.remoteHost();
+        int p = frame.nodePort();
+        String name = host + ":" + p;
+        Member m = members.get(name);
+        if (m == null || m.conn != c) {
+            if (m != null)
+                m.conn.close();
+            m = new Member(name, host.getBytes(StandardCharsets.US_ASCII), p, c);
+            members.put(name, m);
+        }
+        if (frame.byteAt(2) == Protocol.NODE_DRAINING) {
+            if (!m.draining)
+                System.out.println("Server " + name + " is draining, " + (ring.size() - 1) + " left on the ring");
+            m.draining = true;
+            ring = ring.without(name);
+        } else if (!ring.nodes().contains(name)) {
+            m.draining = false;
+            ring = ring.with(name);
+            System.out.println("Server " + name + " joined, " + ring.size() + " on the ring");
+        }
+    }
+
+    /** The connection of a server is lost, called on the loop */
+    void onLost(RouterConnection c) {
+        members.values().removeIf(m -> {
+            if (m.conn != c)
+                return false;
+            m.gone = true;
+            ring = ring.without(m.name);
+            System.out.println("Server " + m.name + " left, " + ring.size() + " on the ring");
+            return true;
+        });
+    }
+
+    private int newGameId() {
+        // 0 means no game, skip it when the ids wrap, the servers' own ids
+        // have the LOCAL_GAME_ID bit
+        nextGameId = (nextGameId + 1) & ~Protocol.LOCAL_GAME_ID;
+        if (nextGameId == 0)
+            ++nextGameId;
+        return nextGameId;
+    }
+
+    /** The server that owns the game, null if there's none */
+    private Member owner(int gameId) {
+        String name = ring.owner(gameId);
+        return name == null ? null : members.get(name);
+    }
+
+    /** A server of the cluster */
+    private static final class Member {
+
+        final String name;
+
+        /** Host that Clients reach the server at */
+        final byte[] host;
+
+        /** Port that the server takes Clients on */
+        final int port;
+
+        final RouterConnection conn;
+
+        /** Whether the server takes no new games */
+        boolean draining;
+
+        /** Whether the connection of the server is lost */
+        boolean gone;
+
+        Member(String name, byte[] host, int port, RouterConnection conn) {
+            this.name = name;
+            this.host = host;
+            this.port = port;
+            this.conn = conn;
+        }
+    }
+
+    /** A game that has its first Client */
+    private static final class Pending {
+
+        final int gameId;
+
+        final Member member;
+
+        Pending(int gameId, Member member) {
+            this.gameId = gameId;
+            this.member = member;
+        }
+    }
+}
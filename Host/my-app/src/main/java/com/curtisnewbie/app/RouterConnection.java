@@ -0,0 +1,200 @@
+package com.curtisnewbie.app;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+import com.curtisnewbie.engine.net.Frame;
+import com.curtisnewbie.engine.net.FrameCodec;
+import com.curtisnewbie.engine.net.Protocol;
+import com.curtisnewbie.engine.util.TimerWheel;
+
+/**
+ * A non-blocking connection to the {@code Router}, either from a Client, which
+ * says {@code HELLO}, is told where to go and is closed, or from a server of
+ * the cluster, which says {@code NODE} and stays for as long as it runs.<br>
+ * <br>
+ * As with a {@code Connection}, a timer of the loop sends a {@code HEARTBEAT}
+ * every {@code Protocol.HEARTBEAT_INTERVAL_MILLIS} to a server, and drops a
+ * server that has been silent for {@code Protocol.IDLE_TIMEOUT_MILLIS}. A
+ * Client that hasn't said anything by the first heartbeat is dropped.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+class RouterConnection implements Selectable {
+
+    private final SocketChannel channel;
+    private final EventLoop loop;
+    private final Router router;
+    private SelectionKey key;
+
+    private final ByteBuffer in = ByteBuffer.allocate(Protocol.MAX_PAYLOAD + 3);
+    private final ByteBuffer out = ByteBuffer.allocate(256);
+
+    /** Whether it has said {@code NODE}, it's a server of the cluster then */
+    private boolean node;
+
+    private boolean closeAfterFlush;
+
+    private boolean closed;
+
+    /** When the last bytes were read, in nanos */
+    private long lastRead;
+
+    private TimerWheel.Timeout liveness;
+
+    RouterConnection(SocketChannel channel, EventLoop loop, Router router) {
+        this.channel = channel;
+        this.loop = loop;
+        this.router = router;
+    }
+
+    /** Register on the loop, must be called in the loop */
+    void register() throws IOException {
+        channel.configureBlocking(false);
+        key = channel.register(loop.selector(), SelectionKey.OP_READ, this);
+        lastRead = System.nanoTime();
+        liveness = loop.timers().schedule(Protocol.HEARTBEAT_INTERVAL_MILLIS, this::checkLiveness);
+    }
+
+    @Override
+    public void onReadable() {
+        try {
+            int n = channel.read(in);
+            if (n < 0) {
+                lost();
+                return;
+            }
+            loop.metrics().bytesIn(n);
+            lastRead = System.nanoTime();
+            in.flip();
+            Frame frame = loop.frame();
+            while (!closed && !closeAfterFlush && FrameCodec.decode(in, frame)) {
+                if (frame.type() == Protocol.NODE) {
+                    node = true;
+                    router.onNode(this, frame);
+                } else if (frame.type() == Protocol.HELLO && !node) {
+                    router.onHello(this, frame);
+                }
+            }
+            in.compact();
+        } catch (ProtocolException e) {
+            FrameCodec.putError(out, Protocol.ERROR_MALFORMED_FRAME);
+            closeAfterFlush();
+        } catch (IOException e) {
+            lost();
+        }
+    }
+
+    /**
+     * Drop a server that has been silent for too long, or a Client that hasn't
+     * said {@code HELLO}, send a heartbeat to a server otherwise
+     */
+    private void checkLiveness() {
+        liveness = null;
+        if (closed)
+            return;
+        long silent = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastRead);
+        if (!node || silent >= Protocol.IDLE_TIMEOUT_MILLIS) {
+            if (node)
+                loop.metrics().evicted();
+            lost();
+            return;
+        }
+        FrameCodec.putHeartbeat(out);
+        flush();
+        if (!closed)
+            liveness = loop.timers().schedule(Protocol.HEARTBEAT_INTERVAL_MILLIS, this::checkLiveness);
+    }
+
+    /** The connection is lost, the router is told if it was a server */
+    private void lost() {
+        close();
+        if (node)
+            router.onLost(this);
+    }
+
+    /**
+     * The address that the peer connected from
+     *
+     * @return host address, e.g., "127.0.0.1"
+     */
+    String remoteHost() {
+        try {
+            return ((InetSocketAddress) channel.getRemoteAddress()).getAddress().getHostAddress();
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    @Override
+    public void onWritable() {
+        flush();
+    }
+
+    /**
+     * The buffer of outgoing frames, frames put into it are written on
+     * {@link #flush()}
+     *
+     * @return buffer in write mode
+     */
+    ByteBuffer out() {
+        return out;
+    }
+
+    /** Write everything pending, wait for {@code OP_WRITE} if it doesn't fit */
+    void flush() {
+        if (closed)
+            return;
+        try {
+            out.flip();
+            loop.metrics().bytesOut(channel.write(out));
+            boolean pending = out.hasRemaining();
+            out.compact();
+            if (pending) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            } else {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                if (closeAfterFlush)
+                    close();
+            }
+        } catch (IOException e) {
+            lost();
+        }
+    }
+
+    /** Close once the pending bytes have been written, stop reading meanwhile */
+    void closeAfterFlush() {
+        if (closed)
+            return;
+        closeAfterFlush = true;
+        try {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        } catch (RuntimeException e) {
+            // key already cancelled
+        }
+        flush();
+    }
+
+    /** Close the channel right away */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        if (key != null)
+            key.cancel();
+        if (liveness != null)
+            liveness.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
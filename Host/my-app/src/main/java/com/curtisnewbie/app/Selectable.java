@@ -0,0 +1,21 @@
+package com.curtisnewbie.app;
+
+/**
+ * Something registered on the selector of an {@code EventLoop}, e.g., a
+ * player's {@code Connection} or a {@code Spectator}, it's the attachment of
+ * its {@code SelectionKey}. The methods are called on the loop's thread.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+interface Selectable {
+
+    /** The channel has bytes to read, or is closed by the peer */
+    void onReadable();
+
+    /** The channel can take more bytes after a write that didn't fit */
+    void onWritable();
+
+    /** Close the channel right away */
+    void close();
+}
@@ -0,0 +1,486 @@
+package com.curtisnewbie.app;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.curtisnewbie.engine.BitBoard;
+import com.curtisnewbie.engine.GameEngine;
+import com.curtisnewbie.engine.GameRules;
+import com.curtisnewbie.engine.GameTable;
+import com.curtisnewbie.engine.journal.GameJournal;
+import com.curtisnewbie.engine.net.Frame;
+import com.curtisnewbie.engine.net.FrameCodec;
+import com.curtisnewbie.engine.net.Protocol;
+import com.curtisnewbie.engine.solver.Advisor;
+import com.curtisnewbie.engine.util.GameMetrics;
+import com.curtisnewbie.engine.util.TimerWheel;
+
+/**
+ * State machine of one match played on the {@code GameServer}.<br>
+ * <br>
+ * This is what {@code Host.startGame()} does for a single game, except that
+ * instead of blocking on the connection it is driven by the frames that the
+ * {@code EventLoop} reads off the two connections. The game goes through:<br>
+ * 1. both players are told whether they move first, and the size of the board,
+ * with a {@code HELLO},<br>
+ * 2. the player in turn sends a move, which is checked by the
+ * {@code GameRules} and relayed to the other player,<br>
+ * 3. repeat until someone wins, the board is full or a player resigns, then
+ * both players get a {@code GAME_OVER} and both connections are closed.<br>
+ * <br>
+ * With a clock, each move must be made within the seconds told in the
+ * {@code HELLO}, a timer of the loop ends the game as a loss of the player in
+ * turn when it runs out ({@code Protocol.RESULT_TIMEOUT_LOSS}). The timer is
+ * moved to the next player on every move.<br>
+ * <br>
+ * A game may also be played against the built-in opponent, which then takes
+ * seat 1 and answers every move right away with the best move its
+ * {@code Advisor} knows.<br>
+ * <br>
+ * The state of a 3x3 game is a record in the {@code GameTable} of its loop,
+ * from {@link #start()} until it finishes, rather than an engine on the heap:
+ * the board, the status, the turn and the ids of the two players'
+ * connections, whose buffers are records of the loop's
+ * {@code ConnectionTable}. Larger boards (or a full table) use a
+ * {@code GameRules} of their own, their connections are in the table all the
+ * same. See {@code GameFootprint} for what a game keeps.<br>
+ * <br>
+ * Any number of {@code Spectator}s may watch the game. Each frame for them is
+ * encoded once into a read-only buffer that all of them share, the buffers are
+ * cut from a larger slab so that a move costs no allocation in most cases.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public class ServerGame {
+
+    private final int id;
+
+    /** Seat 0 moves first, seat 1 moves second, null for the built-in opponent */
+    private final Player[] players;
+
+    /** Size of the board and stones in a row to win */
+    private final int n;
+    private final int k;
+
+    /** Seat 0 is player 0 of the engine, null while the board is in the table */
+    private GameRules engine;
+
+    /** Table of the loop that holds the board of a 3x3 game */
+    private GameTable table;
+
+    /** Record of the game in the table, {@code GameTable.NO_HANDLE} if none */
+    private int handle = GameTable.NO_HANDLE;
+
+    /** The board once the game finishes, if it was in the table */
+    private int finalBoard;
+
+    private boolean finished;
+
+    private final GameMetrics metrics;
+
+    private final GameJournal journal;
+
+    /** Records the moves, from {@link #start()} on */
+    private GameJournal.Recorder recorder;
+
+    /** When the last move was sent to the player in turn, 0 before the first */
+    private long sentAt;
+
+    /** Seconds for each move, 0 for no clock */
+    private final int turnSeconds;
+
+    /** Ends the game when the player in turn runs out of time, null if none */
+    private TimerWheel.Timeout clock;
+
+    /** Size of the slabs that the frames for spectators are cut from */
+    private static final int SLAB_SIZE = 4096;
+
+    /** Null until someone watches, as most games are never watched */
+    private List<Spectator> spectators;
+
+    /** Where the next frame for spectators is encoded */
+    private ByteBuffer slab;
+
+    /** {@code BOARD} of the current position, null until it's asked for */
+    private ByteBuffer snapshot;
+
+    /** {@code GAME_OVER} sent to spectators, null until it's asked for */
+    private ByteBuffer gameOver;
+
+    /** Result from the view of seat 0, once the game finishes */
+    private int result;
+
+    /** Run once the game finishes */
+    private Runnable onFinish;
+
+    /** Best moves of the built-in opponent, when it plays */
+    private Advisor advisor;
+
+    /**
+     * @param id     id of the game
+     * @param first  player that moves first
+     * @param second player that moves second, null to play against the built-in
+     *               opponent
+     * @param n       size of the board
+     * @param k       stones in a row to win
+     * @param metrics metrics of the server
+     * @param journal where the moves are recorded
+     * @param turnSeconds seconds for each move, up to 255, 0 for no clock
+     */
+    public ServerGame(int id, Player first, Player second, int n, int k, GameMetrics metrics,
+            GameJournal journal, int turnSeconds) {
+        this.id = id;
+        this.players = new Player[] { first, second };
+        this.n = n;
+        this.k = k;
+        if (n != 3 || k != 3)
+            this.engine = GameRules.create(n, k);
+        this.metrics = metrics;
+        this.journal = journal;
+        this.turnSeconds = turnSeconds;
+    }
+
+    /**
+     * Id of the game, which spectators ask for
+     *
+     * @return id
+     */
+    int id() {
+        return id;
+    }
+
+    /**
+     * The loop that drives this game, only this loop may call the other methods
+     *
+     * @return loop
+     */
+    EventLoop loop() {
+        return players[0].loop();
+    }
+
+    /**
+     * Let the built-in opponent in seat 1 play by the advisor, which must know
+     * the board
+     *
+     * @param advisor advisor
+     */
+    void opponent(Advisor advisor) {
+        this.advisor = advisor;
+    }
+
+    /**
+     * Set what to run once the game finishes, e.g., forget the game
+     *
+     * @param action action
+     */
+    void onFinish(Runnable action) {
+        this.onFinish = action;
+    }
+
+    /** Tell both players their role, the player in seat 0 starts */
+    void start() {
+        if (engine == null) {
+            table = loop().games();
+            handle = table.allocate(players[0].connectionId(),
+                    players[1] != null ? players[1].connectionId() : GameTable.NO_CONNECTION);
+            if (handle == GameTable.NO_HANDLE)
+                engine = new GameEngine();
+        }
+        metrics.gameStarted();
+        recorder = journal.startGame();
+        FrameCodec.putHello(players[0].out(), Protocol.MOVE_FIRST, n, k, 1, turnSeconds);
+        players[0].flush();
+        if (players[1] != null) {
+            FrameCodec.putHello(players[1].out(), Protocol.MOVE_SECOND, n, k, 1, turnSeconds);
+            players[1].flush();
+        }
+        startClock();
+    }
+
+    /** Give the player in turn its seconds for the move, if there is a clock */
+    private void startClock() {
+        if (turnSeconds == 0)
+            return;
+        if (clock != null)
+            clock.cancel();
+        int seat = currentPlayer();
+        clock = loop().timers().schedule(turnSeconds * 1000L, () -> onTimeUp(seat));
+    }
+
+    /** The player ran out of time for its move, which loses the game */
+    private void onTimeUp(int seat) {
+        clock = null;
+        if (finished)
+            return;
+        System.out.println("Game " + id + " : Seat " + seat + " ran out of time");
+        metrics.turnTimedOut();
+        finish(seat == 0 ? Protocol.RESULT_TIMEOUT_LOSS : Protocol.RESULT_TIMEOUT_WIN);
+    }
+
+    /**
+     * A player has sent a frame
+     *
+     * @param seat  seat of the player
+     * @param frame frame
+     */
+    void onFrame(int seat, Frame frame) {
+        if (finished)
+            return;
+
+        switch (frame.type()) {
+        case Protocol.MOVE:
+            onMove(seat, frame.cell(n * n));
+            break;
+        case Protocol.RESIGN:
+            finish(seat == 0 ? Protocol.RESULT_LOSS : Protocol.RESULT_WIN);
+            break;
+        case Protocol.HELLO:
+            if (!Protocol.supports(frame.byteAt(0), n, k)) {
+                FrameCodec.putError(players[seat].out(), Protocol.ERROR_UNSUPPORTED_VERSION);
+                finish(Protocol.RESULT_ABORTED);
+            }
+            break;
+        case Protocol.ERROR:
+            finish(Protocol.RESULT_ABORTED);
+            break;
+        default:
+            // heartbeats, and frames unknown to this version, are skipped
+            break;
+        }
+    }
+
+    private void onMove(int seat, int cell) {
+        // moving out of turn or to an occupied cell loses the game
+        if (seat != currentPlayer() || apply(cell) == GameRules.ILLEGAL_MOVE) {
+            System.out.println("Game " + id + " : Illegal move from seat " + seat + " (connection "
+                    + connectionOf(seat) + ")");
+            FrameCodec.putError(players[seat].out(), Protocol.ERROR_ILLEGAL_MOVE);
+            finish(seat == 0 ? Protocol.RESULT_LOSS : Protocol.RESULT_WIN);
+            return;
+        }
+        long now = System.nanoTime();
+        metrics.moveReceived();
+        if (sentAt != 0)
+            metrics.roundTrip(now - sentAt);
+        sentAt = now;
+        snapshot = null;
+        recorder.move(cell);
+        broadcastMove(cell);
+
+        // relay the move to the opponent, or let the built-in opponent answer
+        Player opponent = players[1 - seat];
+        if (opponent == null) {
+            opponent = players[seat];
+            if (status() == GameRules.IN_PROGRESS) {
+                int answer = engine != null ? advisor.bestMove(engine) : advisor.bestMove(n, k, board());
+                apply(answer);
+                FrameCodec.putMove(opponent.out(), answer, n * n);
+                metrics.moveSent();
+                recorder.move(answer);
+                broadcastMove(answer);
+            }
+        } else {
+            FrameCodec.putMove(opponent.out(), cell, n * n);
+            metrics.moveSent();
+        }
+
+        if (status() != GameRules.IN_PROGRESS) {
+            finish(Protocol.resultOf(status()));
+        } else {
+            opponent.flush();
+            startClock();
+        }
+    }
+
+    /**
+     * A player has sent a frame that cannot be decoded, the game is ended
+     *
+     * @param seat seat of the player
+     */
+    void onMalformedFrame(int seat) {
+        FrameCodec.putError(players[seat].out(), Protocol.ERROR_MALFORMED_FRAME);
+        finish(Protocol.RESULT_ABORTED);
+    }
+
+    /**
+     * A player's connection is lost, the opponent is told and disconnected as
+     * well
+     *
+     * @param seat seat of the player
+     */
+    void onDisconnect(int seat) {
+        if (!finished)
+            metrics.disconnected();
+        players[seat].close();
+        finish(Protocol.RESULT_ABORTED);
+    }
+
+    /**
+     * Send the {@code GAME_OVER} to both players, which is flushed along with
+     * anything pending, and close the connections.
+     *
+     * @param result result from the view of seat 0
+     */
+    private void finish(int result) {
+        if (finished)
+            return;
+        finished = true;
+        this.result = result;
+        if (clock != null)
+            clock.cancel();
+        if (handle != GameTable.NO_HANDLE) {
+            finalBoard = table.board(handle);
+            table.release(handle);
+            handle = GameTable.NO_HANDLE;
+        }
+        metrics.gameFinished();
+        if (recorder != null)
+            recorder.end(result);
+        for (int seat = 0; seat < 2; seat++) {
+            if (players[seat] == null)
+                continue;
+            FrameCodec.putGameOver(players[seat].out(), seat == 0 ? result : Protocol.opposite(result));
+            players[seat].closeAfterFlush();
+        }
+
+        if (spectators != null) {
+            broadcast(gameOver());
+            for (Spectator s : spectators)
+                s.closeAfterFlush();
+            spectators = null;
+        }
+        if (onFinish != null)
+            onFinish.run();
+    }
+
+    /**
+     * A spectator starts watching, it gets a snapshot of the board first
+     *
+     * @param s spectator
+     */
+    void addSpectator(Spectator s) {
+        s.send(snapshot());
+        if (finished) {
+            s.send(gameOver());
+            s.closeAfterFlush();
+        } else {
+            if (spectators == null)
+                spectators = new ArrayList<>();
+            spectators.add(s);
+        }
+    }
+
+    /**
+     * The {@code BOARD} of the current position, encoded once per move at most
+     *
+     * @return read-only frame shared by the spectators
+     */
+    ByteBuffer snapshot() {
+        if (snapshot == null) {
+            if (engine != null) {
+                int start = slab(FrameCodec.boardLength(engine)).position();
+                FrameCodec.putBoard(slab, engine);
+                snapshot = sharedFrom(start);
+            } else {
+                // the status of a finished game is that of its board
+                int start = slab(FrameCodec.BOARD_3X3_LENGTH).position();
+                FrameCodec.putBoard(slab, board(), status());
+                snapshot = sharedFrom(start);
+            }
+        }
+        return snapshot;
+    }
+
+    /** The {@code GAME_OVER} for spectators, from the view of seat 0 */
+    private ByteBuffer gameOver() {
+        if (gameOver == null) {
+            int start = slab(2).position();
+            FrameCodec.putGameOver(slab, result);
+            gameOver = sharedFrom(start);
+        }
+        return gameOver;
+    }
+
+    private void broadcastMove(int cell) {
+        if (spectators == null)
+            return;
+        int start = slab(3).position();
+        FrameCodec.putMove(slab, cell, n * n);
+        broadcast(sharedFrom(start));
+    }
+
+    /** Send the shared frame to every spectator, dropping those that are closed */
+    private void broadcast(ByteBuffer frame) {
+        for (int i = 0; i < spectators.size(); i++) {
+            Spectator s = spectators.get(i);
+            if (s.isClosed()) {
+                // swap with the last one, the order doesn't matter
+                spectators.set(i, spectators.get(spectators.size() - 1));
+                spectators.remove(spectators.size() - 1);
+                i--;
+                continue;
+            }
+            s.send(frame);
+        }
+    }
+
+    // ---------------------------- the board, in the engine or in the table
+
+    private int currentPlayer() {
+        if (engine != null)
+            return engine.currentPlayer();
+        return handle != GameTable.NO_HANDLE ? table.currentPlayer(handle) : BitBoard.turn(finalBoard);
+    }
+
+    /** Id of the connection of the player in the seat, see {@code Player.connectionId()} */
+    private int connectionOf(int seat) {
+        if (handle != GameTable.NO_HANDLE)
+            return table.player(handle, seat);
+        return players[seat] != null ? players[seat].connectionId() : GameTable.NO_CONNECTION;
+    }
+
+    private int apply(int cell) {
+        return engine != null ? engine.apply(cell) : table.apply(handle, cell);
+    }
+
+    private int status() {
+        if (engine != null)
+            return engine.status();
+        return handle != GameTable.NO_HANDLE ? table.status(handle) : statusOf(finalBoard);
+    }
+
+    /** The {@code BitBoard} of a game on the 3x3 board */
+    private int board() {
+        if (engine != null)
+            return ((GameEngine) engine).board();
+        return handle != GameTable.NO_HANDLE ? table.board(handle) : finalBoard;
+    }
+
+    private static int statusOf(int board) {
+        if (BitBoard.hasWon(board, 0))
+            return GameRules.PLAYER_0_WON;
+        if (BitBoard.hasWon(board, 1))
+            return GameRules.PLAYER_1_WON;
+        return BitBoard.isFull(board) ? GameRules.DRAW : GameRules.IN_PROGRESS;
+    }
+
+    /**
+     * The slab with room for a frame of the given length, a new one is taken
+     * when it's full, the old one is freed once no spectator refers to it
+     */
+    private ByteBuffer slab(int length) {
+        if (slab == null || slab.remaining() < length)
+            slab = ByteBuffer.allocate(Math.max(SLAB_SIZE, length));
+        return slab;
+    }
+
+    /** The frame encoded into the slab since the start, as a read-only buffer */
+    private ByteBuffer sharedFrom(int start) {
+        ByteBuffer frame = slab.duplicate();
+        frame.limit(slab.position());
+        frame.position(start);
+        return frame.slice().asReadOnlyBuffer();
+    }
+}
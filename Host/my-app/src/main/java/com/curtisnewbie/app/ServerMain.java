@@ -0,0 +1,131 @@
+package com.curtisnewbie.app;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import com.curtisnewbie.engine.GameRules;
+import com.curtisnewbie.engine.net.Frame;
+import com.curtisnewbie.engine.net.FrameReader;
+import com.curtisnewbie.engine.net.FrameWriter;
+import com.curtisnewbie.engine.net.Protocol;
+
+/**
+ * Headless entry point of the {@code GameServer}, which never loads a JavaFX
+ * class, so that it runs from the self-contained jar built by the "server"
+ * profile, without the JavaFX runtime and without the toolkit's startup.<br>
+ * <br>
+ * It prints how long after the launch of the JVM the server was ready to accept
+ * Clients. With "--train", it also plays a few games against itself and exits,
+ * which is how the "server" profile has the JVM record the classes a running
+ * server loads into a class data sharing (AppCDS) archive. A server started
+ * with that archive maps those classes in, rather than loading, verifying and
+ * linking them again. The archive is recorded in the folder of the jar, and is
+ * only used when the server is launched from there with the jar's bare name,
+ * as below.<br>
+ * <br>
+ * Usage:
+ * {@code java [-XX:SharedArchiveFile=tictactoe-server.jsa] -jar tictactoe-server.jar [--train] [port] [number of selector threads] [pvp|ai] [N] [K]}
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public final class ServerMain {
+
+    /** First argument that plays {@link #TRAINING_GAMES} games and exits */
+    public static final String TRAIN = "--train";
+
+    private static final int TRAINING_GAMES = 50;
+
+    private ServerMain() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        boolean train = args.length > 0 && args[0].equals(TRAIN);
+        String[] serverArgs = train ? Arrays.copyOfRange(args, 1, args.length) : args;
+        GameServer server = GameServer.fromArgs(serverArgs);
+        if (!train) {
+            server.serve(ServerMain::printReady);
+            return;
+        }
+
+        CountDownLatch ready = new CountDownLatch(1);
+        Thread serving = new Thread(() -> {
+            try {
+                server.serve(() -> {
+                    printReady();
+                    ready.countDown();
+                });
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "server");
+        serving.setDaemon(true);
+        serving.start();
+        ready.await();
+
+        int port = serverArgs.length > 0 ? Integer.parseInt(serverArgs[0]) : GameServer.PORT;
+        boolean ai = serverArgs.length > 2 && serverArgs[2].equals("ai");
+        for (int g = 0; g < TRAINING_GAMES; g++) {
+            Thread second = null;
+            if (!ai) {
+                second = new Thread(() -> play(port), "training-bot");
+                second.start();
+            }
+            play(port);
+            if (second != null)
+                second.join();
+        }
+        System.out.println("Played " + TRAINING_GAMES + " training games");
+        // the JVM writes the archive on its way out
+        System.exit(0);
+    }
+
+    /** Print how long it took from the launch of the JVM to get here */
+    private static void printReady() {
+        ProcessHandle.current().info().startInstant().ifPresent(start -> System.out
+                .println("Ready in " + Duration.between(start, Instant.now()).toMillis() + " ms since launch"));
+    }
+
+    /** Play a game on a new connection, taking the first empty cell on each turn */
+    private static void play(int port) {
+        Frame frame = new Frame();
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setTcpNoDelay(true);
+            FrameReader in = new FrameReader(new BufferedInputStream(socket.getInputStream()));
+            FrameWriter out = new FrameWriter(socket.getOutputStream());
+            out.hello(Protocol.NO_ROLE);
+            out.flush();
+            do {
+                in.read(frame);
+            } while (frame.type() != Protocol.HELLO);
+            GameRules engine = GameRules.create(frame.boardSize(), frame.k());
+            boolean myTurn = frame.byteAt(1) == Protocol.MOVE_FIRST;
+            while (!engine.isOver()) {
+                if (myTurn) {
+                    int cell = 0;
+                    while (engine.cellAt(cell) >= 0)
+                        cell++;
+                    engine.apply(cell);
+                    out.move(cell, engine.cells());
+                    out.flush();
+                } else {
+                    in.read(frame);
+                    if (frame.type() == Protocol.MOVE)
+                        engine.apply(frame.cell(engine.cells()));
+                    else if (frame.type() == Protocol.GAME_OVER || frame.type() == Protocol.ERROR)
+                        return;
+                    else
+                        continue;
+                }
+                myTurn = !myTurn;
+            }
+        } catch (IOException e) {
+            System.out.println("Training game failed: " + e.getMessage());
+        }
+    }
+}
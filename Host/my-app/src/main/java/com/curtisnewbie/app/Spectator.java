@@ -0,0 +1,214 @@
+package com.curtisnewbie.app;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+import com.curtisnewbie.engine.net.Frame;
+import com.curtisnewbie.engine.net.FrameCodec;
+import com.curtisnewbie.engine.net.Protocol;
+
+/**
+ * A non-blocking connection to someone who watches a game on the
+ * {@code GameServer}.<br>
+ * <br>
+ * A spectator connects to the spectator port and sends a {@code WATCH} with
+ * the id of the game, it's then moved to the {@code EventLoop} of that game,
+ * which sends it a {@code BOARD} snapshot followed by every move, and a
+ * {@code GAME_OVER} (from the view of player 0) at the end.<br>
+ * <br>
+ * The frames are encoded once per game into shared read-only buffers (see
+ * {@code ServerGame}), a spectator only keeps its own duplicates of them, i.e.,
+ * its own position, so nothing is copied per spectator. A spectator that can't
+ * keep up has at most {@link #MAX_PENDING} frames queued, beyond that the
+ * queue is replaced by the latest snapshot of the board, so that it skips to
+ * where the game is rather than falling further behind. The {@code GAME_OVER}
+ * is never skipped, it's queued after the snapshot.
+ *
+ * @author Yongjie Zhuang
+ *
+ */
+public class Spectator implements Selectable {
+
+    /** Frames queued before the spectator skips to the latest snapshot */
+    static final int MAX_PENDING = 32;
+
+    private final SocketChannel channel;
+    private final GameServer server;
+    private EventLoop loop;
+    private SelectionKey key;
+
+    /** Only the {@code WATCH} is read, large enough for any frame though */
+    private final ByteBuffer in = ByteBuffer.allocate(Protocol.MAX_PAYLOAD + 3);
+
+    /** Frames not written yet, the head may be partially written */
+    private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+
+    private ServerGame game;
+
+    private boolean closeAfterFlush;
+
+    private boolean closed;
+
+    public Spectator(SocketChannel channel, EventLoop loop, GameServer server) {
+        this.channel = channel;
+        this.loop = loop;
+        this.server = server;
+    }
+
+    /** Register this spectator on its loop, must be called in the loop */
+    void register() throws IOException {
+        channel.configureBlocking(false);
+        key = channel.register(loop.selector(), SelectionKey.OP_READ, this);
+    }
+
+    @Override
+    public void onReadable() {
+        try {
+            int n = channel.read(in);
+            if (n < 0) {
+                close();
+                return;
+            }
+            in.flip();
+            Frame frame = loop.frame();
+            while (!closed && game == null && FrameCodec.decode(in, frame)) {
+                if (frame.type() == Protocol.WATCH)
+                    watch(frame.gameId());
+            }
+            // anything after the WATCH is ignored
+            in.clear();
+        } catch (ProtocolException e) {
+            sendError(Protocol.ERROR_MALFORMED_FRAME);
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    /** Join the game, on the game's own loop */
+    private void watch(int gameId) {
+        ServerGame g = server.game(gameId);
+        if (g == null) {
+            sendError(Protocol.ERROR_NO_SUCH_GAME);
+            return;
+        }
+        game = g;
+        EventLoop target = g.loop();
+        if (target == loop) {
+            g.addSpectator(this);
+            return;
+        }
+        // the game is only touched by its own loop
+        key.cancel();
+        loop = target;
+        target.execute(() -> {
+            try {
+                key = channel.register(target.selector(), SelectionKey.OP_READ, this);
+                g.addSpectator(this);
+            } catch (IOException e) {
+                close();
+            }
+        });
+    }
+
+    /** Send an {@code ERROR} and close */
+    private void sendError(int code) {
+        ByteBuffer buf = ByteBuffer.allocate(2);
+        FrameCodec.putError(buf, code);
+        send(buf.flip());
+        closeAfterFlush();
+    }
+
+    @Override
+    public void onWritable() {
+        flush();
+    }
+
+    /**
+     * Queue a frame and write as much as the socket takes
+     *
+     * @param frame a shared frame, which is not modified, this spectator writes
+     *              from a duplicate of it
+     */
+    void send(ByteBuffer frame) {
+        if (closed)
+            return;
+        if (pending.size() >= MAX_PENDING) {
+            skipToSnapshot();
+            // a move is in the snapshot already, a GAME_OVER or ERROR isn't
+            if ((frame.get(frame.position()) & 0x0F) == Protocol.MOVE)
+                return;
+        }
+        pending.add(frame.duplicate());
+        if (pending.size() == 1)
+            flush();
+    }
+
+    /**
+     * Replace the queued frames with the latest snapshot of the board. A frame
+     * that is partially written is kept, so that the stream stays framed.
+     */
+    private void skipToSnapshot() {
+        ByteBuffer head = pending.peek();
+        boolean partial = head != null && head.position() > 0;
+        pending.clear();
+        if (partial)
+            pending.add(head);
+        pending.add(game.snapshot().duplicate());
+    }
+
+    /** Write everything pending, wait for {@code OP_WRITE} if it doesn't fit */
+    private void flush() {
+        try {
+            ByteBuffer head;
+            while ((head = pending.peek()) != null) {
+                loop.metrics().bytesOut(channel.write(head));
+                if (head.hasRemaining()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+                pending.poll();
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            if (closeAfterFlush)
+                close();
+        } catch (IOException | RuntimeException e) {
+            // the spectator is gone or its key is cancelled
+            close();
+        }
+    }
+
+    /** Close once the pending frames have been written */
+    void closeAfterFlush() {
+        closeAfterFlush = true;
+        if (pending.isEmpty())
+            close();
+    }
+
+    /**
+     * Whether this spectator is closed, it's then dropped by the game
+     *
+     * @return {@code true} if it's closed
+     */
+    boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        pending.clear();
+        if (key != null)
+            key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}